@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.client;
+
+/**
+ * Receives the outcome of a request made with an {@link AsyncTable}. Exactly one of the methods is called for each request, after the request's
+ * {@link java.util.concurrent.Future} completes.
+ * 
+ * <p>
+ * The methods are called on the thread that drives the table's connections to the tablet servers, so they must not block; work that blocks should be handed
+ * to another thread.
+ * 
+ * @since 1.7.0
+ */
+public interface AsyncCallback<T> {
+  
+  /**
+   * @param result
+   *          the result of the request
+   */
+  void completed(T result);
+  
+  /**
+   * @param cause
+   *          why the request failed, for example an {@link AccumuloSecurityException}, a {@link TimedOutException} or a {@link MutationsRejectedException}
+   */
+  void failed(Throwable cause);
+}
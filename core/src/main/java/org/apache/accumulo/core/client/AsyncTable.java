@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.client;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.Future;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+
+/**
+ * Reads and writes a table without blocking the calling thread. Each request returns at once with a {@link Future}, and an optional {@link AsyncCallback} is
+ * told when it completes. A single thread drives the connections to the tablet servers, so many requests can be in flight without a thread waiting on each
+ * of them.
+ * 
+ * <p>
+ * Requests for a tablet server beyond {@link AsyncTableConfig#getMaxConnectionsPerServer()} wait for one of its connections to be free. Locating a tablet that
+ * is not in the client's cache of tablet locations reads the metadata table, which is done on a separate thread so that it does not hold up the requests that
+ * are in flight.
+ * 
+ * @since 1.7.0
+ */
+public interface AsyncTable {
+  
+  /**
+   * Reads all the key/values in a range. The key/values are gathered in memory until the end of the range is reached, so this is meant for lookups and
+   * short ranges; use a {@link Scanner} or {@link BatchScanner} to read large ranges.
+   * 
+   * @param range
+   *          the range to read, for example {@link Range#exact(org.apache.hadoop.io.Text)} to look up a row
+   * @param callback
+   *          told the key/values when the read completes, may be null
+   * @return the key/values of the range, in sorted order
+   */
+  Future<List<Entry<Key,Value>>> scan(Range range, AsyncCallback<List<Entry<Key,Value>>> callback);
+  
+  /**
+   * Writes a mutation. The mutation is sent to its tablet server right away, not batched with others as a {@link BatchWriter} does.
+   * 
+   * @param mutation
+   *          the mutation to write, it must not be changed afterwards
+   * @param callback
+   *          told when the mutation is written, may be null
+   * @return completes when the mutation is written, with a null result
+   */
+  Future<Void> write(Mutation mutation, AsyncCallback<Void> callback);
+  
+  /**
+   * Fails the requests that have not completed and releases the connections to the tablet servers.
+   */
+  void close();
+}
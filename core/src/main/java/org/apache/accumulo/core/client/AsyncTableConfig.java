@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.util.ArgumentChecker;
+
+/**
+ * 
+ * @since 1.7.0
+ */
+public class AsyncTableConfig {
+  
+  private static final Long DEFAULT_TIMEOUT = Long.MAX_VALUE;
+  private Long timeout = null;
+  
+  private static final Integer DEFAULT_BATCH_SIZE = 1000;
+  private Integer batchSize = null;
+  
+  private static final Integer DEFAULT_MAX_CONNECTIONS_PER_SERVER = 4;
+  private Integer maxConnectionsPerServer = null;
+  
+  private Authorizations auths = Authorizations.EMPTY;
+  
+  /**
+   * A set of authorization labels that will be checked against the column visibility of each key in order to filter data. The authorizations passed in must be
+   * a subset of the accumulo user's set of authorizations. If the accumulo user has authorizations (A1, A2) and authorizations (A2, A3) are passed, then an
+   * exception will be thrown.
+   * 
+   * @param auths
+   * @return {@code this} to allow chaining of set methods
+   */
+  public AsyncTableConfig setAuthorizations(Authorizations auths) {
+    ArgumentChecker.notNull(auths);
+    this.auths = auths;
+    return this;
+  }
+  
+  /**
+   * Sets the maximum amount of time a request will be retried, for example while its tablet is unassigned or its server is unresponsive. When this timeout is
+   * exceeded, the request fails with a {@link TimedOutException}.<br />
+   * For no timeout, set to zero, or {@link Long#MAX_VALUE} with {@link TimeUnit#MILLISECONDS}.
+   * 
+   * <p>
+   * {@link TimeUnit#MICROSECONDS} or {@link TimeUnit#NANOSECONDS} will be truncated to the nearest {@link TimeUnit#MILLISECONDS}.<br />
+   * If this truncation would result in making the value zero when it was specified as non-zero, then a minimum value of one {@link TimeUnit#MILLISECONDS} will
+   * be used.
+   * 
+   * <p>
+   * <b>Default:</b> {@link Long#MAX_VALUE} (no timeout)
+   * 
+   * @param timeout
+   *          the timeout, in the unit specified by the value of {@code timeUnit}
+   * @param timeUnit
+   *          determines how {@code timeout} will be interpreted
+   * @throws IllegalArgumentException
+   *           if {@code timeout} is less than 0
+   * @return {@code this} to allow chaining of set methods
+   */
+  public AsyncTableConfig setTimeout(long timeout, TimeUnit timeUnit) {
+    if (timeout < 0)
+      throw new IllegalArgumentException("Negative timeout not allowed " + timeout);
+    
+    if (timeout == 0)
+      this.timeout = Long.MAX_VALUE;
+    else
+      // make small, positive values that truncate to 0 when converted use the minimum millis instead
+      this.timeout = Math.max(1, timeUnit.toMillis(timeout));
+    return this;
+  }
+  
+  /**
+   * Sets the number of key/values a scan reads from a tablet server at a time.
+   * 
+   * <p>
+   * <b>Default:</b> 1000
+   * 
+   * @param batchSize
+   *          the number of key/values in each batch
+   * @throws IllegalArgumentException
+   *           if {@code batchSize} is non-positive
+   * @return {@code this} to allow chaining of set methods
+   */
+  public AsyncTableConfig setBatchSize(int batchSize) {
+    if (batchSize <= 0)
+      throw new IllegalArgumentException("Batch size must be positive " + batchSize);
+    
+    this.batchSize = batchSize;
+    return this;
+  }
+  
+  /**
+   * Sets the maximum number of connections open to each tablet server. Each connection carries one request at a time, the others wait for a connection.
+   * 
+   * <p>
+   * <b>Default:</b> 4
+   * 
+   * @param maxConnectionsPerServer
+   *          the maximum connections to each server
+   * @throws IllegalArgumentException
+   *           if {@code maxConnectionsPerServer} is non-positive
+   * @return {@code this} to allow chaining of set methods
+   */
+  public AsyncTableConfig setMaxConnectionsPerServer(int maxConnectionsPerServer) {
+    if (maxConnectionsPerServer <= 0)
+      throw new IllegalArgumentException("Max connections must be positive " + maxConnectionsPerServer);
+    
+    this.maxConnectionsPerServer = maxConnectionsPerServer;
+    return this;
+  }
+  
+  public Authorizations getAuthorizations() {
+    return auths;
+  }
+  
+  public long getTimeout(TimeUnit timeUnit) {
+    return timeUnit.convert(timeout != null ? timeout : DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+  }
+  
+  public int getBatchSize() {
+    return batchSize != null ? batchSize : DEFAULT_BATCH_SIZE;
+  }
+  
+  public int getMaxConnectionsPerServer() {
+    return maxConnectionsPerServer != null ? maxConnectionsPerServer : DEFAULT_MAX_CONNECTIONS_PER_SERVER;
+  }
+}
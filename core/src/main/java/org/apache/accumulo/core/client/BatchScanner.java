@@ -28,7 +28,7 @@ import org.apache.accumulo.core.data.Range;
  * returned data being in sorted order.
  * 
  * If you want to lookup a few ranges and expect those ranges to contain a lot of data, then use the Scanner instead. Also, the Scanner will return data in
- * sorted order, this will not.
+ * sorted order, this will not unless {@link #setOrdered(boolean)} is called.
  */
 
 public interface BatchScanner extends ScannerBase {
@@ -41,6 +41,35 @@ public interface BatchScanner extends ScannerBase {
    */
   void setRanges(Collection<Range> ranges);
   
+  /**
+   * Bounds the memory used to hold results that were read from tablet servers and not yet returned by the iterator. Each tablet server being read from may
+   * fill an equal share of it, and a thread reading from a server that has filled its share does not ask the server for more until results are consumed, so
+   * a slow consumer holds at most this much memory and the server's scan continues from where it was left. The memory used by a batch of results is estimated
+   * from the sizes of its keys and values.
+   * 
+   * <p>
+   * If not set, or set to zero, the scanner buffers up to one batch of results per query thread, regardless of their size.
+   * 
+   * @param maxMemory
+   *          max size in bytes
+   * @since 1.7.0
+   */
+  void setMaxMemory(long maxMemory);
+  
+  /**
+   * Makes the scanner return data sorted by key. Tablets are still read in parallel, but each tablet is read on its own and its data is returned only after
+   * the data of the tablets before it, so at most one tablet per query thread is read ahead. The memory used to read ahead is bounded by
+   * {@link #setMaxMemory(long)} when it is set, and by one batch of data per tablet otherwise.
+   * 
+   * <p>
+   * If not set, data is returned in the order it is read from the tablet servers.
+   * 
+   * @param ordered
+   *          true to return data sorted by key
+   * @since 1.7.0
+   */
+  void setOrdered(boolean ordered);
+  
   /**
    * Cleans up and finalizes the scanner
    */
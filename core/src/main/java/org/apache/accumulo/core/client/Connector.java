@@ -189,6 +189,21 @@ public abstract class Connector {
    */
   public abstract ConditionalWriter createConditionalWriter(String tableName, ConditionalWriterConfig config) throws TableNotFoundException;
 
+  /**
+   * Factory method to create an AsyncTable connected to Accumulo.
+   * 
+   * @param tableName
+   *          the name of the table to read and write
+   * @param config
+   *          configuration used to create the asynchronous table
+   * 
+   * @return AsyncTable object for reading and writing without blocking
+   * @throws TableNotFoundException
+   *           when the specified table doesn't exist
+   * @since 1.7.0
+   */
+  public abstract AsyncTable createAsyncTable(String tableName, AsyncTableConfig config) throws TableNotFoundException;
+
   /**
    * Accessor method for internal instance object.
    * 
@@ -0,0 +1,652 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.client.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.Constants;
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.AsyncCallback;
+import org.apache.accumulo.core.client.AsyncTable;
+import org.apache.accumulo.core.client.AsyncTableConfig;
+import org.apache.accumulo.core.client.Instance;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.client.TableDeletedException;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.TableOfflineException;
+import org.apache.accumulo.core.client.TimedOutException;
+import org.apache.accumulo.core.client.impl.TabletLocator.TabletLocation;
+import org.apache.accumulo.core.client.impl.thrift.ThriftSecurityException;
+import org.apache.accumulo.core.client.security.SecurityErrorCode;
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.KeyExtent;
+import org.apache.accumulo.core.data.KeyValue;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.data.thrift.InitialScan;
+import org.apache.accumulo.core.data.thrift.IterInfo;
+import org.apache.accumulo.core.data.thrift.ScanResult;
+import org.apache.accumulo.core.data.thrift.TColumn;
+import org.apache.accumulo.core.data.thrift.TKeyValue;
+import org.apache.accumulo.core.data.thrift.TMutation;
+import org.apache.accumulo.core.master.state.tables.TableState;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.Credentials;
+import org.apache.accumulo.core.tabletserver.thrift.ConstraintViolationException;
+import org.apache.accumulo.core.tabletserver.thrift.NoSuchScanIDException;
+import org.apache.accumulo.core.tabletserver.thrift.NotServingTabletException;
+import org.apache.accumulo.core.tabletserver.thrift.TabletClientService;
+import org.apache.accumulo.core.tabletserver.thrift.TabletClientService.AsyncClient.closeScan_call;
+import org.apache.accumulo.core.tabletserver.thrift.TabletClientService.AsyncClient.continueScan_call;
+import org.apache.accumulo.core.tabletserver.thrift.TabletClientService.AsyncClient.startScan_call;
+import org.apache.accumulo.core.tabletserver.thrift.TabletClientService.AsyncClient.update_call;
+import org.apache.accumulo.core.tabletserver.thrift.TooManyFilesException;
+import org.apache.accumulo.core.util.ArgumentChecker;
+import org.apache.accumulo.core.util.NamingThreadFactory;
+import org.apache.accumulo.core.util.ThriftUtil;
+import org.apache.accumulo.trace.instrument.Tracer;
+import org.apache.hadoop.io.Text;
+import org.apache.log4j.Logger;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.transport.TNonblockingSocket;
+
+import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.AbstractFuture;
+
+/**
+ * Sends each request with thrift's asynchronous tablet server client. The calls of all requests are driven by the selector thread of one
+ * {@link TAsyncClientManager}, and the replies are handled on that thread, which issues the next call of a request, for example the next batch of a scan.
+ * Locating tablets and waiting to retry can block, so they are done on a separate thread.
+ */
+class AsyncTableImpl implements AsyncTable {
+  
+  private static final Logger log = Logger.getLogger(AsyncTableImpl.class);
+  
+  private static final long RETRY_DELAY = 100;
+  
+  private final Instance instance;
+  private final Credentials credentials;
+  private final Text tableId;
+  private final TabletLocator locator;
+  private final Authorizations authorizations;
+  private final long timeout;
+  private final int batchSize;
+  private final int maxConnectionsPerServer;
+  private final int rpcTimeout;
+  
+  private final TAsyncClientManager clientManager;
+  private final ScheduledExecutorService locatorThread;
+  
+  // guarded by servers
+  private final Map<String,ServerConnections> servers = new HashMap<String,ServerConnections>();
+  private final Set<Request<?>> outstanding = Collections.synchronizedSet(new HashSet<Request<?>>());
+  private volatile boolean closed = false;
+  
+  private static class Connection {
+    final String location;
+    final TNonblockingSocket transport;
+    final TabletClientService.AsyncClient client;
+    
+    Connection(String location, TNonblockingSocket transport, TabletClientService.AsyncClient client) {
+      this.location = location;
+      this.transport = transport;
+      this.client = client;
+    }
+  }
+  
+  private static class ServerConnections {
+    final List<Connection> idle = new ArrayList<Connection>();
+    final Set<Connection> open = new HashSet<Connection>();
+    int opening = 0;
+    final LinkedList<Request<?>> waiting = new LinkedList<Request<?>>();
+  }
+  
+  AsyncTableImpl(Instance instance, Credentials credentials, String tableId, AsyncTableConfig config) {
+    this(instance, credentials, tableId, config, TabletLocator.getLocator(instance, new Text(tableId)), ServerConfigurationUtil.getConfiguration(instance));
+  }
+  
+  AsyncTableImpl(Instance instance, Credentials credentials, String tableId, AsyncTableConfig config, TabletLocator locator, AccumuloConfiguration conf) {
+    ArgumentChecker.notNull(instance, credentials, tableId, config);
+    // the non-blocking thrift transport does not do SSL
+    if (conf.getBoolean(Property.INSTANCE_RPC_SSL_ENABLED))
+      throw new UnsupportedOperationException("Asynchronous requests can not be made when SSL is enabled");
+    
+    this.instance = instance;
+    this.credentials = credentials;
+    this.tableId = new Text(tableId);
+    this.locator = locator;
+    this.authorizations = config.getAuthorizations();
+    this.timeout = config.getTimeout(TimeUnit.MILLISECONDS);
+    this.batchSize = config.getBatchSize();
+    this.maxConnectionsPerServer = config.getMaxConnectionsPerServer();
+    this.rpcTimeout = (int) conf.getTimeInMillis(Property.GENERAL_RPC_TIMEOUT);
+    
+    try {
+      this.clientManager = new TAsyncClientManager();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    this.locatorThread = Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory("async table locator"));
+  }
+  
+  @Override
+  public Future<List<Entry<Key,Value>>> scan(Range range, AsyncCallback<List<Entry<Key,Value>>> callback) {
+    ArgumentChecker.notNull(range);
+    return submit(new ScanRequest(range, callback));
+  }
+  
+  @Override
+  public Future<Void> write(Mutation mutation, AsyncCallback<Void> callback) {
+    ArgumentChecker.notNull(mutation);
+    if (mutation.size() == 0)
+      throw new IllegalArgumentException("Can not add empty mutations");
+    return submit(new WriteRequest(mutation, callback));
+  }
+  
+  private <T> Future<T> submit(Request<T> request) {
+    if (closed)
+      throw new IllegalStateException("Closed");
+    outstanding.add(request);
+    request.locateLater(0);
+    return request;
+  }
+  
+  @Override
+  public void close() {
+    closed = true;
+    locatorThread.shutdownNow();
+    clientManager.stop();
+    
+    List<Request<?>> pending;
+    synchronized (outstanding) {
+      pending = new ArrayList<Request<?>>(outstanding);
+    }
+    for (Request<?> request : pending)
+      request.fail(new AccumuloException("Closed before the request completed"));
+    
+    synchronized (servers) {
+      for (ServerConnections server : servers.values())
+        for (Connection connection : server.open)
+          connection.transport.close();
+      servers.clear();
+    }
+  }
+  
+  /**
+   * Sends a request that has been located, on an idle or new connection to its server, or queues it until one of the server's connections is free.
+   */
+  private void dispatch(Request<?> request) {
+    String location = request.location.tablet_location;
+    Connection connection = null;
+    synchronized (servers) {
+      if (closed)
+        return;
+      ServerConnections server = servers.get(location);
+      if (server == null) {
+        server = new ServerConnections();
+        servers.put(location, server);
+      }
+      if (!server.idle.isEmpty()) {
+        connection = server.idle.remove(server.idle.size() - 1);
+      } else if (server.open.size() + server.opening < maxConnectionsPerServer) {
+        server.opening++;
+      } else {
+        server.waiting.add(request);
+        return;
+      }
+    }
+    
+    if (connection == null) {
+      try {
+        HostAndPort address = HostAndPort.fromString(location);
+        TNonblockingSocket transport = new TNonblockingSocket(address.getHostText(), address.getPort(), rpcTimeout);
+        TabletClientService.AsyncClient client = new TabletClientService.AsyncClient(ThriftUtil.protocolFactory(), clientManager, transport);
+        client.setTimeout(rpcTimeout);
+        connection = new Connection(location, transport, client);
+      } catch (IOException e) {
+        opened(location, null);
+        request.failed(null, e);
+        return;
+      }
+      opened(location, connection);
+    }
+    
+    send(request, connection);
+  }
+  
+  private void opened(String location, Connection connection) {
+    synchronized (servers) {
+      ServerConnections server = servers.get(location);
+      if (server == null)
+        return;
+      server.opening--;
+      if (connection != null)
+        server.open.add(connection);
+    }
+  }
+  
+  private void send(Request<?> request, Connection connection) {
+    try {
+      request.send(connection);
+    } catch (Exception e) {
+      request.failed(connection, e);
+    }
+  }
+  
+  /**
+   * Called when a request is done with a connection that can carry another request.
+   */
+  private void release(Connection connection) {
+    Request<?> next;
+    synchronized (servers) {
+      ServerConnections server = servers.get(connection.location);
+      if (server == null || !server.open.contains(connection))
+        return;
+      next = server.waiting.poll();
+      if (next == null) {
+        server.idle.add(connection);
+        return;
+      }
+    }
+    send(next, connection);
+  }
+  
+  /**
+   * Called when a connection failed, the next request waiting for the server gets a new connection.
+   */
+  private void discard(Connection connection) {
+    connection.transport.close();
+    Request<?> next;
+    synchronized (servers) {
+      ServerConnections server = servers.get(connection.location);
+      if (server == null)
+        return;
+      server.open.remove(connection);
+      next = server.waiting.poll();
+    }
+    if (next != null)
+      dispatch(next);
+  }
+  
+  private abstract class Request<T> extends AbstractFuture<T> {
+    
+    private final AsyncCallback<T> callback;
+    private final long startTime = System.currentTimeMillis();
+    private String lastError = null;
+    TabletLocation location;
+    
+    Request(AsyncCallback<T> callback) {
+      this.callback = callback;
+    }
+    
+    /**
+     * @return the row whose tablet the next call is sent to
+     */
+    abstract Text row();
+    
+    abstract boolean skipRow();
+    
+    /**
+     * Called once the tablet is located, before the request is sent.
+     * 
+     * @return false if the request was handled some other way
+     */
+    boolean located() {
+      return true;
+    }
+    
+    /**
+     * Issues the next call for this request, which owns the connection until it releases or discards it.
+     */
+    abstract void send(Connection connection) throws TException;
+    
+    /**
+     * Forgets any session on the server, before the request is retried.
+     */
+    void reset() {}
+    
+    void locateLater(long delay) {
+      try {
+        locatorThread.schedule(new Runnable() {
+          @Override
+          public void run() {
+            locate();
+          }
+        }, delay, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // closed, which fails the request
+      }
+    }
+    
+    void locate() {
+      if (isDone() || closed) {
+        // cancelled
+        outstanding.remove(this);
+        return;
+      }
+      if (System.currentTimeMillis() - startTime > timeout) {
+        fail(new TimedOutException("Request to table " + tableId + " timed out, last error : " + lastError));
+        return;
+      }
+      
+      try {
+        location = locator.locateTablet(credentials, row(), skipRow(), false);
+        if (location == null) {
+          if (!Tables.exists(instance, tableId.toString()))
+            fail(new TableDeletedException(tableId.toString()));
+          else if (Tables.getTableState(instance, tableId.toString()) == TableState.OFFLINE)
+            fail(new TableOfflineException(instance, tableId.toString()));
+          else
+            retry("Failed to locate tablet for table : " + tableId + " row : " + row(), RETRY_DELAY);
+          return;
+        }
+      } catch (AccumuloSecurityException e) {
+        fail(e);
+        return;
+      } catch (TableNotFoundException e) {
+        fail(e);
+        return;
+      } catch (AccumuloServerException e) {
+        fail(e);
+        return;
+      } catch (AccumuloException e) {
+        retry("exception from tablet loc " + e.getMessage(), RETRY_DELAY);
+        return;
+      } catch (RuntimeException e) {
+        fail(e);
+        return;
+      }
+      
+      if (located())
+        dispatch(this);
+    }
+    
+    void retry(String error, long delay) {
+      if (!error.equals(lastError))
+        log.debug(error);
+      else if (log.isTraceEnabled())
+        log.trace(error);
+      lastError = error;
+      reset();
+      locateLater(delay);
+    }
+    
+    /**
+     * Handles an exception from a call, the connection is null if none could be made.
+     */
+    void failed(Connection connection, Exception e) {
+      if (e instanceof TApplicationException) {
+        release(connection);
+        fail(new AccumuloServerException(location.tablet_location, (TApplicationException) e));
+      } else if (e instanceof ThriftSecurityException) {
+        release(connection);
+        ThriftSecurityException tse = (ThriftSecurityException) e;
+        fail(new AccumuloSecurityException(tse.user, tse.code, tse));
+      } else if (e instanceof NotServingTabletException) {
+        release(connection);
+        locator.invalidateCache(location.tablet_extent);
+        retry("Request failed, not serving tablet " + location, RETRY_DELAY);
+      } else if (e instanceof NoSuchScanIDException) {
+        release(connection);
+        retry("Scan failed, no such scan id " + location, 0);
+      } else if (e instanceof TooManyFilesException) {
+        release(connection);
+        retry("Tablet has too many files " + location + " retrying...", RETRY_DELAY);
+      } else if (e instanceof ConstraintViolationException) {
+        release(connection);
+        fail(new MutationsRejectedException(instance, Translator.translate(((ConstraintViolationException) e).violationSummaries, Translator.TCVST),
+            new HashMap<KeyExtent,Set<SecurityErrorCode>>(), Collections.<String> emptyList(), 0, e));
+      } else if (e instanceof TException || e instanceof IOException) {
+        if (connection != null)
+          discard(connection);
+        locator.invalidateCache(location.tablet_location);
+        retry("Request failed, thrift error " + e.getClass().getName() + "  " + e.getMessage() + " " + location, RETRY_DELAY);
+      } else {
+        if (connection != null)
+          discard(connection);
+        fail(e);
+      }
+    }
+    
+    void complete(T result) {
+      outstanding.remove(this);
+      if (set(result) && callback != null) {
+        try {
+          callback.completed(result);
+        } catch (RuntimeException e) {
+          log.warn("Callback of asynchronous request failed", e);
+        }
+      }
+    }
+    
+    void fail(Throwable cause) {
+      outstanding.remove(this);
+      if (setException(cause) && callback != null) {
+        try {
+          callback.failed(cause);
+        } catch (RuntimeException e) {
+          log.warn("Callback of asynchronous request failed", e);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Passes the reply to a call back to its request, on the selector thread.
+   */
+  private abstract class Handler<C> implements AsyncMethodCallback<C> {
+    final Request<?> request;
+    final Connection connection;
+    
+    Handler(Request<?> request, Connection connection) {
+      this.request = request;
+      this.connection = connection;
+    }
+    
+    abstract void handle(C call) throws Exception;
+    
+    @Override
+    public void onComplete(C call) {
+      try {
+        handle(call);
+      } catch (Exception e) {
+        request.failed(connection, e);
+      }
+    }
+    
+    @Override
+    public void onError(Exception e) {
+      request.failed(connection, e);
+    }
+  }
+  
+  private class ScanRequest extends Request<List<Entry<Key,Value>>> {
+    
+    private Range range;
+    private Text startRow;
+    private boolean skipStartRow = false;
+    private Long scanID = null;
+    private final List<Entry<Key,Value>> results = new ArrayList<Entry<Key,Value>>();
+    
+    ScanRequest(Range range, AsyncCallback<List<Entry<Key,Value>>> callback) {
+      super(callback);
+      this.range = range;
+      this.startRow = range.getStartKey() == null ? new Text() : range.getStartKey().getRow();
+    }
+    
+    @Override
+    Text row() {
+      return startRow;
+    }
+    
+    @Override
+    boolean skipRow() {
+      return skipStartRow;
+    }
+    
+    @Override
+    boolean located() {
+      // when a tablet splits the scan continues with the low child if it is already past it
+      if (range.getStartKey() != null && location.tablet_extent.toDataRange().afterEndKey(range.getStartKey())) {
+        startRow = location.tablet_extent.getEndRow();
+        skipStartRow = true;
+        locate();
+        return false;
+      }
+      return true;
+    }
+    
+    @Override
+    void reset() {
+      scanID = null;
+    }
+    
+    @Override
+    void send(final Connection connection) throws TException {
+      if (scanID != null) {
+        connection.client.continueScan(Tracer.traceInfo(), scanID, new Handler<continueScan_call>(this, connection) {
+          @Override
+          void handle(continueScan_call call) throws Exception {
+            received(connection, call.getResult());
+          }
+        });
+        return;
+      }
+      
+      final String server = location.tablet_location;
+      final TabletType ttype = TabletType.type(location.tablet_extent);
+      final boolean waitForWrites = !ThriftScanner.serversWaitedForWrites.get(ttype).contains(server);
+      connection.client.startScan(Tracer.traceInfo(), credentials.toThrift(instance), location.tablet_extent.toThrift(), range.toThrift(),
+          Collections.<TColumn> emptyList(), batchSize, Collections.<IterInfo> emptyList(), Collections.<String,Map<String,String>> emptyMap(),
+          authorizations.getAuthorizationsBB(), waitForWrites, false, Constants.SCANNER_DEFAULT_READAHEAD_THRESHOLD, new Handler<startScan_call>(this,
+              connection) {
+            @Override
+            void handle(startScan_call call) throws Exception {
+              InitialScan is = call.getResult();
+              if (waitForWrites)
+                ThriftScanner.serversWaitedForWrites.get(ttype).add(server);
+              scanID = is.scanID;
+              received(connection, is.result);
+            }
+          });
+    }
+    
+    private void received(Connection connection, ScanResult sr) throws TException {
+      Key.decompress(sr.results);
+      for (TKeyValue tkv : sr.results)
+        results.add(new KeyValue(new Key(tkv.key), tkv.value));
+      
+      if (sr.results.size() > 0)
+        range = new Range(new Key(sr.results.get(sr.results.size() - 1).key), false, range.getEndKey(), range.isEndKeyInclusive());
+      
+      if (sr.more) {
+        if (isDone()) {
+          // cancelled, stop reading the tablet and free the scan session
+          outstanding.remove(this);
+          closeScan(connection, scanID);
+          scanID = null;
+          return;
+        }
+        send(connection);
+        return;
+      }
+      
+      closeScan(connection, scanID);
+      scanID = null;
+      
+      KeyExtent extent = location.tablet_extent;
+      if (extent.getEndRow() == null || (range.getEndKey() != null && range.afterEndKey(new Key(extent.getEndRow()).followingKey(PartialKey.ROW)))) {
+        complete(results);
+      } else {
+        startRow = extent.getEndRow();
+        skipStartRow = true;
+        locateLater(0);
+      }
+    }
+    
+    private void closeScan(final Connection connection, long scanID) throws TException {
+      connection.client.closeScan(Tracer.traceInfo(), scanID, new AsyncMethodCallback<closeScan_call>() {
+        @Override
+        public void onComplete(closeScan_call call) {
+          release(connection);
+        }
+        
+        @Override
+        public void onError(Exception e) {
+          discard(connection);
+        }
+      });
+    }
+  }
+  
+  private class WriteRequest extends Request<Void> {
+    
+    private final Text row;
+    private final TMutation mutation;
+    
+    WriteRequest(Mutation mutation, AsyncCallback<Void> callback) {
+      super(callback);
+      this.row = new Text(mutation.getRow());
+      this.mutation = mutation.toThrift();
+    }
+    
+    @Override
+    Text row() {
+      return row;
+    }
+    
+    @Override
+    boolean skipRow() {
+      return false;
+    }
+    
+    @Override
+    void send(final Connection connection) throws TException {
+      connection.client.update(Tracer.traceInfo(), credentials.toThrift(instance), location.tablet_extent.toThrift(), mutation, new Handler<update_call>(this,
+          connection) {
+        @Override
+        void handle(update_call call) throws Exception {
+          call.getResult();
+          release(connection);
+          complete(null);
+        }
+      });
+    }
+  }
+}
@@ -20,6 +20,8 @@ import java.util.concurrent.TimeUnit;
 
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.AsyncTable;
+import org.apache.accumulo.core.client.AsyncTableConfig;
 import org.apache.accumulo.core.client.BatchDeleter;
 import org.apache.accumulo.core.client.BatchScanner;
 import org.apache.accumulo.core.client.BatchWriter;
@@ -145,6 +147,12 @@ public class ConnectorImpl extends Connector {
     return new ConditionalWriterImpl(instance, credentials, getTableId(tableName), config);
   }
 
+  @Override
+  public AsyncTable createAsyncTable(String tableName, AsyncTableConfig config) throws TableNotFoundException {
+    ArgumentChecker.notNull(tableName, config);
+    return new AsyncTableImpl(instance, credentials, getTableId(tableName), config);
+  }
+
   @Override
   public Scanner createScanner(String tableName, Authorizations authorizations) throws TableNotFoundException {
     ArgumentChecker.notNull(tableName, authorizations);
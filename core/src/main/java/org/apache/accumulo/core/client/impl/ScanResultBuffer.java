@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.client.impl;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+
+/**
+ * Hands batches of results from the threads that read them from tablet servers to the thread that consumes them. The buffer is bounded either by a number of
+ * queued batches or by the bytes of the batches that were read and not yet consumed.
+ * <p>
+ * When bounded by bytes, each tablet server that is being read from may only fill its share of the buffer, so a fast server can not keep a slow one from
+ * adding its results. A batch must fit in the whole buffer, unless the buffer is empty, and in its server's share, unless nothing from its server is
+ * buffered. So a batch larger than a share is accepted once its server has nothing buffered and the buffer has room for it, and a batch larger than the
+ * whole buffer once the buffer is empty, so neither stalls a scan. A batch's bytes are released when the consumer asks for the next batch, and a thread
+ * adding a batch waits until there is room, so it does not ask its server for more.
+ */
+class ScanResultBuffer {
+
+  private static class Batch {
+    final String server;
+    final List<Entry<Key,Value>> entries;
+    final long bytes;
+
+    Batch(String server, List<Entry<Key,Value>> entries, long bytes) {
+      this.server = server;
+      this.entries = entries;
+      this.bytes = bytes;
+    }
+  }
+
+  private final int maxBatches;
+  private final long maxBytes;
+
+  private final LinkedList<Batch> queue = new LinkedList<Batch>();
+  private Batch current = null;
+  private long bytesUsed = 0;
+
+  private final Map<String,Long> serverBytes = new HashMap<String,Long>();
+  private final Map<String,Integer> serverReaders = new HashMap<String,Integer>();
+
+  /**
+   * Creates a buffer that holds at most the given number of batches that were not yet consumed.
+   */
+  static ScanResultBuffer boundedByBatches(int maxBatches) {
+    if (maxBatches <= 0)
+      throw new IllegalArgumentException("maxBatches must be positive : " + maxBatches);
+    return new ScanResultBuffer(maxBatches, 0);
+  }
+
+  /**
+   * Creates a buffer that holds at most the given number of bytes that were not yet consumed, including the batch being consumed.
+   */
+  static ScanResultBuffer boundedByBytes(long maxBytes) {
+    if (maxBytes <= 0)
+      throw new IllegalArgumentException("maxBytes must be positive : " + maxBytes);
+    return new ScanResultBuffer(Integer.MAX_VALUE, maxBytes);
+  }
+
+  private ScanResultBuffer(int maxBatches, long maxBytes) {
+    this.maxBatches = maxBatches;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Registers a thread that is about to read from a server. The buffer is shared between the servers that have a registered reader.
+   */
+  synchronized void startReading(String server) {
+    Integer readers = serverReaders.get(server);
+    serverReaders.put(server, readers == null ? 1 : readers + 1);
+  }
+
+  /**
+   * Unregisters a thread that finished reading from a server, which gives its share of the buffer to the other servers.
+   */
+  synchronized void stopReading(String server) {
+    Integer readers = serverReaders.get(server);
+    if (readers == null)
+      throw new IllegalStateException("No reader was started for " + server);
+    if (readers == 1)
+      serverReaders.remove(server);
+    else
+      serverReaders.put(server, readers - 1);
+    notifyAll();
+  }
+
+  /**
+   * Estimates the memory a batch of results uses.
+   */
+  static long estimateBytes(List<Entry<Key,Value>> entries) {
+    long bytes = 0;
+    for (Entry<Key,Value> entry : entries)
+      bytes += entry.getKey().getSize() + entry.getValue().getSize();
+    return bytes;
+  }
+
+  private long serverBytes(String server) {
+    Long bytes = serverBytes.get(server);
+    return bytes == null ? 0 : bytes;
+  }
+
+  private boolean hasRoom(String server, long bytes) {
+    if (queue.size() >= maxBatches)
+      return false;
+    if (maxBytes == 0)
+      return true;
+    if (bytesUsed > 0 && bytesUsed + bytes > maxBytes)
+      return false;
+    long used = serverBytes(server);
+    long share = maxBytes / Math.max(1, serverReaders.size());
+    return used == 0 || used + bytes <= share;
+  }
+
+  /**
+   * Adds a batch read from a server, waiting until the buffer has room for it.
+   */
+  synchronized void put(String server, List<Entry<Key,Value>> entries) throws InterruptedException {
+    long bytes = maxBytes == 0 ? 0 : estimateBytes(entries);
+    while (!hasRoom(server, bytes))
+      wait();
+    queue.add(new Batch(server, entries, bytes));
+    bytesUsed += bytes;
+    serverBytes.put(server, serverBytes(server) + bytes);
+    notifyAll();
+  }
+
+  /**
+   * Adds a batch that marks the end of the results. It is added without waiting, so it can be added after a failure even when the buffer is full.
+   */
+  synchronized void putLast(List<Entry<Key,Value>> entries) {
+    queue.add(new Batch(null, entries, 0));
+    notifyAll();
+  }
+
+  /**
+   * Releases the batch returned by the previous call, then takes the next batch, waiting up to the given time for one to be added.
+   *
+   * @return the next batch, or null if none was added in time
+   */
+  synchronized List<Entry<Key,Value>> poll(long timeout, TimeUnit unit) throws InterruptedException {
+    release();
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (queue.isEmpty()) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0)
+        return null;
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    current = queue.removeFirst();
+    notifyAll();
+    return current.entries;
+  }
+
+  private void release() {
+    if (current != null) {
+      if (current.server != null) {
+        bytesUsed -= current.bytes;
+        long used = serverBytes(current.server) - current.bytes;
+        if (used == 0)
+          serverBytes.remove(current.server);
+        else
+          serverBytes.put(current.server, used);
+      }
+      current = null;
+      notifyAll();
+    }
+  }
+
+  /**
+   * @return the bytes of the batches that were added and not yet released
+   */
+  synchronized long getBytesUsed() {
+    return bytesUsed;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.client.impl;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.client.Instance;
+import org.apache.accumulo.core.util.NamingThreadFactory;
+import org.apache.accumulo.fate.zookeeper.ZooReader;
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Watches the tablet location events the master publishes for a table and applies them to the table's locator. The events are read by one background thread
+ * shared by all the tables, so a client never waits on them.
+ */
+class TabletLocationEventListener implements Watcher, Runnable {
+
+  private static final Logger log = Logger.getLogger(TabletLocationEventListener.class);
+
+  private static final long RETRY_DELAY_MS = 1000;
+
+  private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory("tablet location events"));
+
+  private final ZooReader zooReader;
+  private final String path;
+  private final TabletLocatorImpl locator;
+
+  TabletLocationEventListener(Instance instance, String tableId, TabletLocatorImpl locator) {
+    this.zooReader = new ZooReader(instance.getZooKeepers(), instance.getZooKeepersSessionTimeOut());
+    this.path = TabletLocationEvents.getPath(instance.getInstanceID(), tableId);
+    this.locator = locator;
+  }
+
+  void start() {
+    executor.execute(this);
+  }
+
+  @Override
+  public void process(WatchedEvent event) {
+    // connection state changes keep the watch, except for an expired session
+    if (event.getType() == Event.EventType.None && event.getState() != Event.KeeperState.Expired)
+      return;
+    executor.execute(this);
+  }
+
+  @Override
+  public void run() {
+    try {
+      // set the watch before reading, so a change made after the read is not missed
+      Stat stat = zooReader.getStatus(path, this);
+      if (stat == null)
+        return;
+      locator.applyLocationEvents(TabletLocationEvents.decode(zooReader.getData(path, new Stat())));
+    } catch (Exception e) {
+      log.warn("Failed to read tablet location events from " + path + ", will retry : " + e.getMessage());
+      executor.schedule(this, RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+}
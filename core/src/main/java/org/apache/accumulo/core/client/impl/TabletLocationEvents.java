@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.client.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.accumulo.core.Constants;
+import org.apache.accumulo.core.data.KeyExtent;
+import org.apache.accumulo.core.zookeeper.ZooUtil;
+
+/**
+ * The tablet location changes of a table that the master published in ZooKeeper at once. Each publication has the next sequence number, so a client that
+ * missed one knows it has to drop its cached locations. When the changes would encode to more than {@link #MAX_ENCODED_SIZE} bytes, only the sequence number is
+ * published.
+ */
+public class TabletLocationEvents {
+
+  /**
+   * The most bytes published at once, which keeps the data well under the 1MB ZooKeeper allows for a node by default.
+   */
+  public static final int MAX_ENCODED_SIZE = 512 * 1024;
+
+  public static enum Type {
+    LOADED, UNLOADED
+  }
+
+  public static class Event {
+    public final Type type;
+    public final KeyExtent extent;
+    // the location and session of the server that loaded the tablet, null when it was unloaded
+    public final String location;
+    public final String session;
+
+    private Event(Type type, KeyExtent extent, String location, String session) {
+      this.type = type;
+      this.extent = extent;
+      this.location = location;
+      this.session = session;
+    }
+
+    public static Event loaded(KeyExtent extent, String location, String session) {
+      return new Event(Type.LOADED, extent, location, session);
+    }
+
+    public static Event unloaded(KeyExtent extent) {
+      return new Event(Type.UNLOADED, extent, null, null);
+    }
+
+    @Override
+    public String toString() {
+      return type + " " + extent + (location == null ? "" : " " + location + " " + session);
+    }
+  }
+
+  private final long seq;
+  private final List<Event> events;
+
+  public TabletLocationEvents(long seq, List<Event> events) {
+    this.seq = seq;
+    this.events = events;
+  }
+
+  public long getSequence() {
+    return seq;
+  }
+
+  /**
+   * @return the changes, or null when there were too many to publish
+   */
+  public List<Event> getEvents() {
+    return events;
+  }
+
+  public static String getPath(String instanceId, String tableId) {
+    return ZooUtil.getRoot(instanceId) + Constants.ZTABLES + "/" + tableId + Constants.ZTABLE_LOCATION_EVENTS;
+  }
+
+  /**
+   * @return the changes, or only the sequence number when the changes would encode to more than {@link #MAX_ENCODED_SIZE} bytes
+   */
+  public byte[] encode() {
+    if (events != null) {
+      byte[] data = encode(seq, events);
+      if (data.length <= MAX_ENCODED_SIZE)
+        return data;
+    }
+    return encode(seq, null);
+  }
+
+  private static byte[] encode(long seq, List<Event> events) {
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(baos);
+      out.writeLong(seq);
+      if (events == null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(events.size());
+        for (Event event : events)
+          write(out, event);
+      }
+      out.close();
+      return baos.toByteArray();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void write(DataOutputStream out, Event event) throws IOException {
+    out.writeByte(event.type.ordinal());
+    event.extent.write(out);
+    if (event.type == Type.LOADED) {
+      out.writeUTF(event.location);
+      out.writeUTF(event.session);
+    }
+  }
+
+  /**
+   * @return the bytes an event adds to the encoded changes
+   */
+  public static int encodedSize(Event event) {
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(baos);
+      write(out, event);
+      out.close();
+      return baos.size();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static TabletLocationEvents decode(byte[] data) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    long seq = in.readLong();
+    int count = in.readInt();
+    if (count < 0)
+      return new TabletLocationEvents(seq, null);
+    List<Event> events = new ArrayList<Event>(count);
+    for (int i = 0; i < count; i++) {
+      Type type = Type.values()[in.readByte()];
+      KeyExtent extent = new KeyExtent();
+      extent.readFields(in);
+      if (type == Type.LOADED)
+        events.add(Event.loaded(extent, in.readUTF(), in.readUTF()));
+      else
+        events.add(Event.unloaded(extent));
+    }
+    return new TabletLocationEvents(seq, Collections.unmodifiableList(events));
+  }
+}
@@ -28,6 +28,7 @@ import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
 import org.apache.accumulo.core.client.Instance;
 import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.conf.Property;
 import org.apache.accumulo.core.data.KeyExtent;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Range;
@@ -104,7 +105,10 @@ public abstract class TabletLocator {
       } else if (tableId.toString().equals(MetadataTable.ID)) {
         tl = new TabletLocatorImpl(new Text(MetadataTable.ID), getLocator(instance, new Text(RootTable.ID)), mlo, new ZookeeperLockChecker(instance));
       } else {
-        tl = new TabletLocatorImpl(tableId, getLocator(instance, new Text(MetadataTable.ID)), mlo, new ZookeeperLockChecker(instance));
+        TabletLocatorImpl tli = new TabletLocatorImpl(tableId, getLocator(instance, new Text(MetadataTable.ID)), mlo, new ZookeeperLockChecker(instance));
+        if (ServerConfigurationUtil.getConfiguration(instance).getBoolean(Property.GENERAL_TABLET_LOCATION_EVENTS))
+          new TabletLocationEventListener(instance, tableId.toString(), tli).start();
+        tl = tli;
       }
       locators.put(key, tl);
     }
@@ -27,14 +27,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.TreeSet;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
 import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.impl.TabletLocationEvents.Event;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.KeyExtent;
 import org.apache.accumulo.core.data.Mutation;
@@ -85,15 +86,23 @@ public class TabletLocatorImpl extends TabletLocator {
   
   protected Text tableId;
   protected TabletLocator parent;
-  protected TreeMap<Text,TabletLocation> metaCache = new TreeMap<Text,TabletLocation>(endRowComparator);
+  // the cache is read without locking, only updates to it are serialized
+  protected final ConcurrentSkipListMap<Text,TabletLocation> metaCache = new ConcurrentSkipListMap<Text,TabletLocation>(endRowComparator);
   protected TabletLocationObtainer locationObtainer;
   private TabletServerLockChecker lockChecker;
   protected Text lastTabletRow;
   
-  private TreeSet<KeyExtent> badExtents = new TreeSet<KeyExtent>();
-  private ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
-  private final Lock rLock = rwLock.readLock();
-  private final Lock wLock = rwLock.writeLock();
+  private final ConcurrentSkipListSet<KeyExtent> badExtents = new ConcurrentSkipListSet<KeyExtent>();
+  // held while reading the metadata table and updating the cache, so that many threads that miss the cache at once read the metadata table once
+  private final ReentrantLock wLock = new ReentrantLock();
+
+  // the sequence number of the last tablet location events read, -1 until the first are read
+  private long lastEventSeq = -1;
+
+  private final AtomicLong cacheHits = new AtomicLong(0);
+  private final AtomicLong cacheMisses = new AtomicLong(0);
+  private final AtomicLong metadataLookups = new AtomicLong(0);
+  private final AtomicLong locationUpdates = new AtomicLong(0);
 
   
   public static interface TabletLocationObtainer {
@@ -166,31 +175,23 @@ public class TabletLocatorImpl extends TabletLocator {
     if (log.isTraceEnabled())
       opTimer = new OpTimer(log, Level.TRACE).start("Binning " + mutations.size() + " mutations for table " + tableId);
     
-    ArrayList<T> notInCache = new ArrayList<T>();
     Text row = new Text();
     
     LockCheckerSession lcSession = new LockCheckerSession();
 
-    rLock.lock();
-    try {
-      processInvalidated(credentials, lcSession);
-      
-      // for this to be efficient rows need to be in sorted order, but always sorting is slow... therefore only sort the
-      // stuff not in the cache.... it is most efficient to pass _locateTablet rows in sorted order
-      
-      // For this to be efficient, need to avoid fine grained synchronization and fine grained logging.
-      // Therefore methods called by this are not synchronized and should not log.
-      
-      for (T mutation : mutations) {
-        row.set(mutation.getRow());
-        TabletLocation tl = locateTabletInCache(row);
-        if (tl == null || !addMutation(binnedMutations, mutation, tl, lcSession))
-          notInCache.add(mutation);
-      }
-    } finally {
-      rLock.unlock();
-    }
+    // for this to be efficient rows need to be in sorted order, but always sorting is slow... therefore only sort the
+    // stuff not in the cache.... it is most efficient to pass _locateTablet rows in sorted order
+
+    // For this to be efficient, need to avoid fine grained synchronization and fine grained logging.
+    // Therefore methods called by this are not synchronized and should not log. The cache is read without a lock, so
+    // threads binning from the cache do not wait on one that is reading the metadata table. Invalidated tablets are
+    // removed from the cache right away, so only the threads binning their rows miss and wait to read their locations.
+
+    List<T> notInCache = binMutationsFromCache(mutations, binnedMutations, lcSession);
     
+    cacheHits.addAndGet(mutations.size() - notInCache.size());
+    cacheMisses.addAndGet(notInCache.size());
+
     if (notInCache.size() > 0) {
       Collections.sort(notInCache, new Comparator<Mutation>() {
         @Override
@@ -201,6 +202,10 @@ public class TabletLocatorImpl extends TabletLocator {
       
       wLock.lock();
       try {
+        // the locations read for invalidated tablets are often the ones that were missed
+        if (processInvalidated(credentials, lcSession))
+          notInCache = binMutationsFromCache(notInCache, binnedMutations, lcSession);
+
         boolean failed = false;
         for (T mutation : notInCache) {
           if (failed) {
@@ -228,6 +233,19 @@ public class TabletLocatorImpl extends TabletLocator {
       opTimer.stop("Binned " + mutations.size() + " mutations for table " + tableId + " to " + binnedMutations.size() + " tservers in %DURATION%");
   }
 
+  private <T extends Mutation> List<T> binMutationsFromCache(List<T> mutations, Map<String,TabletServerMutations<T>> binnedMutations,
+      LockCheckerSession lcSession) {
+    ArrayList<T> notInCache = new ArrayList<T>();
+    Text row = new Text();
+    for (T mutation : mutations) {
+      row.set(mutation.getRow());
+      TabletLocation tl = locateTabletInCache(row);
+      if (tl == null || !addMutation(binnedMutations, mutation, tl, lcSession))
+        notInCache.add(mutation);
+    }
+    return notInCache;
+  }
+
   private <T extends Mutation> boolean addMutation(Map<String,TabletServerMutations<T>> binnedMutations, T mutation, TabletLocation tl,
       LockCheckerSession lcSession) {
     TabletServerMutations<T> tsm = binnedMutations.get(tl.tablet_location);
@@ -328,20 +346,15 @@ public class TabletLocatorImpl extends TabletLocator {
     
     LockCheckerSession lcSession = new LockCheckerSession();
 
-    List<Range> failures;
-    rLock.lock();
-    try {
-      processInvalidated(credentials, lcSession);
-      
-      // for this to be optimal, need to look ranges up in sorted order when
-      // ranges are not present in cache... however do not want to always
-      // sort ranges... therefore try binning ranges using only the cache
-      // and sort whatever fails and retry
-      
-      failures = binRanges(credentials, ranges, binnedRanges, true, lcSession);
-    } finally {
-      rLock.unlock();
-    }
+    // for this to be optimal, need to look ranges up in sorted order when
+    // ranges are not present in cache... however do not want to always
+    // sort ranges... therefore try binning ranges using only the cache
+    // and sort whatever fails and retry
+
+    List<Range> failures = binRanges(credentials, ranges, binnedRanges, true, lcSession);
+
+    cacheHits.addAndGet(ranges.size() - failures.size());
+    cacheMisses.addAndGet(failures.size());
     
     if (failures.size() > 0) {
       // sort failures by range start key
@@ -350,6 +363,9 @@ public class TabletLocatorImpl extends TabletLocator {
       // try lookups again
       wLock.lock();
       try {
+        // the locations read for invalidated tablets are often the ones that were missed
+        if (processInvalidated(credentials, lcSession))
+          failures = binRanges(credentials, failures, binnedRanges, true, lcSession);
         failures = binRanges(credentials, failures, binnedRanges, false, lcSession);
       } finally {
         wLock.unlock();
@@ -364,24 +380,18 @@ public class TabletLocatorImpl extends TabletLocator {
   
   @Override
   public void invalidateCache(KeyExtent failedExtent) {
-    wLock.lock();
-    try {
-      badExtents.add(failedExtent);
-    } finally {
-      wLock.unlock();
-    }
+    // the location is read again by the next thread to miss the cache, together with any other invalidated tablets
+    badExtents.add(failedExtent);
+    removeOverlapping(metaCache, failedExtent);
     if (log.isTraceEnabled())
       log.trace("Invalidated extent=" + failedExtent);
   }
   
   @Override
   public void invalidateCache(Collection<KeyExtent> keySet) {
-    wLock.lock();
-    try {
-      badExtents.addAll(keySet);
-    } finally {
-      wLock.unlock();
-    }
+    badExtents.addAll(keySet);
+    for (KeyExtent failedExtent : keySet)
+      removeOverlapping(metaCache, failedExtent);
     if (log.isTraceEnabled())
       log.trace("Invalidated " + keySet.size() + " cache entries for table " + tableId);
   }
@@ -389,17 +399,14 @@ public class TabletLocatorImpl extends TabletLocator {
   @Override
   public void invalidateCache(String server) {
     int invalidatedCount = 0;
-    
-    wLock.lock();
-    try {
-      for (TabletLocation cacheEntry : metaCache.values())
-        if (cacheEntry.tablet_location.equals(server)) {
-          badExtents.add(cacheEntry.tablet_extent);
-          invalidatedCount++;
-        }
-    } finally {
-      wLock.unlock();
-    }
+
+    for (Entry<Text,TabletLocation> cacheEntry : metaCache.entrySet())
+      if (cacheEntry.getValue().tablet_location.equals(server)) {
+        badExtents.add(cacheEntry.getValue().tablet_extent);
+        // leaves a location read since the entry was listed
+        metaCache.remove(cacheEntry.getKey(), cacheEntry.getValue());
+        invalidatedCount++;
+      }
     
     lockChecker.invalidateCache(server);
 
@@ -410,14 +417,8 @@ public class TabletLocatorImpl extends TabletLocator {
   
   @Override
   public void invalidateCache() {
-    int invalidatedCount;
-    wLock.lock();
-    try {
-      invalidatedCount = metaCache.size();
-      metaCache.clear();
-    } finally {
-      wLock.unlock();
-    }
+    int invalidatedCount = metaCache.size();
+    metaCache.clear();
     if (log.isTraceEnabled())
       log.trace("invalidated all " + invalidatedCount + " cache entries for table=" + tableId);
   }
@@ -459,6 +460,7 @@ public class TabletLocatorImpl extends TabletLocator {
     TabletLocation ptl = parent.locateTablet(credentials, metadataRow, false, retry);
     
     if (ptl != null) {
+      metadataLookups.incrementAndGet();
       TabletLocations locations = locationObtainer.lookupTablet(credentials, ptl, metadataRow, lastTabletRow, parent);
       while (locations != null && locations.getLocations().isEmpty() && locations.getLocationless().isEmpty()) {
         // try the next tablet, the current tablet does not have any tablets that overlap the row
@@ -466,9 +468,10 @@ public class TabletLocatorImpl extends TabletLocator {
         if (er != null && er.compareTo(lastTabletRow) < 0) {
           // System.out.println("er "+er+"  ltr "+lastTabletRow);
           ptl = parent.locateTablet(credentials, er, true, retry);
-          if (ptl != null)
+          if (ptl != null) {
+            metadataLookups.incrementAndGet();
             locations = locationObtainer.lookupTablet(credentials, ptl, metadataRow, lastTabletRow, parent);
-          else
+          } else
             break;
         } else {
           break;
@@ -532,12 +535,9 @@ public class TabletLocatorImpl extends TabletLocator {
     if (er == null)
       er = MAX_TEXT;
     metaCache.put(er, tabletLocation);
-    
-    if (badExtents.size() > 0)
-      removeOverlapping(badExtents, tabletLocation.tablet_extent);
   }
   
-  static void removeOverlapping(TreeMap<Text,TabletLocation> metaCache, KeyExtent nke) {
+  static void removeOverlapping(SortedMap<Text,TabletLocation> metaCache, KeyExtent nke) {
     Iterator<Entry<Text,TabletLocation>> iter = null;
     
     if (nke.getPrevEndRow() == null) {
@@ -571,12 +571,6 @@ public class TabletLocatorImpl extends TabletLocator {
     return row;
   }
   
-  static void removeOverlapping(TreeSet<KeyExtent> extents, KeyExtent nke) {
-    for (KeyExtent overlapping : KeyExtent.findOverlapping(nke, extents)) {
-      extents.remove(overlapping);
-    }
-  }
-
   private TabletLocation locateTabletInCache(Text row) {
     
     Entry<Text,TabletLocation> entry = metaCache.ceilingEntry(row);
@@ -599,82 +593,170 @@ public class TabletLocatorImpl extends TabletLocator {
       row.append(new byte[] {0}, 0, 1);
     }
     
-    TabletLocation tl;
-    
-    if (lock)
-      rLock.lock();
-    try {
-      processInvalidated(credentials, lcSession);
-      tl = lcSession.checkLock(locateTabletInCache(row));
-    } finally {
-      if (lock)
-        rLock.unlock();
-    }
+    TabletLocation tl = lcSession.checkLock(locateTabletInCache(row));
     
+    boolean cacheMissed = tl == null;
     if (tl == null) {
       if (lock)
         wLock.lock();
       try {
-        // not in cache, so obtain info
-        lookupTabletLocation(credentials, row, retry, lcSession);
-        
-        tl = lcSession.checkLock(locateTabletInCache(row));
+        processInvalidated(credentials, lcSession);
+
+        // another thread may have read the location while this one waited for the lock
+        if (lock)
+          tl = lcSession.checkLock(locateTabletInCache(row));
+
+        if (tl == null) {
+          // not in cache, so obtain info
+          lookupTabletLocation(credentials, row, retry, lcSession);
+
+          tl = lcSession.checkLock(locateTabletInCache(row));
+        }
       } finally {
         if (lock)
           wLock.unlock();
       }
     }
-    
+
+    // binning counts its own lookups, only count the ones made through locateTablet
+    if (lock)
+      (cacheMissed ? cacheMisses : cacheHits).incrementAndGet();
+
     return tl;
   }
   
-  private void processInvalidated(Credentials credentials, LockCheckerSession lcSession) throws AccumuloSecurityException, AccumuloException,
+  /**
+   * Reads the locations of the invalidated tablets, and of their neighbors, in one pass over the metadata table. Called with the lock held, by a thread that
+   * missed the cache.
+   * 
+   * @return true if any locations were read
+   */
+  private boolean processInvalidated(Credentials credentials, LockCheckerSession lcSession) throws AccumuloSecurityException, AccumuloException,
       TableNotFoundException {
-    
-    if (badExtents.size() == 0)
-      return;
-    
-    boolean writeLockHeld = rwLock.isWriteLockedByCurrentThread();
-    try {
-      if (!writeLockHeld) {
-        rLock.unlock();
-        wLock.lock();
-        if (badExtents.size() == 0)
-          return;
+
+    if (badExtents.isEmpty())
+      return false;
+
+    List<Range> lookups = new ArrayList<Range>();
+
+    // extents invalidated from here on are left for the next pass, their lookup may already be too old for them
+    for (KeyExtent be : new ArrayList<KeyExtent>(badExtents)) {
+      badExtents.remove(be);
+      lookups.add(be.toMetadataRange());
+      // the tablets next to one that moved or split were often moved or split with it, so read theirs too while the same metadata tablets are read
+      addNeighborLookups(be, lookups);
+      removeOverlapping(metaCache, be);
+    }
+
+    lookups = Range.mergeOverlapping(lookups);
+
+    Map<String,Map<KeyExtent,List<Range>>> binnedRanges = new HashMap<String,Map<KeyExtent,List<Range>>>();
+
+    parent.binRanges(credentials, lookups, binnedRanges);
+
+    // randomize server order
+    ArrayList<String> tabletServers = new ArrayList<String>(binnedRanges.keySet());
+    Collections.shuffle(tabletServers);
+
+    for (String tserver : tabletServers) {
+      metadataLookups.incrementAndGet();
+      List<TabletLocation> locations = locationObtainer.lookupTablets(credentials, tserver, binnedRanges.get(tserver), parent);
+
+      for (TabletLocation tabletLocation : locations) {
+        updateCache(tabletLocation, lcSession);
       }
-      
-      List<Range> lookups = new ArrayList<Range>(badExtents.size());
-      
-      for (KeyExtent be : badExtents) {
-        lookups.add(be.toMetadataRange());
-        removeOverlapping(metaCache, be);
+    }
+    return true;
+  }
+
+  private void addNeighborLookups(KeyExtent extent, List<Range> lookups) {
+    if (extent.getPrevEndRow() != null) {
+      TabletLocation before = metaCache.get(extent.getPrevEndRow());
+      if (before != null)
+        lookups.add(before.tablet_extent.toMetadataRange());
+    }
+    if (extent.getEndRow() != null) {
+      Entry<Text,TabletLocation> after = metaCache.higherEntry(extent.getEndRow());
+      if (after != null && extent.getEndRow().equals(after.getValue().tablet_extent.getPrevEndRow()))
+        lookups.add(after.getValue().tablet_extent.toMetadataRange());
+    }
+  }
+
+  /**
+   * Updates the cache with tablet location events read from ZooKeeper. The first events read only set the sequence number, because the cache may already hold
+   * newer locations read from the metadata table. If events were missed, the whole cache is dropped.
+   */
+  void applyLocationEvents(TabletLocationEvents events) {
+    wLock.lock();
+    try {
+      if (events.getSequence() <= lastEventSeq)
+        return;
+
+      if (lastEventSeq == -1) {
+        lastEventSeq = events.getSequence();
+        return;
       }
-      
-      lookups = Range.mergeOverlapping(lookups);
-      
-      Map<String,Map<KeyExtent,List<Range>>> binnedRanges = new HashMap<String,Map<KeyExtent,List<Range>>>();
-      
-      parent.binRanges(credentials, lookups, binnedRanges);
-      
-      // randomize server order
-      ArrayList<String> tabletServers = new ArrayList<String>(binnedRanges.keySet());
-      Collections.shuffle(tabletServers);
-      
-      for (String tserver : tabletServers) {
-        List<TabletLocation> locations = locationObtainer.lookupTablets(credentials, tserver, binnedRanges.get(tserver), parent);
-        
-        for (TabletLocation tabletLocation : locations) {
-          updateCache(tabletLocation, lcSession);
+
+      if (events.getEvents() == null || events.getSequence() != lastEventSeq + 1) {
+        if (log.isDebugEnabled())
+          log.debug("Missed tablet location events for table " + tableId + " between " + lastEventSeq + " and " + events.getSequence() + ", clearing cache");
+        metaCache.clear();
+      } else {
+        LockCheckerSession lcSession = new LockCheckerSession();
+        for (Event event : events.getEvents()) {
+          if (!event.extent.getTableId().equals(tableId))
+            continue;
+          if (event.type == TabletLocationEvents.Type.LOADED)
+            updateCache(new TabletLocation(event.extent, event.location, event.session), lcSession);
+          else
+            removeOverlapping(metaCache, event.extent);
         }
+        locationUpdates.addAndGet(events.getEvents().size());
       }
+
+      lastEventSeq = events.getSequence();
     } finally {
-      if (!writeLockHeld) {
-        rLock.lock();
-        wLock.unlock();
-      }
+      wLock.unlock();
     }
   }
-  
+
+  /**
+   * @return the number of mutations, ranges and rows whose tablet was found in the cache
+   */
+  public long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  /**
+   * @return the number of mutations, ranges and rows whose tablet was not found in the cache
+   */
+  public long getCacheMisses() {
+    return cacheMisses.get();
+  }
+
+  /**
+   * @return the fraction of lookups that were found in the cache, or 0 if there were none
+   */
+  public double getCacheHitRatio() {
+    long hits = cacheHits.get();
+    long total = hits + cacheMisses.get();
+    return total == 0 ? 0.0 : hits / (double) total;
+  }
+
+  /**
+   * @return the number of times tablet locations were read from the metadata table
+   */
+  public long getMetadataLookups() {
+    return metadataLookups.get();
+  }
+
+  /**
+   * @return the number of tablet location events applied to the cache
+   */
+  public long getLocationUpdates() {
+    return locationUpdates.get();
+  }
+
   protected static void addRange(Map<String,Map<KeyExtent,List<Range>>> binnedRanges, String location, KeyExtent ke, Range range) {
     Map<KeyExtent,List<Range>> tablets = binnedRanges.get(location);
     if (tablets == null) {
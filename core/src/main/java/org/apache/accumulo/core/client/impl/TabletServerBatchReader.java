@@ -46,6 +46,8 @@ public class TabletServerBatchReader extends ScannerOptions implements BatchScan
   private Credentials credentials;
   private Authorizations authorizations = Authorizations.EMPTY;
   private Throwable ex = null;
+  private long maxMemory = 0;
+  private boolean ordered = false;
   
   private static int nextBatchReaderInstance = 1;
   
@@ -99,6 +101,18 @@ public class TabletServerBatchReader extends ScannerOptions implements BatchScan
     
   }
   
+  @Override
+  public void setMaxMemory(long maxMemory) {
+    if (maxMemory < 0)
+      throw new IllegalArgumentException("Negative max memory not allowed " + maxMemory);
+    this.maxMemory = maxMemory;
+  }
+  
+  @Override
+  public void setOrdered(boolean ordered) {
+    this.ordered = ordered;
+  }
+  
   @Override
   public Iterator<Entry<Key,Value>> iterator() {
     if (ranges == null) {
@@ -109,6 +123,10 @@ public class TabletServerBatchReader extends ScannerOptions implements BatchScan
       throw new IllegalStateException("batch reader closed");
     }
     
-    return new TabletServerBatchReaderIterator(instance, credentials, table, authorizations, ranges, numThreads, queryThreadPool, this, timeOut);
+    if (ordered)
+      return new TabletServerOrderedBatchReaderIterator(instance, credentials, table, authorizations, ranges, numThreads, queryThreadPool, this, timeOut,
+          maxMemory);
+    
+    return new TabletServerBatchReaderIterator(instance, credentials, table, authorizations, ranges, numThreads, queryThreadPool, this, timeOut, maxMemory);
   }
 }
@@ -29,7 +29,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -85,7 +84,7 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
   private final ExecutorService queryThreadPool;
   private final ScannerOptions options;
   
-  private ArrayBlockingQueue<List<Entry<Key,Value>>> resultsQueue;
+  private final ScanResultBuffer resultsBuffer;
   private Iterator<Entry<Key,Value>> batchIterator;
   private List<Entry<Key,Value>> batch;
   private static final List<Entry<Key,Value>> LAST_BATCH = new ArrayList<Map.Entry<Key,Value>>();
@@ -134,6 +133,15 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
   
   public TabletServerBatchReaderIterator(Instance instance, Credentials credentials, String table, Authorizations authorizations, ArrayList<Range> ranges,
       int numThreads, ExecutorService queryThreadPool, ScannerOptions scannerOptions, long timeout) {
+    this(instance, credentials, table, authorizations, ranges, numThreads, queryThreadPool, scannerOptions, timeout, 0);
+  }
+  
+  /**
+   * @param maxMemory
+   *          the bytes of results read from tablet servers that may be buffered before they are consumed, or 0 to buffer up to numThreads batches of results
+   */
+  public TabletServerBatchReaderIterator(Instance instance, Credentials credentials, String table, Authorizations authorizations, ArrayList<Range> ranges,
+      int numThreads, ExecutorService queryThreadPool, ScannerOptions scannerOptions, long timeout, long maxMemory) {
     
     this.instance = instance;
     this.credentials = credentials;
@@ -142,7 +150,7 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
     this.numThreads = numThreads;
     this.queryThreadPool = queryThreadPool;
     this.options = new ScannerOptions(scannerOptions);
-    resultsQueue = new ArrayBlockingQueue<List<Entry<Key,Value>>>(numThreads);
+    resultsBuffer = maxMemory > 0 ? ScanResultBuffer.boundedByBytes(maxMemory) : ScanResultBuffer.boundedByBatches(numThreads);
     
     this.locator = new TimeoutTabletLocator(TabletLocator.getLocator(instance, new Text(table)), timeout);
     
@@ -159,27 +167,8 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
       ranges = ranges2;
     }
     
-    ResultReceiver rr = new ResultReceiver() {
-      
-      @Override
-      public void receive(List<Entry<Key,Value>> entries) {
-        try {
-          resultsQueue.put(entries);
-        } catch (InterruptedException e) {
-          if (TabletServerBatchReaderIterator.this.queryThreadPool.isShutdown())
-            log.debug("Failed to add Batch Scan result", e);
-          else
-            log.warn("Failed to add Batch Scan result", e);
-          fatalException = e;
-          throw new RuntimeException(e);
-          
-        }
-      }
-      
-    };
-    
     try {
-      lookup(ranges, rr);
+      lookup(ranges);
     } catch (RuntimeException re) {
       throw re;
     } catch (Exception e) {
@@ -200,7 +189,7 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
       try {
         batch = null;
         while (batch == null && fatalException == null && !queryThreadPool.isShutdown())
-          batch = resultsQueue.poll(1, TimeUnit.SECONDS);
+          batch = resultsBuffer.poll(1, TimeUnit.SECONDS);
         
         if (fatalException != null)
           if (fatalException instanceof RuntimeException)
@@ -235,19 +224,33 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
     throw new UnsupportedOperationException();
   }
   
-  private synchronized void lookup(List<Range> ranges, ResultReceiver receiver) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+  private void addResults(String server, List<Entry<Key,Value>> entries) {
+    try {
+      // waits while the consumer is behind, so the server is not asked for more and its scan session stays where the consumer is
+      resultsBuffer.put(server, entries);
+    } catch (InterruptedException e) {
+      if (queryThreadPool.isShutdown())
+        log.debug("Failed to add Batch Scan result", e);
+      else
+        log.warn("Failed to add Batch Scan result", e);
+      fatalException = e;
+      throw new RuntimeException(e);
+    }
+  }
+  
+  private synchronized void lookup(List<Range> ranges) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
     List<Column> columns = new ArrayList<Column>(options.fetchedColumns);
     ranges = Range.mergeOverlapping(ranges);
     
     Map<String,Map<KeyExtent,List<Range>>> binnedRanges = new HashMap<String,Map<KeyExtent,List<Range>>>();
     
-    binRanges(locator, ranges, binnedRanges);
+    binRanges(instance, credentials, table, locator, ranges, binnedRanges);
     
-    doLookups(binnedRanges, receiver, columns);
+    doLookups(binnedRanges, columns);
   }
   
-  private void binRanges(TabletLocator tabletLocator, List<Range> ranges, Map<String,Map<KeyExtent,List<Range>>> binnedRanges) throws AccumuloException,
-      AccumuloSecurityException, TableNotFoundException {
+  static void binRanges(Instance instance, Credentials credentials, String table, TabletLocator tabletLocator, List<Range> ranges,
+      Map<String,Map<KeyExtent,List<Range>>> binnedRanges) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
     
     int lastFailureSize = Integer.MAX_VALUE;
     
@@ -301,7 +304,7 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
     binnedRanges.putAll(binnedRanges2);
   }
   
-  private void processFailures(Map<KeyExtent,List<Range>> failures, ResultReceiver receiver, List<Column> columns) throws AccumuloException,
+  private void processFailures(Map<KeyExtent,List<Range>> failures, List<Column> columns) throws AccumuloException,
       AccumuloSecurityException, TableNotFoundException {
     if (log.isTraceEnabled())
       log.trace("Failed to execute multiscans against " + failures.size() + " tablets, retrying...");
@@ -317,9 +320,9 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
     
     // since the first call to binRanges clipped the ranges to within a tablet, we should not get only
     // bin to the set of failed tablets
-    binRanges(locator, allRanges, binnedRanges);
+    binRanges(instance, credentials, table, locator, allRanges, binnedRanges);
     
-    doLookups(binnedRanges, receiver, columns);
+    doLookups(binnedRanges, columns);
   }
   
   private String getTableInfo() {
@@ -328,18 +331,22 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
   
   private class QueryTask implements Runnable {
     
-    private String tsLocation;
+    private final String tsLocation;
     private Map<KeyExtent,List<Range>> tabletsRanges;
-    private ResultReceiver receiver;
+    private final ResultReceiver receiver = new ResultReceiver() {
+      @Override
+      public void receive(List<Entry<Key,Value>> entries) {
+        addResults(tsLocation, entries);
+      }
+    };
     private Semaphore semaphore = null;
     private final Map<KeyExtent,List<Range>> failures;
     private List<Column> columns;
     private int semaphoreSize;
     
-    QueryTask(String tsLocation, Map<KeyExtent,List<Range>> tabletsRanges, Map<KeyExtent,List<Range>> failures, ResultReceiver receiver, List<Column> columns) {
+    QueryTask(String tsLocation, Map<KeyExtent,List<Range>> tabletsRanges, Map<KeyExtent,List<Range>> failures, List<Column> columns) {
       this.tsLocation = tsLocation;
       this.tabletsRanges = tabletsRanges;
-      this.receiver = receiver;
       this.columns = columns;
       this.failures = failures;
     }
@@ -355,6 +362,7 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
       Thread.currentThread().setName(threadName + " looking up " + tabletsRanges.size() + " ranges at " + tsLocation);
       Map<KeyExtent,List<Range>> unscanned = new HashMap<KeyExtent,List<Range>>();
       Map<KeyExtent,List<Range>> tsFailures = new HashMap<KeyExtent,List<Range>>();
+      resultsBuffer.startReading(tsLocation);
       try {
         TimeoutTracker timeoutTracker = timeoutTrackers.get(tsLocation);
         if (timeoutTracker == null) {
@@ -394,6 +402,7 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
           log.warn(t.getMessage(), t);
         fatalException = t;
       } finally {
+        resultsBuffer.stopReading(tsLocation);
         semaphore.release();
         Thread.currentThread().setName(threadName);
         if (semaphore.tryAcquire(semaphoreSize)) {
@@ -401,7 +410,7 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
           if (fatalException == null && failures.size() > 0) {
             // there were some failures
             try {
-              processFailures(failures, receiver, columns);
+              processFailures(failures, columns);
             } catch (TableNotFoundException e) {
               log.debug(e.getMessage(), e);
               fatalException = e;
@@ -419,26 +428,11 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
             
             if (fatalException != null) {
               // we are finished with this batch query
-              if (!resultsQueue.offer(LAST_BATCH)) {
-                log.debug("Could not add to result queue after seeing fatalException in processFailures", fatalException);
-              }
+              resultsBuffer.putLast(LAST_BATCH);
             }
           } else {
             // we are finished with this batch query
-            if (fatalException != null) {
-              if (!resultsQueue.offer(LAST_BATCH)) {
-                log.debug("Could not add to result queue after seeing fatalException", fatalException);
-              }
-            } else {
-              try {
-                resultsQueue.put(LAST_BATCH);
-              } catch (InterruptedException e) {
-                fatalException = e;
-                if (!resultsQueue.offer(LAST_BATCH)) {
-                  log.debug("Could not add to result queue after seeing fatalException", fatalException);
-                }
-              }
-            }
+            resultsBuffer.putLast(LAST_BATCH);
           }
         }
       }
@@ -446,7 +440,7 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
     
   }
   
-  private void doLookups(Map<String,Map<KeyExtent,List<Range>>> binnedRanges, final ResultReceiver receiver, List<Column> columns) {
+  private void doLookups(Map<String,Map<KeyExtent,List<Range>>> binnedRanges, List<Column> columns) {
     
     if (timedoutServers.containsAll(binnedRanges.keySet())) {
       // all servers have timed out
@@ -494,21 +488,21 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
       
       final Map<KeyExtent,List<Range>> tabletsRanges = binnedRanges.get(tsLocation);
       if (maxTabletsPerRequest == Integer.MAX_VALUE || tabletsRanges.size() == 1) {
-        QueryTask queryTask = new QueryTask(tsLocation, tabletsRanges, failures, receiver, columns);
+        QueryTask queryTask = new QueryTask(tsLocation, tabletsRanges, failures, columns);
         queryTasks.add(queryTask);
       } else {
         HashMap<KeyExtent,List<Range>> tabletSubset = new HashMap<KeyExtent,List<Range>>();
         for (Entry<KeyExtent,List<Range>> entry : tabletsRanges.entrySet()) {
           tabletSubset.put(entry.getKey(), entry.getValue());
           if (tabletSubset.size() >= maxTabletsPerRequest) {
-            QueryTask queryTask = new QueryTask(tsLocation, tabletSubset, failures, receiver, columns);
+            QueryTask queryTask = new QueryTask(tsLocation, tabletSubset, failures, columns);
             queryTasks.add(queryTask);
             tabletSubset = new HashMap<KeyExtent,List<Range>>();
           }
         }
         
         if (tabletSubset.size() > 0) {
-          QueryTask queryTask = new QueryTask(tsLocation, tabletSubset, failures, receiver, columns);
+          QueryTask queryTask = new QueryTask(tsLocation, tabletSubset, failures, columns);
           queryTasks.add(queryTask);
         }
       }
@@ -555,7 +549,7 @@ public class TabletServerBatchReaderIterator implements Iterator<Entry<Key,Value
     }
   }
   
-  private static class TimeoutTracker {
+  static class TimeoutTracker {
     
     String server;
     Set<String> badServers;
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.client.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.Instance;
+import org.apache.accumulo.core.client.TableDeletedException;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.TimedOutException;
+import org.apache.accumulo.core.client.impl.TabletServerBatchReaderIterator.ResultReceiver;
+import org.apache.accumulo.core.client.impl.TabletServerBatchReaderIterator.TimeoutTracker;
+import org.apache.accumulo.core.data.Column;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.KeyExtent;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.Credentials;
+import org.apache.accumulo.core.util.UtilWaitThread;
+import org.apache.accumulo.trace.instrument.TraceRunnable;
+import org.apache.hadoop.io.Text;
+import org.apache.log4j.Logger;
+
+/**
+ * Returns the results of a batch scan sorted by key. The ranges are read one tablet at a time, each tablet with its own multi scan, so the results of a tablet
+ * come back sorted. Up to one tablet per query thread is read ahead into a bounded buffer of its own, while the results of the tablets before it are consumed.
+ * Since the tablets of a table do not overlap, merging the tablets' results by key comes down to returning them in tablet order.
+ * <p>
+ * When a tablet moved, split or merged while it was read, the ranges left to read in it are binned again and read in order, so the results stay sorted.
+ */
+class TabletServerOrderedBatchReaderIterator implements Iterator<Entry<Key,Value>> {
+
+  private static final Logger log = Logger.getLogger(TabletServerOrderedBatchReaderIterator.class);
+
+  private static final List<Entry<Key,Value>> LAST_BATCH = new ArrayList<Entry<Key,Value>>();
+
+  private final Instance instance;
+  private final Credentials credentials;
+  private final String table;
+  private final Authorizations authorizations;
+  private final int numThreads;
+  private final ExecutorService queryThreadPool;
+  private final ScannerOptions options;
+  private final List<Column> columns;
+  private final long timeout;
+  private final long maxMemory;
+
+  private final TabletLocator locator;
+  private final Map<String,TimeoutTracker> timeoutTrackers;
+  private final Set<String> timedoutServers;
+
+  private volatile Throwable fatalException = null;
+
+  // tablets not yet read, in order
+  private final LinkedList<TabletReader> pending = new LinkedList<TabletReader>();
+  // tablets being read or read and not yet consumed, in order
+  private final LinkedList<TabletReader> active = new LinkedList<TabletReader>();
+
+  private List<Entry<Key,Value>> batch;
+  private Iterator<Entry<Key,Value>> batchIterator;
+  private boolean finished = false;
+
+  /**
+   * @param maxMemory
+   *          the bytes of results that may be read ahead, shared between the tablets being read, or 0 to read ahead up to one batch of results per tablet
+   */
+  TabletServerOrderedBatchReaderIterator(Instance instance, Credentials credentials, String table, Authorizations authorizations, List<Range> ranges,
+      int numThreads, ExecutorService queryThreadPool, ScannerOptions scannerOptions, long timeout, long maxMemory) {
+    this(instance, credentials, table, authorizations, ranges, numThreads, queryThreadPool, scannerOptions, timeout, maxMemory, new TimeoutTabletLocator(
+        TabletLocator.getLocator(instance, new Text(table)), timeout));
+  }
+
+  TabletServerOrderedBatchReaderIterator(Instance instance, Credentials credentials, String table, Authorizations authorizations, List<Range> ranges,
+      int numThreads, ExecutorService queryThreadPool, ScannerOptions scannerOptions, long timeout, long maxMemory, TabletLocator locator) {
+    this.instance = instance;
+    this.credentials = credentials;
+    this.table = table;
+    this.authorizations = authorizations;
+    this.numThreads = numThreads;
+    this.queryThreadPool = queryThreadPool;
+    this.options = new ScannerOptions(scannerOptions);
+    this.columns = new ArrayList<Column>(options.fetchedColumns);
+    this.timeout = timeout;
+    this.maxMemory = maxMemory;
+
+    this.locator = locator;
+    timeoutTrackers = Collections.synchronizedMap(new HashMap<String,TimeoutTracker>());
+    timedoutServers = Collections.synchronizedSet(new HashSet<String>());
+
+    if (options.fetchedColumns.size() > 0) {
+      ArrayList<Range> ranges2 = new ArrayList<Range>(ranges.size());
+      for (Range range : ranges) {
+        ranges2.add(range.bound(options.fetchedColumns.first(), options.fetchedColumns.last()));
+      }
+      ranges = ranges2;
+    }
+
+    try {
+      Map<KeyExtent,String> locations = new HashMap<KeyExtent,String>();
+      for (Entry<KeyExtent,List<Range>> entry : binInOrder(Range.mergeOverlapping(ranges), locations).entrySet())
+        pending.add(new TabletReader(entry.getKey(), locations.get(entry.getKey()), entry.getValue()));
+    } catch (RuntimeException re) {
+      throw re;
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to create iterator", e);
+    }
+
+    startReaders();
+  }
+
+  /**
+   * Bins ranges to tablets, ordering the tablets by their extent, which is the order of their keys.
+   *
+   * @param locations
+   *          is given the server of each tablet
+   */
+  private TreeMap<KeyExtent,List<Range>> binInOrder(List<Range> ranges, Map<KeyExtent,String> locations) throws AccumuloException,
+      AccumuloSecurityException, TableNotFoundException {
+    Map<String,Map<KeyExtent,List<Range>>> binnedRanges = new HashMap<String,Map<KeyExtent,List<Range>>>();
+    TabletServerBatchReaderIterator.binRanges(instance, credentials, table, locator, ranges, binnedRanges);
+    TreeMap<KeyExtent,List<Range>> tablets = new TreeMap<KeyExtent,List<Range>>();
+    for (Entry<String,Map<KeyExtent,List<Range>>> entry : binnedRanges.entrySet()) {
+      tablets.putAll(entry.getValue());
+      for (KeyExtent extent : entry.getValue().keySet())
+        locations.put(extent, entry.getKey());
+    }
+    return tablets;
+  }
+
+  private void startReaders() {
+    while (active.size() < numThreads && !pending.isEmpty()) {
+      TabletReader reader = pending.removeFirst();
+      active.add(reader);
+      queryThreadPool.execute(new TraceRunnable(reader));
+    }
+  }
+
+  @Override
+  public synchronized boolean hasNext() {
+    while (!finished) {
+      if (batch != null && batchIterator.hasNext())
+        return true;
+
+      if (active.isEmpty()) {
+        finished = true;
+        break;
+      }
+
+      try {
+        batch = null;
+        ScanResultBuffer buffer = active.getFirst().buffer;
+        while (batch == null && fatalException == null && !queryThreadPool.isShutdown())
+          batch = buffer.poll(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+
+      if (fatalException != null)
+        if (fatalException instanceof RuntimeException)
+          throw (RuntimeException) fatalException;
+        else
+          throw new RuntimeException(fatalException);
+
+      if (queryThreadPool.isShutdown())
+        throw new RuntimeException("scanner closed");
+
+      if (batch == LAST_BATCH) {
+        // the first tablet was read to its end, so the next one can be returned and another one read ahead
+        batch = null;
+        active.removeFirst();
+        startReaders();
+      } else {
+        batchIterator = batch.iterator();
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public synchronized Entry<Key,Value> next() {
+    if (hasNext())
+      return batchIterator.next();
+    else
+      throw new NoSuchElementException();
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  private TimeoutTracker getTimeoutTracker(String server) {
+    synchronized (timeoutTrackers) {
+      TimeoutTracker timeoutTracker = timeoutTrackers.get(server);
+      if (timeoutTracker == null) {
+        timeoutTracker = new TimeoutTracker(server, timedoutServers, timeout);
+        timeoutTrackers.put(server, timeoutTracker);
+      }
+      return timeoutTracker;
+    }
+  }
+
+  /**
+   * Reads the ranges of one tablet into its own buffer, in key order.
+   */
+  private class TabletReader implements Runnable {
+
+    private final KeyExtent extent;
+    private final List<Range> ranges;
+    private final ScanResultBuffer buffer;
+    private final Map<KeyExtent,String> locations = new HashMap<KeyExtent,String>();
+    private String server;
+
+    TabletReader(KeyExtent extent, String server, List<Range> ranges) {
+      this.extent = extent;
+      this.ranges = ranges;
+      locations.put(extent, server);
+      if (maxMemory > 0)
+        buffer = ScanResultBuffer.boundedByBytes(Math.max(1, maxMemory / numThreads));
+      else
+        buffer = ScanResultBuffer.boundedByBatches(1);
+    }
+
+    @Override
+    public void run() {
+      String threadName = Thread.currentThread().getName();
+      Thread.currentThread().setName(threadName + " looking up " + ranges.size() + " ranges in " + extent);
+      try {
+        read();
+      } catch (AccumuloSecurityException e) {
+        e.setTableInfo(Tables.getPrintableTableInfoFromId(instance, table));
+        log.debug(e.getMessage(), e);
+
+        Tables.clearCache(instance);
+        if (!Tables.exists(instance, table))
+          fatalException = new TableDeletedException(table);
+        else
+          fatalException = e;
+      } catch (Throwable t) {
+        if (queryThreadPool.isShutdown())
+          log.debug(t.getMessage(), t);
+        else
+          log.warn(t.getMessage(), t);
+        fatalException = t;
+      } finally {
+        buffer.putLast(LAST_BATCH);
+        Thread.currentThread().setName(threadName);
+      }
+    }
+
+    private void read() throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+      ResultReceiver receiver = new ResultReceiver() {
+        @Override
+        public void receive(List<Entry<Key,Value>> entries) {
+          try {
+            buffer.put(server, entries);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+
+      long failSleepTime = 100;
+      TreeMap<KeyExtent,List<Range>> tablets = new TreeMap<KeyExtent,List<Range>>();
+      tablets.put(extent, ranges);
+
+      while (true) {
+        List<Range> retry = new ArrayList<Range>();
+
+        for (Entry<KeyExtent,List<Range>> entry : tablets.entrySet()) {
+          if (!retry.isEmpty()) {
+            // an earlier tablet failed, so this one is read after it to keep the results in order
+            retry.addAll(entry.getValue());
+            continue;
+          }
+
+          server = locations.get(entry.getKey());
+          if (timedoutServers.contains(server))
+            throw new TimedOutException(Collections.singleton(server));
+
+          Map<KeyExtent,List<Range>> requested = Collections.singletonMap(entry.getKey(), entry.getValue());
+          Map<KeyExtent,List<Range>> failures = new HashMap<KeyExtent,List<Range>>();
+          Map<KeyExtent,List<Range>> unscanned = new HashMap<KeyExtent,List<Range>>();
+          try {
+            TabletServerBatchReaderIterator.doLookup(instance, credentials, server, requested, failures, unscanned, receiver, columns, options,
+                authorizations, ServerConfigurationUtil.getConfiguration(instance), getTimeoutTracker(server));
+            if (failures.size() > 0) {
+              locator.invalidateCache(failures.keySet());
+              for (List<Range> failed : failures.values())
+                retry.addAll(failed);
+            }
+          } catch (IOException e) {
+            locator.invalidateCache(server);
+            log.debug(e.getMessage(), e);
+            for (List<Range> failed : failures.values())
+              retry.addAll(failed);
+            for (List<Range> failed : unscanned.values())
+              retry.addAll(failed);
+          }
+        }
+
+        if (retry.isEmpty())
+          return;
+
+        if (log.isTraceEnabled())
+          log.trace("Failed to read " + retry.size() + " ranges in " + extent + ", retrying...");
+        UtilWaitThread.sleep(failSleepTime);
+        failSleepTime = Math.min(5000, failSleepTime * 2);
+
+        locations.clear();
+        tablets = binInOrder(Range.mergeOverlapping(retry), locations);
+      }
+    }
+  }
+}
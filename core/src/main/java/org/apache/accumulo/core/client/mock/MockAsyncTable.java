@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.client.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.Future;
+
+import org.apache.accumulo.core.client.AsyncCallback;
+import org.apache.accumulo.core.client.AsyncTable;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.util.ArgumentChecker;
+
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Completes each request before returning it, on the calling thread, so the callback is called before the request's future is returned.
+ */
+public class MockAsyncTable implements AsyncTable {
+
+  private final MockAccumulo acu;
+  private final String tableName;
+  private final Authorizations authorizations;
+  private volatile boolean closed = false;
+
+  MockAsyncTable(MockAccumulo acu, String tableName, Authorizations authorizations) {
+    this.acu = acu;
+    this.tableName = tableName;
+    this.authorizations = authorizations;
+  }
+
+  @Override
+  public Future<List<Entry<Key,Value>>> scan(Range range, AsyncCallback<List<Entry<Key,Value>>> callback) {
+    ArgumentChecker.notNull(range);
+    checkOpen();
+    List<Entry<Key,Value>> result = new ArrayList<Entry<Key,Value>>();
+    try {
+      MockScanner scanner = new MockScanner(acu.tables.get(tableName), authorizations);
+      scanner.setRange(range);
+      for (Entry<Key,Value> entry : scanner)
+        result.add(entry);
+    } catch (RuntimeException e) {
+      return failed(e, callback);
+    }
+    if (callback != null)
+      callback.completed(result);
+    return Futures.immediateFuture(result);
+  }
+
+  @Override
+  public Future<Void> write(Mutation mutation, AsyncCallback<Void> callback) {
+    ArgumentChecker.notNull(mutation);
+    if (mutation.size() == 0)
+      throw new IllegalArgumentException("Can not add empty mutations");
+    checkOpen();
+    try {
+      acu.addMutation(tableName, mutation);
+    } catch (RuntimeException e) {
+      return failed(e, callback);
+    }
+    if (callback != null)
+      callback.completed(null);
+    return Futures.immediateFuture(null);
+  }
+
+  private static <T> Future<T> failed(Throwable cause, AsyncCallback<T> callback) {
+    if (callback != null)
+      callback.failed(cause);
+    return Futures.immediateFailedFuture(cause);
+  }
+
+  private void checkOpen() {
+    if (closed)
+      throw new IllegalStateException("Closed");
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+}
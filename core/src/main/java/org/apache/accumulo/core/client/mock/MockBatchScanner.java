@@ -35,6 +35,7 @@ import org.apache.commons.collections.iterators.IteratorChain;
 public class MockBatchScanner extends MockScannerBase implements BatchScanner {
   
   List<Range> ranges = null;
+  boolean ordered = false;
   
   public MockBatchScanner(MockTable mockTable, Authorizations authorizations) {
     super(mockTable, authorizations);
@@ -57,7 +58,7 @@ public class MockBatchScanner extends MockScannerBase implements BatchScanner {
     }
 
     IteratorChain chain = new IteratorChain();
-    for (Range range : ranges) {
+    for (Range range : ordered ? Range.mergeOverlapping(ranges) : ranges) {
       SortedKeyValueIterator<Key,Value> i = new SortedMapIterator(table.table);
       try {
         i = createFilter(i);
@@ -70,6 +71,16 @@ public class MockBatchScanner extends MockScannerBase implements BatchScanner {
     return chain;
   }
   
+  @Override
+  public void setMaxMemory(long maxMemory) {
+    // results are read from the mock table as they are consumed, nothing is buffered
+  }
+  
+  @Override
+  public void setOrdered(boolean ordered) {
+    this.ordered = ordered;
+  }
+  
   @Override
   public void close() {}
 }
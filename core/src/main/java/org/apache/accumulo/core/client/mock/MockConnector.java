@@ -19,6 +19,8 @@ package org.apache.accumulo.core.client.mock;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.AsyncTable;
+import org.apache.accumulo.core.client.AsyncTableConfig;
 import org.apache.accumulo.core.client.BatchDeleter;
 import org.apache.accumulo.core.client.BatchScanner;
 import org.apache.accumulo.core.client.BatchWriter;
@@ -148,4 +150,11 @@ public class MockConnector extends Connector {
     throw new UnsupportedOperationException();
   }
   
+  @Override
+  public AsyncTable createAsyncTable(String tableName, AsyncTableConfig config) throws TableNotFoundException {
+    if (acu.tables.get(tableName) == null)
+      throw new TableNotFoundException(tableName, tableName, "no such table");
+    return new MockAsyncTable(acu, tableName, config.getAuthorizations());
+  }
+  
 }
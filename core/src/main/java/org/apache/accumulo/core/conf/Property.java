@@ -144,10 +144,15 @@ public enum Property {
   GENERAL_MAX_MESSAGE_SIZE("general.server.message.size.max", "1G", PropertyType.MEMORY, "The maximum size of a message that can be sent to a server."),
   GENERAL_VOLUME_CHOOSER("general.volume.chooser", "org.apache.accumulo.server.fs.RandomVolumeChooser", PropertyType.CLASSNAME,
       "The class that will be used to select which volume will be used to create new files."),
+  GENERAL_TABLET_LOCATION_EVENTS("general.tablet.location.events", "false", PropertyType.BOOLEAN,
+      "When true, the master publishes the tablets that were loaded, unloaded or split in ZooKeeper, and clients that have this set update their cached tablet "
+          + "locations from them in the background, instead of reading the metadata table after a request to a tablet server fails."),
 
   // properties that are specific to master server behavior
   MASTER_PREFIX("master.", null, PropertyType.PREFIX, "Properties in this category affect the behavior of the master server"),
   MASTER_CLIENTPORT("master.port.client", "9999", PropertyType.PORT, "The port used for handling client connections on the master"),
+  MASTER_TABLET_LOCATION_EVENTS_INTERVAL("master.tablet.location.events.interval", "1s", PropertyType.TIMEDURATION,
+      "How often the master publishes the tablet location changes it was told of, when general.tablet.location.events is true."),
   MASTER_TABLET_BALANCER("master.tablet.balancer", "org.apache.accumulo.server.master.balancer.TableLoadBalancer", PropertyType.CLASSNAME,
       "The balancer class that accumulo will use to make tablet assignment and migration decisions."),
   MASTER_RECOVERY_MAXAGE("master.recovery.max.age", "60m", PropertyType.TIMEDURATION, "Recovery files older than this age will be removed."),
@@ -172,6 +177,21 @@ public enum Property {
   TSERV_DEFAULT_BLOCKSIZE("tserver.default.blocksize", "1M", PropertyType.MEMORY, "Specifies a default blocksize for the tserver caches"),
   TSERV_DATACACHE_SIZE("tserver.cache.data.size", "128M", PropertyType.MEMORY, "Specifies the size of the cache for file data blocks."),
   TSERV_INDEXCACHE_SIZE("tserver.cache.index.size", "512M", PropertyType.MEMORY, "Specifies the size of the cache for file indices."),
+  TSERV_CACHE_IMPL("tserver.cache.impl", "org.apache.accumulo.core.file.blockfile.cache.LruBlockCache", PropertyType.CLASSNAME,
+      "The BlockCache implementation used for the data and index caches.  It must have a public constructor that takes the cache size and the default block"
+          + " size as longs.  org.apache.accumulo.core.file.blockfile.cache.OffHeapBlockCache keeps cached blocks in direct memory, which is not counted"
+          + " against the java heap; the JVM must be started with a large enough -XX:MaxDirectMemorySize."),
+  TSERV_CACHE_ADMISSION_POLICY("tserver.cache.admission.policy", "org.apache.accumulo.core.file.blockfile.cache.AdmitAllPolicy", PropertyType.CLASSNAME,
+      "The AdmissionPolicy the data and index caches use to decide which blocks may displace others once the cache is full.  Use"
+          + " org.apache.accumulo.core.file.blockfile.cache.TinyLfuAdmissionPolicy to keep large scans from flushing frequently used blocks.  Only used with"
+          + " cache implementations that have a constructor which also takes an AdmissionPolicy."),
+  TSERV_CACHE_LOCAL_DIR("tserver.cache.local.dir", "", PropertyType.PATH,
+      "A directory on the local file system, ideally on an SSD, where blocks read from files are also kept so that they can be read from there when they no"
+          + " longer fit in the data and index caches.  Blocks kept there survive a restart of the tablet server.  Each tablet server on a host needs its own"
+          + " directory.  Leave blank to disable."),
+  TSERV_CACHE_LOCAL_SIZE("tserver.cache.local.size", "10G", PropertyType.MEMORY,
+      "The amount of local disk space used by the blocks in tserver.cache.local.dir.  It is divided between data and index blocks in proportion to the data"
+          + " and index cache sizes."),
   TSERV_PORTSEARCH("tserver.port.search", "false", PropertyType.BOOLEAN, "if the ports above are in use, search higher ports until one is available"),
   TSERV_CLIENTPORT("tserver.port.client", "9997", PropertyType.PORT, "The port used for handling client connections on the tablet servers"),
   TSERV_MUTATION_QUEUE_MAX("tserver.mutation.queue.max", "1M", PropertyType.MEMORY,
@@ -185,6 +205,9 @@ public enum Property {
           + "must be made, which is slower. However opening too many files at once can cause problems."),
   TSERV_WALOG_MAX_SIZE("tserver.walog.max.size", "1G", PropertyType.MEMORY,
       "The maximum size for each write-ahead log.  See comment for property tserver.memory.maps.max"),
+  TSERV_WALOG_COUNT("tserver.walog.count", "1", PropertyType.COUNT,
+      "The number of write-ahead logs a tablet server writes to at once. Each tablet is written to one of them, chosen from its extent, and the logs are synced "
+          + "independently, so more logs let updates to different tablets sync in parallel. Each log may grow to tserver.walog.max.size."),
   TSERV_MAJC_DELAY("tserver.compaction.major.delay", "30s", PropertyType.TIMEDURATION,
       "Time a tablet server will sleep between checking which tablets need compaction."),
   TSERV_MAJC_THREAD_MAXOPEN("tserver.compaction.major.thread.files.open.max", "10", PropertyType.COUNT,
@@ -195,6 +218,10 @@ public enum Property {
       + "This setting determines how much time an unused file should be kept open until it is closed."),
   TSERV_NATIVEMAP_ENABLED("tserver.memory.maps.native.enabled", "true", PropertyType.BOOLEAN,
       "An in-memory data store for accumulo implemented in c++ that increases the amount of data accumulo can hold in memory and avoids Java GC pauses."),
+  TSERV_OFFHEAPMAP_ENABLED("tserver.memory.maps.offheap.enabled", "false", PropertyType.BOOLEAN,
+      "An in-memory data store implemented in java that keeps data outside of the java heap, so it avoids Java GC pauses without a native library. "
+          + "It is used when tserver.memory.maps.native.enabled is false or the native library can not be loaded. The JVM option "
+          + "-XX:MaxDirectMemorySize must allow for tserver.memory.maps.max."),
   TSERV_MAXMEM("tserver.memory.maps.max", "1G", PropertyType.MEMORY,
       "Maximum amount of memory that can be used to buffer data written to a tablet server. There are two other properties that can effectively limit memory"
           + " usage table.compaction.minor.logs.threshold and tserver.walog.max.size. Ensure that table.compaction.minor.logs.threshold *"
@@ -209,10 +236,18 @@ public enum Property {
       "The maximum number of concurrent metadata read ahead that will execute."),
   TSERV_MIGRATE_MAXCONCURRENT("tserver.migrations.concurrent.max", "1", PropertyType.COUNT,
       "The maximum number of concurrent tablet migrations for a tablet server"),
+  TSERV_ASSIGNMENT_MAXCONCURRENT("tserver.assignment.concurrent.max", "2", PropertyType.COUNT,
+      "The number of threads available to load tablets. Recovering tablets that share write-ahead logs replay them at the same time up to this limit."),
   TSERV_MAJC_MAXCONCURRENT("tserver.compaction.major.concurrent.max", "3", PropertyType.COUNT,
       "The maximum number of concurrent major compactions for a tablet server"),
+  TSERV_MAJC_PARTITION_MAXCONCURRENT("tserver.compaction.major.partition.concurrent.max", "4", PropertyType.COUNT,
+      "The maximum number of threads a tablet server uses to compact the ranges of partitioned major compactions, in addition to the major compaction threads."),
   TSERV_MINC_MAXCONCURRENT("tserver.compaction.minor.concurrent.max", "4", PropertyType.COUNT,
       "The maximum number of concurrent minor compactions for a tablet server"),
+  TSERV_COMPACTION_THROUGHPUT("tserver.compaction.throughput", "0", PropertyType.MEMORY,
+      "The maximum number of bytes per second read and written by all the major and minor compactions of a tablet server together, or zero for no limit. "
+          + "Bytes are counted as key/values are read from the files and memory being compacted and written to the new file. Changes take effect "
+          + "within ten seconds. See table.compaction.throughput.weight"),
   TSERV_COMPACTION_WARN_TIME("tserver.compaction.warn.time", "10m", PropertyType.TIMEDURATION,
       "When a compaction has not made progress for this time period, a warning will be logged"),
   TSERV_BLOOM_LOAD_MAXCONCURRENT("tserver.bloom.load.concurrent.max", "4", PropertyType.COUNT,
@@ -247,12 +282,22 @@ public enum Property {
       "The replication to use when writing the Write-Ahead log to HDFS. If zero, it will use the HDFS default replication setting."),
   TSERV_RECOVERY_MAX_CONCURRENT("tserver.recovery.concurrent.max", "2", PropertyType.COUNT, "The maximum number of threads to use to sort logs during"
       + " recovery"),
-  TSERV_SORT_BUFFER_SIZE("tserver.sort.buffer.size", "200M", PropertyType.MEMORY, "The amount of memory to use when sorting logs during recovery."),
+  TSERV_SORT_BUFFER_SIZE("tserver.sort.buffer.size", "200M", PropertyType.MEMORY, "The amount of memory to use when sorting logs during recovery. A log"
+      + " being sorted can hold two buffers of this size, one being read while the other is sorted and written."),
   TSERV_ARCHIVE_WALOGS("tserver.archive.walogs", "false", PropertyType.BOOLEAN, "Keep copies of the WALOGs for debugging purposes"),
   TSERV_WORKQ_THREADS("tserver.workq.threads", "2", PropertyType.COUNT,
       "The number of threads for the distributed workq.  These threads are used for copying failed bulk files."),
   TSERV_WAL_SYNC("tserver.wal.sync", "true", PropertyType.BOOLEAN,
       "Use the SYNC_BLOCK create flag to sync WAL writes to disk. Prevents problems recovering from sudden system resets."),
+  TSERV_WAL_COMPRESSION_TYPE("tserver.wal.compress.type", "none", PropertyType.STRING,
+      "The compression algorithm to use for write-ahead logs, one of gz, lzo, snappy or none. Logs are compressed in blocks, so each sync writes a "
+          + "complete block. Applies to logs opened after a change; logs of all types can be recovered."),
+  TSERV_WAL_SYNC_MAX_DELAY("tserver.wal.sync.max.delay", "0ms", PropertyType.TIMEDURATION,
+      "The longest a write-ahead log sync may be delayed to gather more updates into it. A sync is only delayed while updates are arriving often enough "
+          + "to join it, so writes under light load are not slowed. Zero syncs as soon as there is an update to sync. Applies to logs opened after a change."),
+  TSERV_WAL_SYNC_BATCH_SIZE("tserver.wal.sync.batch.size", "16", PropertyType.COUNT,
+      "The number of updates a write-ahead log sync tries to gather when tserver.wal.sync.max.delay is set. Once this many updates are waiting the log "
+          + "is synced without further delay. Applies to logs opened after a change."),
 
   // properties that are specific to logger server behavior
   LOGGER_PREFIX("logger.", null, PropertyType.PREFIX, "Properties in this category affect the behavior of the write-ahead logger servers"),
@@ -317,6 +362,14 @@ public enum Property {
           + "of its files compacted into one.  There is no guarantee an idle tablet will be compacted. "
           + "Compactions of idle tablets are only started when regular compactions are not running. Idle "
           + "compactions only take place for tablets that have one or more files."),
+  TABLE_MAJC_PARTITIONS("table.compaction.major.partitions", "1", PropertyType.COUNT,
+      "The number of ranges a major compaction of all of a tablet's files is split into, using the indexes of the files. The ranges are compacted concurrently "
+          + "and each is written to its own file, so a tablet with large files can be compacted by more than one thread. The number of ranges is kept below "
+          + "table.compaction.major.ratio, so the files written can not be selected for compaction again by themselves. See "
+          + "tserver.compaction.major.partition.concurrent.max"),
+  TABLE_COMPACTION_THROUGHPUT_WEIGHT("table.compaction.throughput.weight", "1", PropertyType.FRACTION,
+      "The share of tserver.compaction.throughput given to the compactions of a table, relative to other tables. A compaction of a table with a weight of 2 "
+          + "is allowed twice the bytes per second of a compaction of a table with a weight of 1."),
   TABLE_SPLIT_THRESHOLD("table.split.threshold", "1G", PropertyType.MEMORY, "When combined size of files exceeds this amount a tablet is split."),
   TABLE_MINC_LOGS_MAX("table.compaction.minor.logs.threshold", "3", PropertyType.COUNT,
       "When there are more than this many write-ahead logs against a tablet, it will be minor compacted.  See comment for property tserver.memory.maps.max"),
@@ -326,6 +379,9 @@ public enum Property {
   TABLE_SCAN_MAXMEM("table.scan.max.memory", "512K", PropertyType.MEMORY,
       "The maximum amount of memory that will be used to cache results of a client query/scan. "
           + "Once this limit is reached, the buffered data is sent to the client."),
+  TABLE_SCAN_BATCH_SIZE("table.scan.iterator.batch.size", "100", PropertyType.COUNT,
+      "The number of key/values passed between the system iterators of a scan in one call, when the iterators configured for the table support it. "
+          + "Iterators may read up to this many key/values past what they need before they can seek. Set to 0 to always pass key/values one at a time."),
   TABLE_FILE_TYPE("table.file.type", RFile.EXTENSION, PropertyType.STRING, "Change the type of file a table writes"),
   TABLE_LOAD_BALANCER("table.balancer", "org.apache.accumulo.server.master.balancer.DefaultLoadBalancer", PropertyType.STRING,
       "This property can be set to allow the LoadBalanceByTable load balancer to change the called Load Balancer for this table"),
@@ -345,11 +401,18 @@ public enum Property {
           + " table.compaction.major.ratio also.  Setting this property to 0 will make it default to tserver.scan.files.open.max-1, this will prevent a"
           + " tablet from having more files than can be opened.  Setting this property low may throttle ingest and increase query performance."),
   TABLE_WALOG_ENABLED("table.walog.enabled", "true", PropertyType.BOOLEAN, "Use the write-ahead log to prevent the loss of data."),
+  TABLE_DURABILITY("table.durability", "sync", PropertyType.DURABILITY, "How much of the write-ahead log work is done before a write is acknowledged: none"
+      + " skips the log, log writes to it, flush also sends it to the data nodes and sync also syncs it to disk there. Writes with a weaker durability do not"
+      + " wait on the syncs of stronger ones. Ignored when table.walog.enabled is false."),
   TABLE_BLOOM_ENABLED("table.bloom.enabled", "false", PropertyType.BOOLEAN, "Use bloom filters on this table."),
   TABLE_BLOOM_LOAD_THRESHOLD("table.bloom.load.threshold", "1", PropertyType.COUNT,
       "This number of seeks that would actually use a bloom filter must occur before a file's bloom filter is loaded."
           + " Set this to zero to initiate loading of bloom filters when a file is opened."),
   TABLE_BLOOM_SIZE("table.bloom.size", "1048576", PropertyType.COUNT, "Bloom filter size, as number of keys."),
+  TABLE_BLOOM_CHUNK_SIZE("table.bloom.chunk.size", "0", PropertyType.COUNT,
+      "When greater than 0, RFiles store their bloom filter in chunks of about this many keys alongside the file index, instead of in one filter of"
+          + " table.bloom.size keys.  Each chunk covers a range of keys and is read through the index cache when a lookup needs it, so the filter does not"
+          + " need to be loaded in full before it is used."),
   TABLE_BLOOM_ERRORRATE("table.bloom.error.rate", "0.5%", PropertyType.FRACTION, "Bloom filter error rate."),
   TABLE_BLOOM_KEY_FUNCTOR("table.bloom.key.functor", "org.apache.accumulo.core.file.keyfunctor.RowFunctor", PropertyType.CLASSNAME,
       "A function that can transform the key prior to insertion and check of bloom filter.  org.apache.accumulo.core.file.keyfunctor.RowFunctor,"
@@ -376,6 +439,10 @@ public enum Property {
           + "and table.constraint.2 = my.package.constraints.MySecondConstraint"),
   TABLE_INDEXCACHE_ENABLED("table.cache.index.enable", "true", PropertyType.BOOLEAN, "Determines whether index cache is enabled."),
   TABLE_BLOCKCACHE_ENABLED("table.cache.block.enable", "false", PropertyType.BOOLEAN, "Determines whether file block cache is enabled."),
+  TABLE_CACHE_WARMUP_BLOCKS("table.cache.warmup.blocks", "0", PropertyType.COUNT,
+      "The number of data blocks read into the block cache from the files of a tablet when the tablet is loaded, starting at the beginning of the tablet."
+          + "  The index blocks leading to them are read into the index cache.  Data blocks are only read when the block cache is enabled for the table."
+          + "  Warming runs on the read ahead threads and stops when the tablet is closed.  Set to 0 to disable."),
   TABLE_ITERATOR_PREFIX("table.iterator.", null, PropertyType.PREFIX,
       "Properties in this category specify iterators that are applied at various stages (scopes) of interaction "
           + "with a table. These properties start with the category prefix, followed by a scope (minc, majc, scan, etc.), "
@@ -638,7 +705,8 @@ public enum Property {
   }
 
   private static final EnumSet<Property> fixedProperties = EnumSet.of(Property.TSERV_CLIENTPORT, Property.TSERV_NATIVEMAP_ENABLED,
-      Property.TSERV_SCAN_MAX_OPENFILES, Property.MASTER_CLIENTPORT, Property.GC_PORT);
+      Property.TSERV_OFFHEAPMAP_ENABLED, Property.TSERV_SCAN_MAX_OPENFILES, Property.TSERV_WALOG_COUNT,
+      Property.MASTER_CLIENTPORT, Property.GC_PORT);
 
   /**
    * Checks if the given property may be changed via Zookeeper, but not
@@ -70,6 +70,7 @@ public enum PropertyType {
   STRING("string", ".*",
       "An arbitrary string of characters whose format is unspecified and interpreted based on the context of the property to which it applies."),
   BOOLEAN("boolean", "(?:true|false)", "Has a value of either 'true' or 'false'"),
+  DURABILITY("durability", "(?:none|log|flush|sync)", "One of 'none', 'log', 'flush' or 'sync', from the weakest to the strongest durability of a write"),
   URI("uri", ".*", "A valid URI");
   
   private String shortname, format;
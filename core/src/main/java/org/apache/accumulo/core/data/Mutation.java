@@ -19,6 +19,7 @@ package org.apache.accumulo.core.data;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -38,12 +39,16 @@ import org.apache.hadoop.io.WritableUtils;
  * to make to a row.
  * 
  * <p>
- * Convenience methods which takes columns and value as CharSequence (String implements CharSequence) are provided. CharSequence is converted to UTF-8 by
- * constructing a new Text object.
+ * Convenience methods which takes columns and value as CharSequence (String implements CharSequence) are provided. CharSequence is encoded to UTF-8
+ * directly into the mutation's buffer, without creating Text objects.
  * 
  * <p>
  * When always passing in the same data as a CharSequence/String, it's probably more efficient to call the Text put methods. This way the data is only encoded
- * once and only one Text object is created.
+ * once.
+ * 
+ * <p>
+ * When the serialized size of a mutation is known in advance, passing it to a constructor that takes an initial buffer size lets the mutation be sent
+ * without its buffer being grown or copied.
  * 
  * <p>
  * All of the put methods append data to the mutation; they do not overwrite anything that was previously put. The mutation holds a list of all columns/values
@@ -77,6 +82,8 @@ public class Mutation implements Writable {
   private boolean useOldDeserialize = false;
   private byte[] row;
   private byte[] data;
+  // data may be longer than the serialized updates when the buffer they were written to is kept instead of copied
+  private int dataLength;
   private int entries;
   private List<byte[]> values;
   
@@ -88,7 +95,13 @@ public class Mutation implements Writable {
   
   private void serialize() {
     if (buffer != null) {
-      data = buffer.toArray();
+      ByteBuffer bb = buffer.toByteBuffer();
+      dataLength = bb.remaining();
+      // keep the buffer when little of it is unused, rather than copying it
+      if (bb.capacity() - dataLength <= dataLength >> 3)
+        data = bb.array();
+      else
+        data = buffer.toArray();
       buffer = null;
     }
   }
@@ -118,6 +131,33 @@ public class Mutation implements Writable {
     buffer = new UnsynchronizedBuffer.Writer();
   }
   
+  /**
+   * Creates a new mutation. A defensive copy is made.
+   *
+   * @param row byte array containing row ID
+   * @param start starting index of row ID in byte array
+   * @param length length of row ID in byte array
+   * @param initialBufferSize the initial size, in bytes, of the internal buffer for serializing
+   * @throws IndexOutOfBoundsException if start or length is invalid
+   * @since 1.7.0
+   */
+  public Mutation(byte[] row, int start, int length, int initialBufferSize) {
+    this.row = new byte[length];
+    System.arraycopy(row, start, this.row, 0, length);
+    buffer = new UnsynchronizedBuffer.Writer(initialBufferSize);
+  }
+  
+  /**
+   * Creates a new mutation. A defensive copy is made.
+   *
+   * @param row row ID
+   * @param initialBufferSize the initial size, in bytes, of the internal buffer for serializing
+   * @since 1.7.0
+   */
+  public Mutation(byte[] row, int initialBufferSize) {
+    this(row, 0, row.length, initialBufferSize);
+  }
+  
   /**
    * Creates a new mutation. A defensive copy is made.
    *
@@ -127,13 +167,37 @@ public class Mutation implements Writable {
     this(row.getBytes(), 0, row.getLength());
   }
   
+  /**
+   * Creates a new mutation. A defensive copy is made.
+   *
+   * @param row row ID
+   * @param initialBufferSize the initial size, in bytes, of the internal buffer for serializing
+   * @since 1.7.0
+   */
+  public Mutation(Text row, int initialBufferSize) {
+    this(row.getBytes(), 0, row.getLength(), initialBufferSize);
+  }
+  
   /**
    * Creates a new mutation.
    *
    * @param row row ID
    */
   public Mutation(CharSequence row) {
-    this(new Text(row.toString()));
+    this(row, 64);
+  }
+  
+  /**
+   * Creates a new mutation.
+   *
+   * @param row row ID
+   * @param initialBufferSize the initial size, in bytes, of the internal buffer for serializing
+   * @since 1.7.0
+   */
+  public Mutation(CharSequence row, int initialBufferSize) {
+    this.row = new byte[UnsynchronizedBuffer.utf8Length(row)];
+    UnsynchronizedBuffer.encodeUTF8(row, this.row, 0);
+    buffer = new UnsynchronizedBuffer.Writer(initialBufferSize);
   }
   
   /**
@@ -149,6 +213,7 @@ public class Mutation implements Writable {
   public Mutation(TMutation tmutation) {
     this.row = ByteBufferUtil.toBytes(tmutation.row);
     this.data = ByteBufferUtil.toBytes(tmutation.data);
+    this.dataLength = this.data == null ? 0 : this.data.length;
     this.entries = tmutation.entries;
     this.values = ByteBufferUtil.toBytesList(tmutation.values);
     
@@ -169,6 +234,7 @@ public class Mutation implements Writable {
     m.serialize();
     this.row = m.row;
     this.data = m.data;
+    this.dataLength = m.dataLength;
     this.entries = m.entries;
     this.values = m.values;
   }
@@ -191,6 +257,12 @@ public class Mutation implements Writable {
     buffer.add(b, 0, length);
   }
   
+  private void put(CharSequence s) {
+    int length = UnsynchronizedBuffer.utf8Length(s);
+    buffer.writeVLong(length);
+    buffer.addUTF8(s, length);
+  }
+  
   private void put(boolean b) {
     buffer.add(b);
   }
@@ -215,35 +287,53 @@ public class Mutation implements Writable {
   }
   
   private void put(byte[] cf, int cfLength, byte[] cq, int cqLength, byte[] cv, boolean hasts, long ts, boolean deleted, byte[] val, int valLength) {
+    checkNotSerialized();
+    put(cf, cfLength);
+    put(cq, cqLength);
+    put(cv, hasts, ts, deleted);
+    put(val, valLength, false);
+    entries++;
+  }
+  
+  private void checkNotSerialized() {
     if (buffer == null) {
       throw new IllegalStateException("Can not add to mutation after serializing it");
     }
-    put(cf, cfLength);
-    put(cq, cqLength);
+  }
+  
+  private void put(byte[] cv, boolean hasts, long ts, boolean deleted) {
     put(cv);
     put(hasts);
     if (hasts) {
       put(ts);
     }
     put(deleted);
-    
+  }
+  
+  private void put(byte[] val, int valLength, boolean owned) {
     if (valLength < VALUE_SIZE_COPY_CUTOFF) {
       put(val, valLength);
     } else {
       if (values == null) {
         values = new ArrayList<byte[]>();
       }
-      byte copy[] = new byte[valLength];
-      System.arraycopy(val, 0, copy, 0, valLength);
+      byte copy[] = val;
+      if (!owned) {
+        copy = new byte[valLength];
+        System.arraycopy(val, 0, copy, 0, valLength);
+      }
       values.add(copy);
       put(-1 * values.size());
     }
-    
-    entries++;
   }
   
   private void put(CharSequence cf, CharSequence cq, byte[] cv, boolean hasts, long ts, boolean deleted, byte[] val) {
-    put(new Text(cf.toString()), new Text(cq.toString()), cv, hasts, ts, deleted, val);
+    checkNotSerialized();
+    put(cf);
+    put(cq);
+    put(cv, hasts, ts, deleted);
+    put(val, val.length, false);
+    entries++;
   }
   
   private void put(Text cf, Text cq, byte[] cv, boolean hasts, long ts, boolean deleted, Text val) {
@@ -251,7 +341,21 @@ public class Mutation implements Writable {
   }
 
   private void put(CharSequence cf, CharSequence cq, byte[] cv, boolean hasts, long ts, boolean deleted, CharSequence val) {
-    put(new Text(cf.toString()), new Text(cq.toString()), cv, hasts, ts, deleted, new Text(val.toString()));
+    checkNotSerialized();
+    put(cf);
+    put(cq);
+    put(cv, hasts, ts, deleted);
+    int valLength = UnsynchronizedBuffer.utf8Length(val);
+    if (valLength < VALUE_SIZE_COPY_CUTOFF) {
+      buffer.writeVLong(valLength);
+      buffer.addUTF8(val, valLength);
+    } else {
+      // large values are kept out of the buffer, so encode straight into the array that holds them
+      byte[] encoded = new byte[valLength];
+      UnsynchronizedBuffer.encodeUTF8(val, encoded, 0);
+      put(encoded, valLength, true);
+    }
+    entries++;
   }
 
   /**
@@ -721,7 +825,7 @@ public class Mutation implements Writable {
    */
   public long numBytes() {
     serialize();
-    return row.length + data.length + getValueLengths();
+    return row.length + dataLength + getValueLengths();
   }
   
   /**
@@ -767,6 +871,7 @@ public class Mutation implements Writable {
     len = WritableUtils.readVInt(in);
     data = new byte[len];
     in.readFully(data);
+    dataLength = len;
     entries = WritableUtils.readVInt(in);
     
     boolean valuesPresent = (first & 0x01) == 0x01;
@@ -857,8 +962,8 @@ public class Mutation implements Writable {
     WritableUtils.writeVInt(out, row.length);
     out.write(row);
 
-    WritableUtils.writeVInt(out, data.length);
-    out.write(data);
+    WritableUtils.writeVInt(out, dataLength);
+    out.write(data, 0, dataLength);
     WritableUtils.writeVInt(out, entries);
     
     if (hasValues > 0) {
@@ -901,7 +1006,7 @@ public class Mutation implements Writable {
   private boolean equalMutation(Mutation m) {
     serialize();
     m.serialize();
-    if (Arrays.equals(row, m.row) && entries == m.entries && Arrays.equals(data, m.data)) {
+    if (Arrays.equals(row, m.row) && entries == m.entries && equalData(m)) {
       if (values == null && m.values == null)
         return true;
       
@@ -919,14 +1024,24 @@ public class Mutation implements Writable {
     return false;
   }
   
+  private boolean equalData(Mutation m) {
+    if (dataLength != m.dataLength)
+      return false;
+    for (int i = 0; i < dataLength; i++)
+      if (data[i] != m.data[i])
+        return false;
+    return true;
+  }
+  
   /**
-   * Converts this mutation to Thrift.
+   * Converts this mutation to Thrift. The serialized updates are wrapped, not
+   * copied.
    *
    * @return Thrift mutation
    */
   public TMutation toThrift() {
     serialize();
-    return new TMutation(java.nio.ByteBuffer.wrap(row), java.nio.ByteBuffer.wrap(data), ByteBufferUtil.toByteBuffers(values), entries);
+    return new TMutation(ByteBuffer.wrap(row), ByteBuffer.wrap(data, 0, dataLength), ByteBufferUtil.toByteBuffers(values), entries);
   }
   
   /**
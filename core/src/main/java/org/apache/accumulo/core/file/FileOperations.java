@@ -77,8 +77,10 @@ class DispatchingFileFactory extends FileOperations {
   
   @Override
   public FileSKVWriter openWriter(String file, FileSystem fs, Configuration conf, AccumuloConfiguration acuconf) throws IOException {
-    FileSKVWriter writer = findFileFactory(file).openWriter(file, fs, conf, acuconf);
-    if (acuconf.getBoolean(Property.TABLE_BLOOM_ENABLED)) {
+    FileOperations factory = findFileFactory(file);
+    FileSKVWriter writer = factory.openWriter(file, fs, conf, acuconf);
+    // rfiles may store a bloom filter themselves
+    if (acuconf.getBoolean(Property.TABLE_BLOOM_ENABLED) && !(factory instanceof RFileOperations && RFileOperations.usesBlockedBloomFilter(acuconf))) {
       return new BloomFilterLayer.Writer(writer, acuconf);
     }
     return writer;
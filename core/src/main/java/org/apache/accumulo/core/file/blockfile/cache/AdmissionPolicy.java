@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache;
+
+/**
+ * Decides whether a block may enter a {@link BlockCache} whose eviction would otherwise have to make room for it.
+ * <p>
+ * 
+ * A cache informs its policy of every request and every eviction. When inserting a block would push the cache past the point where it starts evicting, the
+ * cache asks the policy whether the new block is worth more than the blocks it would displace. Blocks that are not admitted are returned to the reader without
+ * being cached. Blocks cached as in-memory are always admitted.
+ * <p>
+ * 
+ * Each cache gets its own instance, which must have a public no argument constructor.
+ */
+public interface AdmissionPolicy {
+  
+  /**
+   * Called once by the cache before it is used.
+   * 
+   * @param maxSize
+   *          maximum size of the cache, in bytes
+   * @param blockSize
+   *          approximate size of each block, in bytes
+   */
+  public void init(long maxSize, long blockSize);
+  
+  /**
+   * Records a request for a block, whether or not it was found in the cache.
+   */
+  public void recordAccess(String blockName);
+  
+  /**
+   * Records that the cache evicted a block.
+   */
+  public void recordEviction(String blockName);
+  
+  /**
+   * @return true if the block should be cached even though doing so will cause other blocks to be evicted
+   */
+  public boolean admit(String blockName);
+}
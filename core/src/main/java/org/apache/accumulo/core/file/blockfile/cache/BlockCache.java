@@ -65,4 +65,11 @@ public interface BlockCache {
    * @return max size in bytes
    */
   public long getMaxSize();
+  
+  /**
+   * Get counter statistics for this cache.
+   * 
+   * @return hit, miss and eviction counters
+   */
+  public CacheStats getStats();
 }
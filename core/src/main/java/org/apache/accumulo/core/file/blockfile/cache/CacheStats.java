@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter statistics shared by the {@link BlockCache} implementations.
+ */
+public class CacheStats {
+  private final AtomicLong hitCount = new AtomicLong(0);
+  private final AtomicLong missCount = new AtomicLong(0);
+  private final AtomicLong evictionCount = new AtomicLong(0);
+  private final AtomicLong evictedCount = new AtomicLong(0);
+  private final AtomicLong duplicateReads = new AtomicLong(0);
+  private final AtomicLong rejectedCount = new AtomicLong(0);
+  
+  public void miss() {
+    missCount.incrementAndGet();
+  }
+  
+  public void hit() {
+    hitCount.incrementAndGet();
+  }
+  
+  public void evict() {
+    evictionCount.incrementAndGet();
+  }
+  
+  public void duplicateReads() {
+    duplicateReads.incrementAndGet();
+  }
+  
+  public void evicted() {
+    evictedCount.incrementAndGet();
+  }
+  
+  public void rejected() {
+    rejectedCount.incrementAndGet();
+  }
+  
+  public long getRequestCount() {
+    // derived rather than counted, so that each lookup only updates one shared counter
+    return getHitCount() + getMissCount();
+  }
+  
+  public long getMissCount() {
+    return missCount.get();
+  }
+  
+  public long getHitCount() {
+    return hitCount.get();
+  }
+  
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+  
+  public long getDuplicateReads() {
+    return duplicateReads.get();
+  }
+  
+  public long getEvictedCount() {
+    return evictedCount.get();
+  }
+  
+  /**
+   * Get the number of blocks the {@link AdmissionPolicy} kept out of the cache.
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+  
+  public double getHitRatio() {
+    return ((float) getHitCount() / (float) getRequestCount());
+  }
+  
+  public double getMissRatio() {
+    return ((float) getMissCount() / (float) getRequestCount());
+  }
+  
+  public double evictedPerEviction() {
+    return (float) ((float) getEvictedCount() / (float) getEvictionCount());
+  }
+}
@@ -52,7 +52,7 @@ public class CachedBlock implements HeapSize, Comparable<CachedBlock>, CacheEntr
   private volatile long accessTime;
   private long size;
   private BlockPriority priority;
-  private Object index;
+  private volatile Object index;
   
   public CachedBlock(String blockName, byte buf[], long accessTime) {
     this(blockName, buf, accessTime, false);
@@ -0,0 +1,415 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.apache.accumulo.core.Constants;
+import org.apache.accumulo.core.util.NamingThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A block cache that stores blocks in files in a local directory, so that its contents survive a restart of the process. It is meant to be used as the second
+ * tier under an in-memory cache, see {@link TieredBlockCache}.
+ * <p>
+ *
+ * Each block is stored in its own file named after a digest of the block name, spread over 256 sub directories. Since the files blocks come from are never
+ * modified, the block name (file path plus block offset or name) identifies the contents for good. A file holds a header with the block name, the block and a
+ * checksum; a block whose file is damaged or belongs to a different name is treated as a miss and removed.
+ * <p>
+ *
+ * Blocks are written by a background thread so that readers do not wait on the local disk. Files are written under a temporary name and renamed once
+ * complete. When a write would exceed the pending write limit the block is simply not stored.
+ * <p>
+ *
+ * When the total size of the stored files passes the maximum size, the least recently used blocks are deleted until the size is below the minimum level. On
+ * startup the existing files are indexed using their modification time as the last access time.
+ */
+public class LocalDiskBlockCache implements BlockCache {
+
+  static final Log LOG = LogFactory.getLog(LocalDiskBlockCache.class);
+
+  static final int MAGIC = 0x4c324243;
+  static final int VERSION = 1;
+
+  static final String TMP_SUFFIX = ".tmp";
+
+  /** Eviction threshold */
+  static final float DEFAULT_MIN_FACTOR = 0.9f;
+
+  static final int DEFAULT_MAX_PENDING_WRITES = 1000;
+
+  /** Statistics thread */
+  static final int statThreadPeriod = 60;
+
+  private static class DiskBlock {
+    private final String fileName;
+    private final long length;
+    private volatile long accessTime;
+
+    DiskBlock(String fileName, long length, long accessTime) {
+      this.fileName = fileName;
+      this.length = length;
+      this.accessTime = accessTime;
+    }
+  }
+
+  private static class DiskCacheEntry implements CacheEntry {
+    private final byte[] buffer;
+    private volatile Object index;
+
+    DiskCacheEntry(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public byte[] getBuffer() {
+      return buffer;
+    }
+
+    @Override
+    public Object getIndex() {
+      return index;
+    }
+
+    @Override
+    public void setIndex(Object idx) {
+      this.index = idx;
+    }
+  }
+
+  private static final Comparator<DiskBlock> EVICTION_ORDER = new Comparator<DiskBlock>() {
+    @Override
+    public int compare(DiskBlock b1, DiskBlock b2) {
+      if (b1.accessTime == b2.accessTime)
+        return 0;
+      return b1.accessTime < b2.accessTime ? -1 : 1;
+    }
+  };
+
+  private final File dir;
+  private final long maxSize;
+  private final long minSize;
+
+  /** Stored blocks, keyed by file name */
+  private final ConcurrentHashMap<String,DiskBlock> blocks = new ConcurrentHashMap<String,DiskBlock>();
+
+  private final AtomicLong size = new AtomicLong(0);
+
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  private final ThreadPoolExecutor writer;
+
+  private final ScheduledExecutorService scheduleThreadPool = Executors.newScheduledThreadPool(1, new NamingThreadFactory("LocalDiskBlockCacheStats"));
+
+  private final CacheStats stats = new CacheStats();
+
+  /**
+   * @param dir
+   *          local directory to keep blocks in, created if it does not exist
+   * @param maxSize
+   *          maximum number of bytes to store
+   */
+  public LocalDiskBlockCache(File dir, long maxSize) throws IOException {
+    this(dir, maxSize, DEFAULT_MIN_FACTOR, DEFAULT_MAX_PENDING_WRITES);
+  }
+
+  /**
+   * @param dir
+   *          local directory to keep blocks in, created if it does not exist
+   * @param maxSize
+   *          maximum number of bytes to store
+   * @param minFactor
+   *          percentage of the maximum size that eviction will evict until
+   * @param maxPendingWrites
+   *          number of blocks that may wait to be written before new blocks are dropped
+   */
+  public LocalDiskBlockCache(File dir, long maxSize, float minFactor, int maxPendingWrites) throws IOException {
+    if (minFactor >= 1.0f) {
+      throw new IllegalArgumentException("minFactor must be < 1");
+    }
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Unable to create block cache directory " + dir);
+    }
+    this.dir = dir;
+    this.maxSize = maxSize;
+    this.minSize = (long) Math.floor(maxSize * minFactor);
+    this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(maxPendingWrites), new NamingThreadFactory(
+        "LocalDiskBlockCacheWriter"), new ThreadPoolExecutor.DiscardPolicy());
+
+    load();
+
+    this.scheduleThreadPool.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        logStats();
+      }
+    }, statThreadPeriod, statThreadPeriod, TimeUnit.SECONDS);
+  }
+
+  private void load() {
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < 256; i++) {
+      File subDir = new File(dir, String.format("%02x", i));
+      File[] files = subDir.listFiles();
+      if (files == null)
+        continue;
+      for (File file : files) {
+        if (file.getName().endsWith(TMP_SUFFIX)) {
+          // left behind by a process that died while writing
+          if (!file.delete())
+            LOG.warn("Unable to delete " + file);
+          continue;
+        }
+        blocks.put(file.getName(), new DiskBlock(file.getName(), file.length(), file.lastModified()));
+        size.addAndGet(file.length());
+      }
+    }
+    LOG.info("Found " + blocks.size() + " blocks using " + size.get() + " bytes in " + dir + " in " + (System.currentTimeMillis() - start) + "ms");
+    if (size.get() > maxSize)
+      evict();
+  }
+
+  static String fileName(String blockName) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    byte[] hash = digest.digest(blockName.getBytes(Constants.UTF8));
+    StringBuilder sb = new StringBuilder(hash.length * 2);
+    for (byte b : hash)
+      sb.append(String.format("%02x", b & 0xff));
+    return sb.toString();
+  }
+
+  private File file(String fileName) {
+    return new File(new File(dir, fileName.substring(0, 2)), fileName);
+  }
+
+  @Override
+  public CacheEntry getBlock(String blockName) {
+    String fileName = fileName(blockName);
+    DiskBlock block = blocks.get(fileName);
+    if (block != null) {
+      byte[] buf = read(block, blockName);
+      if (buf != null) {
+        stats.hit();
+        block.accessTime = System.currentTimeMillis();
+        return new DiskCacheEntry(buf);
+      }
+    }
+    stats.miss();
+    return null;
+  }
+
+  private byte[] read(DiskBlock block, String blockName) {
+    File file = file(block.fileName);
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(blockName))
+          throw new IOException("Unexpected header");
+        byte[] buf = new byte[in.readInt()];
+        in.readFully(buf);
+        CRC32 crc = new CRC32();
+        crc.update(buf);
+        if (in.readLong() != crc.getValue())
+          throw new IOException("Checksum mismatch");
+        return buf;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      // evicted concurrently, damaged or stored under a colliding name
+      LOG.debug("Unable to read cached block " + blockName + " from " + file + " : " + e.getMessage());
+      remove(block);
+      return null;
+    }
+  }
+
+  @Override
+  public CacheEntry cacheBlock(final String blockName, final byte[] buf, boolean inMemory) {
+    final String fileName = fileName(blockName);
+    if (blocks.containsKey(fileName)) {
+      stats.duplicateReads();
+      return new DiskCacheEntry(buf);
+    }
+    if (buf.length > maxSize)
+      return null;
+
+    writer.execute(new Runnable() {
+      @Override
+      public void run() {
+        write(fileName, blockName, buf);
+      }
+    });
+    return new DiskCacheEntry(buf);
+  }
+
+  @Override
+  public CacheEntry cacheBlock(String blockName, byte[] buf) {
+    return cacheBlock(blockName, buf, false);
+  }
+
+  private void write(String fileName, String blockName, byte[] buf) {
+    if (blocks.containsKey(fileName))
+      return;
+
+    File file = file(fileName);
+    File tmp = new File(file.getParentFile(), fileName + TMP_SUFFIX);
+    try {
+      if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs())
+        throw new IOException("Unable to create " + file.getParentFile());
+
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(blockName);
+        out.writeInt(buf.length);
+        out.write(buf);
+        CRC32 crc = new CRC32();
+        crc.update(buf);
+        out.writeLong(crc.getValue());
+      } finally {
+        out.close();
+      }
+
+      if (!tmp.renameTo(file))
+        throw new IOException("Unable to rename " + tmp + " to " + file);
+    } catch (IOException e) {
+      LOG.warn("Failed to store block " + blockName + " in " + file, e);
+      tmp.delete();
+      return;
+    }
+
+    DiskBlock block = new DiskBlock(fileName, file.length(), System.currentTimeMillis());
+    if (blocks.putIfAbsent(fileName, block) == null && size.addAndGet(block.length) > maxSize) {
+      evict();
+    }
+  }
+
+  private void remove(DiskBlock block) {
+    if (blocks.remove(block.fileName, block)) {
+      size.addAndGet(-block.length);
+      File file = file(block.fileName);
+      if (file.exists() && !file.delete())
+        LOG.warn("Unable to delete " + file);
+    }
+  }
+
+  void evict() {
+    if (!evictionLock.tryLock())
+      return;
+
+    try {
+      long bytesToFree = size.get() - minSize;
+      if (bytesToFree <= 0)
+        return;
+
+      DiskBlock[] candidates = blocks.values().toArray(new DiskBlock[0]);
+      Arrays.sort(candidates, EVICTION_ORDER);
+
+      long bytesFreed = 0;
+      for (DiskBlock block : candidates) {
+        if (bytesFreed >= bytesToFree)
+          break;
+        remove(block);
+        bytesFreed += block.length;
+        stats.evicted();
+      }
+
+      LOG.debug("Local disk block cache eviction completed.  Freed " + bytesFreed + " bytes");
+    } finally {
+      stats.evict();
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Waits for blocks queued before this call to be written.
+   */
+  void awaitPendingWrites() throws Exception {
+    Future<?> marker = writer.submit(new Runnable() {
+      @Override
+      public void run() {}
+    });
+    marker.get();
+  }
+
+  @Override
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Get the number of bytes stored.
+   */
+  public long getCurrentSize() {
+    return size.get();
+  }
+
+  /**
+   * Get the number of blocks stored.
+   */
+  public long size() {
+    return blocks.size();
+  }
+
+  @Override
+  public CacheStats getStats() {
+    return stats;
+  }
+
+  public void logStats() {
+    float usedMB = ((float) getCurrentSize()) / ((float) (1024 * 1024));
+    float maxMB = ((float) maxSize) / ((float) (1024 * 1024));
+    LOG.debug("Local Disk Cache Stats (" + dir + "): Sizes: Used=" + usedMB + "MB, Max=" + maxMB + "MB, Counts: Blocks=" + size() + ", Access="
+        + stats.getRequestCount() + ", Hit=" + stats.getHitCount() + ", Miss=" + stats.getMissCount() + ", Evicted=" + stats.getEvictedCount()
+        + ", Ratios: Hit Ratio=" + stats.getHitRatio() * 100 + "%, Pending Writes=" + writer.getQueue().size());
+  }
+
+  @Override
+  public void shutdown() {
+    writer.shutdown();
+    scheduleThreadPool.shutdown();
+  }
+}
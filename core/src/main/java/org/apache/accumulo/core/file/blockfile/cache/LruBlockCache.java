@@ -25,6 +25,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -135,6 +136,9 @@ public class LruBlockCache implements BlockCache, HeapSize {
   /** Overhead of the structure itself */
   private long overhead;
   
+  /** Decides which blocks may displace others once the cache is full */
+  private final AdmissionPolicy admissionPolicy;
+  
   /**
    * Default constructor. Specify maximum size and expected average block size (approximation is fine).
    * 
@@ -154,8 +158,38 @@ public class LruBlockCache implements BlockCache, HeapSize {
    * Constructor used for testing. Allows disabling of the eviction thread.
    */
   public LruBlockCache(long maxSize, long blockSize, boolean evictionThread) {
+    this(maxSize, blockSize, evictionThread, new AdmitAllPolicy());
+  }
+  
+  /**
+   * Constructor that uses the given admission policy and otherwise the defaults specified in this class.
+   * 
+   * @param maxSize
+   *          maximum size of cache, in bytes
+   * @param blockSize
+   *          approximate size of each block, in bytes
+   * @param admissionPolicy
+   *          decides which blocks are cached once the cache is full
+   */
+  public LruBlockCache(long maxSize, long blockSize, AdmissionPolicy admissionPolicy) {
+    this(maxSize, blockSize, true, admissionPolicy);
+  }
+  
+  /**
+   * Constructor used for testing. Allows disabling of the eviction thread.
+   */
+  public LruBlockCache(long maxSize, long blockSize, boolean evictionThread, AdmissionPolicy admissionPolicy) {
     this(maxSize, blockSize, evictionThread, (int) Math.ceil(1.2 * maxSize / blockSize), DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL, DEFAULT_MIN_FACTOR,
-        DEFAULT_ACCEPTABLE_FACTOR, DEFAULT_SINGLE_FACTOR, DEFAULT_MULTI_FACTOR, DEFAULT_MEMORY_FACTOR);
+        DEFAULT_ACCEPTABLE_FACTOR, DEFAULT_SINGLE_FACTOR, DEFAULT_MULTI_FACTOR, DEFAULT_MEMORY_FACTOR, admissionPolicy);
+  }
+  
+  /**
+   * Configurable constructor that admits every block.
+   */
+  public LruBlockCache(long maxSize, long blockSize, boolean evictionThread, int mapInitialSize, float mapLoadFactor, int mapConcurrencyLevel, float minFactor,
+      float acceptableFactor, float singleFactor, float multiFactor, float memoryFactor) {
+    this(maxSize, blockSize, evictionThread, mapInitialSize, mapLoadFactor, mapConcurrencyLevel, minFactor, acceptableFactor, singleFactor, multiFactor,
+        memoryFactor, new AdmitAllPolicy());
   }
   
   /**
@@ -183,9 +217,11 @@ public class LruBlockCache implements BlockCache, HeapSize {
    *          percentage of total size for multiple-access blocks
    * @param memoryFactor
    *          percentage of total size for in-memory blocks
+   * @param admissionPolicy
+   *          decides which blocks are cached once the cache is full
    */
   public LruBlockCache(long maxSize, long blockSize, boolean evictionThread, int mapInitialSize, float mapLoadFactor, int mapConcurrencyLevel, float minFactor,
-      float acceptableFactor, float singleFactor, float multiFactor, float memoryFactor) {
+      float acceptableFactor, float singleFactor, float multiFactor, float memoryFactor, AdmissionPolicy admissionPolicy) {
     if (singleFactor + multiFactor + memoryFactor != 1) {
       throw new IllegalArgumentException("Single, multi, and memory factors " + " should total 1.0");
     }
@@ -208,6 +244,8 @@ public class LruBlockCache implements BlockCache, HeapSize {
     this.elements = new AtomicLong(0);
     this.overhead = calculateOverhead(maxSize, blockSize, mapConcurrencyLevel);
     this.size = new AtomicLong(this.overhead);
+    this.admissionPolicy = admissionPolicy;
+    this.admissionPolicy.init(maxSize, blockSize);
     
     if (evictionThread) {
       this.evictionThread = new EvictionThread(this);
@@ -246,6 +284,7 @@ public class LruBlockCache implements BlockCache, HeapSize {
    *          block buffer
    * @param inMemory
    *          if block is in-memory
+   * @return the cached block, or null if the admission policy did not let it into the cache
    */
   public CacheEntry cacheBlock(String blockName, byte buf[], boolean inMemory) {
     CachedBlock cb = map.get(blockName);
@@ -255,6 +294,10 @@ public class LruBlockCache implements BlockCache, HeapSize {
       
     } else {
       cb = new CachedBlock(blockName, buf, count.incrementAndGet(), inMemory);
+      if (!inMemory && size.get() + cb.heapSize() > acceptableSize() && !admissionPolicy.admit(blockName)) {
+        stats.rejected();
+        return null;
+      }
       long newSize = size.addAndGet(cb.heapSize());
       map.put(blockName, cb);
       elements.incrementAndGet();
@@ -290,6 +333,7 @@ public class LruBlockCache implements BlockCache, HeapSize {
    */
   
   public CachedBlock getBlock(String blockName) {
+    admissionPolicy.recordAccess(blockName);
     CachedBlock cb = map.get(blockName);
     if (cb == null) {
       stats.miss();
@@ -305,6 +349,7 @@ public class LruBlockCache implements BlockCache, HeapSize {
     size.addAndGet(-1 * block.heapSize());
     elements.decrementAndGet();
     stats.evicted();
+    admissionPolicy.recordEviction(block.getName());
     return block.heapSize();
   }
   
@@ -502,6 +547,9 @@ public class LruBlockCache implements BlockCache, HeapSize {
     private WeakReference<LruBlockCache> cache;
     private boolean running = false;
     
+    /** Set by the first thread to request an eviction, so that the threads that follow do not all contend for the monitor */
+    private final AtomicBoolean requested = new AtomicBoolean(false);
+    
     public EvictionThread(LruBlockCache cache) {
       super("LruBlockCache.EvictionThread");
       setDaemon(true);
@@ -518,9 +566,12 @@ public class LruBlockCache implements BlockCache, HeapSize {
         synchronized (this) {
           running = true;
           try {
-            this.wait();
+            while (!requested.get())
+              this.wait();
           } catch (InterruptedException e) {}
         }
+        // clear before evicting so that requests made during the eviction trigger another one
+        requested.set(false);
         LruBlockCache cache = this.cache.get();
         if (cache == null)
           break;
@@ -529,8 +580,10 @@ public class LruBlockCache implements BlockCache, HeapSize {
     }
     
     public void evict() {
-      synchronized (this) {
-        this.notify();
+      if (requested.compareAndSet(false, true)) {
+        synchronized (this) {
+          this.notify();
+        }
       }
     }
   }
@@ -564,7 +617,7 @@ public class LruBlockCache implements BlockCache, HeapSize {
         + maxMB + "MB (" + maxSize + ")" + ", Counts: " + "Blocks=" + size() + ", " + "Access=" + stats.getRequestCount() + ", " + "Hit=" + stats.getHitCount()
         + ", " + "Miss=" + stats.getMissCount() + ", " + "Evictions=" + stats.getEvictionCount() + ", " + "Evicted=" + stats.getEvictedCount() + ", Ratios: "
         + "Hit Ratio=" + stats.getHitRatio() * 100 + "%, " + "Miss Ratio=" + stats.getMissRatio() * 100 + "%, " + "Evicted/Run=" + stats.evictedPerEviction()
-        + ", " + "Duplicate Reads=" + stats.getDuplicateReads());
+        + ", " + "Duplicate Reads=" + stats.getDuplicateReads() + ", " + "Rejected=" + stats.getRejectedCount());
   }
   
   /**
@@ -573,78 +626,12 @@ public class LruBlockCache implements BlockCache, HeapSize {
    * <p>
    * Includes: total accesses, hits, misses, evicted blocks, and runs of the eviction processes.
    */
+  @Override
   public CacheStats getStats() {
     return this.stats;
   }
   
-  public static class CacheStats {
-    private final AtomicLong accessCount = new AtomicLong(0);
-    private final AtomicLong hitCount = new AtomicLong(0);
-    private final AtomicLong missCount = new AtomicLong(0);
-    private final AtomicLong evictionCount = new AtomicLong(0);
-    private final AtomicLong evictedCount = new AtomicLong(0);
-    private final AtomicLong duplicateReads = new AtomicLong(0);
-    
-    public void miss() {
-      missCount.incrementAndGet();
-      accessCount.incrementAndGet();
-    }
-    
-    public void hit() {
-      hitCount.incrementAndGet();
-      accessCount.incrementAndGet();
-    }
-    
-    public void evict() {
-      evictionCount.incrementAndGet();
-    }
-    
-    public void duplicateReads() {
-      duplicateReads.incrementAndGet();
-    }
-    
-    public void evicted() {
-      evictedCount.incrementAndGet();
-    }
-    
-    public long getRequestCount() {
-      return accessCount.get();
-    }
-    
-    public long getMissCount() {
-      return missCount.get();
-    }
-    
-    public long getHitCount() {
-      return hitCount.get();
-    }
-    
-    public long getEvictionCount() {
-      return evictionCount.get();
-    }
-    
-    public long getDuplicateReads() {
-      return duplicateReads.get();
-    }
-    
-    public long getEvictedCount() {
-      return evictedCount.get();
-    }
-    
-    public double getHitRatio() {
-      return ((float) getHitCount() / (float) getRequestCount());
-    }
-    
-    public double getMissRatio() {
-      return ((float) getMissCount() / (float) getRequestCount());
-    }
-    
-    public double evictedPerEviction() {
-      return (float) ((float) getEvictedCount() / (float) getEvictionCount());
-    }
-  }
-  
-  public final static long CACHE_FIXED_OVERHEAD = ClassSize.align((3 * SizeConstants.SIZEOF_LONG) + (8 * ClassSize.REFERENCE)
+  public final static long CACHE_FIXED_OVERHEAD = ClassSize.align((3 * SizeConstants.SIZEOF_LONG) + (9 * ClassSize.REFERENCE)
       + (5 * SizeConstants.SIZEOF_FLOAT) + SizeConstants.SIZEOF_BOOLEAN + ClassSize.OBJECT);
   
   // HeapSize implementation
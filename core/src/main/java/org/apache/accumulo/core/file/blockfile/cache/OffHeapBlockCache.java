@@ -0,0 +1,491 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.accumulo.core.util.NamingThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A block cache that keeps block contents outside of the java heap.
+ * <p>
+ *
+ * Memory is carved out of direct {@link ByteBuffer} slabs that are allocated lazily as the cache fills. Each slab is divided into fixed size pages and a cached
+ * block occupies as many pages as it needs; the pages of a block do not have to be contiguous, so the cache does not fragment. Only a small descriptor per block
+ * (its name, page list and access time) lives on the heap, which keeps large caches from inflating the old generation the garbage collector has to scan.
+ * <p>
+ *
+ * {@link #getBlock(String)} copies the block into a short lived heap array. Readers pin a block while copying it, and eviction skips pinned blocks, so a page is
+ * never recycled while it is being read.
+ * <p>
+ *
+ * Eviction is LRU, evicting blocks that were not cached as in-memory before those that were. It is triggered when the used pages pass the acceptable level and
+ * frees pages until the minimum level is reached. If a block can not be allocated even after an eviction it is simply not cached.
+ * <p>
+ *
+ * The JVM must be allowed to allocate enough direct memory (see -XX:MaxDirectMemorySize) to hold the configured size of the cache.
+ */
+public class OffHeapBlockCache implements BlockCache {
+
+  static final Log LOG = LogFactory.getLog(OffHeapBlockCache.class);
+
+  /** Default page size, in bytes */
+  static final int DEFAULT_PAGE_SIZE = 16 * 1024;
+
+  /** Default slab size, in bytes */
+  static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;
+
+  /** Eviction thresholds */
+  static final float DEFAULT_MIN_FACTOR = 0.75f;
+  static final float DEFAULT_ACCEPTABLE_FACTOR = 0.85f;
+
+  /** Statistics thread */
+  static final int statThreadPeriod = 60;
+
+  private final ConcurrentHashMap<String,OffHeapBlock> map = new ConcurrentHashMap<String,OffHeapBlock>();
+
+  /** Eviction lock (locked when eviction in process) */
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  private volatile boolean evictionInProgress = false;
+
+  private final ScheduledExecutorService scheduleThreadPool = Executors.newScheduledThreadPool(1, new NamingThreadFactory("OffHeapBlockCacheStats"));
+
+  private final long maxSize;
+  private final int pageSize;
+  private final int pagesPerSlab;
+  private final int totalPages;
+  private final long acceptablePages;
+  private final long minPages;
+
+  /** Slabs, allocated lazily */
+  private final ByteBuffer[] slabs;
+
+  /** Pages that have been released, guarded by the allocation lock */
+  private final int[] freePages;
+  private int freePageCount = 0;
+
+  /** Next page that has never been handed out, guarded by the allocation lock */
+  private int nextFreshPage = 0;
+
+  private final Object allocationLock = new Object();
+
+  private final AtomicLong usedPages = new AtomicLong(0);
+  private final AtomicLong elements = new AtomicLong(0);
+
+  /** Cache access count (sequential ID) */
+  private final AtomicLong count = new AtomicLong(0);
+
+  private final CacheStats stats = new CacheStats();
+
+  private final AdmissionPolicy admissionPolicy;
+
+  /**
+   * Descriptor of a block that lives in the slabs. The reference count is negative once the pages of the block have been released.
+   */
+  private static class OffHeapBlock {
+    private final String name;
+    private final int[] pages;
+    private final int length;
+    private final boolean inMemory;
+    private final AtomicInteger refs = new AtomicInteger(0);
+    private volatile long accessTime;
+    private volatile Object index;
+
+    OffHeapBlock(String name, int[] pages, int length, boolean inMemory, long accessTime) {
+      this.name = name;
+      this.pages = pages;
+      this.length = length;
+      this.inMemory = inMemory;
+      this.accessTime = accessTime;
+    }
+
+    boolean pin() {
+      while (true) {
+        int r = refs.get();
+        if (r < 0)
+          return false;
+        if (refs.compareAndSet(r, r + 1))
+          return true;
+      }
+    }
+
+    void unpin() {
+      refs.decrementAndGet();
+    }
+
+    boolean release() {
+      return refs.compareAndSet(0, -1);
+    }
+  }
+
+  /**
+   * The entry handed to callers. Each hit copies the block, but the index is kept with the shared descriptor so that it survives across hits.
+   */
+  private static class OffHeapCacheEntry implements CacheEntry {
+    private final OffHeapBlock block;
+    private final byte[] buffer;
+
+    OffHeapCacheEntry(OffHeapBlock block, byte[] buffer) {
+      this.block = block;
+      this.buffer = buffer;
+    }
+
+    @Override
+    public byte[] getBuffer() {
+      return buffer;
+    }
+
+    @Override
+    public Object getIndex() {
+      return block.index;
+    }
+
+    @Override
+    public void setIndex(Object idx) {
+      block.index = idx;
+    }
+  }
+
+  private static final Comparator<OffHeapBlock> EVICTION_ORDER = new Comparator<OffHeapBlock>() {
+    @Override
+    public int compare(OffHeapBlock b1, OffHeapBlock b2) {
+      if (b1.inMemory != b2.inMemory)
+        return b1.inMemory ? 1 : -1;
+      if (b1.accessTime == b2.accessTime)
+        return 0;
+      return b1.accessTime < b2.accessTime ? -1 : 1;
+    }
+  };
+
+  /**
+   * Default constructor. Specify maximum size and expected average block size (approximation is fine).
+   *
+   * @param maxSize
+   *          maximum size of cache, in bytes
+   * @param blockSize
+   *          approximate size of each block, in bytes
+   */
+  public OffHeapBlockCache(long maxSize, long blockSize) {
+    this(maxSize, blockSize, new AdmitAllPolicy());
+  }
+
+  /**
+   * Constructor that uses the given admission policy and otherwise the defaults specified in this class.
+   *
+   * @param maxSize
+   *          maximum size of cache, in bytes
+   * @param blockSize
+   *          approximate size of each block, in bytes
+   * @param admissionPolicy
+   *          decides which blocks are cached once the cache is full
+   */
+  public OffHeapBlockCache(long maxSize, long blockSize, AdmissionPolicy admissionPolicy) {
+    this(maxSize, blockSize, DEFAULT_PAGE_SIZE, DEFAULT_SLAB_SIZE, DEFAULT_MIN_FACTOR, DEFAULT_ACCEPTABLE_FACTOR, admissionPolicy);
+  }
+
+  /**
+   * Configurable constructor that admits every block.
+   */
+  public OffHeapBlockCache(long maxSize, int pageSize, int slabSize, float minFactor, float acceptableFactor) {
+    this(maxSize, pageSize, pageSize, slabSize, minFactor, acceptableFactor, new AdmitAllPolicy());
+  }
+
+  /**
+   * Configurable constructor.
+   *
+   * @param maxSize
+   *          maximum size of cache, in bytes
+   * @param blockSize
+   *          approximate size of each block, in bytes
+   * @param pageSize
+   *          the unit of allocation, in bytes
+   * @param slabSize
+   *          the size of each direct buffer, in bytes
+   * @param minFactor
+   *          percentage of total size that eviction will evict until
+   * @param acceptableFactor
+   *          percentage of total size that triggers eviction
+   * @param admissionPolicy
+   *          decides which blocks are cached once the cache is full
+   */
+  public OffHeapBlockCache(long maxSize, long blockSize, int pageSize, int slabSize, float minFactor, float acceptableFactor, AdmissionPolicy admissionPolicy) {
+    if (pageSize <= 0 || slabSize < pageSize) {
+      throw new IllegalArgumentException("slabSize must be at least pageSize and pageSize must be positive");
+    }
+    if (minFactor >= acceptableFactor) {
+      throw new IllegalArgumentException("minFactor must be smaller than acceptableFactor");
+    }
+    if (minFactor >= 1.0f || acceptableFactor >= 1.0f) {
+      throw new IllegalArgumentException("all factors must be < 1");
+    }
+    long pages = maxSize / pageSize;
+    if (pages > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Cache size " + maxSize + " is too large for page size " + pageSize);
+    }
+    this.maxSize = maxSize;
+    this.pageSize = pageSize;
+    this.pagesPerSlab = slabSize / pageSize;
+    this.totalPages = (int) pages;
+    this.acceptablePages = (long) Math.floor(totalPages * acceptableFactor);
+    this.minPages = (long) Math.floor(totalPages * minFactor);
+    this.slabs = new ByteBuffer[(totalPages + pagesPerSlab - 1) / pagesPerSlab];
+    this.freePages = new int[totalPages];
+    this.admissionPolicy = admissionPolicy;
+    this.admissionPolicy.init(maxSize, blockSize);
+    this.scheduleThreadPool.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        logStats();
+      }
+    }, statThreadPeriod, statThreadPeriod, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public CacheEntry cacheBlock(String blockName, byte[] buf, boolean inMemory) {
+    OffHeapBlock block = map.get(blockName);
+    if (block != null) {
+      stats.duplicateReads();
+      block.accessTime = count.incrementAndGet();
+      return new OffHeapCacheEntry(block, buf);
+    }
+
+    int numPages = (buf.length + pageSize - 1) / pageSize;
+    if (numPages > totalPages)
+      return null;
+
+    if (!inMemory && usedPages.get() + numPages > acceptablePages && !admissionPolicy.admit(blockName)) {
+      stats.rejected();
+      return null;
+    }
+
+    int[] pages = allocate(numPages);
+    if (pages == null) {
+      evict(true);
+      pages = allocate(numPages);
+      if (pages == null)
+        return null;
+    }
+
+    write(pages, buf);
+    block = new OffHeapBlock(blockName, pages, buf.length, inMemory, count.incrementAndGet());
+
+    OffHeapBlock existing = map.putIfAbsent(blockName, block);
+    if (existing != null) {
+      // lost a race with another thread caching the same block
+      free(pages);
+      stats.duplicateReads();
+      existing.accessTime = count.incrementAndGet();
+      return new OffHeapCacheEntry(existing, buf);
+    }
+
+    elements.incrementAndGet();
+    if (usedPages.get() > acceptablePages && !evictionInProgress) {
+      evict(false);
+    }
+
+    return new OffHeapCacheEntry(block, buf);
+  }
+
+  @Override
+  public CacheEntry cacheBlock(String blockName, byte[] buf) {
+    return cacheBlock(blockName, buf, false);
+  }
+
+  @Override
+  public CacheEntry getBlock(String blockName) {
+    admissionPolicy.recordAccess(blockName);
+    OffHeapBlock block = map.get(blockName);
+    if (block != null && block.pin()) {
+      byte[] buf;
+      try {
+        buf = read(block.pages, block.length);
+      } finally {
+        block.unpin();
+      }
+      stats.hit();
+      block.accessTime = count.incrementAndGet();
+      return new OffHeapCacheEntry(block, buf);
+    }
+    stats.miss();
+    return null;
+  }
+
+  private int[] allocate(int numPages) {
+    synchronized (allocationLock) {
+      if (freePageCount + (totalPages - nextFreshPage) < numPages)
+        return null;
+
+      int[] pages = new int[numPages];
+      for (int i = 0; i < numPages; i++) {
+        if (freePageCount > 0) {
+          pages[i] = freePages[--freePageCount];
+        } else {
+          int page = nextFreshPage++;
+          int slab = page / pagesPerSlab;
+          if (slabs[slab] == null) {
+            int slabPages = Math.min(pagesPerSlab, totalPages - slab * pagesPerSlab);
+            slabs[slab] = ByteBuffer.allocateDirect(slabPages * pageSize);
+          }
+          pages[i] = page;
+        }
+      }
+      usedPages.addAndGet(numPages);
+      return pages;
+    }
+  }
+
+  private void free(int[] pages) {
+    synchronized (allocationLock) {
+      for (int page : pages)
+        freePages[freePageCount++] = page;
+      usedPages.addAndGet(-pages.length);
+    }
+  }
+
+  private ByteBuffer page(int page) {
+    ByteBuffer slab = slabs[page / pagesPerSlab].duplicate();
+    slab.position((page % pagesPerSlab) * pageSize);
+    return slab;
+  }
+
+  private void write(int[] pages, byte[] buf) {
+    int offset = 0;
+    for (int page : pages) {
+      int len = Math.min(pageSize, buf.length - offset);
+      page(page).put(buf, offset, len);
+      offset += len;
+    }
+  }
+
+  private byte[] read(int[] pages, int length) {
+    byte[] buf = new byte[length];
+    int offset = 0;
+    for (int page : pages) {
+      int len = Math.min(pageSize, length - offset);
+      page(page).get(buf, offset, len);
+      offset += len;
+    }
+    return buf;
+  }
+
+  /**
+   * Evicts least recently used blocks until the used pages drop below the minimum level.
+   *
+   * @param wait
+   *          if true wait for an eviction in progress on another thread, otherwise return immediately
+   */
+  void evict(boolean wait) {
+    if (wait) {
+      evictionLock.lock();
+    } else if (!evictionLock.tryLock()) {
+      return;
+    }
+
+    try {
+      evictionInProgress = true;
+
+      long pagesToFree = usedPages.get() - minPages;
+      if (pagesToFree <= 0)
+        return;
+
+      LOG.debug("Off-heap block cache eviction started.  Attempting to free " + pagesToFree * pageSize + " bytes");
+
+      OffHeapBlock[] blocks = map.values().toArray(new OffHeapBlock[0]);
+      Arrays.sort(blocks, EVICTION_ORDER);
+
+      long pagesFreed = 0;
+      for (OffHeapBlock block : blocks) {
+        if (pagesFreed >= pagesToFree)
+          break;
+        // a pinned block is being read, so it is not a good candidate anyway
+        if (block.release()) {
+          map.remove(block.name, block);
+          elements.decrementAndGet();
+          free(block.pages);
+          pagesFreed += block.pages.length;
+          stats.evicted();
+          admissionPolicy.recordEviction(block.name);
+        }
+      }
+
+      LOG.debug("Off-heap block cache eviction completed.  Freed " + pagesFreed * pageSize + " bytes");
+    } finally {
+      stats.evict();
+      evictionInProgress = false;
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Get the number of bytes of off-heap memory currently holding blocks, rounded up to whole pages.
+   */
+  public long getCurrentSize() {
+    return usedPages.get() * pageSize;
+  }
+
+  /**
+   * Get the number of bytes of direct memory allocated so far.
+   */
+  public long getAllocatedSize() {
+    synchronized (allocationLock) {
+      return (long) nextFreshPage * pageSize;
+    }
+  }
+
+  /**
+   * Get the size of this cache (number of cached blocks)
+   */
+  public long size() {
+    return elements.get();
+  }
+
+  @Override
+  public CacheStats getStats() {
+    return stats;
+  }
+
+  public void logStats() {
+    float usedMB = ((float) getCurrentSize()) / ((float) (1024 * 1024));
+    float maxMB = ((float) maxSize) / ((float) (1024 * 1024));
+    LOG.debug("Off-heap Cache Stats: Sizes: Used=" + usedMB + "MB, Max=" + maxMB + "MB, Counts: Blocks=" + size() + ", Access=" + stats.getRequestCount()
+        + ", Hit=" + stats.getHitCount() + ", Miss=" + stats.getMissCount() + ", Evictions=" + stats.getEvictionCount() + ", Evicted="
+        + stats.getEvictedCount() + ", Ratios: Hit Ratio=" + stats.getHitRatio() * 100 + "%, Duplicate Reads=" + stats.getDuplicateReads() + ", Rejected="
+        + stats.getRejectedCount());
+  }
+
+  @Override
+  public void shutdown() {
+    this.scheduleThreadPool.shutdown();
+  }
+}
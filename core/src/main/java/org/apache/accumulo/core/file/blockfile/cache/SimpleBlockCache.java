@@ -31,7 +31,7 @@ public class SimpleBlockCache implements BlockCache {
   private static class SimpleCacheEntry implements CacheEntry {
     
     private byte[] buffer;
-    private Object index;
+    private volatile Object index;
     
     SimpleCacheEntry(byte[] buffer) {
       this.buffer = buffer;
@@ -68,6 +68,8 @@ public class SimpleBlockCache implements BlockCache {
   private ReferenceQueue<SimpleCacheEntry> q = new ReferenceQueue<SimpleCacheEntry>();
   public int dumps = 0;
   
+  private final CacheStats stats = new CacheStats();
+  
   /**
    * Constructor
    */
@@ -80,6 +82,7 @@ public class SimpleBlockCache implements BlockCache {
     while ((r = (Ref) q.poll()) != null) {
       cache.remove(r.blockId);
       dumps++;
+      stats.evicted();
     }
   }
   
@@ -94,9 +97,12 @@ public class SimpleBlockCache implements BlockCache {
   public synchronized SimpleCacheEntry getBlock(String blockName) {
     processQueue(); // clear out some crap.
     Ref ref = cache.get(blockName);
-    if (ref == null)
-      return null;
-    return ref.get();
+    SimpleCacheEntry sce = ref == null ? null : ref.get();
+    if (sce == null)
+      stats.miss();
+    else
+      stats.hit();
+    return sce;
   }
   
   public synchronized SimpleCacheEntry cacheBlock(String blockName, byte buf[]) {
@@ -119,4 +125,9 @@ public class SimpleBlockCache implements BlockCache {
   public long getMaxSize() {
     return Long.MAX_VALUE;
   }
+  
+  @Override
+  public CacheStats getStats() {
+    return stats;
+  }
 }
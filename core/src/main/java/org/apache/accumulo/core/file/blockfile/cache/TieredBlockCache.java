@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache;
+
+/**
+ * Combines an in-memory block cache with a larger, slower second tier such as a {@link LocalDiskBlockCache}. Blocks that miss in the first tier are looked up
+ * in the second and copied into the first when found there. Blocks added to the cache are added to both tiers.
+ * <p>
+ *
+ * The size and statistics reported are those of the first tier. The second tier keeps its own statistics.
+ */
+public class TieredBlockCache implements BlockCache {
+
+  private final BlockCache l1;
+  private final BlockCache l2;
+
+  public TieredBlockCache(BlockCache l1, BlockCache l2) {
+    this.l1 = l1;
+    this.l2 = l2;
+  }
+
+  @Override
+  public CacheEntry cacheBlock(String blockName, byte[] buf, boolean inMemory) {
+    CacheEntry ce = l1.cacheBlock(blockName, buf, inMemory);
+    l2.cacheBlock(blockName, buf, inMemory);
+    return ce;
+  }
+
+  @Override
+  public CacheEntry cacheBlock(String blockName, byte[] buf) {
+    return cacheBlock(blockName, buf, false);
+  }
+
+  @Override
+  public CacheEntry getBlock(String blockName) {
+    CacheEntry ce = l1.getBlock(blockName);
+    if (ce != null)
+      return ce;
+
+    CacheEntry l2Entry = l2.getBlock(blockName);
+    if (l2Entry == null)
+      return null;
+
+    // whether the block was in memory is not known here
+    ce = l1.cacheBlock(blockName, l2Entry.getBuffer());
+    return ce != null ? ce : l2Entry;
+  }
+
+  @Override
+  public long getMaxSize() {
+    return l1.getMaxSize();
+  }
+
+  @Override
+  public CacheStats getStats() {
+    return l1.getStats();
+  }
+
+  public BlockCache getFirstTier() {
+    return l1;
+  }
+
+  public BlockCache getSecondTier() {
+    return l2;
+  }
+
+  @Override
+  public void shutdown() {
+    l1.shutdown();
+    l2.shutdown();
+  }
+}
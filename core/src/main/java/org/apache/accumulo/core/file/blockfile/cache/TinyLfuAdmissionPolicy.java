@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A TinyLFU admission filter. It keeps an approximate access frequency for recently requested blocks in a count-min sketch of 4-bit counters, and admits a
+ * block into a full cache only if it has been requested more often than the block most recently evicted, or as often once it has been requested more than
+ * once. All counters are halved periodically so that the history ages.
+ * <p>
+ *
+ * Together with the caches' own eviction this behaves like W-TinyLFU: blocks are admitted freely until the cache reaches the size at which eviction starts,
+ * which acts as the recency window, and from then on a block read once by a large scan can not displace blocks that are requested repeatedly.
+ * <p>
+ *
+ * The sketch is updated without locks. Concurrent updates may occasionally be lost, which only makes the estimates slightly less accurate.
+ */
+public class TinyLfuAdmissionPolicy implements AdmissionPolicy {
+
+  static final long[] SEED = new long[] {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+  static final long RESET_MASK = 0x7777777777777777L;
+
+  static final int MIN_TABLE_SIZE = 64;
+  static final int MAX_TABLE_SIZE = 1 << 22;
+
+  /** Configured block sizes overestimate the size of RFile blocks, so assume more blocks than the configuration suggests */
+  static final int BLOCKS_PER_CONFIGURED_BLOCK = 8;
+
+  private AtomicLongArray table;
+  private int tableMask;
+  private long sampleSize;
+  private final AtomicLong additions = new AtomicLong(0);
+
+  private volatile String victim = null;
+
+  @Override
+  public void init(long maxSize, long blockSize) {
+    long expectedBlocks = Math.max(1, maxSize / Math.max(1, blockSize)) * BLOCKS_PER_CONFIGURED_BLOCK;
+    int tableSize = MIN_TABLE_SIZE;
+    while (tableSize < expectedBlocks && tableSize < MAX_TABLE_SIZE)
+      tableSize <<= 1;
+    table = new AtomicLongArray(tableSize);
+    tableMask = tableSize - 1;
+    sampleSize = 10L * tableSize;
+  }
+
+  @Override
+  public void recordAccess(String blockName) {
+    long hash = spread(blockName.hashCode());
+    int start = (int) (hash & 3) << 2;
+
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= increment(indexOf(hash, i), (start + i) << 2);
+    }
+
+    if (added && additions.incrementAndGet() >= sampleSize) {
+      reset();
+    }
+  }
+
+  @Override
+  public void recordEviction(String blockName) {
+    victim = blockName;
+  }
+
+  @Override
+  public boolean admit(String blockName) {
+    String v = victim;
+    // a victim that is requested again should not be kept out by itself
+    if (v == null || v.equals(blockName))
+      return true;
+    int candidateFrequency = frequency(blockName);
+    int victimFrequency = frequency(v);
+    // ties go to the candidate unless it has only been seen once, otherwise a victim whose counter saturated would keep every block out
+    return candidateFrequency > victimFrequency || (candidateFrequency == victimFrequency && candidateFrequency > 1);
+  }
+
+  /**
+   * @return the estimated number of recent requests for the block, at most 15
+   */
+  public int frequency(String blockName) {
+    long hash = spread(blockName.hashCode());
+    int start = (int) (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int offset = (start + i) << 2;
+      int count = (int) ((table.get(indexOf(hash, i)) >>> offset) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  private boolean increment(int index, int offset) {
+    long mask = 0xfL << offset;
+    while (true) {
+      long value = table.get(index);
+      if ((value & mask) == mask)
+        return false;
+      if (table.compareAndSet(index, value, value + (1L << offset)))
+        return true;
+    }
+  }
+
+  private synchronized void reset() {
+    if (additions.get() < sampleSize)
+      return;
+    for (int i = 0; i < table.length(); i++) {
+      table.set(i, (table.get(i) >>> 1) & RESET_MASK);
+    }
+    additions.set(additions.get() / 2);
+  }
+
+  private int indexOf(long hash, int i) {
+    long h = (hash + SEED[i]) * SEED[i];
+    h += h >>> 32;
+    return (int) h & tableMask;
+  }
+
+  private static long spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+}
@@ -21,7 +21,10 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.accumulo.core.file.blockfile.ABlockReader;
 import org.apache.accumulo.core.file.blockfile.ABlockWriter;
@@ -50,6 +53,25 @@ public class CachableBlockFile {
   
   private static final Logger log = Logger.getLogger(CachableBlockFile.class);
   
+  /**
+   * Logs every request for a cacheable block at trace level, as "&lt;index|data&gt; &lt;block name&gt; &lt;raw size&gt;". Enabling it records a block access
+   * trace that can be replayed against different cache configurations.
+   */
+  private static final Logger accessLog = Logger.getLogger(CachableBlockFile.class.getName() + ".access");
+  
+  /**
+   * A read of a block that is not in the cache. Other readers that miss on the same block wait for it instead of reading the block again.
+   */
+  private static class PendingLoad {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile CacheEntry entry = null;
+  }
+  
+  /**
+   * Blocks currently being read into a cache, keyed by cache lookup key. Shared by all readers, since different readers may have the same file open.
+   */
+  private static final ConcurrentHashMap<String,PendingLoad> pendingLoads = new ConcurrentHashMap<String,PendingLoad>();
+  
   public static class Writer implements BlockFileWriter {
     private BCFile.Writer _bc;
     private BlockWrite _bw;
@@ -141,14 +163,14 @@ public class CachableBlockFile {
    * 
    */
   public static class Reader implements BlockFileReader {
-    private BCFile.Reader _bc;
+    private volatile BCFile.Reader _bc;
     private String fileName = "not_available";
     private BlockCache _dCache = null;
     private BlockCache _iCache = null;
     private FSDataInputStream fin = null;
     private FileSystem fs;
     private Configuration conf;
-    private boolean closed = false;
+    private volatile boolean closed = false;
     
     private interface BlockLoader {
       BlockReader get() throws IOException;
@@ -246,18 +268,27 @@ public class CachableBlockFile {
       this._bc = new BCFile.Reader(this, fsin, len, conf);
     }
     
-    private synchronized BCFile.Reader getBCFile() throws IOException {
+    private BCFile.Reader getBCFile() throws IOException {
       if (closed)
         throw new IllegalStateException("File " + fileName + " is closed");
       
-      if (_bc == null) {
-        // lazily open file if needed
-        Path path = new Path(fileName);
-        fin = fs.open(path);
-        init(fin, fs.getFileStatus(path).getLen(), conf);
-      }
+      BCFile.Reader bc = _bc;
+      if (bc != null)
+        return bc;
       
-      return _bc;
+      synchronized (this) {
+        if (closed)
+          throw new IllegalStateException("File " + fileName + " is closed");
+        
+        if (_bc == null) {
+          // lazily open file if needed
+          Path path = new Path(fileName);
+          fin = fs.open(path);
+          init(fin, fs.getFileStatus(path).getLen(), conf);
+        }
+        
+        return _bc;
+      }
     }
     
     public BlockRead getCachedMetaBlock(String blockName) throws IOException {
@@ -295,28 +326,67 @@ public class CachableBlockFile {
     
     private BlockRead getBlock(String _lookup, BlockCache cache, BlockLoader loader) throws IOException {
       
-      BlockReader _currBlock;
+      if (cache == null) {
+        BlockReader _currBlock = loader.get();
+        return new BlockRead(_currBlock, _currBlock.getRawSize());
+      }
+      
+      CacheEntry cb = cache.getBlock(_lookup);
+      
+      if (cb != null) {
+        logAccess(cache, _lookup, cb.getBuffer().length);
+        return new CachedBlockRead(cb, cb.getBuffer());
+      }
       
-      if (cache != null) {
-        CacheEntry cb = null;
-        cb = cache.getBlock(_lookup);
+      PendingLoad load = new PendingLoad();
+      PendingLoad pending = pendingLoads.putIfAbsent(_lookup, load);
+      if (pending != null) {
+        // another reader is already reading this block, wait for it rather than reading it again
+        try {
+          pending.done.await();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted while waiting for block " + _lookup);
+        }
         
+        cb = pending.entry;
         if (cb != null) {
+          logAccess(cache, _lookup, cb.getBuffer().length);
           return new CachedBlockRead(cb, cb.getBuffer());
         }
         
+        // the other reader failed or did not cache the block
+        return readBlock(_lookup, cache, loader);
       }
+      
+      try {
+        BlockRead br = readBlock(_lookup, cache, loader);
+        if (br instanceof CachedBlockRead)
+          load.entry = ((CachedBlockRead) br).cb;
+        return br;
+      } finally {
+        pendingLoads.remove(_lookup, load);
+        load.done.countDown();
+      }
+    }
+    
+    private BlockRead readBlock(String _lookup, BlockCache cache, BlockLoader loader) throws IOException {
       /**
        * grab the currBlock at this point the block is still in the data stream
        * 
        */
-      _currBlock = loader.get();
+      BlockReader _currBlock = loader.get();
+      
+      logAccess(cache, _lookup, _currBlock.getRawSize());
       
       /**
        * If the block is bigger than the cache just return the stream
        */
       return cacheBlock(_lookup, cache, _currBlock, loader.getInfo());
-      
+    }
+    
+    private void logAccess(BlockCache cache, String _lookup, long size) {
+      if (accessLog.isTraceEnabled())
+        accessLog.trace((cache == _iCache ? "index " : "data ") + _lookup + " " + size);
     }
     
     private BlockRead cacheBlock(String _lookup, BlockCache cache, BlockReader _currBlock, String block) throws IOException {
@@ -359,8 +429,7 @@ public class CachableBlockFile {
      * It is intended that once the BlockRead object is returned to the caller, that the caller will read the entire block and then call close on the BlockRead
      * class.
      * 
-     * NOTE: In the case of multi-read threads: This method can do redundant work where an entry is read from disk and other threads check the cache before it
-     * has been inserted.
+     * NOTE: In the case of multi-read threads: Concurrent misses on the same block wait for a single read of the block, unless the block does not get cached.
      */
     public BlockRead getMetaBlock(String blockName) throws IOException {
       String _lookup = this.fileName + "M" + blockName;
@@ -377,8 +446,7 @@ public class CachableBlockFile {
      * It is intended that once the BlockRead object is returned to the caller, that the caller will read the entire block and then call close on the BlockRead
      * class.
      * 
-     * NOTE: In the case of multi-read threads: This method can do redundant work where an entry is read from disk and other threads check the cache before it
-     * has been inserted.
+     * NOTE: In the case of multi-read threads: Concurrent misses on the same block wait for a single read of the block, unless the block does not get cached.
      */
     
     public BlockRead getDataBlock(int blockIndex) throws IOException {
@@ -464,12 +532,13 @@ public class CachableBlockFile {
     
     @Override
     public <T> T getIndex(Class<T> clazz) {
-      T bi = null;
+      // readers of an indexed block do not need to lock, only the first one to index it
+      T bi = getIndex();
+      if (bi != null)
+        return bi;
+      
       synchronized (cb) {
-        @SuppressWarnings("unchecked")
-        SoftReference<T> softRef = (SoftReference<T>) cb.getIndex();
-        if (softRef != null)
-          bi = softRef.get();
+        bi = getIndex();
         
         if (bi == null) {
           try {
@@ -483,6 +552,12 @@ public class CachableBlockFile {
       
       return bi;
     }
+    
+    private <T> T getIndex() {
+      @SuppressWarnings("unchecked")
+      SoftReference<T> softRef = (SoftReference<T>) cb.getIndex();
+      return softRef == null ? null : softRef.get();
+    }
   }
 
   /**
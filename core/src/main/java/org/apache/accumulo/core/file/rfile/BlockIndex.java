@@ -158,13 +158,12 @@ public class BlockIndex {
 
     while (count < (indexEntry.getNumEntries() - interval + 1)) {
 
-      Key myPrevKey = rk.getKey();
       int pos = cacheBlock.getPosition();
       rk.readFields(cacheBlock);
       val.readFields(cacheBlock);
 
       if (count > 0 && count % interval == 0) {
-        index.add(new BlockIndexEntry(pos, indexEntry.getNumEntries() - count, myPrevKey));
+        index.add(new BlockIndexEntry(pos, indexEntry.getNumEntries() - count, rk.getPrevKey()));
       }
       
       count++;
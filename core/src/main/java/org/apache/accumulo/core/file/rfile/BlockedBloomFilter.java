@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.rfile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.accumulo.core.bloomfilter.BloomFilter;
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.file.BloomFilterLayer;
+import org.apache.accumulo.core.file.blockfile.ABlockReader;
+import org.apache.accumulo.core.file.blockfile.ABlockWriter;
+import org.apache.accumulo.core.file.blockfile.BlockFileReader;
+import org.apache.accumulo.core.file.blockfile.BlockFileWriter;
+import org.apache.accumulo.core.file.keyfunctor.KeyFunctor;
+import org.apache.accumulo.core.file.rfile.bcfile.MetaBlockDoesNotExist;
+import org.apache.accumulo.start.classloader.vfs.AccumuloVFSClassLoader;
+import org.apache.hadoop.util.hash.Hash;
+import org.apache.log4j.Logger;
+
+/**
+ * A bloom filter for an RFile that is split into chunks, each covering a consecutive range of keys in a locality group. Chunks are written next to the index
+ * blocks, at data block boundaries, and are read independently through the index cache. A lookup only tests the chunks covering the range it seeks to, so
+ * unlike {@link BloomFilterLayer} the filter does not have to be loaded in full before it is useful and only the chunks that are used take memory.
+ * <p>
+ *
+ * The chunks of each locality group are listed in a meta block, along with the last key each chunk covers.
+ */
+public class BlockedBloomFilter {
+
+  private static final Logger log = Logger.getLogger(BlockedBloomFilter.class);
+
+  static final String BLOOM_META_NAME = "RFile.bloom";
+  static final int BLOOM_VERSION = 1;
+
+  static int getVectorSize(int numKeys, double errorRate) {
+    // see BloomFilterLayer.Writer
+    int hashCount = BloomFilterLayer.HASH_COUNT;
+    return (int) Math.ceil(-hashCount * numKeys / Math.log(1.0 - Math.pow(errorRate, 1.0 / hashCount)));
+  }
+
+  private static class ChunkEntry {
+    private final Key lastKey;
+    private final long offset;
+    private final long compressedSize;
+    private final long rawSize;
+
+    ChunkEntry(Key lastKey, long offset, long compressedSize, long rawSize) {
+      this.lastKey = lastKey;
+      this.offset = offset;
+      this.compressedSize = compressedSize;
+      this.rawSize = rawSize;
+    }
+  }
+
+  /**
+   * The deserialized bloom filter of a chunk, kept with the cached chunk block so it is only read once.
+   */
+  public static class Chunk {
+    private volatile BloomFilter filter = null;
+
+    BloomFilter getFilter(ABlockReader in) throws IOException {
+      BloomFilter bf = filter;
+      if (bf == null) {
+        synchronized (this) {
+          bf = filter;
+          if (bf == null) {
+            bf = new BloomFilter();
+            bf.readFields(in);
+            filter = bf;
+          }
+        }
+      }
+      return bf;
+    }
+  }
+
+  static class Writer {
+    private final BlockFileWriter fileWriter;
+    private final KeyFunctor transformer;
+    private final int chunkSize;
+    private final double errorRate;
+    private final int hashType;
+
+    private final List<List<ChunkEntry>> localityGroups = new ArrayList<List<ChunkEntry>>();
+    private final List<org.apache.hadoop.util.bloom.Key> pending = new ArrayList<org.apache.hadoop.util.bloom.Key>();
+    private byte[] prevBloomKey = null;
+
+    Writer(BlockFileWriter fileWriter, AccumuloConfiguration acuconf) {
+      this.fileWriter = fileWriter;
+      this.chunkSize = acuconf.getCount(Property.TABLE_BLOOM_CHUNK_SIZE);
+      this.errorRate = acuconf.getFraction(Property.TABLE_BLOOM_ERRORRATE);
+      this.hashType = Hash.parseHashType(acuconf.get(Property.TABLE_BLOOM_HASHTYPE));
+
+      try {
+        Class<? extends KeyFunctor> clazz = AccumuloVFSClassLoader.loadClass(acuconf.get(Property.TABLE_BLOOM_KEY_FUNCTOR), KeyFunctor.class);
+        transformer = clazz.newInstance();
+      } catch (Exception e) {
+        log.error("Failed to find KeyFunctor: " + acuconf.get(Property.TABLE_BLOOM_KEY_FUNCTOR), e);
+        throw new IllegalArgumentException("Failed to find KeyFunctor: " + acuconf.get(Property.TABLE_BLOOM_KEY_FUNCTOR));
+      }
+    }
+
+    void startLocalityGroup() {
+      localityGroups.add(new ArrayList<ChunkEntry>());
+      pending.clear();
+      prevBloomKey = null;
+    }
+
+    void add(Key key) {
+      org.apache.hadoop.util.bloom.Key bloomKey = transformer.transform(key);
+      byte[] bytes = bloomKey.getBytes();
+      if (bytes.length == 0)
+        return;
+      // keys are sorted, so repeats of a bloom key are usually adjacent
+      if (prevBloomKey != null && Arrays.equals(prevBloomKey, bytes))
+        return;
+      pending.add(bloomKey);
+      prevBloomKey = bytes;
+    }
+
+    /**
+     * Called after a data block is closed. Writes a chunk once enough keys are pending, and always after the last block of a locality group so the chunks
+     * cover all of its keys.
+     */
+    void blockClosed(Key lastKey, boolean lastBlock) throws IOException {
+      if (pending.size() < chunkSize && !lastBlock)
+        return;
+
+      BloomFilter filter = new BloomFilter(getVectorSize(Math.max(1, pending.size()), errorRate), BloomFilterLayer.HASH_COUNT, hashType);
+      for (org.apache.hadoop.util.bloom.Key bloomKey : pending)
+        filter.add(bloomKey);
+      pending.clear();
+      // a lookup starts at the chunk holding the start of its range, so a bloom key whose keys continue into the next chunk must be added to it too
+      prevBloomKey = null;
+
+      ABlockWriter out = fileWriter.prepareDataBlock();
+      filter.write(out);
+      out.close();
+
+      localityGroups.get(localityGroups.size() - 1).add(new ChunkEntry(new Key(lastKey), out.getStartPos(), out.getCompressedSize(), out.getRawSize()));
+    }
+
+    void close() throws IOException {
+      ABlockWriter out = fileWriter.prepareMetaBlock(BLOOM_META_NAME);
+      out.writeInt(BLOOM_VERSION);
+      out.writeUTF(transformer.getClass().getName());
+      out.writeInt(localityGroups.size());
+      for (List<ChunkEntry> chunks : localityGroups) {
+        out.writeInt(chunks.size());
+        for (ChunkEntry chunk : chunks) {
+          chunk.lastKey.write(out);
+          out.writeLong(chunk.offset);
+          out.writeLong(chunk.compressedSize);
+          out.writeLong(chunk.rawSize);
+        }
+      }
+      out.close();
+    }
+  }
+
+  static class Reader {
+    private final BlockFileReader blockReader;
+    private final KeyFunctor transformer;
+    private final Key[][] lastKeys;
+    private final long[][] offsets;
+    private final long[][] compressedSizes;
+    private final long[][] rawSizes;
+
+    /**
+     * @return the bloom filter of the file, or null if the file does not have one that can be used
+     */
+    static Reader open(BlockFileReader blockReader) throws IOException {
+      ABlockReader in;
+      try {
+        in = blockReader.getMetaBlock(BLOOM_META_NAME);
+      } catch (MetaBlockDoesNotExist e) {
+        return null;
+      }
+
+      try {
+        int version = in.readInt();
+        if (version != BLOOM_VERSION)
+          throw new IOException("Did not see expected bloom filter version, saw " + version);
+
+        String className = in.readUTF();
+        KeyFunctor transformer;
+        try {
+          Class<? extends KeyFunctor> clazz = AccumuloVFSClassLoader.loadClass(className, KeyFunctor.class);
+          transformer = clazz.newInstance();
+        } catch (Exception e) {
+          log.error("Failed to find KeyFunctor: " + className, e);
+          return null;
+        }
+        return new Reader(blockReader, transformer, in);
+      } finally {
+        in.close();
+      }
+    }
+
+    private Reader(BlockFileReader blockReader, KeyFunctor transformer, ABlockReader in) throws IOException {
+      this.blockReader = blockReader;
+      this.transformer = transformer;
+
+      int numGroups = in.readInt();
+      lastKeys = new Key[numGroups][];
+      offsets = new long[numGroups][];
+      compressedSizes = new long[numGroups][];
+      rawSizes = new long[numGroups][];
+      for (int g = 0; g < numGroups; g++) {
+        int numChunks = in.readInt();
+        lastKeys[g] = new Key[numChunks];
+        offsets[g] = new long[numChunks];
+        compressedSizes[g] = new long[numChunks];
+        rawSizes[g] = new long[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+          lastKeys[g][i] = new Key();
+          lastKeys[g][i].readFields(in);
+          offsets[g][i] = in.readLong();
+          compressedSizes[g][i] = in.readLong();
+          rawSizes[g][i] = in.readLong();
+        }
+      }
+    }
+
+    int getChunkCount() {
+      int count = 0;
+      for (Key[] keys : lastKeys)
+        count += keys.length;
+      return count;
+    }
+
+    /**
+     * Checks if the file may contain keys from the range, testing only the chunks that cover it.
+     *
+     * @return false iff no key in the range exists, true if a key probably exists
+     */
+    boolean probablyHasKey(Range range) throws IOException {
+      org.apache.hadoop.util.bloom.Key bloomKey = transformer.transform(range);
+      if (bloomKey == null || bloomKey.getBytes().length == 0)
+        return true;
+
+      for (int g = 0; g < lastKeys.length; g++) {
+        Key[] keys = lastKeys[g];
+        int i = range.getStartKey() == null ? 0 : firstChunk(keys, range.getStartKey());
+        for (; i < keys.length; i++) {
+          if (getFilter(g, i).membershipTest(bloomKey))
+            return true;
+          if (range.afterEndKey(keys[i]))
+            break;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @return the first chunk whose last key is not before the key
+     */
+    private static int firstChunk(Key[] keys, Key key) {
+      int low = 0;
+      int high = keys.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (keys[mid].compareTo(key) < 0)
+          low = mid + 1;
+        else
+          high = mid;
+      }
+      return low;
+    }
+
+    private BloomFilter getFilter(int group, int chunk) throws IOException {
+      ABlockReader in = blockReader.getMetaBlock(offsets[group][chunk], compressedSizes[group][chunk], rawSizes[group][chunk]);
+      try {
+        if (in.isIndexable())
+          return in.getIndex(Chunk.class).getFilter(in);
+
+        BloomFilter bf = new BloomFilter();
+        bf.readFields(in);
+        return bf;
+      } finally {
+        in.close();
+      }
+    }
+  }
+}
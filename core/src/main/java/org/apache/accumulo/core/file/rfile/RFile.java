@@ -58,8 +58,10 @@ import org.apache.accumulo.core.file.rfile.bcfile.MetaBlockDoesNotExist;
 import org.apache.accumulo.core.iterators.IterationInterruptedException;
 import org.apache.accumulo.core.iterators.IteratorEnvironment;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.system.BatchIterator;
 import org.apache.accumulo.core.iterators.system.HeapIterator;
 import org.apache.accumulo.core.iterators.system.InterruptibleIterator;
+import org.apache.accumulo.core.iterators.system.KeyValueBatch;
 import org.apache.accumulo.core.iterators.system.LocalityGroupIterator;
 import org.apache.accumulo.core.iterators.system.LocalityGroupIterator.LocalityGroup;
 import org.apache.accumulo.core.util.MutableByteSequence;
@@ -303,6 +305,8 @@ public class RFile {
     
     private HashSet<ByteSequence> previousColumnFamilies;
     
+    private BlockedBloomFilter.Writer bloomFilter = null;
+    
     public Writer(BlockFileWriter bfw, int blockSize) throws IOException {
       this(bfw, blockSize, (int) AccumuloConfiguration.getDefaultConfiguration().getMemoryInBytes(Property.TABLE_FILE_COMPRESSED_BLOCK_SIZE_INDEX));
     }
@@ -315,6 +319,15 @@ public class RFile {
       previousColumnFamilies = new HashSet<ByteSequence>();
     }
     
+    /**
+     * Stores a bloom filter in the file, in chunks alongside the index. Must be called before anything is appended.
+     */
+    void setBloomFilter(BlockedBloomFilter.Writer bloomFilter) {
+      if (currentLocalityGroup != null)
+        throw new IllegalStateException("Can not add a bloom filter after locality groups were started");
+      this.bloomFilter = bloomFilter;
+    }
+    
     @Override
     public synchronized void close() throws IOException {
       
@@ -324,6 +337,9 @@ public class RFile {
       
       closeData();
       
+      if (bloomFilter != null)
+        bloomFilter.close();
+      
       ABlockWriter mba = fileWriter.prepareMetaBlock("RFile.index");
       
       mba.writeInt(RINDEX_MAGIC);
@@ -388,6 +404,9 @@ public class RFile {
       value.write(blockWriter);
       entries++;
       
+      if (bloomFilter != null)
+        bloomFilter.add(key);
+      
       prevKey = new Key(key);
       lastKeyInBlock = prevKey;
       
@@ -401,6 +420,9 @@ public class RFile {
       else
         currentLocalityGroup.indexWriter.add(key, entries, blockWriter.getStartPos(), blockWriter.getCompressedSize(), blockWriter.getRawSize());
       
+      if (bloomFilter != null)
+        bloomFilter.blockClosed(key, lastBlock);
+      
       blockWriter = null;
       lastKeyInBlock = null;
       entries = 0;
@@ -444,6 +466,9 @@ public class RFile {
         previousColumnFamilies.addAll(columnFamilies);
       }
       
+      if (bloomFilter != null)
+        bloomFilter.startLocalityGroup();
+      
       prevKey = new Key();
     }
     
@@ -466,7 +491,7 @@ public class RFile {
     }
   }
   
-  private static class LocalityGroupReader extends LocalityGroup implements FileSKVIterator {
+  private static class LocalityGroupReader extends LocalityGroup implements FileSKVIterator, BatchIterator {
     
     private BlockFileReader reader;
     private MultiLevelIndex.Reader index;
@@ -517,6 +542,7 @@ public class RFile {
     private ABlockReader currBlock;
     private RelativeKey rk;
     private Value val;
+    // the key before the top key, when it is not the previous key of rk
     private Key prevKey = null;
     private Range range = null;
     private boolean hasTop = false;
@@ -572,7 +598,7 @@ public class RFile {
         }
       }
       
-      prevKey = rk.getKey();
+      prevKey = null;
       rk.readFields(currBlock);
       val.readFields(currBlock);
       entriesLeft--;
@@ -580,6 +606,27 @@ public class RFile {
         hasTop = !range.afterEndKey(rk.getKey());
     }
     
+    /**
+     * Keys are only created from the fields rk decodes when they are asked for, so the key before the top key comes from rk unless a seek set it.
+     */
+    private Key getPrevKey() {
+      if (prevKey == null)
+        prevKey = rk.getPrevKey();
+      return prevKey;
+    }
+    
+    @Override
+    public int nextBatch(KeyValueBatch batch) throws IOException {
+      int added = 0;
+      while (hasTop && !batch.isFull()) {
+        // the value's array is not copied, because reading the next value replaces the array instead of writing into it
+        batch.add(rk.getKey(), new Value(val.get(), false));
+        added++;
+        next();
+      }
+      return added;
+    }
+    
     private ABlockReader getDataBlock(IndexEntry indexEntry) throws IOException {
       if (interruptFlag != null && interruptFlag.get())
         throw new IterationInterruptedException();
@@ -591,6 +638,32 @@ public class RFile {
       
     }
     
+    int warmCache(Key startKey, int maxDataBlocks) throws IOException {
+      if (closed)
+        throw new IllegalStateException("Locality group reader closed");
+      
+      if (blockCount == 0)
+        return 0;
+      
+      // the data blocks are checked when read, but warming only the index reads no data blocks
+      if (interruptFlag != null && interruptFlag.get())
+        throw new IterationInterruptedException();
+      
+      // the lookup reads the index blocks leading to the key, and advancing reads the index blocks that follow
+      iiter = index.lookup(startKey);
+      int count = 0;
+      try {
+        while (count < maxDataBlocks && iiter.hasNext()) {
+          IndexEntry indexEntry = iiter.next();
+          getDataBlock(indexEntry).close();
+          count++;
+        }
+      } finally {
+        reset();
+      }
+      return count;
+    }
+    
     @Override
     public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) throws IOException {
       
@@ -651,13 +724,13 @@ public class RFile {
       }
       
       if (rk != null) {
-        if (range.beforeStartKey(prevKey) && range.afterEndKey(getTopKey())) {
+        if (range.beforeStartKey(getPrevKey()) && range.afterEndKey(getTopKey())) {
           // range is between the two keys in the file where the last range seeked to stopped, so there is
           // nothing to do
           reseek = false;
         }
         
-        if (startKey.compareTo(getTopKey()) <= 0 && startKey.compareTo(prevKey) > 0) {
+        if (startKey.compareTo(getTopKey()) <= 0 && startKey.compareTo(getPrevKey()) > 0) {
           // current location in file can satisfy this request, no need to seek
           reseek = false;
         }
@@ -672,7 +745,7 @@ public class RFile {
           // and speed up others.
 
           MutableByteSequence valbs = new MutableByteSequence(new byte[64], 0, 0);
-          SkippR skippr = RelativeKey.fastSkip(currBlock, startKey, valbs, prevKey, getTopKey());
+          SkippR skippr = RelativeKey.fastSkip(currBlock, startKey, valbs, getPrevKey(), getTopKey());
           if (skippr.skipped > 0) {
             entriesLeft -= skippr.skipped;
             val = new Value(valbs.toArray());
@@ -819,7 +892,17 @@ public class RFile {
     
     private AtomicBoolean interruptFlag;
     
+    private BlockedBloomFilter.Reader bloomFilter = null;
+    
     public Reader(BlockFileReader rdr) throws IOException {
+      this(rdr, false);
+    }
+    
+    /**
+     * @param useBloomFilter
+     *          if the file has a bloom filter, use it to skip seeks to ranges that do not exist in the file
+     */
+    public Reader(BlockFileReader rdr, boolean useBloomFilter) throws IOException {
       this.reader = rdr;
       
       ABlockReader mb = reader.getMetaBlock("RFile.index");
@@ -847,6 +930,9 @@ public class RFile {
       
       mb.close();
       
+      if (useBloomFilter)
+        bloomFilter = BlockedBloomFilter.Reader.open(rdr);
+      
       nonDefaultColumnFamilies = new HashSet<ByteSequence>();
       for (LocalityGroupMetadata lgm : localityGroups) {
         if (!lgm.isDefaultLG)
@@ -863,6 +949,7 @@ public class RFile {
       this.lgReaders = new LocalityGroupReader[r.lgReaders.length];
       this.deepCopies = r.deepCopies;
       this.deepCopy = true;
+      this.bloomFilter = r.bloomFilter;
       for (int i = 0; i < lgReaders.length; i++) {
         this.lgReaders[i] = new LocalityGroupReader(r.lgReaders[i]);
         this.lgReaders[i].setInterruptFlag(r.interruptFlag);
@@ -976,6 +1063,11 @@ public class RFile {
     
     @Override
     public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) throws IOException {
+      if (bloomFilter != null && !bloomFilter.probablyHasKey(range)) {
+        clear();
+        numLGSeeked = 0;
+        return;
+      }
       numLGSeeked = LocalityGroupIterator.seek(this, lgReaders, nonDefaultColumnFamilies, range, columnFamilies, inclusive);
     }
     
@@ -994,6 +1086,24 @@ public class RFile {
       return new MultiIndexIterator(this, indexes);
     }
     
+    /**
+     * Reads the index blocks leading to a key and up to the given number of data blocks starting at it, so that they are loaded into the caches this file
+     * was opened with. The data blocks are divided between the locality groups. The reader must be seeked before it is used to read data afterwards.
+     * 
+     * @return the number of data blocks read
+     */
+    public int warmCache(Key startKey, int maxDataBlocks) throws IOException {
+      if (deepCopy)
+        throw new RuntimeException("Calling warmCache on a deep copy is not supported");
+      
+      int count = 0;
+      for (int i = 0; i < lgReaders.length; i++) {
+        int groupsLeft = lgReaders.length - i;
+        count += lgReaders[i].warmCache(startKey, (maxDataBlocks - count + groupsLeft - 1) / groupsLeft);
+      }
+      return count;
+    }
+    
     public void printInfo() throws IOException {
       for (LocalityGroupMetadata lgm : localityGroups) {
         lgm.printInfo();
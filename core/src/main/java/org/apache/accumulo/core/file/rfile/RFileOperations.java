@@ -26,6 +26,7 @@ import org.apache.accumulo.core.conf.Property;
 import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.file.BloomFilterLayer;
 import org.apache.accumulo.core.file.FileOperations;
 import org.apache.accumulo.core.file.FileSKVIterator;
 import org.apache.accumulo.core.file.FileSKVWriter;
@@ -60,7 +61,7 @@ public class RFileOperations extends FileOperations {
     // FSDataInputStream in = fs.open(path);
     // Reader reader = new RFile.Reader(in, len , conf);
     CachableBlockFile.Reader _cbr = new CachableBlockFile.Reader(fs, path, conf, dataCache, indexCache);
-    final Reader reader = new RFile.Reader(_cbr);
+    final Reader reader = new RFile.Reader(_cbr, false);
     
     return reader.getIndex();
   }
@@ -76,7 +77,7 @@ public class RFileOperations extends FileOperations {
     Path path = new Path(file);
     
     CachableBlockFile.Reader _cbr = new CachableBlockFile.Reader(fs, path, conf, dataCache, indexCache);
-    Reader iter = new RFile.Reader(_cbr);
+    Reader iter = new RFile.Reader(_cbr, acuconf.getBoolean(Property.TABLE_BLOOM_ENABLED));
     
     if (seekToBeginning) {
       iter.seek(new Range((Key) null, null), EMPTY_CF_SET, false);
@@ -123,6 +124,15 @@ public class RFileOperations extends FileOperations {
     
     CachableBlockFile.Writer _cbw = new CachableBlockFile.Writer(fs.create(new Path(file), false, bufferSize, (short) rep, block), compression, conf);
     Writer writer = new RFile.Writer(_cbw, (int) blockSize, (int) indexBlockSize);
+    if (usesBlockedBloomFilter(acuconf))
+      writer.setBloomFilter(new BlockedBloomFilter.Writer(_cbw, acuconf));
     return writer;
   }
+  
+  /**
+   * @return true if rfiles written with the configuration store their own bloom filter, instead of one added by {@link BloomFilterLayer}
+   */
+  public static boolean usesBlockedBloomFilter(AccumuloConfiguration acuconf) {
+    return acuconf.getBoolean(Property.TABLE_BLOOM_ENABLED) && acuconf.getCount(Property.TABLE_BLOOM_CHUNK_SIZE) > 0;
+  }
 }
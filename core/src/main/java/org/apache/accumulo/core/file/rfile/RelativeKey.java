@@ -34,6 +34,15 @@ public class RelativeKey implements Writable {
   private Key key;
   private Key prevKey;
   
+  // The fields of the last key read, which the next key is decoded against, and of the key read before it. Fields that are the same as
+  // in the previous key share its byte arrays, and the keys are only created when asked for.
+  private byte[] row, cf, cq, cv;
+  private long ts;
+  private boolean deleted;
+  private byte[] prevRow, prevCf, prevCq, prevCv;
+  private long prevTs;
+  private boolean prevDeleted;
+  
   private byte fieldsSame;
   private byte fieldsPrefixed;
   
@@ -158,12 +167,43 @@ public class RelativeKey implements Writable {
     return prevLen == curLen ? -1 : maxChecks;
   }
   
+  /**
+   * Sets the key the next key read is decoded against. This also becomes the current key.
+   */
   public void setPrevKey(Key pk) {
-    this.prevKey = pk;
+    this.key = pk;
+    this.row = toArray(pk.getRowData());
+    this.cf = toArray(pk.getColumnFamilyData());
+    this.cq = toArray(pk.getColumnQualifierData());
+    this.cv = toArray(pk.getColumnVisibilityData());
+    this.ts = pk.getTimestamp();
+    this.deleted = pk.isDeleted();
+    
+    this.prevKey = null;
+    this.prevRow = null;
+  }
+  
+  /**
+   * @return the backing array of a key's field, which is not copied because keys never modify their arrays
+   */
+  private static byte[] toArray(ByteSequence bs) {
+    if (bs.isBackedByArray() && bs.offset() == 0 && bs.getBackingArray().length == bs.length())
+      return bs.getBackingArray();
+    return bs.toArray();
   }
   
   @Override
   public void readFields(DataInput in) throws IOException {
+    // the last key read becomes the previous key
+    prevRow = row;
+    prevCf = cf;
+    prevCq = cq;
+    prevCv = cv;
+    prevTs = ts;
+    prevDeleted = deleted;
+    prevKey = key;
+    key = null;
+    
     fieldsSame = in.readByte();
     if ((fieldsSame & PREFIX_COMPRESSION_ENABLED) == PREFIX_COMPRESSION_ENABLED) {
       fieldsPrefixed = in.readByte();
@@ -171,51 +211,47 @@ public class RelativeKey implements Writable {
       fieldsPrefixed = 0;
     }
     
-    byte[] row, cf, cq, cv;
-    long ts;
-    
     if ((fieldsSame & ROW_SAME) == ROW_SAME) {
-      row = prevKey.getRowData().toArray();
+      row = prevRow;
     } else if ((fieldsPrefixed & ROW_COMMON_PREFIX) == ROW_COMMON_PREFIX) {
-      row = readPrefix(in, prevKey.getRowData());
+      row = readPrefix(in, prevRow);
     } else {
       row = read(in);
     }
     
     if ((fieldsSame & CF_SAME) == CF_SAME) {
-      cf = prevKey.getColumnFamilyData().toArray();
+      cf = prevCf;
     } else if ((fieldsPrefixed & CF_COMMON_PREFIX) == CF_COMMON_PREFIX) {
-      cf = readPrefix(in, prevKey.getColumnFamilyData());
+      cf = readPrefix(in, prevCf);
     } else {
       cf = read(in);
     }
     
     if ((fieldsSame & CQ_SAME) == CQ_SAME) {
-      cq = prevKey.getColumnQualifierData().toArray();
+      cq = prevCq;
     } else if ((fieldsPrefixed & CQ_COMMON_PREFIX) == CQ_COMMON_PREFIX) {
-      cq = readPrefix(in, prevKey.getColumnQualifierData());
+      cq = readPrefix(in, prevCq);
     } else {
       cq = read(in);
     }
     
     if ((fieldsSame & CV_SAME) == CV_SAME) {
-      cv = prevKey.getColumnVisibilityData().toArray();
+      cv = prevCv;
     } else if ((fieldsPrefixed & CV_COMMON_PREFIX) == CV_COMMON_PREFIX) {
-      cv = readPrefix(in, prevKey.getColumnVisibilityData());
+      cv = readPrefix(in, prevCv);
     } else {
       cv = read(in);
     }
     
     if ((fieldsSame & TS_SAME) == TS_SAME) {
-      ts = prevKey.getTimestamp();
+      ts = prevTs;
     } else if ((fieldsPrefixed & TS_DIFF) == TS_DIFF) {
-      ts = WritableUtils.readVLong(in) + prevKey.getTimestamp();
+      ts = WritableUtils.readVLong(in) + prevTs;
     } else {
       ts = WritableUtils.readVLong(in);
     }
     
-    this.key = new Key(row, cf, cq, cv, ts, (fieldsSame & DELETED) == DELETED, false);
-    this.prevKey = this.key;
+    deleted = (fieldsSame & DELETED) == DELETED;
   }
   
   public static class SkippR {
@@ -271,20 +307,20 @@ public class RelativeKey implements Writable {
       if (rowCmp >= 0) {
         if (rowCmp > 0) {
           RelativeKey rk = new RelativeKey();
-          rk.key = rk.prevKey = new Key(currKey);
+          rk.setPrevKey(new Key(currKey));
           return new SkippR(rk, 0, prevKey);
         }
         
         if (cfCmp >= 0) {
           if (cfCmp > 0) {
             RelativeKey rk = new RelativeKey();
-            rk.key = rk.prevKey = new Key(currKey);
+            rk.setPrevKey(new Key(currKey));
             return new SkippR(rk, 0, prevKey);
           }
           
           if (cqCmp >= 0) {
             RelativeKey rk = new RelativeKey();
-            rk.key = rk.prevKey = new Key(currKey);
+            rk.setPrevKey(new Key(currKey));
             return new SkippR(rk, 0, prevKey);
           }
         }
@@ -429,11 +465,11 @@ public class RelativeKey implements Writable {
       throw new IllegalStateException();
     }
     
+    Key resultKey = new Key(row.getBackingArray(), row.offset(), row.length(), cf.getBackingArray(), cf.offset(), cf.length(), cq.getBackingArray(),
+        cq.offset(), cq.length(), cv.getBackingArray(), cv.offset(), cv.length(), ts);
+    resultKey.setDeleted((fieldsSame & DELETED) != 0);
     RelativeKey result = new RelativeKey();
-    result.key = new Key(row.getBackingArray(), row.offset(), row.length(), cf.getBackingArray(), cf.offset(), cf.length(), cq.getBackingArray(), cq.offset(),
-        cq.length(), cv.getBackingArray(), cv.offset(), cv.length(), ts);
-    result.key.setDeleted((fieldsSame & DELETED) != 0);
-    result.prevKey = result.key;
+    result.setPrevKey(resultKey);
     
     return new SkippR(result, count, newPrevKey);
   }
@@ -457,20 +493,15 @@ public class RelativeKey implements Writable {
     mbseqDestination.setLength(len);
   }
   
-  private static byte[] readPrefix(DataInput in, ByteSequence prefixSource) throws IOException {
+  private static byte[] readPrefix(DataInput in, byte[] prefixSource) throws IOException {
     int prefixLen = WritableUtils.readVInt(in);
     int remainingLen = WritableUtils.readVInt(in);
     byte[] data = new byte[prefixLen + remainingLen];
-    if (prefixSource.isBackedByArray()) {
-      System.arraycopy(prefixSource.getBackingArray(), prefixSource.offset(), data, 0, prefixLen);
-    } else {
-      byte[] prefixArray = prefixSource.toArray();
-      System.arraycopy(prefixArray, 0, data, 0, prefixLen);
-    }
+    System.arraycopy(prefixSource, 0, data, 0, prefixLen);
     // read remaining
     in.readFully(data, prefixLen, remainingLen);
     return data;
-    }
+  }
     
   private static void readPrefix(DataInput in, MutableByteSequence dest, ByteSequence prefixSource) throws IOException {
     int prefixLen = WritableUtils.readVInt(in);
@@ -490,17 +521,32 @@ public class RelativeKey implements Writable {
     dest.setLength(len);
   }
   
+  private static final byte[] EMPTY = new byte[0];
+  
   private static byte[] read(DataInput in) throws IOException {
     int len = WritableUtils.readVInt(in);
+    if (len == 0)
+      return EMPTY;
     byte[] data = new byte[len];
     in.readFully(data);
     return data;
   }
   
   public Key getKey() {
+    if (key == null && row != null)
+      key = new Key(row, cf, cq, cv, ts, deleted, false);
     return key;
   }
   
+  /**
+   * @return the key read before the current key, or null if it is not known
+   */
+  public Key getPrevKey() {
+    if (prevKey == null && prevRow != null)
+      prevKey = new Key(prevRow, prevCf, prevCq, prevCv, prevTs, prevDeleted, false);
+    return prevKey;
+  }
+  
   private static void write(DataOutput out, ByteSequence bs) throws IOException {
     WritableUtils.writeVInt(out, bs.length());
     out.write(bs.getBackingArray(), bs.offset(), bs.length());
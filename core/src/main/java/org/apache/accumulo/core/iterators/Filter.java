@@ -26,6 +26,8 @@ import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.system.BatchIterator;
+import org.apache.accumulo.core.iterators.system.KeyValueBatch;
 
 /**
  * A SortedKeyValueIterator that filters entries from its source iterator.
@@ -78,6 +80,29 @@ public abstract class Filter extends WrappingIterator implements OptionDescriber
     }
   }
   
+  /**
+   * Adds the key/values that match the filter to the batch, reading them from the source in batches. Filters that implement {@link BatchIterator} can use this
+   * for {@link BatchIterator#nextBatch(KeyValueBatch)}.
+   */
+  protected int nextAcceptedBatch(KeyValueBatch batch) throws IOException {
+    int start = batch.size();
+    while (getSource().hasTop() && !batch.isFull()) {
+      int segment = batch.size();
+      batch.addFrom(getSource());
+      
+      int kept = segment;
+      for (int i = segment; i < batch.size(); i++) {
+        Key k = batch.getKey(i);
+        if (k.isDeleted() || negate != accept(k, batch.getValue(i)))
+          batch.move(i, kept++);
+      }
+      batch.truncate(kept);
+      
+      findTop();
+    }
+    return batch.size() - start;
+  }
+  
   /**
    * @return <tt>true</tt> if the key/value pair is accepted by the filter.
    */
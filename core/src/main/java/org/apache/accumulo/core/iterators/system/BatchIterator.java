@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.iterators.system;
+
+import java.io.IOException;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+
+/**
+ * An iterator that can return many key/values in one call, instead of one at a time through {@link #getTopKey()}, {@link #getTopValue()} and {@link #next()}.
+ * System iterators implement this so that a block of key/values passes through each layer of the iterator stack in one call. An iterator whose source does
+ * not implement this falls back to reading the source one key/value at a time, with {@link KeyValueBatch#fill(SortedKeyValueIterator)}.
+ */
+public interface BatchIterator extends SortedKeyValueIterator<Key,Value> {
+
+  /**
+   * Adds the top key/value, and the key/values that follow it, to the batch until the batch is full or this iterator runs out of data. Afterwards the iterator
+   * is positioned at the first key/value that was not added, exactly as if {@link #next()} had been called once for each key/value added. Must only be called
+   * when {@link #hasTop()} is true.
+   * <p>
+   *
+   * The keys and values added belong to the batch. The iterator does not modify or reuse them later.
+   *
+   * @return the number of key/values added
+   */
+  int nextBatch(KeyValueBatch batch) throws IOException;
+}
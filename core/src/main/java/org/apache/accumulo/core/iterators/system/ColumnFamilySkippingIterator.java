@@ -32,7 +32,7 @@ import org.apache.accumulo.core.iterators.IteratorEnvironment;
 import org.apache.accumulo.core.iterators.SkippingIterator;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 
-public class ColumnFamilySkippingIterator extends SkippingIterator implements InterruptibleIterator {
+public class ColumnFamilySkippingIterator extends SkippingIterator implements InterruptibleIterator, BatchIterator {
   
   protected Set<ByteSequence> colFamSet = null;
   protected TreeSet<ByteSequence> sortedColFams = null;
@@ -87,6 +87,14 @@ public class ColumnFamilySkippingIterator extends SkippingIterator implements In
       }
   }
   
+  @Override
+  public int nextBatch(KeyValueBatch batch) throws IOException {
+    // when column families are filtered, leave it to next() which seeks past column families that are not wanted instead of reading them
+    if (inclusive || (colFamSet != null && colFamSet.size() > 0))
+      return batch.fill(this);
+    return batch.addFrom(getSource());
+  }
+  
   private void reseek(Key key) throws IOException {
     if (range.afterEndKey(key)) {
       range = new Range(range.getEndKey(), true, range.getEndKey(), range.isEndKeyInclusive());
@@ -16,6 +16,7 @@
  */
 package org.apache.accumulo.core.iterators.system;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -30,7 +31,7 @@ import org.apache.accumulo.core.iterators.Filter;
 import org.apache.accumulo.core.iterators.IteratorEnvironment;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 
-public class ColumnQualifierFilter extends Filter {
+public class ColumnQualifierFilter extends Filter implements BatchIterator {
   private boolean scanColumns;
   private HashSet<ByteSequence> columnFamilies;
   private HashMap<ByteSequence,HashSet<ByteSequence>> columnsQualifiers;
@@ -64,6 +65,13 @@ public class ColumnQualifierFilter extends Filter {
     return cfset != null && cfset.contains(key.getColumnFamilyData());
   }
   
+  @Override
+  public int nextBatch(KeyValueBatch batch) throws IOException {
+    if (!scanColumns)
+      return batch.addFrom(getSource());
+    return nextAcceptedBatch(batch);
+  }
+  
   public void init(Set<Column> columns) {
     this.columnFamilies = new HashSet<ByteSequence>();
     this.columnsQualifiers = new HashMap<ByteSequence,HashSet<ByteSequence>>();
@@ -30,7 +30,7 @@ import org.apache.accumulo.core.iterators.IteratorUtil;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 import org.apache.accumulo.core.iterators.WrappingIterator;
 
-public class DeletingIterator extends WrappingIterator {
+public class DeletingIterator extends WrappingIterator implements BatchIterator {
   private boolean propogateDeletes;
   private Key workKey = new Key();
   
@@ -59,6 +59,35 @@ public class DeletingIterator extends WrappingIterator {
     findTop();
   }
   
+  @Override
+  public int nextBatch(KeyValueBatch batch) throws IOException {
+    int start = batch.size();
+    while (getSource().hasTop() && !batch.isFull()) {
+      int segment = batch.size();
+      batch.addFrom(getSource());
+      
+      Key keyToSkip = null;
+      int kept = segment;
+      for (int i = segment; i < batch.size(); i++) {
+        Key key = batch.getKey(i);
+        if (keyToSkip != null && key.equals(keyToSkip, PartialKey.ROW_COLFAM_COLQUAL_COLVIS))
+          continue;
+        keyToSkip = key.isDeleted() ? key : null;
+        if (keyToSkip != null && !propogateDeletes)
+          continue;
+        batch.move(i, kept++);
+      }
+      batch.truncate(kept);
+      
+      // leave the source where next() would have left it
+      if (keyToSkip != null)
+        while (getSource().hasTop() && getSource().getTopKey().equals(keyToSkip, PartialKey.ROW_COLFAM_COLQUAL_COLVIS))
+          getSource().next();
+      findTop();
+    }
+    return batch.size() - start;
+  }
+  
   @Override
   public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) throws IOException {
     // do not want to seek to the middle of a row
@@ -23,7 +23,7 @@ import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 import org.apache.commons.collections.buffer.PriorityBuffer;
 
-public abstract class HeapIterator implements SortedKeyValueIterator<Key,Value> {
+public abstract class HeapIterator implements BatchIterator {
   private PriorityBuffer heap;
   private SortedKeyValueIterator<Key,Value> currentIter;
   
@@ -96,6 +96,21 @@ public abstract class HeapIterator implements SortedKeyValueIterator<Key,Value>
     }
   }
   
+  @Override
+  final public int nextBatch(KeyValueBatch batch) throws IOException {
+    if (heap.size() == 1 && currentIter instanceof BatchIterator) {
+      // no merging to do, let the only source fill the batch
+      int added = ((BatchIterator) currentIter).nextBatch(batch);
+      if (!currentIter.hasTop()) {
+        heap.remove();
+        currentIter = null;
+      }
+      return added;
+    }
+    
+    return batch.fill(this);
+  }
+  
   final protected void clear() {
     heap.clear();
     currentIter = null;
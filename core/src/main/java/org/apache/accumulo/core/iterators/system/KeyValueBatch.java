@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.iterators.system;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+
+/**
+ * A fixed capacity list of key/values passed down an iterator stack by {@link BatchIterator#nextBatch(KeyValueBatch)}. Iterators that drop key/values, like
+ * filters, add their source's key/values to the batch and then compact the part they added with {@link #move(int, int)} and {@link #truncate(int)}.
+ */
+public class KeyValueBatch {
+
+  private final Key[] keys;
+  private final Value[] values;
+  private int size = 0;
+
+  public KeyValueBatch(int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity must be positive " + capacity);
+    keys = new Key[capacity];
+    values = new Value[capacity];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return keys.length;
+  }
+
+  public boolean isFull() {
+    return size == keys.length;
+  }
+
+  public Key getKey(int i) {
+    return keys[i];
+  }
+
+  public Value getValue(int i) {
+    return values[i];
+  }
+
+  public void add(Key key, Value value) {
+    keys[size] = key;
+    values[size] = value;
+    size++;
+  }
+
+  /**
+   * Moves the key/value at one position to a lower position, overwriting what is there.
+   */
+  public void move(int from, int to) {
+    keys[to] = keys[from];
+    values[to] = values[from];
+  }
+
+  /**
+   * Drops the key/values at and after a position.
+   */
+  public void truncate(int newSize) {
+    if (newSize > size)
+      throw new IllegalArgumentException(newSize + " > " + size);
+    Arrays.fill(keys, newSize, size, null);
+    Arrays.fill(values, newSize, size, null);
+    size = newSize;
+  }
+
+  public void clear() {
+    truncate(0);
+  }
+
+  /**
+   * Adds copies of the key/values of an iterator that can not return batches itself, calling {@link SortedKeyValueIterator#next()} after each one.
+   *
+   * @return the number of key/values added
+   */
+  public int fill(SortedKeyValueIterator<Key,Value> iter) throws IOException {
+    int start = size;
+    while (size < keys.length && iter.hasTop()) {
+      add(new Key(iter.getTopKey()), new Value(iter.getTopValue().get(), true));
+      iter.next();
+    }
+    return size - start;
+  }
+
+  /**
+   * Adds the key/values of an iterator in one call if it is a {@link BatchIterator}, or else one at a time with {@link #fill(SortedKeyValueIterator)}.
+   *
+   * @return the number of key/values added
+   */
+  public int addFrom(SortedKeyValueIterator<Key,Value> iter) throws IOException {
+    if (!iter.hasTop())
+      return 0;
+    if (iter instanceof BatchIterator)
+      return ((BatchIterator) iter).nextBatch(this);
+    return fill(iter);
+  }
+}
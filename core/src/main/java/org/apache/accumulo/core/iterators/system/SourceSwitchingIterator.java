@@ -32,7 +32,7 @@ import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.iterators.IteratorEnvironment;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 
-public class SourceSwitchingIterator implements SortedKeyValueIterator<Key,Value>, InterruptibleIterator {
+public class SourceSwitchingIterator implements SortedKeyValueIterator<Key,Value>, InterruptibleIterator, BatchIterator {
   
   public interface DataSource {
     boolean isCurrent();
@@ -124,6 +124,10 @@ public class SourceSwitchingIterator implements SortedKeyValueIterator<Key,Value
       }
     }
     
+    readTop();
+  }
+  
+  private void readTop() throws IOException {
     if (iter.hasTop()) {
       Key nextKey = iter.getTopKey();
       Value nextVal = iter.getTopValue();
@@ -140,6 +144,20 @@ public class SourceSwitchingIterator implements SortedKeyValueIterator<Key,Value
     }
   }
   
+  @Override
+  public synchronized int nextBatch(KeyValueBatch batch) throws IOException {
+    if (onlySwitchAfterRow || !(iter instanceof BatchIterator))
+      return batch.fill(this);
+    
+    // the top has not been returned yet, so seek to it inclusively after switching
+    if (switchSource())
+      iter.seek(new Range(key, true, range.getEndKey(), range.isEndKeyInclusive()), columnFamilies, inclusive);
+    
+    int added = batch.addFrom(iter);
+    readTop();
+    return added;
+  }
+  
   private boolean switchSource() throws IOException {
     while (!source.isCurrent()) {
       source = source.getNewDataSource();
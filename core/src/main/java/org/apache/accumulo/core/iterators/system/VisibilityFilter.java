@@ -16,6 +16,8 @@
  */
 package org.apache.accumulo.core.iterators.system;
 
+import java.io.IOException;
+
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.iterators.Filter;
@@ -31,7 +33,7 @@ import org.apache.commons.collections.map.LRUMap;
 import org.apache.hadoop.io.Text;
 import org.apache.log4j.Logger;
 
-public class VisibilityFilter extends Filter {
+public class VisibilityFilter extends Filter implements BatchIterator {
   protected VisibilityEvaluator ve;
   protected Text defaultVisibility;
   protected LRUMap cache;
@@ -56,6 +58,11 @@ public class VisibilityFilter extends Filter {
     return new VisibilityFilter(getSource().deepCopy(env), authorizations, TextUtil.getBytes(defaultVisibility));
   }
   
+  @Override
+  public int nextBatch(KeyValueBatch batch) throws IOException {
+    return nextAcceptedBatch(batch);
+  }
+  
   @Override
   public boolean accept(Key k, Value v) {
     Text testVis = k.getColumnVisibility(tmpVis);
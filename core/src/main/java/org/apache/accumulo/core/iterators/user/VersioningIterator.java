@@ -32,8 +32,10 @@ import org.apache.accumulo.core.iterators.IteratorUtil;
 import org.apache.accumulo.core.iterators.OptionDescriber;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 import org.apache.accumulo.core.iterators.WrappingIterator;
+import org.apache.accumulo.core.iterators.system.BatchIterator;
+import org.apache.accumulo.core.iterators.system.KeyValueBatch;
 
-public class VersioningIterator extends WrappingIterator implements OptionDescriber {
+public class VersioningIterator extends WrappingIterator implements OptionDescriber, BatchIterator {
   private final int maxCount = 10;
   
   private Key currentKey = new Key();
@@ -70,6 +72,52 @@ public class VersioningIterator extends WrappingIterator implements OptionDescri
     }
   }
   
+  @Override
+  public int nextBatch(KeyValueBatch batch) throws IOException {
+    // subclasses may change what next() does
+    if (getClass() != VersioningIterator.class)
+      return batch.fill(this);
+    
+    int start = batch.size();
+    while (getSource().hasTop() && !batch.isFull()) {
+      int segment = batch.size();
+      batch.addFrom(getSource());
+      
+      // the first key/value is the top, which is already counted
+      Key column = currentKey;
+      int versions = numVersions - 1;
+      int kept = segment;
+      for (int i = segment; i < batch.size(); i++) {
+        Key key = batch.getKey(i);
+        if (key.equals(column, PartialKey.ROW_COLFAM_COLQUAL_COLVIS)) {
+          versions++;
+        } else {
+          column = key;
+          versions = 1;
+        }
+        if (versions <= maxVersions)
+          batch.move(i, kept++);
+      }
+      batch.truncate(kept);
+      
+      // leave the source and the version count where next() would have left them
+      if (column != currentKey)
+        currentKey.set(column);
+      numVersions = versions;
+      if (numVersions >= maxVersions) {
+        skipColumn(currentKey);
+        resetVersionCount();
+      } else if (getSource().hasTop()) {
+        if (getSource().getTopKey().equals(currentKey, PartialKey.ROW_COLFAM_COLQUAL_COLVIS)) {
+          numVersions++;
+        } else {
+          resetVersionCount();
+        }
+      }
+    }
+    return batch.size() - start;
+  }
+  
   @Override
   public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) throws IOException {
     // do not want to seek to the middle of a row
@@ -95,7 +143,10 @@ public class VersioningIterator extends WrappingIterator implements OptionDescri
   private void skipRowColumn() throws IOException {
     Key keyToSkip = currentKey;
     super.next();
-    
+    skipColumn(keyToSkip);
+  }
+  
+  private void skipColumn(Key keyToSkip) throws IOException {
     int count = 0;
     while (getSource().hasTop() && getSource().getTopKey().equals(keyToSkip, PartialKey.ROW_COLFAM_COLQUAL_COLVIS)) {
       if (count < maxCount) {
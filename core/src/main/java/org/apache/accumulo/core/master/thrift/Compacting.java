@@ -51,6 +51,8 @@ import org.slf4j.LoggerFactory;
 
   private static final org.apache.thrift.protocol.TField RUNNING_FIELD_DESC = new org.apache.thrift.protocol.TField("running", org.apache.thrift.protocol.TType.I32, (short)1);
   private static final org.apache.thrift.protocol.TField QUEUED_FIELD_DESC = new org.apache.thrift.protocol.TField("queued", org.apache.thrift.protocol.TType.I32, (short)2);
+  private static final org.apache.thrift.protocol.TField THROTTLED_FIELD_DESC = new org.apache.thrift.protocol.TField("throttled", org.apache.thrift.protocol.TType.I32, (short)3);
+  private static final org.apache.thrift.protocol.TField BYTE_RATE_FIELD_DESC = new org.apache.thrift.protocol.TField("byteRate", org.apache.thrift.protocol.TType.DOUBLE, (short)4);
 
   private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
   static {
@@ -60,11 +62,15 @@ import org.slf4j.LoggerFactory;
 
   public int running; // required
   public int queued; // required
+  public int throttled; // required
+  public double byteRate; // required
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   @SuppressWarnings("all") public enum _Fields implements org.apache.thrift.TFieldIdEnum {
     RUNNING((short)1, "running"),
-    QUEUED((short)2, "queued");
+    QUEUED((short)2, "queued"),
+    THROTTLED((short)3, "throttled"),
+    BYTE_RATE((short)4, "byteRate");
 
     private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
 
@@ -83,6 +89,10 @@ import org.slf4j.LoggerFactory;
           return RUNNING;
         case 2: // QUEUED
           return QUEUED;
+        case 3: // THROTTLED
+          return THROTTLED;
+        case 4: // BYTE_RATE
+          return BYTE_RATE;
         default:
           return null;
       }
@@ -125,6 +135,8 @@ import org.slf4j.LoggerFactory;
   // isset id assignments
   private static final int __RUNNING_ISSET_ID = 0;
   private static final int __QUEUED_ISSET_ID = 1;
+  private static final int __THROTTLED_ISSET_ID = 2;
+  private static final int __BYTERATE_ISSET_ID = 3;
   private byte __isset_bitfield = 0;
   public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
   static {
@@ -133,6 +145,10 @@ import org.slf4j.LoggerFactory;
         new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32)));
     tmpMap.put(_Fields.QUEUED, new org.apache.thrift.meta_data.FieldMetaData("queued", org.apache.thrift.TFieldRequirementType.DEFAULT, 
         new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32)));
+    tmpMap.put(_Fields.THROTTLED, new org.apache.thrift.meta_data.FieldMetaData("throttled", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32)));
+    tmpMap.put(_Fields.BYTE_RATE, new org.apache.thrift.meta_data.FieldMetaData("byteRate", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.DOUBLE)));
     metaDataMap = Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(Compacting.class, metaDataMap);
   }
@@ -142,13 +158,19 @@ import org.slf4j.LoggerFactory;
 
   public Compacting(
     int running,
-    int queued)
+    int queued,
+    int throttled,
+    double byteRate)
   {
     this();
     this.running = running;
     setRunningIsSet(true);
     this.queued = queued;
     setQueuedIsSet(true);
+    this.throttled = throttled;
+    setThrottledIsSet(true);
+    this.byteRate = byteRate;
+    setByteRateIsSet(true);
   }
 
   /**
@@ -158,6 +180,8 @@ import org.slf4j.LoggerFactory;
     __isset_bitfield = other.__isset_bitfield;
     this.running = other.running;
     this.queued = other.queued;
+    this.throttled = other.throttled;
+    this.byteRate = other.byteRate;
   }
 
   public Compacting deepCopy() {
@@ -170,6 +194,10 @@ import org.slf4j.LoggerFactory;
     this.running = 0;
     setQueuedIsSet(false);
     this.queued = 0;
+    setThrottledIsSet(false);
+    this.throttled = 0;
+    setByteRateIsSet(false);
+    this.byteRate = 0.0;
   }
 
   public int getRunning() {
@@ -218,6 +246,52 @@ import org.slf4j.LoggerFactory;
     __isset_bitfield = EncodingUtils.setBit(__isset_bitfield, __QUEUED_ISSET_ID, value);
   }
 
+  public int getThrottled() {
+    return this.throttled;
+  }
+
+  public Compacting setThrottled(int throttled) {
+    this.throttled = throttled;
+    setThrottledIsSet(true);
+    return this;
+  }
+
+  public void unsetThrottled() {
+    __isset_bitfield = EncodingUtils.clearBit(__isset_bitfield, __THROTTLED_ISSET_ID);
+  }
+
+  /** Returns true if field throttled is set (has been assigned a value) and false otherwise */
+  public boolean isSetThrottled() {
+    return EncodingUtils.testBit(__isset_bitfield, __THROTTLED_ISSET_ID);
+  }
+
+  public void setThrottledIsSet(boolean value) {
+    __isset_bitfield = EncodingUtils.setBit(__isset_bitfield, __THROTTLED_ISSET_ID, value);
+  }
+
+  public double getByteRate() {
+    return this.byteRate;
+  }
+
+  public Compacting setByteRate(double byteRate) {
+    this.byteRate = byteRate;
+    setByteRateIsSet(true);
+    return this;
+  }
+
+  public void unsetByteRate() {
+    __isset_bitfield = EncodingUtils.clearBit(__isset_bitfield, __BYTERATE_ISSET_ID);
+  }
+
+  /** Returns true if field byteRate is set (has been assigned a value) and false otherwise */
+  public boolean isSetByteRate() {
+    return EncodingUtils.testBit(__isset_bitfield, __BYTERATE_ISSET_ID);
+  }
+
+  public void setByteRateIsSet(boolean value) {
+    __isset_bitfield = EncodingUtils.setBit(__isset_bitfield, __BYTERATE_ISSET_ID, value);
+  }
+
   public void setFieldValue(_Fields field, Object value) {
     switch (field) {
     case RUNNING:
@@ -236,6 +310,22 @@ import org.slf4j.LoggerFactory;
       }
       break;
 
+    case THROTTLED:
+      if (value == null) {
+        unsetThrottled();
+      } else {
+        setThrottled((Integer)value);
+      }
+      break;
+
+    case BYTE_RATE:
+      if (value == null) {
+        unsetByteRate();
+      } else {
+        setByteRate((Double)value);
+      }
+      break;
+
     }
   }
 
@@ -247,6 +337,12 @@ import org.slf4j.LoggerFactory;
     case QUEUED:
       return Integer.valueOf(getQueued());
 
+    case THROTTLED:
+      return Integer.valueOf(getThrottled());
+
+    case BYTE_RATE:
+      return Double.valueOf(getByteRate());
+
     }
     throw new IllegalStateException();
   }
@@ -262,6 +358,10 @@ import org.slf4j.LoggerFactory;
       return isSetRunning();
     case QUEUED:
       return isSetQueued();
+    case THROTTLED:
+      return isSetThrottled();
+    case BYTE_RATE:
+      return isSetByteRate();
     }
     throw new IllegalStateException();
   }
@@ -297,6 +397,24 @@ import org.slf4j.LoggerFactory;
         return false;
     }
 
+    boolean this_present_throttled = true;
+    boolean that_present_throttled = true;
+    if (this_present_throttled || that_present_throttled) {
+      if (!(this_present_throttled && that_present_throttled))
+        return false;
+      if (this.throttled != that.throttled)
+        return false;
+    }
+
+    boolean this_present_byteRate = true;
+    boolean that_present_byteRate = true;
+    if (this_present_byteRate || that_present_byteRate) {
+      if (!(this_present_byteRate && that_present_byteRate))
+        return false;
+      if (this.byteRate != that.byteRate)
+        return false;
+    }
+
     return true;
   }
 
@@ -333,6 +451,26 @@ import org.slf4j.LoggerFactory;
         return lastComparison;
       }
     }
+    lastComparison = Boolean.valueOf(isSetThrottled()).compareTo(typedOther.isSetThrottled());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetThrottled()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.throttled, typedOther.throttled);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
+    lastComparison = Boolean.valueOf(isSetByteRate()).compareTo(typedOther.isSetByteRate());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetByteRate()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.byteRate, typedOther.byteRate);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -360,6 +498,14 @@ import org.slf4j.LoggerFactory;
     sb.append("queued:");
     sb.append(this.queued);
     first = false;
+    if (!first) sb.append(", ");
+    sb.append("throttled:");
+    sb.append(this.throttled);
+    first = false;
+    if (!first) sb.append(", ");
+    sb.append("byteRate:");
+    sb.append(this.byteRate);
+    first = false;
     sb.append(")");
     return sb.toString();
   }
@@ -421,6 +567,22 @@ import org.slf4j.LoggerFactory;
               org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
             }
             break;
+          case 3: // THROTTLED
+            if (schemeField.type == org.apache.thrift.protocol.TType.I32) {
+              struct.throttled = iprot.readI32();
+              struct.setThrottledIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
+          case 4: // BYTE_RATE
+            if (schemeField.type == org.apache.thrift.protocol.TType.DOUBLE) {
+              struct.byteRate = iprot.readDouble();
+              struct.setByteRateIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
           default:
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
         }
@@ -442,6 +604,12 @@ import org.slf4j.LoggerFactory;
       oprot.writeFieldBegin(QUEUED_FIELD_DESC);
       oprot.writeI32(struct.queued);
       oprot.writeFieldEnd();
+      oprot.writeFieldBegin(THROTTLED_FIELD_DESC);
+      oprot.writeI32(struct.throttled);
+      oprot.writeFieldEnd();
+      oprot.writeFieldBegin(BYTE_RATE_FIELD_DESC);
+      oprot.writeDouble(struct.byteRate);
+      oprot.writeFieldEnd();
       oprot.writeFieldStop();
       oprot.writeStructEnd();
     }
@@ -466,19 +634,31 @@ import org.slf4j.LoggerFactory;
       if (struct.isSetQueued()) {
         optionals.set(1);
       }
-      oprot.writeBitSet(optionals, 2);
+      if (struct.isSetThrottled()) {
+        optionals.set(2);
+      }
+      if (struct.isSetByteRate()) {
+        optionals.set(3);
+      }
+      oprot.writeBitSet(optionals, 4);
       if (struct.isSetRunning()) {
         oprot.writeI32(struct.running);
       }
       if (struct.isSetQueued()) {
         oprot.writeI32(struct.queued);
       }
+      if (struct.isSetThrottled()) {
+        oprot.writeI32(struct.throttled);
+      }
+      if (struct.isSetByteRate()) {
+        oprot.writeDouble(struct.byteRate);
+      }
     }
 
     @Override
     public void read(org.apache.thrift.protocol.TProtocol prot, Compacting struct) throws org.apache.thrift.TException {
       TTupleProtocol iprot = (TTupleProtocol) prot;
-      BitSet incoming = iprot.readBitSet(2);
+      BitSet incoming = iprot.readBitSet(4);
       if (incoming.get(0)) {
         struct.running = iprot.readI32();
         struct.setRunningIsSet(true);
@@ -487,6 +667,14 @@ import org.slf4j.LoggerFactory;
         struct.queued = iprot.readI32();
         struct.setQueuedIsSet(true);
       }
+      if (incoming.get(2)) {
+        struct.throttled = iprot.readI32();
+        struct.setThrottledIsSet(true);
+      }
+      if (incoming.get(3)) {
+        struct.byteRate = iprot.readDouble();
+        struct.setByteRateIsSet(true);
+      }
     }
   }
 
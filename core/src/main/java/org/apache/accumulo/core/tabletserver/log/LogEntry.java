@@ -36,6 +36,8 @@ public class LogEntry {
   public String server;
   public String filename;
   public int tabletId;
+  // mutations of the tablet logged with a sequence number below this are in the tablet's files, negative when not known
+  public int durableSeq = -1;
   public Collection<String> logSet;
   
   public String toString() {
@@ -86,6 +88,8 @@ public class LogEntry {
     result.filename = parts[1];
     parts = value.toString().split("\\|");
     result.tabletId = Integer.parseInt(parts[1]);
+    if (parts.length > 2)
+      result.durableSeq = Integer.parseInt(parts[2]);
     result.logSet = Arrays.asList(parts[0].split(";"));
     result.timestamp = key.getTimestamp();
     return result;
@@ -104,7 +108,10 @@ public class LogEntry {
   }
   
   public Value getValue() {
-    return new Value((StringUtil.join(logSet, ";") + "|" + tabletId).getBytes());
+    String value = StringUtil.join(logSet, ";") + "|" + tabletId;
+    if (durableSeq >= 0)
+      value += "|" + durableSeq;
+    return new Value(value.getBytes());
   }
   
 }
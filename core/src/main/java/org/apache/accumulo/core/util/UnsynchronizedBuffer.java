@@ -88,7 +88,19 @@ public class UnsynchronizedBuffer {
       else
         data[offset++] = 0;
     }
-    
+
+    /**
+     * Adds the UTF-8 encoding of a character sequence to this writer's buffer,
+     * without creating an intermediate array.
+     *
+     * @param s character sequence
+     * @param utf8Length length of the encoding, as returned by {@link UnsynchronizedBuffer#utf8Length(CharSequence)}
+     */
+    public void addUTF8(CharSequence s, int utf8Length) {
+      reserve(utf8Length);
+      offset = encodeUTF8(s, data, offset);
+    }
+
     /**
      * Gets (a copy of) the contents of this writer's buffer.
      *
@@ -291,4 +303,68 @@ public class UnsynchronizedBuffer {
     
     return ret;
   }
+
+  /**
+   * Determines the length of the UTF-8 encoding of a character sequence. A
+   * surrogate that is not part of a pair is encoded as '?', as
+   * {@link org.apache.hadoop.io.Text} does.
+   *
+   * @param s character sequence
+   * @return length of the encoding in bytes
+   */
+  public static int utf8Length(CharSequence s) {
+    int len = 0;
+    int count = s.length();
+    for (int i = 0; i < count; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        len++;
+      } else if (c < 0x800) {
+        len += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(s.charAt(i + 1))) {
+        len += 4;
+        i++;
+      } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+        len++;
+      } else {
+        len += 3;
+      }
+    }
+    return len;
+  }
+
+  /**
+   * Encodes a character sequence as UTF-8 into an array, which must have room
+   * for {@link #utf8Length(CharSequence)} bytes.
+   *
+   * @param s character sequence
+   * @param dest array to encode into
+   * @param off offset into array to start encoding at
+   * @return offset just past the encoding
+   */
+  public static int encodeUTF8(CharSequence s, byte[] dest, int off) {
+    int count = s.length();
+    for (int i = 0; i < count; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        dest[off++] = (byte) c;
+      } else if (c < 0x800) {
+        dest[off++] = (byte) (0xc0 | (c >> 6));
+        dest[off++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        dest[off++] = (byte) (0xf0 | (cp >> 18));
+        dest[off++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        dest[off++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        dest[off++] = (byte) (0x80 | (cp & 0x3f));
+      } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+        dest[off++] = '?';
+      } else {
+        dest[off++] = (byte) (0xe0 | (c >> 12));
+        dest[off++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        dest[off++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    return off;
+  }
 }
@@ -25,6 +25,8 @@ include "trace.thrift"
 struct Compacting {
   1:i32 running
   2:i32 queued
+  3:i32 throttled
+  4:double byteRate
 }
 
 struct TableInfo {
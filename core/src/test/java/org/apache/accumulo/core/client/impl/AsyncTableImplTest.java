@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.accumulo.core.client.AsyncCallback;
+import org.apache.accumulo.core.client.AsyncTableConfig;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.client.TimedOutException;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.KeyExtent;
+import org.apache.accumulo.core.data.KeyValue;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.data.thrift.InitialScan;
+import org.apache.accumulo.core.data.thrift.ScanResult;
+import org.apache.accumulo.core.data.thrift.TConstraintViolationSummary;
+import org.apache.accumulo.core.data.thrift.TKeyExtent;
+import org.apache.accumulo.core.data.thrift.TKeyValue;
+import org.apache.accumulo.core.data.thrift.TMutation;
+import org.apache.accumulo.core.data.thrift.TRange;
+import org.apache.accumulo.core.security.Credentials;
+import org.apache.accumulo.core.tabletserver.thrift.ConstraintViolationException;
+import org.apache.accumulo.core.tabletserver.thrift.NotServingTabletException;
+import org.apache.accumulo.core.tabletserver.thrift.TabletClientService;
+import org.apache.hadoop.io.Text;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.server.TNonblockingServer;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncTableImplTest {
+  
+  private static final Text TABLE = new Text("1");
+  private static final KeyExtent LOW = new KeyExtent(TABLE, new Text("m"), null);
+  private static final KeyExtent HIGH = new KeyExtent(TABLE, null, new Text("m"));
+  
+  /**
+   * Serves the scan and update calls of a tablet server from a sorted map.
+   */
+  static class FakeTabletServer implements InvocationHandler {
+    final TreeMap<Key,Value> data = new TreeMap<Key,Value>();
+    final Map<Long,List<KeyValue>> scans = new HashMap<Long,List<KeyValue>>();
+    long nextScanID = 0;
+    // the number of calls to fail as if the tablet had moved
+    int notServing = 0;
+    int batchSize;
+    final AtomicInteger continueScans = new AtomicInteger();
+    // when set, continueScan waits for it before answering
+    volatile CountDownLatch continueLatch = null;
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      CountDownLatch latch = continueLatch;
+      if (method.getName().equals("continueScan")) {
+        continueScans.incrementAndGet();
+        if (latch != null)
+          latch.await();
+      }
+      synchronized (this) {
+        return serve(method.getName(), args);
+      }
+    }
+    
+    private Object serve(String name, Object[] args) throws Throwable {
+      if (name.equals("startScan"))
+        return startScan((TKeyExtent) args[2], new Range((TRange) args[3]), (Integer) args[5]);
+      if (name.equals("continueScan"))
+        return nextBatch((Long) args[1]);
+      if (name.equals("closeScan")) {
+        scans.remove(args[1]);
+        return null;
+      }
+      if (name.equals("update")) {
+        update((TKeyExtent) args[2], new Mutation((TMutation) args[3]));
+        return null;
+      }
+      throw new UnsupportedOperationException(name);
+    }
+    
+    private InitialScan startScan(TKeyExtent textent, Range range, int batchSize) throws NotServingTabletException {
+      if (notServing > 0) {
+        notServing--;
+        throw new NotServingTabletException(textent);
+      }
+      this.batchSize = batchSize;
+      range = new KeyExtent(textent).toDataRange().clip(range, true);
+      List<KeyValue> results = new ArrayList<KeyValue>();
+      if (range != null)
+        for (Entry<Key,Value> entry : data.entrySet())
+          if (range.contains(entry.getKey()))
+            results.add(new KeyValue(entry.getKey(), entry.getValue().get()));
+      long scanID = nextScanID++;
+      scans.put(scanID, results);
+      return new InitialScan(scanID, nextBatch(scanID));
+    }
+    
+    private ScanResult nextBatch(long scanID) {
+      List<KeyValue> remaining = scans.get(scanID);
+      List<KeyValue> batch = new ArrayList<KeyValue>(remaining.subList(0, Math.min(batchSize, remaining.size())));
+      remaining.subList(0, batch.size()).clear();
+      List<TKeyValue> tkvs = Key.compress(batch);
+      return new ScanResult(tkvs, !remaining.isEmpty());
+    }
+    
+    private void update(TKeyExtent textent, Mutation m) throws NotServingTabletException, ConstraintViolationException {
+      if (notServing > 0) {
+        notServing--;
+        throw new NotServingTabletException(textent);
+      }
+      if (new String(m.getRow()).equals("bad"))
+        throw new ConstraintViolationException(Collections.singletonList(new TConstraintViolationSummary("constraint", (short) 1, "bad row", 1)));
+      for (ColumnUpdate update : m.getUpdates())
+        data.put(new Key(m.getRow(), update.getColumnFamily(), update.getColumnQualifier(), update.getColumnVisibility(), 0), new Value(update.getValue()));
+    }
+  }
+  
+  /**
+   * Places the tablets ending at "m" and after it on the fake tablet server.
+   */
+  static class FakeLocator extends TabletLocator {
+    final String location;
+    final AtomicInteger invalidations = new AtomicInteger();
+    
+    FakeLocator(String location) {
+      this.location = location;
+    }
+    
+    @Override
+    public TabletLocation locateTablet(Credentials credentials, Text row, boolean skipRow, boolean retry) {
+      int cmp = row.compareTo(LOW.getEndRow());
+      KeyExtent extent = cmp < 0 || (cmp == 0 && !skipRow) ? LOW : HIGH;
+      return new TabletLocation(extent, location, "1");
+    }
+    
+    @Override
+    public <T extends Mutation> void binMutations(Credentials credentials, List<T> mutations, Map<String,TabletServerMutations<T>> binnedMutations,
+        List<T> failures) {
+      throw new UnsupportedOperationException();
+    }
+    
+    @Override
+    public List<Range> binRanges(Credentials credentials, List<Range> ranges, Map<String,Map<KeyExtent,List<Range>>> binnedRanges) {
+      throw new UnsupportedOperationException();
+    }
+    
+    @Override
+    public void invalidateCache(KeyExtent failedExtent) {
+      invalidations.incrementAndGet();
+    }
+    
+    @Override
+    public void invalidateCache(Collection<KeyExtent> keySet) {
+      invalidations.incrementAndGet();
+    }
+    
+    @Override
+    public void invalidateCache() {
+      invalidations.incrementAndGet();
+    }
+    
+    @Override
+    public void invalidateCache(String server) {
+      invalidations.incrementAndGet();
+    }
+  }
+  
+  private FakeTabletServer tserver;
+  private FakeLocator locator;
+  private TServer server;
+  private AsyncTableImpl table;
+  
+  @Before
+  public void setUp() throws Exception {
+    ServerSocket socket = new ServerSocket(0);
+    int port = socket.getLocalPort();
+    socket.close();
+    
+    tserver = new FakeTabletServer();
+    TabletClientService.Iface iface = (TabletClientService.Iface) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] {TabletClientService.Iface.class}, tserver);
+    TNonblockingServer.Args args = new TNonblockingServer.Args(new TNonblockingServerSocket(port));
+    args.processor(new TabletClientService.Processor<TabletClientService.Iface>(iface));
+    args.protocolFactory(new TCompactProtocol.Factory());
+    server = new TNonblockingServer(args);
+    Thread serverThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        server.serve();
+      }
+    });
+    serverThread.setDaemon(true);
+    serverThread.start();
+    while (!server.isServing())
+      Thread.sleep(10);
+    
+    locator = new FakeLocator("localhost:" + port);
+    table = newTable(new AsyncTableConfig().setBatchSize(3).setMaxConnectionsPerServer(2));
+  }
+  
+  private AsyncTableImpl newTable(AsyncTableConfig config) {
+    return new AsyncTableImpl(new MockInstance("async"), new Credentials("root", new PasswordToken("")), TABLE.toString(), config, locator,
+        AccumuloConfiguration.getDefaultConfiguration());
+  }
+  
+  @After
+  public void tearDown() {
+    table.close();
+    server.stop();
+  }
+  
+  private void write(String row, String value) throws Exception {
+    Mutation m = new Mutation(row);
+    m.put("cf", "cq", value);
+    assertEquals(null, table.write(m, null).get());
+  }
+  
+  private static List<String> rows(List<Entry<Key,Value>> entries) {
+    List<String> rows = new ArrayList<String>();
+    for (Entry<Key,Value> entry : entries)
+      rows.add(entry.getKey().getRow().toString());
+    return rows;
+  }
+  
+  @Test
+  public void testWriteAndScan() throws Exception {
+    String[] rows = {"a", "b", "c", "d", "e", "m", "n", "o", "z"};
+    for (String row : rows)
+      write(row, "v" + row);
+    
+    // crosses the tablet boundary and needs several batches from each tablet
+    List<Entry<Key,Value>> results = table.scan(new Range(), null).get();
+    assertEquals(Arrays.asList(rows), rows(results));
+    assertEquals("vz", results.get(rows.length - 1).getValue().toString());
+    
+    assertEquals(Collections.singletonList("n"), rows(table.scan(Range.exact(new Text("n")), null).get()));
+    assertEquals(Arrays.asList("d", "e", "m", "n"), rows(table.scan(new Range("d", "n"), null).get()));
+    assertEquals(Collections.<String> emptyList(), rows(table.scan(Range.exact(new Text("q")), null).get()));
+    
+    // closing a scan is a oneway call, the scan completes without waiting for it
+    for (int i = 0; i < 100 && !scansClosed(); i++)
+      Thread.sleep(50);
+    assertTrue(scansClosed());
+  }
+  
+  private boolean scansClosed() {
+    synchronized (tserver) {
+      return tserver.scans.isEmpty();
+    }
+  }
+  
+  @Test
+  public void testManyInFlight() throws Exception {
+    for (int i = 0; i < 26; i++)
+      write(Character.toString((char) ('a' + i)), "v" + i);
+    
+    // far more requests than connections, driven by one thread
+    final CountDownLatch done = new CountDownLatch(500);
+    final AtomicInteger failures = new AtomicInteger();
+    List<Future<List<Entry<Key,Value>>>> futures = new ArrayList<Future<List<Entry<Key,Value>>>>();
+    for (int i = 0; i < 500; i++) {
+      String row = Character.toString((char) ('a' + i % 26));
+      futures.add(table.scan(Range.exact(new Text(row)), new AsyncCallback<List<Entry<Key,Value>>>() {
+        @Override
+        public void completed(List<Entry<Key,Value>> result) {
+          if (result.size() != 1)
+            failures.incrementAndGet();
+          done.countDown();
+        }
+        
+        @Override
+        public void failed(Throwable cause) {
+          failures.incrementAndGet();
+          done.countDown();
+        }
+      }));
+    }
+    
+    assertTrue(done.await(60, TimeUnit.SECONDS));
+    assertEquals(0, failures.get());
+    for (int i = 0; i < 500; i++)
+      assertEquals(Character.toString((char) ('a' + i % 26)), rows(futures.get(i).get()).get(0));
+  }
+  
+  @Test
+  public void testCancelScan() throws Exception {
+    for (int i = 0; i < 30; i++)
+      write(String.format("a%02d", i), "v" + i);
+    
+    CountDownLatch latch = new CountDownLatch(1);
+    tserver.continueLatch = latch;
+    Future<List<Entry<Key,Value>>> future = table.scan(new Range(), null);
+    for (int i = 0; i < 100 && tserver.continueScans.get() == 0; i++)
+      Thread.sleep(50);
+    assertTrue(future.cancel(false));
+    latch.countDown();
+    
+    // the scan session is closed instead of read to the end of the tablet
+    for (int i = 0; i < 100 && !scansClosed(); i++)
+      Thread.sleep(50);
+    assertTrue(scansClosed());
+    assertEquals(1, tserver.continueScans.get());
+  }
+  
+  @Test
+  public void testRetriesWhenTabletMoves() throws Exception {
+    write("a", "va");
+    synchronized (tserver) {
+      tserver.notServing = 2;
+    }
+    write("b", "vb");
+    assertEquals(2, locator.invalidations.get());
+    
+    synchronized (tserver) {
+      tserver.notServing = 1;
+    }
+    assertEquals(Arrays.asList("a", "b"), rows(table.scan(new Range(), null).get()));
+    assertEquals(3, locator.invalidations.get());
+  }
+  
+  @Test
+  public void testConstraintViolation() throws Exception {
+    Mutation m = new Mutation("bad");
+    m.put("cf", "cq", "v");
+    final AtomicInteger failed = new AtomicInteger();
+    final CountDownLatch called = new CountDownLatch(1);
+    Future<Void> future = table.write(m, new AsyncCallback<Void>() {
+      @Override
+      public void completed(Void result) {}
+      
+      @Override
+      public void failed(Throwable cause) {
+        if (cause instanceof MutationsRejectedException)
+          failed.incrementAndGet();
+        called.countDown();
+      }
+    });
+    try {
+      future.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof MutationsRejectedException);
+      assertEquals(1, ((MutationsRejectedException) e.getCause()).getConstraintViolationSummaries().size());
+    }
+    // the future completes before the callback is called
+    assertTrue(called.await(10, TimeUnit.SECONDS));
+    assertEquals(1, failed.get());
+  }
+  
+  @Test
+  public void testServerDown() throws Exception {
+    server.stop();
+    while (server.isServing())
+      Thread.sleep(10);
+    
+    AsyncTableImpl timed = newTable(new AsyncTableConfig().setTimeout(500, TimeUnit.MILLISECONDS));
+    try {
+      timed.scan(new Range(), null).get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause().toString(), e.getCause() instanceof TimedOutException);
+    } finally {
+      timed.close();
+    }
+  }
+  
+  @Test
+  public void testClose() throws Exception {
+    table.close();
+    try {
+      table.scan(new Range(), null);
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.junit.Test;
+
+public class ScanResultBufferTest {
+
+  /**
+   * Creates a batch of entries that is estimated at 10 bytes per entry.
+   */
+  private static List<Entry<Key,Value>> batch(int entries) {
+    List<Entry<Key,Value>> batch = new ArrayList<Entry<Key,Value>>();
+    for (int i = 0; i < entries; i++)
+      batch.add(new SimpleImmutableEntry<Key,Value>(new Key(String.format("r%04d", i)), new Value("value".getBytes())));
+    return batch;
+  }
+
+  private static class Putter extends Thread {
+    final ScanResultBuffer buffer;
+    final String server;
+    final List<Entry<Key,Value>> batch;
+    final CountDownLatch added = new CountDownLatch(1);
+
+    Putter(ScanResultBuffer buffer, String server, List<Entry<Key,Value>> batch) {
+      this.buffer = buffer;
+      this.server = server;
+      this.batch = batch;
+      setDaemon(true);
+      start();
+    }
+
+    @Override
+    public void run() {
+      try {
+        buffer.put(server, batch);
+        added.countDown();
+      } catch (InterruptedException e) {
+        // the test is over
+      }
+    }
+
+    boolean waitForAdd(long millis) throws InterruptedException {
+      return added.await(millis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Test
+  public void testEstimate() {
+    assertEquals(0, ScanResultBuffer.estimateBytes(batch(0)));
+    assertEquals(100, ScanResultBuffer.estimateBytes(batch(10)));
+  }
+
+  @Test
+  public void testBoundedByBatches() throws Exception {
+    ScanResultBuffer buffer = ScanResultBuffer.boundedByBatches(2);
+    buffer.startReading("s1");
+    buffer.put("s1", batch(1000));
+    buffer.put("s1", batch(1000));
+    Putter putter = new Putter(buffer, "s1", batch(1));
+    assertTrue(!putter.waitForAdd(100));
+
+    assertEquals(1000, buffer.poll(1, TimeUnit.SECONDS).size());
+    assertTrue(putter.waitForAdd(5000));
+    assertEquals(0, buffer.getBytesUsed());
+  }
+
+  @Test
+  public void testBoundedByBytes() throws Exception {
+    ScanResultBuffer buffer = ScanResultBuffer.boundedByBytes(200);
+    buffer.startReading("s1");
+    buffer.put("s1", batch(10));
+    buffer.put("s1", batch(10));
+    assertEquals(200, buffer.getBytesUsed());
+
+    Putter putter = new Putter(buffer, "s1", batch(5));
+    assertTrue(!putter.waitForAdd(100));
+
+    // taking a batch does not release it, the consumer is still reading it
+    List<Entry<Key,Value>> first = buffer.poll(1, TimeUnit.SECONDS);
+    assertEquals(10, first.size());
+    assertTrue(!putter.waitForAdd(100));
+
+    // asking for the next batch releases the first
+    assertEquals(10, buffer.poll(1, TimeUnit.SECONDS).size());
+    assertTrue(putter.waitForAdd(5000));
+    assertEquals(150, buffer.getBytesUsed());
+
+    assertEquals(5, buffer.poll(1, TimeUnit.SECONDS).size());
+    assertNull(buffer.poll(10, TimeUnit.MILLISECONDS));
+    assertEquals(0, buffer.getBytesUsed());
+  }
+
+  @Test
+  public void testLargeBatch() throws Exception {
+    // a batch larger than the buffer is accepted when the buffer is empty, so the scan makes progress
+    ScanResultBuffer buffer = ScanResultBuffer.boundedByBytes(50);
+    buffer.startReading("s1");
+    buffer.put("s1", batch(100));
+    assertEquals(1000, buffer.getBytesUsed());
+    assertEquals(100, buffer.poll(1, TimeUnit.SECONDS).size());
+    assertNull(buffer.poll(10, TimeUnit.MILLISECONDS));
+    assertEquals(0, buffer.getBytesUsed());
+  }
+
+  @Test
+  public void testShareByServer() throws Exception {
+    ScanResultBuffer buffer = ScanResultBuffer.boundedByBytes(400);
+    buffer.startReading("s1");
+    buffer.startReading("s2");
+
+    // s1 has filled its half of the buffer
+    buffer.put("s1", batch(10));
+    buffer.put("s1", batch(10));
+    Putter fast = new Putter(buffer, "s1", batch(10));
+    assertTrue(!fast.waitForAdd(100));
+
+    // which leaves room for s2
+    buffer.put("s2", batch(10));
+    assertEquals(300, buffer.getBytesUsed());
+    assertTrue(!fast.waitForAdd(100));
+
+    // once s2 is done, s1 gets the whole buffer
+    buffer.stopReading("s2");
+    assertTrue(fast.waitForAdd(5000));
+    assertEquals(400, buffer.getBytesUsed());
+  }
+
+  @Test
+  public void testLastBatch() throws Exception {
+    ScanResultBuffer buffer = ScanResultBuffer.boundedByBytes(100);
+    buffer.startReading("s1");
+    buffer.put("s1", batch(10));
+    buffer.stopReading("s1");
+
+    // the end of the results is added even though the buffer is full
+    List<Entry<Key,Value>> last = new ArrayList<Entry<Key,Value>>();
+    buffer.putLast(last);
+    assertEquals(10, buffer.poll(1, TimeUnit.SECONDS).size());
+    assertSame(last, buffer.poll(1, TimeUnit.SECONDS));
+    assertEquals(0, buffer.getBytesUsed());
+  }
+}
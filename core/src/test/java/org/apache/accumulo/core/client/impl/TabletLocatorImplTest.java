@@ -28,6 +28,12 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
@@ -1435,4 +1441,200 @@ public class TabletLocatorImplTest extends TestCase {
     runTest(null, ranges, metaCache, expected);
   }
 
+  public void testLocationEvents() throws Exception {
+    TServers tservers = new TServers();
+    TabletLocatorImpl metaCache = createLocators(tservers, "tserver1", "tserver2", "foo");
+
+    KeyExtent ke11 = nke("foo", "m", null);
+    KeyExtent ke12 = nke("foo", null, "m");
+    setLocation(tservers, "tserver2", MTE, ke11, "L1", "5");
+    setLocation(tservers, "tserver2", MTE, ke12, "L1", "5");
+
+    locateTabletTest(metaCache, "a", ke11, "L1", credentials);
+    locateTabletTest(metaCache, "w", ke12, "L1", credentials);
+    long lookups = metaCache.getMetadataLookups();
+
+    // the first events read only set the sequence number
+    metaCache.applyLocationEvents(new TabletLocationEvents(7, Arrays.asList(TabletLocationEvents.Event.loaded(ke12, "L9", "9"))));
+    locateTabletTest(metaCache, "w", ke12, "L1", credentials);
+
+    TabletLocationEvents events = new TabletLocationEvents(8, Arrays.asList(TabletLocationEvents.Event.loaded(ke12, "L2", "6")));
+    events = TabletLocationEvents.decode(events.encode());
+    assertEquals(8, events.getSequence());
+    metaCache.applyLocationEvents(events);
+    locateTabletTest(metaCache, "w", ke12, "L2", credentials);
+    locateTabletTest(metaCache, "a", ke11, "L1", credentials);
+    assertEquals(lookups, metaCache.getMetadataLookups());
+    assertEquals(1, metaCache.getLocationUpdates());
+
+    // events already applied are ignored
+    metaCache.applyLocationEvents(new TabletLocationEvents(8, Arrays.asList(TabletLocationEvents.Event.unloaded(ke12))));
+    locateTabletTest(metaCache, "w", ke12, "L2", credentials);
+
+    metaCache.applyLocationEvents(TabletLocationEvents.decode(new TabletLocationEvents(9, Arrays.asList(TabletLocationEvents.Event.unloaded(ke11))).encode()));
+    locateTabletTest(metaCache, "a", ke11, "L1", credentials);
+    assertEquals(lookups + 1, metaCache.getMetadataLookups());
+
+    // after missing events nothing cached can be trusted
+    metaCache.applyLocationEvents(new TabletLocationEvents(11, Arrays.asList(TabletLocationEvents.Event.unloaded(ke11))));
+    locateTabletTest(metaCache, "w", ke12, "L1", credentials);
+    assertEquals(lookups + 2, metaCache.getMetadataLookups());
+
+    metaCache.applyLocationEvents(TabletLocationEvents.decode(new TabletLocationEvents(12, null).encode()));
+    locateTabletTest(metaCache, "w", ke12, "L1", credentials);
+    assertEquals(lookups + 3, metaCache.getMetadataLookups());
+  }
+
+  public void testLocationEventsSizeLimit() throws Exception {
+    // rows long enough that the limit is reached well before 5000 events
+    char[] chars = new char[74];
+    Arrays.fill(chars, 'r');
+    String prefix = new String(chars);
+    List<TabletLocationEvents.Event> tooMany = new ArrayList<TabletLocationEvents.Event>();
+    for (int size = 0; size <= TabletLocationEvents.MAX_ENCODED_SIZE;) {
+      int i = tooMany.size();
+      KeyExtent extent = nke("foo", String.format("%s%06d", prefix, i + 1), String.format("%s%06d", prefix, i));
+      TabletLocationEvents.Event event = TabletLocationEvents.Event.loaded(extent, "L1", "5");
+      tooMany.add(event);
+      size += TabletLocationEvents.encodedSize(event);
+    }
+    assertTrue(tooMany.size() < 5000);
+
+    TabletLocationEvents events = TabletLocationEvents.decode(new TabletLocationEvents(4, tooMany).encode());
+    assertEquals(4, events.getSequence());
+    assertNull(events.getEvents());
+
+    // leaves room for the sequence number and count
+    List<TabletLocationEvents.Event> list = tooMany.subList(0, tooMany.size() - 2);
+    byte[] data = new TabletLocationEvents(3, list).encode();
+    assertTrue(data.length <= TabletLocationEvents.MAX_ENCODED_SIZE);
+    assertEquals(list.size(), TabletLocationEvents.decode(data).getEvents().size());
+  }
+
+  public void testNeighborsRefreshed() throws Exception {
+    TServers tservers = new TServers();
+    TabletLocatorImpl metaCache = createLocators(tservers, "tserver1", "tserver2", "foo");
+
+    KeyExtent ke1 = nke("foo", "g", null);
+    KeyExtent ke2 = nke("foo", "m", "g");
+    KeyExtent ke3 = nke("foo", "t", "m");
+    KeyExtent ke4 = nke("foo", null, "t");
+    setLocation(tservers, "tserver2", MTE, ke1, "L1");
+    setLocation(tservers, "tserver2", MTE, ke2, "L1");
+    setLocation(tservers, "tserver2", MTE, ke3, "L1");
+    setLocation(tservers, "tserver2", MTE, ke4, "L1");
+
+    locateTabletTest(metaCache, "a", ke1, "L1", credentials);
+    locateTabletTest(metaCache, "h", ke2, "L1", credentials);
+    locateTabletTest(metaCache, "n", ke3, "L1", credentials);
+    locateTabletTest(metaCache, "w", ke4, "L1", credentials);
+
+    // the servers rebalanced, only one tablet server request has failed so far
+    setLocation(tservers, "tserver2", MTE, ke1, "L2");
+    setLocation(tservers, "tserver2", MTE, ke2, "L2");
+    setLocation(tservers, "tserver2", MTE, ke3, "L2");
+    setLocation(tservers, "tserver2", MTE, ke4, "L2");
+    metaCache.invalidateCache(ke2);
+
+    locateTabletTest(metaCache, "h", ke2, "L2", credentials);
+    // the tablets next to the invalidated one were read with it
+    locateTabletTest(metaCache, "a", ke1, "L2", credentials);
+    locateTabletTest(metaCache, "n", ke3, "L2", credentials);
+    locateTabletTest(metaCache, "w", ke4, "L1", credentials);
+  }
+
+  public void testCacheStats() throws Exception {
+    TabletLocatorImpl metaCache = createLocators("foo", nke("foo", "m", null), "l1", nke("foo", null, "m"), "l2");
+    assertEquals(0.0, metaCache.getCacheHitRatio());
+
+    List<Mutation> ml = nml(nm("a", "cf1:cq1=v1"), nm("w", "cf1:cq1=v1"));
+    Map<String,Map<KeyExtent,List<String>>> emb = cemb(nol("a", "l1", nke("foo", "m", null)), nol("w", "l2", nke("foo", null, "m")));
+    runTest(metaCache, ml, emb);
+    assertEquals(0, metaCache.getCacheHits());
+    assertEquals(2, metaCache.getCacheMisses());
+
+    runTest(metaCache, ml, emb);
+    runTest(null, nrl(nr("a", "z")), metaCache, createExpectedBinnings("l1", nol(nke("foo", "m", null), nrl(nr("a", "z"))), "l2",
+        nol(nke("foo", null, "m"), nrl(nr("a", "z")))));
+    locateTabletTest(metaCache, "a", nke("foo", "m", null), "l1", credentials);
+    assertEquals(4, metaCache.getCacheHits());
+    assertEquals(2, metaCache.getCacheMisses());
+    assertEquals(4 / 6.0, metaCache.getCacheHitRatio(), 0.0001);
+  }
+
+  public void testBinningDoesNotWaitForLookups() throws Exception {
+    TServers tservers = new TServers();
+    final CountDownLatch lookingUp = new CountDownLatch(1);
+    final CountDownLatch finishLookup = new CountDownLatch(1);
+    TestTabletLocationObtainer ttlo = new TestTabletLocationObtainer(tservers) {
+      @Override
+      public List<TabletLocation> lookupTablets(Credentials credentials, String tserver, Map<KeyExtent,List<Range>> map, TabletLocator parent)
+          throws AccumuloSecurityException {
+        lookingUp.countDown();
+        try {
+          finishLookup.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return super.lookupTablets(credentials, tserver, map, parent);
+      }
+    };
+    TestInstance testInstance = new TestInstance("instance1", "tserver1");
+    TabletLocatorImpl rootTabletCache = new TabletLocatorImpl(new Text(MetadataTable.ID), new TestRootTabletLocator(testInstance), ttlo,
+        new YesLockChecker());
+    final TabletLocatorImpl metaCache = new TabletLocatorImpl(new Text("foo"), rootTabletCache, ttlo, new YesLockChecker());
+
+    KeyExtent ke11 = nke("foo", "g", null);
+    KeyExtent ke12 = nke("foo", "m", "g");
+    final KeyExtent ke13 = nke("foo", null, "m");
+    setLocation(tservers, "tserver1", RTE, MTE, "tserver2");
+    setLocation(tservers, "tserver2", MTE, ke11, "L1");
+    setLocation(tservers, "tserver2", MTE, ke12, "L1");
+    setLocation(tservers, "tserver2", MTE, ke13, "L1");
+    locateTabletTest(metaCache, "a", ke11, "L1", credentials);
+    locateTabletTest(metaCache, "h", ke12, "L1", credentials);
+    locateTabletTest(metaCache, "w", ke13, "L1", credentials);
+
+    setLocation(tservers, "tserver2", MTE, ke11, "L2");
+    metaCache.invalidateCache(ke11);
+
+    Thread lookup = new Thread() {
+      @Override
+      public void run() {
+        try {
+          locateTabletTest(metaCache, "a", nke("foo", "g", null), "L2", credentials);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    lookup.start();
+    lookingUp.await();
+
+    // binning from the cache and invalidating are not held up by the lookup
+    runTest(metaCache, nml(nm("w", "cf1:cq1=v1")), cemb(nol("w", "L1", ke13)));
+    setLocation(tservers, "tserver2", MTE, ke12, "L3");
+    metaCache.invalidateCache(ke12);
+
+    // nor is binning a row of a tablet that is still in the cache while another tablet's location has to be read again
+    ExecutorService binner = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> binning = binner.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          runTest(metaCache, nml(nm("w", "cf1:cq1=v2")), cemb(nol("w", "L1", ke13)));
+          return null;
+        }
+      });
+      binning.get(10, TimeUnit.SECONDS);
+    } finally {
+      binner.shutdownNow();
+    }
+
+    finishLookup.countDown();
+    lookup.join();
+    locateTabletTest(metaCache, "a", ke11, "L2", credentials);
+    locateTabletTest(metaCache, "h", ke12, "L3", credentials);
+    locateTabletTest(metaCache, "w", ke13, "L1", credentials);
+  }
 }
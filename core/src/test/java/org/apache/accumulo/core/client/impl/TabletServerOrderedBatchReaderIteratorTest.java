@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.KeyExtent;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.data.thrift.InitialMultiScan;
+import org.apache.accumulo.core.data.thrift.MultiScanResult;
+import org.apache.accumulo.core.data.thrift.TKeyExtent;
+import org.apache.accumulo.core.data.thrift.TKeyValue;
+import org.apache.accumulo.core.data.thrift.TRange;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.Credentials;
+import org.apache.accumulo.core.tabletserver.thrift.NoSuchScanIDException;
+import org.apache.accumulo.core.tabletserver.thrift.TabletClientService;
+import org.apache.accumulo.core.util.SimpleThreadPool;
+import org.apache.hadoop.io.Text;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.server.TNonblockingServer;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TabletServerOrderedBatchReaderIteratorTest {
+  
+  private static final Text TABLE = new Text("1");
+  private static final List<KeyExtent> TABLETS = Arrays.asList(new KeyExtent(TABLE, new Text("d"), null), new KeyExtent(TABLE, new Text("m"), new Text("d")),
+      new KeyExtent(TABLE, new Text("t"), new Text("m")), new KeyExtent(TABLE, null, new Text("t")));
+  private static final int BATCH_SIZE = 3;
+  
+  /**
+   * Serves multi scans from a sorted map. The tablets of a multi scan are returned in reverse order, a few entries at a time, so a multi scan over many
+   * tablets does not return sorted results.
+   */
+  static class FakeTabletServer implements InvocationHandler {
+    final TreeMap<Key,Value> data = new TreeMap<Key,Value>();
+    final Map<Long,Session> sessions = new HashMap<Long,Session>();
+    long nextScanID = 0;
+    // tablets to report as not served the next time they are scanned
+    final Set<KeyExtent> notServing = new HashSet<KeyExtent>();
+    // the number of continue calls to fail as if the session had expired
+    int expire = 0;
+    
+    static class Session {
+      final List<KeyExtent> tablets = new ArrayList<KeyExtent>();
+      final Map<KeyExtent,List<Entry<Key,Value>>> entries = new HashMap<KeyExtent,List<Entry<Key,Value>>>();
+      Map<TKeyExtent,List<TRange>> failures = new HashMap<TKeyExtent,List<TRange>>();
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if (name.equals("startMultiScan"))
+        return startMultiScan((Map<TKeyExtent,List<TRange>>) args[2]);
+      if (name.equals("continueMultiScan")) {
+        if (expire > 0) {
+          expire--;
+          sessions.remove(args[1]);
+          throw new NoSuchScanIDException();
+        }
+        return nextBatch((Long) args[1]);
+      }
+      if (name.equals("closeMultiScan")) {
+        sessions.remove(args[1]);
+        return null;
+      }
+      throw new UnsupportedOperationException(name);
+    }
+    
+    private InitialMultiScan startMultiScan(Map<TKeyExtent,List<TRange>> batch) throws NoSuchScanIDException {
+      Session session = new Session();
+      for (Entry<TKeyExtent,List<TRange>> entry : batch.entrySet()) {
+        KeyExtent extent = new KeyExtent(entry.getKey());
+        if (notServing.remove(extent)) {
+          session.failures.put(entry.getKey(), entry.getValue());
+          continue;
+        }
+        List<Range> ranges = new ArrayList<Range>();
+        for (TRange trange : entry.getValue())
+          ranges.add(new Range(trange));
+        List<Entry<Key,Value>> results = new ArrayList<Entry<Key,Value>>();
+        for (Entry<Key,Value> kv : data.entrySet())
+          for (Range range : ranges)
+            if (range.contains(kv.getKey()))
+              results.add(kv);
+        session.tablets.add(extent);
+        session.entries.put(extent, results);
+      }
+      Collections.sort(session.tablets);
+      Collections.reverse(session.tablets);
+      long scanID = nextScanID++;
+      sessions.put(scanID, session);
+      return new InitialMultiScan(scanID, nextBatch(scanID));
+    }
+    
+    private MultiScanResult nextBatch(long scanID) throws NoSuchScanIDException {
+      Session session = sessions.get(scanID);
+      if (session == null)
+        throw new NoSuchScanIDException();
+      List<TKeyValue> results = new ArrayList<TKeyValue>();
+      List<TKeyExtent> fullScans = new ArrayList<TKeyExtent>();
+      TKeyExtent partScan = null;
+      Key partNextKey = null;
+      while (!session.tablets.isEmpty()) {
+        KeyExtent extent = session.tablets.get(0);
+        List<Entry<Key,Value>> entries = session.entries.get(extent);
+        while (!entries.isEmpty() && results.size() < BATCH_SIZE) {
+          Entry<Key,Value> entry = entries.remove(0);
+          results.add(new TKeyValue(entry.getKey().toThrift(), ByteBuffer.wrap(entry.getValue().get())));
+        }
+        if (entries.isEmpty()) {
+          session.tablets.remove(0);
+          fullScans.add(extent.toThrift());
+        } else {
+          partScan = extent.toThrift();
+          partNextKey = entries.get(0).getKey();
+          break;
+        }
+      }
+      MultiScanResult result = new MultiScanResult(results, session.failures, fullScans, partScan, partNextKey == null ? null : partNextKey.toThrift(), true,
+          !session.tablets.isEmpty());
+      session.failures = new HashMap<TKeyExtent,List<TRange>>();
+      return result;
+    }
+  }
+  
+  /**
+   * Places every tablet on the fake tablet server.
+   */
+  static class FakeLocator extends TabletLocator {
+    final String location;
+    final AtomicInteger invalidations = new AtomicInteger();
+    
+    FakeLocator(String location) {
+      this.location = location;
+    }
+    
+    @Override
+    public TabletLocation locateTablet(Credentials credentials, Text row, boolean skipRow, boolean retry) {
+      throw new UnsupportedOperationException();
+    }
+    
+    @Override
+    public <T extends Mutation> void binMutations(Credentials credentials, List<T> mutations, Map<String,TabletServerMutations<T>> binnedMutations,
+        List<T> failures) {
+      throw new UnsupportedOperationException();
+    }
+    
+    @Override
+    public List<Range> binRanges(Credentials credentials, List<Range> ranges, Map<String,Map<KeyExtent,List<Range>>> binnedRanges) {
+      Map<KeyExtent,List<Range>> tablets = new HashMap<KeyExtent,List<Range>>();
+      for (Range range : ranges) {
+        for (KeyExtent extent : TABLETS) {
+          if (extent.toDataRange().clip(range, true) != null) {
+            if (!tablets.containsKey(extent))
+              tablets.put(extent, new ArrayList<Range>());
+            tablets.get(extent).add(range);
+          }
+        }
+      }
+      binnedRanges.put(location, tablets);
+      return Collections.emptyList();
+    }
+    
+    @Override
+    public void invalidateCache(KeyExtent failedExtent) {
+      invalidations.incrementAndGet();
+    }
+    
+    @Override
+    public void invalidateCache(Collection<KeyExtent> keySet) {
+      invalidations.incrementAndGet();
+    }
+    
+    @Override
+    public void invalidateCache() {
+      invalidations.incrementAndGet();
+    }
+    
+    @Override
+    public void invalidateCache(String server) {
+      invalidations.incrementAndGet();
+    }
+  }
+  
+  private FakeTabletServer tserver;
+  private FakeLocator locator;
+  private TServer server;
+  private ExecutorService queryThreadPool;
+  
+  @Before
+  public void setUp() throws Exception {
+    ServerSocket socket = new ServerSocket(0);
+    int port = socket.getLocalPort();
+    socket.close();
+    
+    tserver = new FakeTabletServer();
+    for (char row = 'a'; row <= 'z'; row++)
+      for (int col = 0; col < 2; col++)
+        tserver.data.put(new Key("" + row, "cf", "cq" + col), new Value((row + "" + col).getBytes()));
+    
+    TabletClientService.Iface iface = (TabletClientService.Iface) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] {TabletClientService.Iface.class}, tserver);
+    TNonblockingServer.Args args = new TNonblockingServer.Args(new TNonblockingServerSocket(port));
+    args.processor(new TabletClientService.Processor<TabletClientService.Iface>(iface));
+    args.protocolFactory(new TCompactProtocol.Factory());
+    server = new TNonblockingServer(args);
+    Thread serverThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        server.serve();
+      }
+    });
+    serverThread.setDaemon(true);
+    serverThread.start();
+    while (!server.isServing())
+      Thread.sleep(10);
+    
+    locator = new FakeLocator("localhost:" + port);
+    queryThreadPool = new SimpleThreadPool(2, "ordered batch reader test");
+  }
+  
+  @After
+  public void tearDown() {
+    queryThreadPool.shutdownNow();
+    server.stop();
+  }
+  
+  private Iterator<Entry<Key,Value>> scan(List<Range> ranges, long maxMemory) {
+    return new TabletServerOrderedBatchReaderIterator(new MockInstance("ordered"), new Credentials("root", new PasswordToken("")), TABLE.toString(),
+        Authorizations.EMPTY, ranges, 2, queryThreadPool, new ScannerOptions(), Long.MAX_VALUE, maxMemory, locator);
+  }
+  
+  private List<Key> expected(List<Range> ranges) {
+    List<Key> keys = new ArrayList<Key>();
+    for (Key key : tserver.data.keySet())
+      for (Range range : ranges)
+        if (range.contains(key)) {
+          keys.add(key);
+          break;
+        }
+    return keys;
+  }
+  
+  private static List<Key> keys(Iterator<Entry<Key,Value>> iter) {
+    List<Key> keys = new ArrayList<Key>();
+    while (iter.hasNext()) {
+      Entry<Key,Value> entry = iter.next();
+      assertEquals(entry.getKey().getRow() + "" + entry.getKey().getColumnQualifier().toString().charAt(2), entry.getValue().toString());
+      keys.add(entry.getKey());
+    }
+    return keys;
+  }
+  
+  @Test
+  public void testSorted() {
+    List<Range> ranges = Arrays.asList(new Range("x", "z"), new Range("b", "f"), new Range("k"), new Range("e", "p"), new Range("r", "s"));
+    assertEquals(expected(ranges), keys(scan(ranges, 0)));
+    
+    List<Range> all = Collections.singletonList(new Range());
+    assertEquals(expected(all), keys(scan(all, 0)));
+  }
+  
+  @Test
+  public void testSmallBuffer() {
+    List<Range> all = Collections.singletonList(new Range());
+    assertEquals(expected(all), keys(scan(all, 10)));
+    assertEquals(52, expected(all).size());
+  }
+  
+  @Test
+  public void testNotServing() {
+    tserver.notServing.add(TABLETS.get(1));
+    tserver.notServing.add(TABLETS.get(2));
+    List<Range> ranges = Arrays.asList(new Range("a", "z"));
+    assertEquals(expected(ranges), keys(scan(ranges, 0)));
+    assertTrue(tserver.notServing.isEmpty());
+    assertEquals(2, locator.invalidations.get());
+  }
+  
+  @Test
+  public void testSessionExpired() {
+    // the scan of a tablet is continued from where it stopped, without returning anything twice
+    tserver.expire = 3;
+    List<Range> all = Collections.singletonList(new Range());
+    assertEquals(expected(all), keys(scan(all, 0)));
+    assertEquals(0, tserver.expire);
+    assertEquals(3, locator.invalidations.get());
+  }
+}
@@ -21,15 +21,21 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.AsyncCallback;
+import org.apache.accumulo.core.client.AsyncTable;
+import org.apache.accumulo.core.client.AsyncTableConfig;
 import org.apache.accumulo.core.client.BatchDeleter;
 import org.apache.accumulo.core.client.BatchScanner;
 import org.apache.accumulo.core.client.BatchWriter;
@@ -84,6 +90,28 @@ public class MockConnectorTest {
     assertEquals(100, count);
   }
   
+  @Test
+  public void testOrderedBatchScanner() throws Exception {
+    Connector c = new MockConnector("root", new MockInstance());
+    c.tableOperations().create("test");
+    BatchWriter bw = c.createBatchWriter("test", new BatchWriterConfig());
+    for (int i = 0; i < 100; i++) {
+      Mutation m = new Mutation(String.format("%03d", i));
+      m.put("cf", "cq", "" + i);
+      bw.addMutation(m);
+    }
+    bw.close();
+    BatchScanner s = c.createBatchScanner("test", Authorizations.EMPTY, 2);
+    s.setRanges(Arrays.asList(new Range("050", "099"), new Range("010", "020"), new Range("015", "060")));
+    s.setOrdered(true);
+    List<String> rows = new ArrayList<String>();
+    for (Entry<Key,Value> entry : s)
+      rows.add(entry.getKey().getRow().toString());
+    assertEquals(90, rows.size());
+    for (int i = 0; i < rows.size(); i++)
+      assertEquals(String.format("%03d", i + 10), rows.get(i));
+  }
+  
   @Test
   public void testChangeAuths() throws Exception {
     Connector c = new MockConnector("root", new MockInstance());
@@ -387,4 +415,42 @@ public class MockConnectorTest {
     assertEquals(name, mockInstance.getConnector("foo", new PasswordToken("bar")).getInstance().getInstanceName());
   }
   
+  @Test
+  public void testAsyncTable() throws Exception {
+    Connector c = new MockConnector("root", new MockInstance());
+    c.tableOperations().create("test");
+    AsyncTable table = c.createAsyncTable("test", new AsyncTableConfig());
+
+    final AtomicInteger written = new AtomicInteger();
+    Mutation m = new Mutation("r1");
+    m.put("cf1", "cq1", "v1");
+    table.write(m, new AsyncCallback<Void>() {
+      @Override
+      public void completed(Void result) {
+        written.incrementAndGet();
+      }
+
+      @Override
+      public void failed(Throwable cause) {}
+    });
+    m = new Mutation("r2");
+    m.put("cf1", "cq1", "v2");
+    // the request has completed by the time it is returned
+    assertTrue(table.write(m, null).isDone());
+    assertEquals(1, written.get());
+
+    Future<List<Entry<Key,Value>>> result = table.scan(Range.exact("r1"), null);
+    assertTrue(result.isDone());
+    assertEquals(1, result.get().size());
+    assertEquals(new Text("r1"), result.get().get(0).getKey().getRow());
+    assertEquals("v1", result.get().get(0).getValue().toString());
+    assertEquals(2, table.scan(new Range(), null).get().size());
+
+    table.close();
+    try {
+      table.scan(new Range(), null);
+      Assert.fail("closed tables should not accept requests");
+    } catch (IllegalStateException e) {}
+  }
+  
 }
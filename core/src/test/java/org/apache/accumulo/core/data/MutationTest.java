@@ -608,5 +608,64 @@ public class MutationTest  {
     tm1.setRow((byte[]) null);
     new Mutation(tm1);
   }
+  
+  @Test
+  public void testPutsStringEncoding() {
+    // strings are encoded straight into the mutation's buffer, which must give the same bytes as Text, including for unpaired surrogates
+    String[] strings = {"", "ascii", "caf\u00e9", "\u65e5\u672c", "\ud83d\ude00", "lone \ud83d high", "lone \ude00 low", "end \ud83d"};
+    for (String cf : strings) {
+      for (String cq : strings) {
+        Mutation m1 = new Mutation(cf + cq);
+        m1.put(cf, cq, new ColumnVisibility("A"), 42l, cq + cf);
+        Mutation m2 = new Mutation(new Text(cf + cq));
+        m2.put(new Text(cf), new Text(cq), new ColumnVisibility("A"), 42l, new Value(new Text(cq + cf).copyBytes()));
+        assertEquals(m2, m1);
+      }
+    }
+  }
+  
+  @Test
+  public void testPutsLargeString() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < Mutation.VALUE_SIZE_COPY_CUTOFF)
+      sb.append("large value \u00e9 ");
+    String large = sb.toString();
+    
+    Mutation m = new Mutation("r");
+    m.put("cf", "cq", large);
+    m.put("cf", "cq2", "small");
+    
+    assertEquals(2, m.size());
+    List<ColumnUpdate> updates = m.getUpdates();
+    assertEquals(large, new String(updates.get(0).getValue(), "UTF-8"));
+    assertEquals("small", new String(updates.get(1).getValue(), "UTF-8"));
+    assertEquals(m, new Mutation(m.toThrift()));
+  }
+  
+  @Test
+  public void testInitialBufferSize() throws Exception {
+    Mutation m1 = new Mutation("r1", 4);
+    for (int i = 0; i < 20; i++)
+      m1.put("cf" + i, "cq", "v" + i);
+    
+    // a buffer of the exact size is sent as is, the small one is grown and copied, but both send the same bytes
+    Mutation m2 = new Mutation("r1", m1.toThrift().data.remaining());
+    for (int i = 0; i < 20; i++)
+      m2.put("cf" + i, "cq", "v" + i);
+    assertEquals(m2.toThrift().data.capacity(), m2.toThrift().data.remaining());
+    assertEquals(m1, m2);
+    assertEquals(m1.numBytes(), m2.numBytes());
+    assertEquals(m1.toThrift(), m2.toThrift());
+    assertEquals(m1.toThrift().data.remaining(), m2.toThrift().data.remaining());
+    
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    m2.write(new DataOutputStream(bos));
+    Mutation m3 = new Mutation();
+    m3.readFields(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+    assertEquals(m1, m3);
+    assertEquals(m2.numBytes(), m3.numBytes());
+    assertEquals(20, m3.getUpdates().size());
+    assertEquals("v19", new String(m3.getUpdates().get(19).getValue()));
+  }
 
 }
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LocalDiskBlockCacheTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder(new File(System.getProperty("user.dir") + "/target"));
+
+  private static byte[] block(Random rand, int size) {
+    byte[] buf = new byte[size];
+    rand.nextBytes(buf);
+    return buf;
+  }
+
+  @Test
+  public void testCacheAndGet() throws Exception {
+    LocalDiskBlockCache cache = new LocalDiskBlockCache(tempFolder.newFolder("cache"), 1 << 20);
+    Random rand = new Random(1);
+    byte[] b1 = block(rand, 1000);
+    byte[] b2 = block(rand, 2000);
+
+    assertNull(cache.getBlock("/f1O0"));
+    cache.cacheBlock("/f1O0", b1);
+    cache.cacheBlock("/f1O1000", b2);
+    cache.awaitPendingWrites();
+
+    assertArrayEquals(b1, cache.getBlock("/f1O0").getBuffer());
+    assertArrayEquals(b2, cache.getBlock("/f1O1000").getBuffer());
+    assertNull(cache.getBlock("/f2O0"));
+    assertEquals(2, cache.size());
+    assertEquals(2, cache.getStats().getHitCount());
+    assertEquals(2, cache.getStats().getMissCount());
+
+    // caching a block again does not write it again
+    cache.cacheBlock("/f1O0", b1);
+    assertEquals(1, cache.getStats().getDuplicateReads());
+    cache.shutdown();
+  }
+
+  @Test
+  public void testSurvivesRestart() throws Exception {
+    File dir = tempFolder.newFolder("cache");
+    Random rand = new Random(2);
+    byte[] b1 = block(rand, 1000);
+
+    LocalDiskBlockCache cache = new LocalDiskBlockCache(dir, 1 << 20);
+    cache.cacheBlock("/f1O0", b1);
+    cache.awaitPendingWrites();
+    long size = cache.getCurrentSize();
+    cache.shutdown();
+
+    // a partially written block left behind by a crash
+    File tmp = new File(new File(dir, "00"), "00" + LocalDiskBlockCache.TMP_SUFFIX);
+    tmp.getParentFile().mkdirs();
+    assertTrue(tmp.createNewFile());
+
+    cache = new LocalDiskBlockCache(dir, 1 << 20);
+    assertEquals(1, cache.size());
+    assertEquals(size, cache.getCurrentSize());
+    assertArrayEquals(b1, cache.getBlock("/f1O0").getBuffer());
+    assertTrue(!tmp.exists());
+    cache.shutdown();
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    int blockSize = 1000;
+    // room for about ten blocks, headers included
+    LocalDiskBlockCache cache = new LocalDiskBlockCache(tempFolder.newFolder("cache"), 10 * (blockSize + 50), 0.5f, 100);
+    Random rand = new Random(3);
+
+    for (int i = 0; i < 10; i++) {
+      cache.cacheBlock("/f1O" + i, block(rand, blockSize));
+      cache.awaitPendingWrites();
+      // give blocks distinct access times
+      Thread.sleep(2);
+    }
+    for (int i = 10; i < 20; i++) {
+      // keep the first block recently used
+      assertNotNull(cache.getBlock("/f1O0"));
+      cache.cacheBlock("/f1O" + i, block(rand, blockSize));
+      cache.awaitPendingWrites();
+      Thread.sleep(2);
+    }
+
+    assertTrue(cache.getCurrentSize() <= cache.getMaxSize());
+    assertTrue(cache.getStats().getEvictedCount() > 0);
+    assertNotNull(cache.getBlock("/f1O0"));
+    assertNull(cache.getBlock("/f1O1"));
+    assertNotNull(cache.getBlock("/f1O19"));
+    cache.shutdown();
+  }
+
+  @Test
+  public void testDamagedBlock() throws Exception {
+    File dir = tempFolder.newFolder("cache");
+    LocalDiskBlockCache cache = new LocalDiskBlockCache(dir, 1 << 20);
+    cache.cacheBlock("/f1O0", block(new Random(4), 1000));
+    cache.awaitPendingWrites();
+
+    String name = LocalDiskBlockCache.fileName("/f1O0");
+    File file = new File(new File(dir, name.substring(0, 2)), name);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.seek(raf.length() - 20);
+    raf.write(~raf.read());
+    raf.close();
+
+    assertNull(cache.getBlock("/f1O0"));
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getCurrentSize());
+    assertTrue(!file.exists());
+    cache.shutdown();
+  }
+
+  @Test
+  public void testTiered() throws Exception {
+    int blockSize = 1000;
+    LocalDiskBlockCache l2 = new LocalDiskBlockCache(tempFolder.newFolder("cache"), 1 << 20);
+    TieredBlockCache cache = new TieredBlockCache(new LruBlockCache(10 * blockSize, blockSize, false), l2);
+    Random rand = new Random(5);
+
+    byte[] first = block(rand, blockSize);
+    cache.cacheBlock("b0", first);
+    for (int i = 1; i < 50; i++)
+      cache.cacheBlock("b" + i, block(rand, blockSize));
+    l2.awaitPendingWrites();
+
+    // long gone from the first tier, but still in the second
+    assertNull(cache.getFirstTier().getBlock("b0"));
+    CacheEntry ce = cache.getBlock("b0");
+    assertNotNull(ce);
+    assertArrayEquals(first, ce.getBuffer());
+    assertEquals(1, l2.getStats().getHitCount());
+
+    // promoted into the first tier
+    assertNotNull(cache.getFirstTier().getBlock("b0"));
+    cache.shutdown();
+  }
+}
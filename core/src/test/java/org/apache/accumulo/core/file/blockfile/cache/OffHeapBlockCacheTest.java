@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OffHeapBlockCacheTest {
+
+  private static byte[] randomBlock(Random rand, int size) {
+    byte[] buf = new byte[size];
+    rand.nextBytes(buf);
+    return buf;
+  }
+
+  @Test
+  public void testCacheAndGet() {
+    OffHeapBlockCache cache = new OffHeapBlockCache(1 << 20, 1024, 64 * 1024, 0.75f, 0.85f);
+    Random rand = new Random(42);
+
+    byte[][] blocks = new byte[50][];
+    for (int i = 0; i < blocks.length; i++) {
+      // sizes that are smaller than, equal to and span several pages
+      blocks[i] = randomBlock(rand, i * 97 % 5000);
+      assertNull(cache.getBlock("b" + i));
+      cache.cacheBlock("b" + i, blocks[i]);
+    }
+
+    for (int i = 0; i < blocks.length; i++) {
+      CacheEntry ce = cache.getBlock("b" + i);
+      assertNotNull(ce);
+      assertArrayEquals(blocks[i], ce.getBuffer());
+    }
+
+    assertEquals(blocks.length, cache.size());
+    assertEquals(blocks.length, cache.getStats().getHitCount());
+    assertEquals(blocks.length, cache.getStats().getMissCount());
+    assertEquals(0, cache.getStats().getEvictedCount());
+    cache.shutdown();
+  }
+
+  @Test
+  public void testIndexSurvivesAcrossHits() {
+    OffHeapBlockCache cache = new OffHeapBlockCache(1 << 20, 1024, 64 * 1024, 0.75f, 0.85f);
+    cache.cacheBlock("b", new byte[3000]);
+    Object index = new Object();
+    cache.getBlock("b").setIndex(index);
+    assertSame(index, cache.getBlock("b").getIndex());
+    cache.shutdown();
+  }
+
+  @Test
+  public void testEviction() {
+    int pageSize = 1024;
+    OffHeapBlockCache cache = new OffHeapBlockCache(100 * pageSize, pageSize, 10 * pageSize, 0.5f, 0.8f);
+    Random rand = new Random(7);
+
+    byte[][] blocks = new byte[200][];
+    for (int i = 0; i < blocks.length; i++) {
+      blocks[i] = randomBlock(rand, pageSize * 2);
+      cache.cacheBlock("b" + i, blocks[i]);
+      assertTrue(cache.getCurrentSize() <= cache.getMaxSize());
+    }
+
+    assertTrue(cache.getStats().getEvictedCount() > 0);
+    assertTrue(cache.getAllocatedSize() <= cache.getMaxSize());
+
+    // the most recently cached block must still be there, and the first should be long gone
+    assertArrayEquals(blocks[blocks.length - 1], cache.getBlock("b" + (blocks.length - 1)).getBuffer());
+    assertNull(cache.getBlock("b0"));
+
+    // whatever survived must be intact
+    for (int i = 0; i < blocks.length; i++) {
+      CacheEntry ce = cache.getBlock("b" + i);
+      if (ce != null)
+        assertArrayEquals(blocks[i], ce.getBuffer());
+    }
+    cache.shutdown();
+  }
+
+  @Test
+  public void testInMemoryEvictedLast() {
+    int pageSize = 1024;
+    OffHeapBlockCache cache = new OffHeapBlockCache(100 * pageSize, pageSize, 10 * pageSize, 0.5f, 0.8f);
+
+    byte[] inMem = new byte[pageSize];
+    cache.cacheBlock("mem", inMem, true);
+    for (int i = 0; i < 200; i++) {
+      cache.cacheBlock("b" + i, new byte[pageSize]);
+    }
+    assertNotNull(cache.getBlock("mem"));
+    cache.shutdown();
+  }
+
+  @Test
+  public void testBlockLargerThanCache() {
+    OffHeapBlockCache cache = new OffHeapBlockCache(10 * 1024, 1024, 10 * 1024, 0.5f, 0.8f);
+    assertNull(cache.cacheBlock("big", new byte[20 * 1024]));
+    assertNull(cache.getBlock("big"));
+    cache.shutdown();
+  }
+
+  @Test
+  public void testConcurrentReadersAndWriters() throws Exception {
+    final int pageSize = 512;
+    final OffHeapBlockCache cache = new OffHeapBlockCache(64 * pageSize, pageSize, 8 * pageSize, 0.5f, 0.8f);
+    final Throwable[] failure = new Throwable[1];
+
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final int seed = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            Random rand = new Random(seed);
+            for (int i = 0; i < 5000; i++) {
+              int id = rand.nextInt(100);
+              CacheEntry ce = cache.getBlock("b" + id);
+              if (ce == null) {
+                // block contents are derived from the id so any reader can verify them
+                byte[] buf = new byte[pageSize + id * 7];
+                Arrays.fill(buf, (byte) id);
+                cache.cacheBlock("b" + id, buf);
+              } else {
+                assertEquals(pageSize + id * 7, ce.getBuffer().length);
+                for (byte b : ce.getBuffer())
+                  assertEquals((byte) id, b);
+              }
+            }
+          } catch (Throwable e) {
+            failure[0] = e;
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads)
+      thread.join();
+
+    assertNull(failure[0]);
+    cache.shutdown();
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.blockfile.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TinyLfuAdmissionPolicyTest {
+
+  @Test
+  public void testFrequency() {
+    TinyLfuAdmissionPolicy policy = new TinyLfuAdmissionPolicy();
+    policy.init(1 << 20, 1024);
+
+    assertEquals(0, policy.frequency("a"));
+    for (int i = 0; i < 5; i++)
+      policy.recordAccess("a");
+    policy.recordAccess("b");
+
+    assertTrue(policy.frequency("a") >= 5);
+    assertTrue(policy.frequency("b") >= 1);
+
+    // counters saturate
+    for (int i = 0; i < 100; i++)
+      policy.recordAccess("a");
+    assertEquals(15, policy.frequency("a"));
+  }
+
+  @Test
+  public void testAdmission() {
+    TinyLfuAdmissionPolicy policy = new TinyLfuAdmissionPolicy();
+    policy.init(1 << 20, 1024);
+
+    // nothing evicted yet
+    assertTrue(policy.admit("a"));
+
+    policy.recordAccess("victim");
+    policy.recordAccess("victim");
+    policy.recordEviction("victim");
+    policy.recordAccess("once");
+    assertFalse(policy.admit("once"));
+    assertTrue(policy.admit("victim"));
+
+    for (int i = 0; i < 3; i++)
+      policy.recordAccess("often");
+    assertTrue(policy.admit("often"));
+  }
+
+  @Test
+  public void testAging() {
+    TinyLfuAdmissionPolicy policy = new TinyLfuAdmissionPolicy();
+    policy.init(64, 1);
+
+    for (int i = 0; i < 8; i++)
+      policy.recordAccess("old");
+    int before = policy.frequency("old");
+
+    // enough distinct accesses to trigger at least one reset
+    for (int i = 0; i < 10 * 64 * 8; i++)
+      policy.recordAccess("x" + i);
+
+    assertTrue(policy.frequency("old") < before);
+  }
+
+  @Test
+  public void testScanResistance() {
+    int blockSize = 1000;
+    LruBlockCache cache = new LruBlockCache(100 * blockSize, blockSize, false, new TinyLfuAdmissionPolicy());
+
+    // a hot set that fits comfortably in the cache, read several times
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 30; i++) {
+        if (cache.getBlock("hot" + i) == null)
+          cache.cacheBlock("hot" + i, new byte[blockSize]);
+      }
+    }
+
+    // a scan that reads many more blocks than the cache holds, each once
+    for (int i = 0; i < 1000; i++) {
+      if (cache.getBlock("scan" + i) == null)
+        cache.cacheBlock("scan" + i, new byte[blockSize]);
+    }
+
+    assertTrue(cache.getStats().getRejectedCount() > 0);
+    for (int i = 0; i < 30; i++)
+      assertNotNull("hot" + i, cache.getBlock("hot" + i));
+    cache.shutdown();
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.file.rfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.ConfigurationCopy;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.file.FileOperations;
+import org.apache.accumulo.core.file.FileSKVIterator;
+import org.apache.accumulo.core.file.FileSKVWriter;
+import org.apache.accumulo.core.file.blockfile.cache.LruBlockCache;
+import org.apache.accumulo.core.file.blockfile.impl.CachableBlockFile;
+import org.apache.accumulo.core.file.keyfunctor.ColumnFamilyFunctor;
+import org.apache.accumulo.core.file.keyfunctor.ColumnQualifierFunctor;
+import org.apache.accumulo.core.util.CachedConfiguration;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlockedBloomFilterTest {
+
+  private static final int ROWS = 20000;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder(new File(System.getProperty("user.dir") + "/target"));
+
+  private Configuration conf = CachedConfiguration.getInstance();
+
+  private ConfigurationCopy bloomConf(String chunkSize) {
+    ConfigurationCopy acuconf = new ConfigurationCopy(AccumuloConfiguration.getDefaultConfiguration());
+    acuconf.set(Property.TABLE_BLOOM_ENABLED, "true");
+    acuconf.set(Property.TABLE_BLOOM_CHUNK_SIZE, chunkSize);
+    acuconf.set(Property.TABLE_BLOOM_KEY_FUNCTOR, ColumnFamilyFunctor.class.getName());
+    acuconf.set(Property.TABLE_FILE_COMPRESSED_BLOCK_SIZE, "8K");
+    return acuconf;
+  }
+
+  private static Key key(int row, String cf) {
+    return new Key(new Text(String.format("r%08d", row)), new Text(cf));
+  }
+
+  private static Range range(int row, String cf) {
+    Key k = key(row, cf);
+    return new Range(k, true, k.followingKey(PartialKey.ROW_COLFAM), false);
+  }
+
+  private String writeFile(AccumuloConfiguration acuconf) throws IOException {
+    String file = new File(tempFolder.getRoot(), "bloom.rf").getAbsolutePath();
+    FileSKVWriter writer = FileOperations.getInstance().openWriter(file, FileSystem.getLocal(conf), conf, acuconf);
+    HashSet<ByteSequence> lg1 = new HashSet<ByteSequence>();
+    lg1.add(new ArrayByteSequence("lg1"));
+    writer.startNewLocalityGroup("lg1", lg1);
+    for (int i = 0; i < ROWS; i += 2)
+      writer.append(key(i, "lg1"), new Value(("v" + i).getBytes()));
+    writer.startDefaultLocalityGroup();
+    for (int i = 0; i < ROWS; i += 2) {
+      writer.append(key(i, "cf1"), new Value(("v" + i).getBytes()));
+      writer.append(key(i, "cf2"), new Value(("v" + i).getBytes()));
+    }
+    writer.close();
+    return file;
+  }
+
+  @Test
+  public void testMembership() throws IOException {
+    String file = writeFile(bloomConf("1000"));
+
+    LruBlockCache indexCache = new LruBlockCache(100000000, 100000);
+    CachableBlockFile.Reader cbr = new CachableBlockFile.Reader(FileSystem.getLocal(conf), new Path(file), conf, null, indexCache);
+    BlockedBloomFilter.Reader bloomFilter = BlockedBloomFilter.Reader.open(cbr);
+
+    // two locality groups with 10000 and 20000 bloom keys, chunks are cut at the first block boundary after 1000 keys
+    assertTrue(bloomFilter.getChunkCount() > 10);
+
+    // only the chunk covering the lookup is read
+    long blocks = indexCache.size();
+    bloomFilter.probablyHasKey(range(ROWS / 2, "cf1"));
+    assertTrue(indexCache.size() - blocks <= 2);
+
+    int falsePositives = 0;
+    for (int i = 0; i < ROWS; i++) {
+      if (i % 2 == 0) {
+        assertTrue(bloomFilter.probablyHasKey(range(i, "cf1")));
+        assertTrue(bloomFilter.probablyHasKey(range(i, "cf2")));
+        assertTrue(bloomFilter.probablyHasKey(range(i, "lg1")));
+      } else if (bloomFilter.probablyHasKey(range(i, "cf1"))) {
+        falsePositives++;
+      }
+    }
+    assertTrue("false positives " + falsePositives, falsePositives < ROWS / 2 / 20);
+
+    // a range that can not be transformed to a bloom key is never filtered
+    assertTrue(bloomFilter.probablyHasKey(new Range(new Text(String.format("r%08d", 1)))));
+    // past the last key
+    assertFalse(bloomFilter.probablyHasKey(range(ROWS + 1, "cf1")));
+
+    cbr.close();
+  }
+
+  @Test
+  public void testSeek() throws IOException {
+    ConfigurationCopy acuconf = bloomConf("1000");
+    String file = writeFile(acuconf);
+
+    FileSKVIterator reader = new RFileOperations().openReader(file, false, FileSystem.getLocal(conf), conf, acuconf, null, new LruBlockCache(100000000,
+        100000));
+    for (int i = 0; i < ROWS; i++) {
+      reader.seek(range(i, "cf2"), Collections.<ByteSequence> emptySet(), false);
+      assertEquals(i % 2 == 0, reader.hasTop());
+      if (i % 2 == 0) {
+        assertEquals(key(i, "cf2"), reader.getTopKey());
+        reader.next();
+        assertFalse(reader.hasTop());
+      }
+    }
+
+    // deep copies use the bloom filter too
+    FileSKVIterator copy = (FileSKVIterator) reader.deepCopy(null);
+    copy.seek(range(2, "cf1"), Collections.<ByteSequence> emptySet(), false);
+    assertTrue(copy.hasTop());
+    copy.seek(range(3, "cf1"), Collections.<ByteSequence> emptySet(), false);
+    assertFalse(copy.hasTop());
+
+    reader.close();
+  }
+
+  @Test
+  public void testKeySpanningChunks() throws IOException {
+    ConfigurationCopy acuconf = bloomConf("1");
+    acuconf.set(Property.TABLE_BLOOM_KEY_FUNCTOR, ColumnQualifierFunctor.class.getName());
+    acuconf.set(Property.TABLE_FILE_COMPRESSED_BLOCK_SIZE, "1K");
+
+    // many versions of one column, so its keys fill several blocks and each block closes a chunk
+    String file = new File(tempFolder.getRoot(), "versions.rf").getAbsolutePath();
+    FileSKVWriter writer = FileOperations.getInstance().openWriter(file, FileSystem.getLocal(conf), conf, acuconf);
+    writer.startDefaultLocalityGroup();
+    writer.append(new Key("r1", "cf", "cq", 1), new Value("v".getBytes()));
+    for (long ts = 1000; ts > 0; ts--)
+      writer.append(new Key("r2", "cf", "cq", ts), new Value(("version " + ts).getBytes()));
+    writer.append(new Key("r3", "cf", "cq", 1), new Value("v".getBytes()));
+    writer.close();
+
+    CachableBlockFile.Reader cbr = new CachableBlockFile.Reader(FileSystem.getLocal(conf), new Path(file), conf, null, null);
+    BlockedBloomFilter.Reader bloomFilter = BlockedBloomFilter.Reader.open(cbr);
+    assertTrue(bloomFilter.getChunkCount() > 2);
+
+    // a range starting at a later version, like a scan continuing after its last batch, starts at a later chunk
+    Key end = new Key("r2", "cf", "cq").followingKey(PartialKey.ROW_COLFAM_COLQUAL);
+    for (long ts = 1000; ts > 0; ts -= 50)
+      assertTrue("version " + ts, bloomFilter.probablyHasKey(new Range(new Key("r2", "cf", "cq", ts), true, end, false)));
+    cbr.close();
+
+    FileSKVIterator reader = new RFileOperations().openReader(file, false, FileSystem.getLocal(conf), conf, acuconf, null, null);
+    reader.seek(new Range(new Key("r2", "cf", "cq", 10), true, end, false), Collections.<ByteSequence> emptySet(), false);
+    assertTrue(reader.hasTop());
+    assertEquals(new Key("r2", "cf", "cq", 10), reader.getTopKey());
+    reader.close();
+  }
+
+  @Test
+  public void testNotBlocked() throws IOException {
+    // without a chunk size, the bloom filter is added by BloomFilterLayer
+    String file = writeFile(bloomConf("0"));
+
+    CachableBlockFile.Reader cbr = new CachableBlockFile.Reader(FileSystem.getLocal(conf), new Path(file), conf, null, null);
+    assertNull(BlockedBloomFilter.Reader.open(cbr));
+    cbr.close();
+  }
+}
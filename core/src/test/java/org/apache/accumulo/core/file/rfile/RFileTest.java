@@ -19,6 +19,7 @@ package org.apache.accumulo.core.file.rfile;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
@@ -37,6 +38,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.accumulo.core.Constants;
 import org.apache.accumulo.core.conf.AccumuloConfiguration;
@@ -52,8 +54,10 @@ import org.apache.accumulo.core.file.FileSKVIterator;
 import org.apache.accumulo.core.file.blockfile.cache.LruBlockCache;
 import org.apache.accumulo.core.file.blockfile.impl.CachableBlockFile;
 import org.apache.accumulo.core.file.rfile.RFile.Reader;
+import org.apache.accumulo.core.iterators.IterationInterruptedException;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 import org.apache.accumulo.core.iterators.system.ColumnFamilySkippingIterator;
+import org.apache.accumulo.core.iterators.system.KeyValueBatch;
 import org.apache.accumulo.core.metadata.MetadataTable;
 import org.apache.accumulo.core.metadata.schema.MetadataSchema;
 import org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection;
@@ -177,6 +181,8 @@ public class RFileTest {
     private FSDataInputStream in;
     public Reader reader;
     public SortedKeyValueIterator<Key,Value> iter;
+    public LruBlockCache indexCache;
+    public LruBlockCache dataCache;
 
     public void openWriter(boolean startDLG) throws IOException {
 
@@ -225,8 +231,8 @@ public class RFileTest {
       in = new FSDataInputStream(bais);
       fileLength = data.length;
 
-      LruBlockCache indexCache = new LruBlockCache(100000000, 100000);
-      LruBlockCache dataCache = new LruBlockCache(100000000, 100000);
+      indexCache = new LruBlockCache(100000000, 100000);
+      dataCache = new LruBlockCache(100000000, 100000);
 
       CachableBlockFile.Reader _cbr = new CachableBlockFile.Reader(in, fileLength, conf, dataCache, indexCache);
       reader = new RFile.Reader(_cbr);
@@ -1540,6 +1546,48 @@ public class RFileTest {
     trf.closeReader();
   }
 
+  @Test
+  public void testBatches() throws Exception {
+    TestRFile trf = new TestRFile();
+
+    trf.openWriter();
+
+    for (int i = 0; i < 2500; i++) {
+      trf.writer.append(nk(nf("r_", i / 3), "cf1", nf("cq_", i % 3), "L1", 42), nv("foo" + i));
+    }
+
+    trf.closeWriter();
+    trf.openReader();
+
+    Set<ByteSequence> cfs = Collections.emptySet();
+    KeyValueBatch batch = new KeyValueBatch(7);
+
+    trf.reader.seek(new Range(), cfs, false);
+    int i = 0;
+    while (trf.reader.hasTop()) {
+      batch.clear();
+      int added = trf.reader.nextBatch(batch);
+      assertEquals(batch.size(), added);
+      for (int j = 0; j < added; j++, i++) {
+        assertEquals(nk(nf("r_", i / 3), "cf1", nf("cq_", i % 3), "L1", 42), batch.getKey(j));
+        assertEquals(nv("foo" + i), batch.getValue(j));
+      }
+    }
+    assertEquals(2500, i);
+
+    // seek within the unconsumed portion of the block after reading a batch, which needs the key before the top key
+    trf.reader.seek(new Range(nk(nf("r_", 100), "cf1", nf("cq_", 0), "L1", 42), null), cfs, false);
+    batch.clear();
+    trf.reader.nextBatch(batch);
+    trf.reader.seek(new Range(nk(nf("r_", 103), "cf1", nf("cq_", 1), "L1", 42), null), cfs, false);
+    assertEquals(nk(nf("r_", 103), "cf1", nf("cq_", 1), "L1", 42), trf.reader.getTopKey());
+    assertEquals(nv("foo" + 310), trf.reader.getTopValue());
+    trf.reader.seek(new Range(nk(nf("r_", 102), "cf1", nf("cq_", 0), "L1", 42), null), cfs, false);
+    assertEquals(nk(nf("r_", 102), "cf1", nf("cq_", 0), "L1", 42), trf.reader.getTopKey());
+
+    trf.closeReader();
+  }
+
   @Test(expected = NullPointerException.class)
   public void testMissingUnreleasedVersions() throws Exception {
     runVersionTest(5);
@@ -1803,6 +1851,44 @@ public class RFileTest {
     restoreOldConfiguration(oldSiteConfigProperty, conf);
   }
 
+  @Test
+  public void testWarmCache() throws IOException {
+    TestRFile trf = new TestRFile();
+
+    trf.openWriter();
+    for (int i = 0; i < 10000; i++)
+      trf.writer.append(nk(nf("r", i), "cf1", "cq1", "", 1), nv(nf("v", i)));
+    trf.closeWriter();
+
+    trf.openReader();
+    assertEquals(0, trf.dataCache.size());
+
+    assertEquals(5, trf.reader.warmCache(nk(nf("r", 5000), "", "", "", Long.MAX_VALUE), 5));
+    assertEquals(5, trf.dataCache.size());
+
+    // reading the warmed blocks should not miss
+    long misses = trf.dataCache.getStats().getMissCount();
+    trf.seek(nk(nf("r", 5000), "", "", "", Long.MAX_VALUE));
+    assertTrue(trf.iter.hasTop());
+    assertEquals(nf("r", 5000), trf.iter.getTopKey().getRow().toString());
+    assertEquals(misses, trf.dataCache.getStats().getMissCount());
+
+    // can not warm more blocks than there are after the key
+    int warmed = trf.reader.warmCache(nk(nf("r", 9990), "", "", "", Long.MAX_VALUE), 1000);
+    assertTrue(warmed > 0 && warmed < 5);
+
+    // warming only the index stops when interrupted
+    trf.reader.setInterruptFlag(new AtomicBoolean(true));
+    try {
+      trf.reader.warmCache(nk(nf("r", 0), "", "", "", Long.MAX_VALUE), 0);
+      fail();
+    } catch (IterationInterruptedException e) {
+      // expected
+    }
+
+    trf.closeReader();
+  }
+
   @Test
   public void testEncryptedRFiles() throws Exception {
     String oldSiteConfigProperty = System.getProperty(CryptoTest.CONFIG_FILE_SYSTEM_PROP);
@@ -17,6 +17,7 @@
 package org.apache.accumulo.core.file.rfile;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -171,6 +172,28 @@ public class RelativeKeyTest {
     in.mark(0);
   }
   
+  @Test
+  public void testReadSequence() throws IOException {
+    RelativeKey rk = new RelativeKey();
+    Value value = new Value();
+    
+    for (int i = 0; i < expectedKeys.size(); i++) {
+      rk.readFields(in);
+      value.readFields(in);
+      
+      Key key = rk.getKey();
+      assertEquals(expectedKeys.get(i), key);
+      assertEquals(expectedValues.get(i), value);
+      if (i > 0) {
+        Key prevKey = rk.getPrevKey();
+        assertEquals(expectedKeys.get(i - 1), prevKey);
+        // fields that are the same as the previous key's are not copied
+        if (prevKey.compareTo(key, PartialKey.ROW) == 0)
+          assertSame(prevKey.getRowData().getBackingArray(), key.getRowData().getBackingArray());
+      }
+    }
+  }
+  
   @Test
   public void testSeekBeforeEverything() throws IOException {
     Key seekKey = new Key();
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.core.iterators.system;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Column;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.apache.accumulo.core.iterators.system.SourceSwitchingIterator.DataSource;
+import org.apache.accumulo.core.iterators.user.VersioningIterator;
+import org.apache.accumulo.core.security.Authorizations;
+
+public class BatchIteratorTest extends TestCase {
+
+  private static final String[] FAMILIES = {"a", "b", "c"};
+  private static final String[] QUALIFIERS = {"x", "y"};
+  private static final String[] VISIBILITIES = {"", "A", "B", "A&B"};
+
+  private List<TreeMap<Key,Value>> createData(int numMaps, int numRows, long seed) {
+    Random rand = new Random(seed);
+    List<TreeMap<Key,Value>> maps = new ArrayList<TreeMap<Key,Value>>();
+    for (int m = 0; m < numMaps; m++) {
+      TreeMap<Key,Value> map = new TreeMap<Key,Value>();
+      for (int i = 0; i < numRows * 10; i++) {
+        Key k = new Key(String.format("r%04d", rand.nextInt(numRows)), FAMILIES[rand.nextInt(FAMILIES.length)], QUALIFIERS[rand.nextInt(QUALIFIERS.length)],
+            VISIBILITIES[rand.nextInt(VISIBILITIES.length)], rand.nextInt(6));
+        k.setDeleted(rand.nextInt(10) == 0);
+        map.put(k, new Value(("v" + i).getBytes()));
+      }
+      maps.add(map);
+    }
+    return maps;
+  }
+
+  private SortedKeyValueIterator<Key,Value> createStack(List<TreeMap<Key,Value>> maps, Set<Column> columns, boolean propogateDeletes, boolean versioning)
+      throws IOException {
+    List<SortedKeyValueIterator<Key,Value>> sources = new ArrayList<SortedKeyValueIterator<Key,Value>>();
+    for (TreeMap<Key,Value> map : maps)
+      sources.add(new SortedMapIterator(map));
+
+    MultiIterator multiIter = new MultiIterator(sources, (Range) null);
+    StatsIterator statsIter = new StatsIterator(multiIter, new AtomicLong(), new AtomicLong());
+    DeletingIterator delIter = new DeletingIterator(statsIter, propogateDeletes);
+    ColumnFamilySkippingIterator cfsi = new ColumnFamilySkippingIterator(delIter);
+    ColumnQualifierFilter colFilter = new ColumnQualifierFilter(cfsi, columns);
+    VisibilityFilter visFilter = new VisibilityFilter(colFilter, new Authorizations("A"), new byte[0]);
+    if (!versioning)
+      return visFilter;
+
+    VersioningIterator versIter = new VersioningIterator();
+    versIter.init(visFilter, Collections.singletonMap("maxVersions", "2"), null);
+    return versIter;
+  }
+
+  private static List<String> readAll(SortedKeyValueIterator<Key,Value> iter) throws IOException {
+    List<String> results = new ArrayList<String>();
+    while (iter.hasTop()) {
+      results.add(iter.getTopKey() + " " + iter.getTopValue());
+      iter.next();
+    }
+    return results;
+  }
+
+  private static List<String> readBatches(SortedKeyValueIterator<Key,Value> iter, int batchSize) throws IOException {
+    List<String> results = new ArrayList<String>();
+    KeyValueBatch batch = new KeyValueBatch(batchSize);
+    while (iter.hasTop()) {
+      batch.clear();
+      int added = ((BatchIterator) iter).nextBatch(batch);
+      assertEquals(batch.size(), added);
+      assertTrue(added > 0);
+      for (int i = 0; i < batch.size(); i++)
+        results.add(batch.getKey(i) + " " + batch.getValue(i));
+    }
+    return results;
+  }
+
+  private void runTest(List<TreeMap<Key,Value>> maps, Range range, Set<Column> columns, Set<ByteSequence> families, boolean inclusive, boolean propogateDeletes)
+      throws IOException {
+    for (boolean versioning : new boolean[] {false, true}) {
+      SortedKeyValueIterator<Key,Value> iter = createStack(maps, columns, propogateDeletes, versioning);
+      iter.seek(range, families, inclusive);
+      List<String> expected = readAll(iter);
+
+      for (int batchSize : new int[] {1, 2, 7, 100, 100000}) {
+        iter = createStack(maps, columns, propogateDeletes, versioning);
+        iter.seek(range, families, inclusive);
+        assertEquals("batch size " + batchSize, expected, readBatches(iter, batchSize));
+      }
+    }
+  }
+
+  public void testStack() throws IOException {
+    Set<Column> noColumns = Collections.emptySet();
+    Set<ByteSequence> noFamilies = Collections.emptySet();
+
+    for (int numMaps : new int[] {1, 3}) {
+      List<TreeMap<Key,Value>> maps = createData(numMaps, 100, numMaps);
+
+      runTest(maps, new Range(), noColumns, noFamilies, false, false);
+      runTest(maps, new Range(), noColumns, noFamilies, false, true);
+      runTest(maps, new Range(new Key("r0010", "b", "x", "", 3), true, new Key("r0050"), false), noColumns, noFamilies, false, false);
+
+      Set<Column> columns = new HashSet<Column>();
+      columns.add(new Column("a".getBytes(), "x".getBytes(), null));
+      columns.add(new Column("c".getBytes(), null, null));
+      Set<ByteSequence> families = new HashSet<ByteSequence>();
+      families.add(new ArrayByteSequence("a"));
+      families.add(new ArrayByteSequence("c"));
+      runTest(maps, new Range(), columns, families, true, false);
+      runTest(maps, new Range(), noColumns, Collections.<ByteSequence> singleton(new ArrayByteSequence("b")), false, false);
+    }
+  }
+
+  public void testVersioningSubclass() throws IOException {
+    TreeMap<Key,Value> map = new TreeMap<Key,Value>();
+    for (int i = 0; i < 10; i++)
+      map.put(new Key("r" + i, "f", "q", i), new Value("v".getBytes()));
+
+    // a subclass that changes next() must not be bypassed
+    VersioningIterator iter = new VersioningIterator() {
+      @Override
+      public void next() throws IOException {
+        super.next();
+        if (hasTop())
+          super.next();
+      }
+    };
+    iter.init(new MultiIterator(Collections.<SortedKeyValueIterator<Key,Value>> singletonList(new SortedMapIterator(map)), (Range) null),
+        Collections.<String,String> emptyMap(), null);
+    iter.seek(new Range(), Collections.<ByteSequence> emptySet(), false);
+
+    List<String> batches = readBatches(iter, 3);
+    assertEquals(5, batches.size());
+  }
+
+  private static class SwitchableDataSource implements DataSource {
+    private SortedKeyValueIterator<Key,Value> iter;
+    private SwitchableDataSource next = null;
+
+    SwitchableDataSource(TreeMap<Key,Value> map) {
+      iter = new MultiIterator(Collections.<SortedKeyValueIterator<Key,Value>> singletonList(new SortedMapIterator(map)), (Range) null);
+    }
+
+    @Override
+    public boolean isCurrent() {
+      return next == null;
+    }
+
+    @Override
+    public DataSource getNewDataSource() {
+      return next;
+    }
+
+    @Override
+    public DataSource getDeepCopyDataSource(IteratorEnvironment env) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SortedKeyValueIterator<Key,Value> iterator() {
+      return iter;
+    }
+  }
+
+  public void testSourceSwitching() throws IOException {
+    TreeMap<Key,Value> map1 = new TreeMap<Key,Value>();
+    TreeMap<Key,Value> map2 = new TreeMap<Key,Value>();
+    for (int i = 0; i < 10; i++) {
+      map1.put(new Key("r" + i), new Value("1".getBytes()));
+      map2.put(new Key("r" + i), new Value("2".getBytes()));
+    }
+
+    SwitchableDataSource source = new SwitchableDataSource(map1);
+    SourceSwitchingIterator ssi = new SourceSwitchingIterator(source);
+    ssi.seek(new Range(), Collections.<ByteSequence> emptySet(), false);
+
+    KeyValueBatch batch = new KeyValueBatch(4);
+    assertEquals(4, ssi.nextBatch(batch));
+    assertEquals(new Key("r3"), batch.getKey(3));
+    assertEquals("1", batch.getValue(3).toString());
+    assertEquals(new Key("r4"), ssi.getTopKey());
+
+    source.next = new SwitchableDataSource(map2);
+    batch.clear();
+    assertEquals(4, ssi.nextBatch(batch));
+    // continues from the top, in the new source
+    assertEquals(new Key("r4"), batch.getKey(0));
+    assertEquals("2", batch.getValue(0).toString());
+
+    batch.clear();
+    assertEquals(2, ssi.nextBatch(batch));
+    assertFalse(ssi.hasTop());
+  }
+}
@@ -141,6 +141,8 @@ public class MetaDataTableScanner implements Iterator<TabletLocationState> {
     TServerInstance last = null;
     long lastTimestamp = 0;
     List<Collection<String>> walogs = new ArrayList<Collection<String>>();
+    boolean walogsMarked = true;
+    String walogTabletId = null;
     boolean chopped = false;
     
     for (Entry<Key,Value> entry : decodedRow.entrySet()) {
@@ -162,8 +164,13 @@ public class MetaDataTableScanner implements Iterator<TabletLocationState> {
         }
         current = location;
       } else if (cf.compareTo(LogColumnFamily.NAME) == 0) {
-        String[] split = entry.getValue().toString().split("\\|")[0].split(";");
-        walogs.add(Arrays.asList(split));
+        String[] parts = entry.getValue().toString().split("\\|");
+        walogs.add(Arrays.asList(parts[0].split(";")));
+        // see LogEntry.fromKeyValue
+        if (parts.length > 2 && (walogTabletId == null || walogTabletId.equals(parts[1])))
+          walogTabletId = parts[1];
+        else
+          walogsMarked = false;
       } else if (cf.compareTo(TabletsSection.LastLocationColumnFamily.NAME) == 0) {
         if (lastTimestamp < entry.getKey().getTimestamp())
           last = new TServerInstance(entry.getValue(), cq);
@@ -177,7 +184,7 @@ public class MetaDataTableScanner implements Iterator<TabletLocationState> {
       log.warn("No prev-row for key extent: " + decodedRow);
       return null;
     }
-    return new TabletLocationState(extent, future, current, last, walogs, chopped);
+    return new TabletLocationState(extent, future, current, last, walogs, walogsMarked, chopped);
   }
   
   private TabletLocationState fetch() {
@@ -39,6 +39,11 @@ public class TabletLocationState {
   
   public TabletLocationState(KeyExtent extent, TServerInstance future, TServerInstance current, TServerInstance last, Collection<Collection<String>> walogs,
       boolean chopped) throws BadLocationStateException {
+    this(extent, future, current, last, walogs, false, chopped);
+  }
+  
+  public TabletLocationState(KeyExtent extent, TServerInstance future, TServerInstance current, TServerInstance last, Collection<Collection<String>> walogs,
+      boolean walogsMarked, boolean chopped) throws BadLocationStateException {
     this.extent = extent;
     this.future = future;
     this.current = current;
@@ -46,6 +51,7 @@ public class TabletLocationState {
     if (walogs == null)
       walogs = Collections.emptyList();
     this.walogs = walogs;
+    this.walogsMarked = walogsMarked && !walogs.isEmpty();
     this.chopped = chopped;
     if (current != null && future != null) {
       throw new BadLocationStateException(extent + " is both assigned and hosted, which should never happen: " + this);
@@ -57,6 +63,8 @@ public class TabletLocationState {
   final public TServerInstance current;
   final public TServerInstance last;
   final public Collection<Collection<String>> walogs;
+  // every log entry records the tablet's log id and the sequence number its files hold the mutations up to, so its logs can be replayed as they are sorted
+  final public boolean walogsMarked;
   final public boolean chopped;
   
   public String toString() {
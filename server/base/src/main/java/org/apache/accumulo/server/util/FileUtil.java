@@ -252,6 +252,70 @@ public class FileUtil {
     }
   }
   
+  /**
+   * Finds rows that split the data in the map files between prevEndRow and endRow into ranges with about the same number of index entries, for compacting the
+   * ranges concurrently.
+   * 
+   * @return up to partitions - 1 distinct rows in sorted order, each after prevEndRow and before endRow. Fewer rows are returned when the indexes do not have
+   *         enough distinct rows.
+   */
+  public static List<Text> findPartitionRows(VolumeManager fs, AccumuloConfiguration acuConf, Text prevEndRow, Text endRow, Collection<FileRef> mapFiles,
+      int partitions) throws IOException {
+    Configuration conf = CachedConfiguration.getInstance();
+    
+    Path tmpDir = null;
+    
+    int maxToOpen = acuConf.getCount(Property.TSERV_TABLET_SPLIT_FINDMIDPOINT_MAXOPEN);
+    ArrayList<FileSKVIterator> readers = new ArrayList<FileSKVIterator>(mapFiles.size());
+    
+    try {
+      if (mapFiles.size() > maxToOpen) {
+        tmpDir = createTmpDir(acuConf, fs);
+        
+        log.debug("Too many indexes (" + mapFiles.size() + ") to open at once for " + endRow + " " + prevEndRow + ", reducing in tmpDir = " + tmpDir);
+        
+        mapFiles = reduceFiles(acuConf, conf, fs, prevEndRow, endRow, mapFiles, maxToOpen, tmpDir, 0);
+      }
+      
+      if (prevEndRow == null)
+        prevEndRow = new Text();
+      
+      long numKeys = countIndexEntries(acuConf, prevEndRow, endRow, mapFiles, true, conf, fs, readers);
+      
+      List<Text> rows = new ArrayList<Text>();
+      
+      List<SortedKeyValueIterator<Key,Value>> iters = new ArrayList<SortedKeyValueIterator<Key,Value>>(readers);
+      MultiIterator mmfi = new MultiIterator(iters, true);
+      
+      // skip the prevendrow
+      while (mmfi.hasTop() && mmfi.getTopKey().compareRow(prevEndRow) <= 0)
+        mmfi.next();
+      
+      long keysRead = 0;
+      
+      while (mmfi.hasTop() && rows.size() < partitions - 1) {
+        Key key = mmfi.getTopKey();
+        // the last range ends at the end row, so it can not be used to split
+        if (endRow != null && key.compareRow(endRow) >= 0)
+          break;
+        
+        keysRead++;
+        
+        if (keysRead * partitions >= numKeys * (rows.size() + 1)) {
+          Text row = key.getRow();
+          if (rows.isEmpty() || !rows.get(rows.size() - 1).equals(row))
+            rows.add(row);
+        }
+        
+        mmfi.next();
+      }
+      
+      return rows;
+    } finally {
+      cleanupIndexOp(acuConf, tmpDir, fs, readers);
+    }
+  }
+  
   /**
    * 
    * @param mapFiles
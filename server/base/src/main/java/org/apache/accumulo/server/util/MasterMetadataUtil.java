@@ -18,6 +18,8 @@ package org.apache.accumulo.server.util;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +45,7 @@ import org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.Lo
 import org.apache.accumulo.core.metadata.schema.MetadataSchema.TabletsSection.ScanFileColumnFamily;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.core.security.Credentials;
+import org.apache.accumulo.core.tabletserver.log.LogEntry;
 import org.apache.accumulo.core.util.ColumnFQ;
 import org.apache.accumulo.core.util.UtilWaitThread;
 import org.apache.accumulo.fate.zookeeper.IZooReaderWriter;
@@ -202,6 +205,16 @@ public class MasterMetadataUtil {
   
   public static void replaceDatafiles(KeyExtent extent, Set<FileRef> datafilesToDelete, Set<FileRef> scanFiles, FileRef path, Long compactionId,
       DataFileValue size, Credentials credentials, String address, TServerInstance lastLocation, ZooLock zooLock, boolean insertDeleteFlags) throws IOException {
+    replaceDatafiles(extent, datafilesToDelete, scanFiles, Collections.singletonMap(path, size), compactionId, credentials, address, lastLocation, zooLock,
+        insertDeleteFlags);
+  }
+  
+  /**
+   * Replaces data files with the files a compaction wrote, which is more than one file when the compaction was partitioned.
+   */
+  public static void replaceDatafiles(KeyExtent extent, Set<FileRef> datafilesToDelete, Set<FileRef> scanFiles, Map<FileRef,DataFileValue> newDatafiles,
+      Long compactionId, Credentials credentials, String address, TServerInstance lastLocation, ZooLock zooLock, boolean insertDeleteFlags)
+      throws IOException {
     
     if (insertDeleteFlags) {
       // add delete flags for those paths before the data file reference is removed
@@ -217,8 +230,9 @@ public class MasterMetadataUtil {
     for (FileRef scanFile : scanFiles)
       m.put(ScanFileColumnFamily.NAME, scanFile.meta(), new Value("".getBytes()));
     
-    if (size.getNumEntries() > 0)
-      m.put(DataFileColumnFamily.NAME, path.meta(), new Value(size.encode()));
+    for (Entry<FileRef,DataFileValue> entry : newDatafiles.entrySet())
+      if (entry.getValue().getNumEntries() > 0)
+        m.put(DataFileColumnFamily.NAME, entry.getKey().meta(), new Value(entry.getValue().encode()));
     
     if (compactionId != null)
       TabletsSection.ServerColumnFamily.COMPACT_COLUMN.put(m, new Value(("" + compactionId).getBytes()));
@@ -241,7 +255,8 @@ public class MasterMetadataUtil {
    * 
    */
   public static void updateTabletDataFile(KeyExtent extent, FileRef path, FileRef mergeFile, DataFileValue dfv, String time, Credentials credentials,
-      Set<FileRef> filesInUseByScans, String address, ZooLock zooLock, Set<String> unusedWalLogs, TServerInstance lastLocation, long flushId) {
+      Set<FileRef> filesInUseByScans, String address, ZooLock zooLock, Set<String> unusedWalLogs, Collection<LogEntry> durableWalLogs,
+      TServerInstance lastLocation, long flushId) {
     if (extent.isRootTablet()) {
       if (unusedWalLogs != null) {
         IZooReaderWriter zk = ZooReaderWriter.getInstance();
@@ -291,6 +306,12 @@ public class MasterMetadataUtil {
         m.putDelete(LogColumnFamily.NAME, new Text(entry));
       }
     }
+    // written with the new file, so the durable sequence number of the logs still in use can never be ahead of the files
+    if (durableWalLogs != null) {
+      for (LogEntry entry : durableWalLogs) {
+        m.put(entry.getColumnFamily(), entry.getColumnQualifier(), entry.getValue());
+      }
+    }
     
     for (FileRef scanFile : filesInUseByScans)
       m.put(ScanFileColumnFamily.NAME, scanFile.meta(), new Value("".getBytes()));
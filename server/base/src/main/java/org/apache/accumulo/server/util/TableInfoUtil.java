@@ -39,10 +39,14 @@ public class TableInfoUtil {
     if (more.minors != null) {
       total.minors.running += more.minors.running;
       total.minors.queued += more.minors.queued;
+      total.minors.throttled += more.minors.throttled;
+      total.minors.byteRate += more.minors.byteRate;
     }
     if (more.majors != null) {
       total.majors.running += more.majors.running;
       total.majors.queued += more.majors.queued;
+      total.majors.throttled += more.majors.throttled;
+      total.majors.byteRate += more.majors.byteRate;
     }
     if (more.scans != null) {
       total.scans.running += more.scans.running;
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.server.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.ConfigurationCopy;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.file.FileOperations;
+import org.apache.accumulo.core.file.FileSKVWriter;
+import org.apache.accumulo.server.fs.FileRef;
+import org.apache.accumulo.server.fs.VolumeManager;
+import org.apache.accumulo.server.fs.VolumeManagerImpl;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.Text;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileUtilTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FileRef writeFile(VolumeManager fs, AccumuloConfiguration conf, String name, int start, int step, int count) throws Exception {
+    String file = new File(folder.getRoot(), name + ".rf").getAbsolutePath();
+    FileSystem ns = fs.getDefaultVolume();
+    FileSKVWriter writer = FileOperations.getInstance().openWriter(file, ns, ns.getConf(), conf);
+    writer.startDefaultLocalityGroup();
+    for (int i = 0; i < count; i++)
+      writer.append(new Key(String.format("r%06d", start + i * step), "cf", "cq"), new Value("value".getBytes()));
+    writer.close();
+    return new FileRef(file);
+  }
+
+  @Test
+  public void testFindPartitionRows() throws Exception {
+    VolumeManager fs = VolumeManagerImpl.getLocal();
+    ConfigurationCopy conf = new ConfigurationCopy(AccumuloConfiguration.getDefaultConfiguration());
+    conf.set(Property.TABLE_FILE_COMPRESSED_BLOCK_SIZE, "1K");
+
+    List<FileRef> files = new ArrayList<FileRef>();
+    files.add(writeFile(fs, conf, "f1", 0, 2, 10000));
+    files.add(writeFile(fs, conf, "f2", 1, 2, 10000));
+
+    List<Text> rows = FileUtil.findPartitionRows(fs, conf, null, null, files, 4);
+    assertEquals(3, rows.size());
+    int prev = -1;
+    for (Text row : rows) {
+      int r = Integer.parseInt(row.toString().substring(1));
+      assertTrue(r > prev);
+      // each range has about a quarter of the 20000 rows
+      assertTrue("" + r, Math.abs(r - (prev < 0 ? 0 : prev) - 5000) < 1000);
+      prev = r;
+    }
+
+    // only rows within the tablet are used
+    rows = FileUtil.findPartitionRows(fs, conf, new Text("r005000"), new Text("r010000"), files, 2);
+    assertEquals(1, rows.size());
+    int r = Integer.parseInt(rows.get(0).toString().substring(1));
+    assertTrue("" + r, r > 7000 && r < 8000);
+
+    // not enough rows in the index
+    rows = FileUtil.findPartitionRows(fs, conf, new Text("r005000"), new Text("r005001"), files, 4);
+    assertEquals(0, rows.size());
+  }
+}
@@ -163,6 +163,8 @@ public class Master implements LiveTServerSet.Listener, TableObserver, CurrentSt
   final EventCoordinator nextEvent = new EventCoordinator();
   final private Object mergeLock = new Object();
   RecoveryManager recoveryManager = null;
+  // null unless tablet location events are enabled
+  volatile TabletLocationEventPublisher tabletLocationEvents = null;
 
   ZooLock masterLock = null;
   private TServer clientService = null;
@@ -889,6 +891,12 @@ public class Master implements LiveTServerSet.Listener, TableObserver, CurrentSt
     MigrationCleanupThread migrationCleanupThread = new MigrationCleanupThread();
     migrationCleanupThread.start();
 
+    AccumuloConfiguration aconf = getConfiguration().getConfiguration();
+    if (aconf.getBoolean(Property.GENERAL_TABLET_LOCATION_EVENTS)) {
+      tabletLocationEvents = new TabletLocationEventPublisher(this, instance.getInstanceID(), aconf.getTimeInMillis(Property.MASTER_TABLET_LOCATION_EVENTS_INTERVAL));
+      tabletLocationEvents.start();
+    }
+
     tserverSet.startListeningForTabletServerChanges();
 
     try {
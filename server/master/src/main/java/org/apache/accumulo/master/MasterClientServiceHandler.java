@@ -321,6 +321,10 @@ class MasterClientServiceHandler extends FateServiceHandler implements MasterCli
     }
     for (TServerInstance instance : master.tserverSet.getCurrentServers()) {
       if (serverName.equals(instance.hostPort())) {
+        TabletLocationEventPublisher publisher = master.tabletLocationEvents;
+        if (publisher != null)
+          for (TKeyExtent newTablet : split.newTablets)
+            publisher.loaded(new KeyExtent(newTablet), serverName, instance.getSession());
         master.nextEvent.event("%s reported split %s, %s", serverName, new KeyExtent(split.newTablets.get(0)), new KeyExtent(split.newTablets.get(1)));
         return;
       }
@@ -337,9 +341,12 @@ class MasterClientServiceHandler extends FateServiceHandler implements MasterCli
         Master.log.error(serverName + " reports assignment failed for tablet " + tablet);
         break;
       case LOADED:
+        publishLoaded(tablet, serverName);
         master.nextEvent.event("tablet %s was loaded on %s", tablet, serverName);
         break;
       case UNLOADED:
+        if (master.tabletLocationEvents != null)
+          master.tabletLocationEvents.unloaded(tablet);
         master.nextEvent.event("tablet %s was unloaded from %s", tablet, serverName);
         break;
       case UNLOAD_ERROR:
@@ -356,6 +363,18 @@ class MasterClientServiceHandler extends FateServiceHandler implements MasterCli
     }
   }
 
+  private void publishLoaded(KeyExtent tablet, String serverName) {
+    TabletLocationEventPublisher publisher = master.tabletLocationEvents;
+    if (publisher == null)
+      return;
+    for (TServerInstance instance : master.tserverSet.getCurrentServers()) {
+      if (serverName.equals(instance.hostPort())) {
+        publisher.loaded(tablet, serverName, instance.getSession());
+        return;
+      }
+    }
+  }
+
   @Override
   public void setMasterGoalState(TInfo info, TCredentials c, MasterGoalState state) throws ThriftSecurityException {
     master.security.canPerformSystemActions(c);
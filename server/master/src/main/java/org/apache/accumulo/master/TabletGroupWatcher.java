@@ -192,7 +192,7 @@ class TabletGroupWatcher extends Daemon {
           
           if (goal == TabletGoalState.HOSTED) {
             if (state != TabletState.HOSTED && !tls.walogs.isEmpty()) {
-              if (this.master.recoveryManager.recoverLogs(tls.extent, tls.walogs))
+              if (this.master.recoveryManager.recoverLogs(tls.extent, tls.walogs, tls.walogsMarked))
                 continue;
             }
             switch (state) {
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.master;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.accumulo.core.client.impl.TabletLocationEvents;
+import org.apache.accumulo.core.client.impl.TabletLocationEvents.Event;
+import org.apache.accumulo.core.data.KeyExtent;
+import org.apache.accumulo.core.metadata.MetadataTable;
+import org.apache.accumulo.core.metadata.RootTable;
+import org.apache.accumulo.core.util.Daemon;
+import org.apache.accumulo.core.util.UtilWaitThread;
+import org.apache.accumulo.fate.zookeeper.IZooReaderWriter;
+import org.apache.accumulo.fate.zookeeper.ZooUtil.NodeExistsPolicy;
+import org.apache.accumulo.server.zookeeper.ZooReaderWriter;
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Collects the tablets that tablet servers report loaded, unloaded or split, and periodically publishes them per table in ZooKeeper, where clients watch for
+ * them to update their cached tablet locations.
+ */
+class TabletLocationEventPublisher extends Daemon {
+
+  private static final Logger log = Logger.getLogger(TabletLocationEventPublisher.class);
+
+  private final Master master;
+  private final String instanceId;
+  private final long interval;
+
+  private Map<String,List<Event>> pending = new HashMap<String,List<Event>>();
+  private final Map<String,Integer> pendingBytes = new HashMap<String,Integer>();
+  // tables whose events could not be published, the next publication tells clients to drop their cached locations
+  private final Set<String> failed = new HashSet<String>();
+
+  TabletLocationEventPublisher(Master master, String instanceId, long interval) {
+    this.master = master;
+    this.instanceId = instanceId;
+    this.interval = interval;
+  }
+
+  void loaded(KeyExtent extent, String location, String session) {
+    add(Event.loaded(extent, location, session));
+  }
+
+  void unloaded(KeyExtent extent) {
+    add(Event.unloaded(extent));
+  }
+
+  private synchronized void add(Event event) {
+    String tableId = event.extent.getTableId().toString();
+    // only user tables are watched by clients
+    if (tableId.equals(RootTable.ID) || tableId.equals(MetadataTable.ID))
+      return;
+    List<Event> events = pending.get(tableId);
+    if (events == null) {
+      // past the limit only the sequence number is published, so there is no need to hold more
+      if (pending.containsKey(tableId))
+        return;
+      events = new ArrayList<Event>();
+      pending.put(tableId, events);
+    }
+    Integer bytes = pendingBytes.get(tableId);
+    bytes = (bytes == null ? 0 : bytes) + TabletLocationEvents.encodedSize(event);
+    if (bytes > TabletLocationEvents.MAX_ENCODED_SIZE) {
+      pending.put(tableId, null);
+      pendingBytes.remove(tableId);
+    } else {
+      events.add(event);
+      pendingBytes.put(tableId, bytes);
+    }
+  }
+
+  /**
+   * @return the events to publish per table, null for a table that only gets its sequence number published
+   */
+  private synchronized Map<String,List<Event>> takePending() {
+    Map<String,List<Event>> taken = pending;
+    pending = new HashMap<String,List<Event>>();
+    pendingBytes.clear();
+    return taken;
+  }
+
+  @Override
+  public void run() {
+    setName("Tablet Location Event Publisher");
+    while (master.stillMaster()) {
+      UtilWaitThread.sleep(interval);
+      Map<String,List<Event>> taken = takePending();
+      // retry the tables that failed without waiting for them to change again
+      for (String tableId : failed)
+        if (!taken.containsKey(tableId))
+          taken.put(tableId, null);
+      for (Entry<String,List<Event>> entry : taken.entrySet()) {
+        try {
+          publish(entry.getKey(), entry.getValue());
+        } catch (Exception ex) {
+          failed.add(entry.getKey());
+          log.warn("Failed to publish tablet location events for table " + entry.getKey(), ex);
+        }
+      }
+    }
+  }
+
+  private void publish(String tableId, List<Event> events) throws KeeperException, InterruptedException, IOException {
+    IZooReaderWriter zoo = ZooReaderWriter.getInstance();
+    String path = TabletLocationEvents.getPath(instanceId, tableId);
+
+    long seq = 0;
+    try {
+      seq = TabletLocationEvents.decode(zoo.getData(path, new Stat())).getSequence() + 1;
+    } catch (KeeperException.NoNodeException e) {
+      // nothing was published for the table yet
+    }
+
+    if (failed.remove(tableId))
+      events = null;
+
+    try {
+      zoo.putPersistentData(path, new TabletLocationEvents(seq, events).encode(), NodeExistsPolicy.OVERWRITE);
+    } catch (KeeperException.NoNodeException e) {
+      // the table was deleted
+    }
+  }
+}
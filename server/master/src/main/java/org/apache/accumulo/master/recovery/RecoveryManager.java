@@ -121,7 +121,12 @@ public class RecoveryManager {
     log.info("Created zookeeper entry " + path + " with data " + work);
   }
 
-  public boolean recoverLogs(KeyExtent extent, Collection<Collection<String>> walogs) throws IOException {
+  /**
+   * @param replayWhileSorting
+   *          the tablet can replay its logs as they are sorted, so it does not have to wait for sorts that are already queued
+   * @return true if the tablet has to wait for its logs to be sorted before it is assigned
+   */
+  public boolean recoverLogs(KeyExtent extent, Collection<Collection<String>> walogs, boolean replayWhileSorting) throws IOException {
     boolean recoveryNeeded = false;
     ;
     for (Collection<String> logs : walogs) {
@@ -153,6 +158,11 @@ public class RecoveryManager {
           continue;
         }
 
+        synchronized (this) {
+          if (replayWhileSorting && sortsQueued.contains(sortId))
+            continue;
+        }
+
         recoveryNeeded = true;
         synchronized (this) {
           if (!closeTasksQueued.contains(sortId) && !sortsQueued.contains(sortId)) {
@@ -174,9 +174,9 @@ public class MasterServlet extends BasicServlet {
       Table recoveryTable = new Table("logRecovery", "Log&nbsp;Recovery");
       recoveryTable.setSubCaption("Some tablets were unloaded in an unsafe manner. Write-ahead logs are being recovered.");
       recoveryTable.addSortableColumn("Server");
-      recoveryTable.addSortableColumn("Log");
+      recoveryTable.addSortableColumn("Log/Tablet");
       recoveryTable.addSortableColumn("Time", new DurationType(), null);
-      recoveryTable.addSortableColumn("Copy/Sort", new ProgressChartType(), null);
+      recoveryTable.addSortableColumn("Sort/Replay", new ProgressChartType(), null);
       int rows = 0;
       for (TabletServerStatus server : mmi.tServerInfo) {
         if (server.logSorts != null) {
@@ -39,6 +39,7 @@ import org.apache.accumulo.core.util.ThriftUtil;
 import org.apache.accumulo.monitor.Monitor;
 import org.apache.accumulo.monitor.util.Table;
 import org.apache.accumulo.monitor.util.TableRow;
+import org.apache.accumulo.monitor.util.celltypes.CompactionThroughputType;
 import org.apache.accumulo.monitor.util.celltypes.CompactionsType;
 import org.apache.accumulo.monitor.util.celltypes.DateTimeType;
 import org.apache.accumulo.monitor.util.celltypes.DurationType;
@@ -331,6 +332,8 @@ public class TServersServlet extends BasicServlet {
     tServerList.addSortableColumn("Major<br />Compactions", new CompactionsType("major"),
         "The number of major compactions running and (queued waiting for resources). "
             + "Major compactions are the operations where many smaller files are grouped into a larger file, eliminating duplicates and cleaning up deletes.");
+    tServerList.addSortableColumn("Compaction<br />Throughput", new CompactionThroughputType(),
+        "The bytes per second read and written by minor and major compactions, and (the number of compactions waiting on tserver.compaction.throughput).");
     tServerList.addSortableColumn("Index Cache<br />Hit Rate", new PercentageType(), "The recent index cache hit rate.");
     tServerList.addSortableColumn("Data Cache<br />Hit Rate", new PercentageType(), "The recent data cache hit rate.");
     tServerList.addSortableColumn("OS&nbsp;Load", new NumberType<Double>(0., guessHighLoad * 1., 0., guessHighLoad * 3.),
@@ -356,6 +359,7 @@ public class TServersServlet extends BasicServlet {
       row.add(summary); // add for scans
       row.add(summary); // add for minor compactions
       row.add(summary); // add for major compactions
+      row.add(summary); // add for compaction throughput
       double indexCacheHitRate = status.indexCacheHits / (double) Math.max(status.indexCacheRequest, 1);
       row.add(indexCacheHitRate);
       double dataCacheHitRate = status.dataCacheHits / (double) Math.max(status.dataCacheRequest, 1);
@@ -75,9 +75,11 @@ public class XMLServlet extends BasicServlet {
       TableInfo summary = TableInfoUtil.summarizeTableStats(status);
       sb.append("<compactions>\n");
       sb.append("<major>").append("<running>").append(summary.majors.running).append("</running>").append("<queued>").append(summary.majors.queued)
-          .append("</queued>").append("</major>\n");
+          .append("</queued>").append("<throttled>").append(summary.majors.throttled).append("</throttled>").append("<byteRate>")
+          .append(summary.majors.byteRate).append("</byteRate>").append("</major>\n");
       sb.append("<minor>").append("<running>").append(summary.minors.running).append("</running>").append("<queued>").append(summary.minors.queued)
-          .append("</queued>").append("</minor>\n");
+          .append("</queued>").append("<throttled>").append(summary.minors.throttled).append("</throttled>").append("<byteRate>")
+          .append(summary.minors.byteRate).append("</byteRate>").append("</minor>\n");
       sb.append("</compactions>\n");
       
       sb.append("<tablets>").append(summary.tablets).append("</tablets>\n");
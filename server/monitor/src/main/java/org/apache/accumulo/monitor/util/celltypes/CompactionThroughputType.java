@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.monitor.util.celltypes;
+
+import org.apache.accumulo.core.master.thrift.Compacting;
+import org.apache.accumulo.core.master.thrift.TableInfo;
+import org.apache.accumulo.core.util.NumUtil;
+
+public class CompactionThroughputType extends CellType<TableInfo> {
+  
+  private static double byteRate(TableInfo summary) {
+    return byteRate(summary.minors) + byteRate(summary.majors);
+  }
+  
+  private static double byteRate(Compacting c) {
+    return c == null ? 0. : c.byteRate;
+  }
+  
+  private static int throttled(Compacting c) {
+    return c == null ? 0 : c.throttled;
+  }
+  
+  @Override
+  public String format(Object obj) {
+    if (obj == null)
+      return "-";
+    TableInfo summary = (TableInfo) obj;
+    int throttled = throttled(summary.minors) + throttled(summary.majors);
+    return String.format("%sB/s&nbsp;(%s)", NumUtil.bigNumberForSize((long) byteRate(summary)), NumberType.commas(throttled, 0, 0));
+  }
+  
+  @Override
+  public int compare(TableInfo o1, TableInfo o2) {
+    if (o1 == null)
+      return -1;
+    if (o2 == null)
+      return 1;
+    return Double.compare(byteRate(o1), byteRate(o2));
+  }
+  
+  @Override
+  public String alignment() {
+    return "right";
+  }
+  
+}
@@ -62,6 +62,12 @@ struct Field {
 	Field(uint8_t *f, int32_t l):field(f),len(l){
  	}
 
+	Field(LinkedBlockAllocator *lba, const uint8_t *f, int32_t l){
+		len = l;
+		field=(uint8_t *)lba->allocate(len);
+		memcpy(field, f, len);
+	}
+
 	Field(const char *cstr){
 		//constructor for testing C++
 		len = strlen(cstr);
@@ -191,6 +191,74 @@ struct NativeMap : public NativeMapData {
 		}
 	}
 
+	void update(ColumnMap *cm, const uint8_t *cf, int32_t cfLen, const uint8_t *cq, int32_t cqLen, const uint8_t *cv, int32_t cvLen, int64_t ts, bool del, const uint8_t *val, int32_t valLen, int32_t mutationCount){
+
+		SubKey sk(lba, cf, cfLen, cq, cqLen, cv, cvLen, ts, del, mutationCount);
+		//do not bother allocating value if not needed
+		Field value(NULL, 0);
+
+		pair<ColumnMap::iterator, bool> insertResult = cm->insert(pair<SubKey, Field>(sk, value));
+		if(insertResult.second){
+			insertResult.first->second  = Field(lba, val, valLen);
+			count++;
+		}else{
+			sk.clear(lba);
+			if(valLen <= insertResult.first->second.length()){
+				insertResult.first->second.set((const char *)val, valLen);
+			}else{
+				insertResult.first->second.clear();
+				insertResult.first->second  = Field(lba, val, valLen);
+			}
+		}
+	}
+
+	static int32_t readInt(const uint8_t *&data){
+		int32_t i;
+		memcpy(&i, data, sizeof(i));
+		data += sizeof(i);
+		return i;
+	}
+
+	/**
+	 * Inserts mutations serialized by NativeMap.serialize() in java. Each mutation after the first gets the next mutation count.
+	 */
+	void mutate(const uint8_t *data, int numMutations, int32_t mutationCount){
+		for(int m = 0; m < numMutations; m++, mutationCount++){
+			int32_t rowLen = readInt(data);
+			const uint8_t *row = data;
+			data += rowLen;
+
+			int32_t numUpdates = readInt(data);
+			if(numUpdates == 0)
+				continue;
+
+			Field rowField(lba, row, rowLen);
+			ColumnMap *cm = startUpdate(rowField);
+
+			for(int u = 0; u < numUpdates; u++){
+				int32_t cfLen = readInt(data);
+				const uint8_t *cf = data;
+				data += cfLen;
+				int32_t cqLen = readInt(data);
+				const uint8_t *cq = data;
+				data += cqLen;
+				int32_t cvLen = readInt(data);
+				const uint8_t *cv = data;
+				data += cvLen;
+				int64_t ts;
+				memcpy(&ts, data, sizeof(ts));
+				data += sizeof(ts);
+				bool del = *data != 0;
+				data++;
+				int32_t valLen = readInt(data);
+				const uint8_t *val = data;
+				data += valLen;
+
+				update(cm, cf, cfLen, cq, cqLen, cv, cvLen, ts, del, val, valLen, mutationCount);
+			}
+		}
+	}
+
 	Iterator *iterator(int32_t *ia){
 		return new Iterator(*this, ia);
 	}
@@ -42,19 +42,15 @@ JNIEXPORT jlong JNICALL Java_org_apache_accumulo_tserver_NativeMap_memoryUsedNM(
 }
 
 JNIEXPORT void JNICALL Java_org_apache_accumulo_tserver_NativeMap_singleUpdate(JNIEnv *env, jclass cls, jlong nm, jbyteArray r, jbyteArray cf, jbyteArray cq, jbyteArray cv, jlong ts, jboolean del, jbyteArray val, jint mutationCount) {
-	jlong uid = Java_org_apache_accumulo_tserver_NativeMap_startUpdate(env, cls, nm, r);
-	Java_org_apache_accumulo_tserver_NativeMap_update(env, cls, nm, uid, cf, cq, cv, ts, del, val, mutationCount); 
-}
-
-JNIEXPORT jlong JNICALL Java_org_apache_accumulo_tserver_NativeMap_startUpdate(JNIEnv *env, jclass cls, jlong nm, jbyteArray r) {
 	NativeMap *nativeMap = (NativeMap *)nm;
 	ColumnMap *cm = nativeMap->startUpdate(env, r);
-	return (jlong)cm;
+	nativeMap->update(cm, env, cf, cq, cv, ts, del, val, mutationCount);
 }
 
-JNIEXPORT void JNICALL Java_org_apache_accumulo_tserver_NativeMap_update(JNIEnv *env, jclass cls, jlong nm, jlong uid, jbyteArray cf, jbyteArray cq, jbyteArray cv, jlong ts, jboolean del, jbyteArray val, jint mutationCount) {
+JNIEXPORT void JNICALL Java_org_apache_accumulo_tserver_NativeMap_mutateBatch(JNIEnv *env, jclass cls, jlong nm, jobject buffer, jint numMutations, jint mutationCount) {
 	NativeMap *nativeMap = (NativeMap *)nm;
-	nativeMap->update((ColumnMap *)uid, env, cf, cq, cv, ts, del, val, mutationCount);
+	const uint8_t *data = (const uint8_t *)env->GetDirectBufferAddress(buffer);
+	nativeMap->mutate(data, numMutations, mutationCount);
 }
 
 JNIEXPORT jlong JNICALL Java_org_apache_accumulo_tserver_NativeMap_deleteNM(JNIEnv *env, jclass cls, jlong nm) {
@@ -64,7 +60,7 @@ JNIEXPORT jlong JNICALL Java_org_apache_accumulo_tserver_NativeMap_deleteNM(JNIE
 }
 
 
-JNIEXPORT jlong JNICALL Java_org_apache_accumulo_tserver_NativeMap_createNMI__J_3I(JNIEnv *env, jclass cls, jlong nm, jintArray lens) {
+JNIEXPORT jlong JNICALL Java_org_apache_accumulo_tserver_NativeMap_createNMI__J(JNIEnv *env, jclass cls, jlong nm) {
 	NativeMap *nativeMap = (NativeMap *)nm;
 	int32_t ia[7];
 	Iterator *iter = nativeMap->iterator(ia);
@@ -72,11 +68,10 @@ JNIEXPORT jlong JNICALL Java_org_apache_accumulo_tserver_NativeMap_createNMI__J_
 		delete(iter);
 		return 0;
 	}
-	env->SetIntArrayRegion(lens, 0, 7, ia);	
 	return (jlong)iter;	
 }
 
-JNIEXPORT jlong JNICALL Java_org_apache_accumulo_tserver_NativeMap_createNMI__J_3B_3B_3B_3BJZ_3I(JNIEnv *env, jclass cls, jlong nm, jbyteArray r, jbyteArray cf, jbyteArray cq, jbyteArray cv, jlong ts, jboolean del, jintArray lens) {
+JNIEXPORT jlong JNICALL Java_org_apache_accumulo_tserver_NativeMap_createNMI__J_3B_3B_3B_3BJZ(JNIEnv *env, jclass cls, jlong nm, jbyteArray r, jbyteArray cf, jbyteArray cq, jbyteArray cv, jlong ts, jboolean del) {
 
   NativeMap *nativeMap = (NativeMap *)nm;
 	LocalField row(env, r);
@@ -90,38 +85,68 @@ JNIEXPORT jlong JNICALL Java_org_apache_accumulo_tserver_NativeMap_createNMI__J_
 		return 0;
 	}
 
-	env->SetIntArrayRegion(lens, 0, 7, ia);	
 	return (jlong)iter;	
 }
 
-JNIEXPORT jboolean JNICALL Java_org_apache_accumulo_tserver_NativeMap_nmiNext(JNIEnv *env, jclass cls, jlong ip, jintArray lens) {
-	Iterator &iter = *((Iterator *)ip);
-
-	int32_t ia[7];
-	iter.advance(ia);
-	if(iter.atEnd()) {
-		return false;
-	}	
+static inline void putInt(uint8_t *&data, int32_t i) {
+	memcpy(data, &i, sizeof(i));
+	data += sizeof(i);
+}
 
-	env->SetIntArrayRegion(lens, 0, 7, ia);	
-	return true;
+static inline void putField(uint8_t *&data, const Field &field) {
+	putInt(data, field.length());
+	memcpy(data, field.field, field.length());
+	data += field.length();
 }
 
-JNIEXPORT void JNICALL Java_org_apache_accumulo_tserver_NativeMap_nmiGetData(JNIEnv *env, jclass cls, jlong ip, jbyteArray r, jbyteArray cf, jbyteArray cq, jbyteArray cv, jbyteArray val) {
+JNIEXPORT jint JNICALL Java_org_apache_accumulo_tserver_NativeMap_nmiNext(JNIEnv *env, jclass cls, jlong ip, jobject buffer, jint maxEntries, jint maxBytes) {
 	Iterator &iter = *((Iterator *)ip);
-	if(r != NULL) {
-		iter.rowIter->first.fillIn(env, r);
-	}
 
-	iter.colIter->first.getCF().fillIn(env, cf);
-	iter.colIter->first.getCQ().fillIn(env, cq);
-	iter.colIter->first.getCV().fillIn(env, cv);
-	iter.colIter->second.fillIn(env, val);
-}
+	uint8_t *start = (uint8_t *)env->GetDirectBufferAddress(buffer);
+	uint8_t *end = start + env->GetDirectBufferCapacity(buffer);
+	//the first int says if there are more entries, it is written last
+	uint8_t *data = start + sizeof(int32_t);
 
-JNIEXPORT jlong JNICALL Java_org_apache_accumulo_tserver_NativeMap_nmiGetTS(JNIEnv *env, jclass cls, jlong ip) {
-	Iterator &iter = *((Iterator *)ip);
-	return iter.colIter->first.getTimestamp();
+	int32_t ia[7];
+	int count = 0;
+	RowMap::iterator lastRow;
+
+	while(!iter.atEnd() && count < maxEntries && (count == 0 || data - start <= maxBytes)) {
+		const Field &row = iter.rowIter->first;
+		const SubKey &sk = iter.colIter->first;
+		const Field &val = iter.colIter->second;
+
+		//the row is only sent when it changes
+		bool sendRow = count == 0 || lastRow != iter.rowIter;
+		int64_t len = (sendRow ? row.length() : 0) + sk.totalLen + val.length() + 33;
+		if(data + len > end) {
+			if(count == 0)
+				return -(jint)(len + sizeof(int32_t));
+			break;
+		}
+
+		if(sendRow)
+			putField(data, row);
+		else
+			putInt(data, -1);
+		putField(data, sk.getCF());
+		putField(data, sk.getCQ());
+		putField(data, sk.getCV());
+		int64_t ts = sk.getTimestamp();
+		memcpy(data, &ts, sizeof(ts));
+		data += sizeof(ts);
+		*data++ = sk.isDeleted() ? 1 : 0;
+		putInt(data, sk.getMC());
+		putField(data, val);
+
+		lastRow = iter.rowIter;
+		count++;
+		iter.advance(ia);
+	}
+
+	uint8_t *header = start;
+	putInt(header, iter.atEnd() ? 0 : 1);
+	return count;
 }
 
 JNIEXPORT void JNICALL Java_org_apache_accumulo_tserver_NativeMap_deleteNMI(JNIEnv *env, jclass cls, jlong ip) {
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Limits the bytes per second read and written by all the compactions of a tablet server together. Each compaction counts its bytes with its own
+ * {@link Throttle}, which waits on the shared limit once for every {@value #CHUNK_SIZE} bytes, so the cost of the limit is small for each key/value.
+ */
+public class CompactionRateLimiter {
+
+  static final int CHUNK_SIZE = 64 * 1024;
+
+  private long bytesPerSecond = 0;
+  private volatile RateLimiter limiter = null;
+
+  /**
+   * @param bytesPerSecond
+   *          the limit, or zero for no limit
+   */
+  public CompactionRateLimiter(long bytesPerSecond) {
+    setRate(bytesPerSecond);
+  }
+
+  /**
+   * Changes the limit. Compactions that are running use the new limit for the next bytes they count.
+   *
+   * @param bytesPerSecond
+   *          the limit, or zero for no limit
+   */
+  public synchronized void setRate(long bytesPerSecond) {
+    if (bytesPerSecond < 0)
+      throw new IllegalArgumentException("rate must be >= 0 " + bytesPerSecond);
+    if (bytesPerSecond == this.bytesPerSecond)
+      return;
+
+    if (bytesPerSecond == 0)
+      limiter = null;
+    else if (limiter == null)
+      limiter = RateLimiter.create(bytesPerSecond);
+    else
+      limiter.setRate(bytesPerSecond);
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  public synchronized long getRate() {
+    return bytesPerSecond;
+  }
+
+  /**
+   * @param weight
+   *          the share of the limit given to the compaction relative to other compactions; a compaction with a weight of 2 counts half of its bytes
+   * @param bytesCounter
+   *          incremented with the bytes counted, for rates kept outside of the compaction
+   */
+  public Throttle newThrottle(double weight, AtomicLong bytesCounter) {
+    if (weight <= 0)
+      throw new IllegalArgumentException("weight must be > 0 " + weight);
+    return new Throttle(weight, bytesCounter);
+  }
+
+  /**
+   * Counts the bytes of one compaction. Only the thread running the compaction counts bytes, other threads may read the totals while it runs.
+   */
+  public class Throttle {
+
+    private final double weight;
+    private final AtomicLong bytesCounter;
+
+    private long pending = 0;
+    private long read = 0;
+    private long written = 0;
+
+    private volatile long bytesRead = 0;
+    private volatile long bytesWritten = 0;
+    private volatile long throttledNanos = 0;
+    private volatile boolean throttled = false;
+
+    private Throttle(double weight, AtomicLong bytesCounter) {
+      this.weight = weight;
+      this.bytesCounter = bytesCounter;
+    }
+
+    public void read(long bytes) {
+      read += bytes;
+      pending += bytes;
+      if (pending >= CHUNK_SIZE)
+        flush();
+    }
+
+    public void wrote(long bytes) {
+      written += bytes;
+      pending += bytes;
+      if (pending >= CHUNK_SIZE)
+        flush();
+    }
+
+    /**
+     * Publishes the bytes counted since the last flush and waits until the limit allows them.
+     */
+    public void flush() {
+      if (pending == 0)
+        return;
+
+      bytesRead = read;
+      bytesWritten = written;
+      bytesCounter.addAndGet(pending);
+
+      RateLimiter rl = limiter;
+      if (rl != null) {
+        int permits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, Math.round(pending / weight)));
+        if (!rl.tryAcquire(permits)) {
+          long t1 = System.nanoTime();
+          throttled = true;
+          try {
+            rl.acquire(permits);
+          } finally {
+            throttled = false;
+            throttledNanos += System.nanoTime() - t1;
+          }
+        }
+      }
+
+      pending = 0;
+    }
+
+    public long getBytesRead() {
+      return bytesRead;
+    }
+
+    public long getBytesWritten() {
+      return bytesWritten;
+    }
+
+    /**
+     * @return the time spent waiting on the limit, in milliseconds
+     */
+    public long getThrottledTime() {
+      return throttledNanos / 1000000;
+    }
+
+    /**
+     * @return true while the compaction is waiting on the limit
+     */
+    public boolean isThrottled() {
+      return throttled;
+    }
+  }
+}
@@ -20,6 +20,10 @@ public class CompactionStats {
   private long entriesRead;
   private long entriesWritten;
   private long fileSize;
+  private int partitions = 1;
+  private long bytesRead;
+  private long bytesWritten;
+  private long throttledTime;
   
   CompactionStats(long er, long ew) {
     this.setEntriesRead(er);
@@ -47,6 +51,10 @@ public class CompactionStats {
   public void add(CompactionStats mcs) {
     this.entriesRead += mcs.entriesRead;
     this.entriesWritten += mcs.entriesWritten;
+    this.partitions = Math.max(this.partitions, mcs.partitions);
+    this.bytesRead += mcs.bytesRead;
+    this.bytesWritten += mcs.bytesWritten;
+    this.throttledTime += mcs.throttledTime;
   }
   
   public void setFileSize(long fileSize) {
@@ -56,4 +64,42 @@ public class CompactionStats {
   public long getFileSize() {
     return this.fileSize;
   }
+  
+  void setPartitions(int partitions) {
+    this.partitions = partitions;
+  }
+  
+  /**
+   * @return the number of ranges compacted concurrently, each into its own file
+   */
+  public int getPartitions() {
+    return this.partitions;
+  }
+  
+  void setBytes(long bytesRead, long bytesWritten, long throttledTime) {
+    this.bytesRead = bytesRead;
+    this.bytesWritten = bytesWritten;
+    this.throttledTime = throttledTime;
+  }
+  
+  /**
+   * @return the bytes of the keys and values read, as counted by the compaction rate limit
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+  
+  /**
+   * @return the bytes of the keys and values written, as counted by the compaction rate limit
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+  
+  /**
+   * @return the milliseconds the compaction waited on the compaction rate limit
+   */
+  public long getThrottledTime() {
+    return throttledTime;
+  }
 }
@@ -33,9 +33,11 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.accumulo.core.client.IteratorSetting;
 import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.Property;
 import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.KeyExtent;
+import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.data.thrift.IterInfo;
 import org.apache.accumulo.core.file.FileOperations;
@@ -77,6 +79,7 @@ public class Compactor implements Callable<CompactionStats> {
     private long count;
     private ArrayList<CountingIterator> deepCopies;
     private AtomicLong entriesRead;
+    private CompactionRateLimiter.Throttle throttle;
 
     @Override
     public CountingIterator deepCopy(IteratorEnvironment env) {
@@ -88,6 +91,7 @@ public class Compactor implements Callable<CompactionStats> {
       count = 0;
       this.deepCopies = other.deepCopies;
       this.entriesRead = other.entriesRead;
+      this.throttle = other.throttle;
       deepCopies.add(this);
     }
 
@@ -98,6 +102,15 @@ public class Compactor implements Callable<CompactionStats> {
       this.entriesRead = entriesRead;
     }
 
+    /**
+     * @param throttle
+     *          counts the bytes of each key/value read, and waits when the compaction rate limit is exceeded
+     */
+    public CountingIterator(SortedKeyValueIterator<Key,Value> source, AtomicLong entriesRead, CompactionRateLimiter.Throttle throttle) {
+      this(source, entriesRead);
+      this.throttle = throttle;
+    }
+
     @Override
     public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) {
       throw new UnsupportedOperationException();
@@ -105,6 +118,8 @@ public class Compactor implements Callable<CompactionStats> {
 
     @Override
     public void next() throws IOException {
+      if (throttle != null)
+        throttle.read(getTopKey().getSize() + getTopValue().getSize());
       super.next();
       count++;
       if (count % 1024 == 0) {
@@ -124,6 +139,8 @@ public class Compactor implements Callable<CompactionStats> {
 
   private static final Logger log = Logger.getLogger(Compactor.class);
 
+  private static final CompactionRateLimiter UNLIMITED = new CompactionRateLimiter(0);
+
   static class CompactionCanceledException extends Exception {
     private static final long serialVersionUID = 1L;
   }
@@ -143,6 +160,8 @@ public class Compactor implements Callable<CompactionStats> {
   private Configuration conf;
   private VolumeManager fs;
   protected KeyExtent extent;
+  // the part of the tablet compacted, which is less than the whole tablet when a compaction is partitioned
+  private Range range;
   private List<IteratorSetting> iterators;
 
   // things to report
@@ -154,6 +173,9 @@ public class Compactor implements Callable<CompactionStats> {
 
   private AtomicLong entriesRead = new AtomicLong(0);
   private AtomicLong entriesWritten = new AtomicLong(0);
+  private CompactionRateLimiter rateLimiter = UNLIMITED;
+  private AtomicLong bytesCounter = new AtomicLong(0);
+  private volatile CompactionRateLimiter.Throttle throttle;
   private DateFormat dateFormatter = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss.SSS");
 
   private static AtomicLong nextCompactorID = new AtomicLong(0);
@@ -170,6 +192,24 @@ public class Compactor implements Callable<CompactionStats> {
   private void clearStats() {
     entriesRead.set(0);
     entriesWritten.set(0);
+
+    double weight = acuTableConf.getFraction(Property.TABLE_COMPACTION_THROUGHPUT_WEIGHT);
+    if (weight <= 0) {
+      log.warn("Ignoring " + Property.TABLE_COMPACTION_THROUGHPUT_WEIGHT.getKey() + " " + weight + " for " + extent + ", it must be greater than zero");
+      weight = 1;
+    }
+    throttle = rateLimiter.newThrottle(weight, bytesCounter);
+  }
+
+  /**
+   * Limits the bytes read and written by this compaction with a limit shared with other compactions. Must be called before the compaction is started.
+   *
+   * @param bytesCounter
+   *          incremented with the bytes read and written, so a rate can be kept for the tablet
+   */
+  void setRateLimiter(CompactionRateLimiter rateLimiter, AtomicLong bytesCounter) {
+    this.rateLimiter = rateLimiter;
+    this.bytesCounter = bytesCounter;
   }
 
   protected static Set<Compactor> runningCompactions = Collections.synchronizedSet(new HashSet<Compactor>());
@@ -180,11 +220,20 @@ public class Compactor implements Callable<CompactionStats> {
     private String localityGroup;
     private long entriesRead;
     private long entriesWritten;
+    private long bytesRead;
+    private long bytesWritten;
+    private boolean throttled;
 
     CompactionInfo(Compactor compactor) {
       this.localityGroup = compactor.currentLocalityGroup;
       this.entriesRead = compactor.entriesRead.get();
       this.entriesWritten = compactor.entriesWritten.get();
+      CompactionRateLimiter.Throttle throttle = compactor.throttle;
+      if (throttle != null) {
+        this.bytesRead = throttle.getBytesRead();
+        this.bytesWritten = throttle.getBytesWritten();
+        this.throttled = throttle.isThrottled();
+      }
       this.compactor = compactor;
     }
 
@@ -204,6 +253,25 @@ public class Compactor implements Callable<CompactionStats> {
       return entriesWritten;
     }
 
+    public long getBytesRead() {
+      return bytesRead;
+    }
+
+    public long getBytesWritten() {
+      return bytesWritten;
+    }
+
+    /**
+     * @return true if the compaction was waiting on the compaction rate limit
+     */
+    public boolean isThrottled() {
+      return throttled;
+    }
+
+    public boolean isMinor() {
+      return compactor.imm != null;
+    }
+
     public Thread getThread() {
       return compactor.thread;
     }
@@ -287,7 +355,13 @@ public class Compactor implements Callable<CompactionStats> {
 
   Compactor(Configuration conf, VolumeManager fs, Map<FileRef,DataFileValue> files, InMemoryMap imm, FileRef outputFile, boolean propogateDeletes,
       AccumuloConfiguration acuTableConf, KeyExtent extent, CompactionEnv env, List<IteratorSetting> iterators, MajorCompactionReason reason) {
+    this(conf, fs, files, imm, outputFile, propogateDeletes, acuTableConf, extent, env, iterators, reason, extent.toDataRange());
+  }
+
+  Compactor(Configuration conf, VolumeManager fs, Map<FileRef,DataFileValue> files, InMemoryMap imm, FileRef outputFile, boolean propogateDeletes,
+      AccumuloConfiguration acuTableConf, KeyExtent extent, CompactionEnv env, List<IteratorSetting> iterators, MajorCompactionReason reason, Range range) {
     this.extent = extent;
+    this.range = range;
     this.conf = conf;
     this.fs = fs;
     this.filesToCompact = files;
@@ -376,8 +450,12 @@ public class Compactor implements Callable<CompactionStats> {
         throw ex;
       }
 
-      log.debug(String.format("Compaction %s %,d read | %,d written | %,6d entries/sec | %6.3f secs", extent, majCStats.getEntriesRead(),
-          majCStats.getEntriesWritten(), (int) (majCStats.getEntriesRead() / ((t2 - t1) / 1000.0)), (t2 - t1) / 1000.0));
+      CompactionRateLimiter.Throttle throttle = this.throttle;
+      majCStats.setBytes(throttle.getBytesRead(), throttle.getBytesWritten(), throttle.getThrottledTime());
+
+      log.debug(String.format("Compaction %s %,d read | %,d written | %,6d entries/sec | %,d bytes/sec | %6.3f secs throttled | %6.3f secs", extent,
+          majCStats.getEntriesRead(), majCStats.getEntriesWritten(), (int) (majCStats.getEntriesRead() / ((t2 - t1) / 1000.0)),
+          (long) ((majCStats.getBytesRead() + majCStats.getBytesWritten()) / ((t2 - t1) / 1000.0)), majCStats.getThrottledTime() / 1000.0, (t2 - t1) / 1000.0));
 
       majCStats.setFileSize(fileFactory.getFileSize(outputFile.path().toString(), ns, ns.getConf(), acuTableConf));
       return majCStats;
@@ -471,7 +549,8 @@ public class Compactor implements Callable<CompactionStats> {
         iters.add(imm.compactionIterator());
       }
 
-      CountingIterator citr = new CountingIterator(new MultiIterator(iters, extent.toDataRange()), entriesRead);
+      CompactionRateLimiter.Throttle throttle = this.throttle;
+      CountingIterator citr = new CountingIterator(new MultiIterator(iters, range), entriesRead, throttle);
       DeletingIterator delIter = new DeletingIterator(citr, propogateDeletes);
       ColumnFamilySkippingIterator cfsi = new ColumnFamilySkippingIterator(delIter);
 
@@ -488,7 +567,7 @@ public class Compactor implements Callable<CompactionStats> {
       SortedKeyValueIterator<Key,Value> itr = iterEnv.getTopLevelIterator(IteratorUtil.loadIterators(env.getIteratorScope(), cfsi, extent, acuTableConf,
           iterators, iterEnv));
 
-      itr.seek(extent.toDataRange(), columnFamilies, inclusive);
+      itr.seek(range, columnFamilies, inclusive);
 
       if (!inclusive) {
         mfw.startDefaultLocalityGroup();
@@ -499,7 +578,10 @@ public class Compactor implements Callable<CompactionStats> {
       Span write = Trace.start("write");
       try {
         while (itr.hasTop() && env.isCompactionEnabled()) {
-          mfw.append(itr.getTopKey(), itr.getTopValue());
+          Key key = itr.getTopKey();
+          Value value = itr.getTopValue();
+          mfw.append(key, value);
+          throttle.wrote(key.getSize() + value.getSize());
           itr.next();
           entriesCompacted++;
 
@@ -527,6 +609,7 @@ public class Compactor implements Callable<CompactionStats> {
       } finally {
         CompactionStats lgMajcStats = new CompactionStats(citr.getCount(), entriesCompacted);
         majCStats.add(lgMajcStats);
+        throttle.flush();
         write.stop();
       }
 
@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -206,20 +207,29 @@ public class InMemoryMap {
   }
 
   public InMemoryMap(Map<String,Set<ByteSequence>> lggroups, boolean useNativeMap, String memDumpDir) {
+    this(lggroups, useNativeMap, false, memDumpDir);
+  }
+
+  /**
+   * @param useOffHeapMap
+   *          use an {@link OffHeapMap} when the native map is not used
+   */
+  public InMemoryMap(Map<String,Set<ByteSequence>> lggroups, boolean useNativeMap, boolean useOffHeapMap, String memDumpDir) {
     this.memDumpDir = memDumpDir;
     this.lggroups = lggroups;
     
     if (lggroups.size() == 0)
-      map = newMap(useNativeMap);
+      map = newMap(useNativeMap, useOffHeapMap);
     else
-      map = new LocalityGroupMap(lggroups, useNativeMap);
+      map = new LocalityGroupMap(lggroups, useNativeMap, useOffHeapMap);
   }
   
   public InMemoryMap(AccumuloConfiguration config) throws LocalityGroupConfigurationError {
-    this(LocalityGroupUtil.getLocalityGroups(config), config.getBoolean(Property.TSERV_NATIVEMAP_ENABLED), config.get(Property.TSERV_MEMDUMP_DIR));
+    this(LocalityGroupUtil.getLocalityGroups(config), config.getBoolean(Property.TSERV_NATIVEMAP_ENABLED), config.getBoolean(Property.TSERV_OFFHEAPMAP_ENABLED),
+        config.get(Property.TSERV_MEMDUMP_DIR));
   }
   
-  private static SimpleMap newMap(boolean useNativeMap) {
+  private static SimpleMap newMap(boolean useNativeMap, boolean useOffHeapMap) {
     if (useNativeMap && NativeMap.isLoaded()) {
       try {
         return new NativeMapWrapper();
@@ -228,6 +238,9 @@ public class InMemoryMap {
       }
     }
     
+    if (useOffHeapMap)
+      return new OffHeapMapWrapper();
+    
     return new DefaultMap();
   }
   
@@ -254,18 +267,16 @@ public class InMemoryMap {
     // the last map in the array is the default locality group
     private SimpleMap maps[];
     private Partitioner partitioner;
-    private List<Mutation>[] partitioned;
     private Set<ByteSequence> nonDefaultColumnFamilies;
     
     @SuppressWarnings("unchecked")
-    LocalityGroupMap(Map<String,Set<ByteSequence>> groups, boolean useNativeMap) {
+    LocalityGroupMap(Map<String,Set<ByteSequence>> groups, boolean useNativeMap, boolean useOffHeapMap) {
       this.groupFams = new Map[groups.size()];
       this.maps = new SimpleMap[groups.size() + 1];
-      this.partitioned = new List[groups.size() + 1];
       this.nonDefaultColumnFamilies = new HashSet<ByteSequence>();
       
       for (int i = 0; i < maps.length; i++) {
-        maps[i] = newMap(useNativeMap);
+        maps[i] = newMap(useNativeMap, useOffHeapMap);
       }
 
       int count = 0;
@@ -278,10 +289,6 @@ public class InMemoryMap {
       }
       
       partitioner = new LocalityGroupUtil.Partitioner(this.groupFams);
-      
-      for (int i = 0; i < partitioned.length; i++) {
-        partitioned[i] = new ArrayList<Mutation>();
-      }
     }
 
     @Override
@@ -331,25 +338,21 @@ public class InMemoryMap {
     }
     
     @Override
-    public synchronized void mutate(List<Mutation> mutations, int kvCount) {
-      // this method is synchronized because it reuses objects to avoid allocation,
-      // currently, the method that calls this is synchronized so there is no
-      // loss in parallelism.... synchronization was added here for future proofing
+    public void mutate(List<Mutation> mutations, int kvCount) {
+      // the lists are not reused, so that several threads can mutate at once
+      @SuppressWarnings("unchecked")
+      List<Mutation>[] partitioned = new List[maps.length];
+      for (int i = 0; i < partitioned.length; i++) {
+        partitioned[i] = new ArrayList<Mutation>();
+      }
       
-      try{
-        partitioner.partition(mutations, partitioned);
-        
-        for (int i = 0; i < partitioned.length; i++) {
-          if (partitioned[i].size() > 0) {
-            maps[i].mutate(partitioned[i], kvCount);
-            for (Mutation m : partitioned[i])
-              kvCount += m.getUpdates().size();
-          }
-        }
-      } finally {
-        // clear immediately so mutations can be garbage collected
-        for (List<Mutation> list : partitioned) {
-          list.clear();
+      partitioner.partition(mutations, partitioned);
+      
+      for (int i = 0; i < partitioned.length; i++) {
+        if (partitioned[i].size() > 0) {
+          maps[i].mutate(partitioned[i], kvCount);
+          for (Mutation m : partitioned[i])
+            kvCount += m.getUpdates().size();
         }
       }
     }
@@ -459,13 +462,47 @@ public class InMemoryMap {
     }
   }
   
+  private static class OffHeapMapWrapper implements SimpleMap {
+    private OffHeapMap offHeapMap = new OffHeapMap();
+    
+    public Value get(Key key) {
+      return offHeapMap.get(key);
+    }
+    
+    public Iterator<Entry<Key,Value>> iterator(Key startKey) {
+      return offHeapMap.iterator(startKey);
+    }
+    
+    public int size() {
+      return offHeapMap.size();
+    }
+    
+    public InterruptibleIterator skvIterator() {
+      return (InterruptibleIterator) offHeapMap.skvIterator();
+    }
+    
+    public void delete() {
+      offHeapMap.delete();
+    }
+    
+    public long getMemoryUsed() {
+      return offHeapMap.getMemoryUsed();
+    }
+    
+    @Override
+    public void mutate(List<Mutation> mutations, int kvCount) {
+      offHeapMap.mutate(mutations, kvCount);
+    }
+  }
+  
   private AtomicInteger nextKVCount = new AtomicInteger(1);
   private AtomicInteger kvCount = new AtomicInteger(0);
 
-  private Object writeSerializer = new Object();
+  // the kv count ranges of writes that finished while a write that started before them was in progress, keyed by the first kv count of the range
+  private final TreeMap<Integer,Integer> finishedWrites = new TreeMap<Integer,Integer>();
   
   /**
-   * Applies changes to a row in the InMemoryMap
+   * Applies changes to a row in the InMemoryMap. Several threads may call this at once.
    * 
    */
   public void mutate(List<Mutation> mutations) {
@@ -473,21 +510,47 @@ public class InMemoryMap {
     for (int i = 0; i < mutations.size(); i++)
       numKVs += mutations.get(i).size();
     
+    if (numKVs == 0)
+      return;
+    
+    // Each write gets its own range of kv counts and writes to the map
+    // in parallel with other writes.
+    int kv = nextKVCount.getAndAdd(numKVs);
+    try {
+      map.mutate(mutations, kv);
+    } finally {
+      finishWrite(kv, kv + numKVs - 1);
+    }
+  }
+  
+  private void finishWrite(int firstKV, int lastKV) {
     // Can not update mutationCount while writes that started before
     // are in progress, this would cause partial mutations to be seen.
     // Also, can not continue until mutation count is updated, because
     // a read may not see a successful write. Therefore writes must
     // wait for writes that started before to finish.
-    //
-    // using separate lock from this map, to allow read/write in parallel
-    synchronized (writeSerializer ) {
-      int kv = nextKVCount.getAndAdd(numKVs);
-      try {
-        map.mutate(mutations, kv);
-      } finally {
-        kvCount.set(kv + numKVs - 1);
+    boolean interrupted = false;
+    synchronized (finishedWrites) {
+      finishedWrites.put(firstKV, lastKV);
+      
+      Entry<Integer,Integer> next;
+      while ((next = finishedWrites.firstEntry()) != null && next.getKey() == kvCount.get() + 1) {
+        finishedWrites.pollFirstEntry();
+        kvCount.set(next.getValue());
+      }
+      finishedWrites.notifyAll();
+      
+      while (kvCount.get() < lastKV) {
+        try {
+          finishedWrites.wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
       }
     }
+    
+    if (interrupted)
+      Thread.currentThread().interrupt();
   }
   
   /**
@@ -18,9 +18,12 @@ package org.apache.accumulo.tserver;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -174,9 +177,10 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
 
   private static native void singleUpdate(long nmPointer, byte[] row, byte cf[], byte cq[], byte cv[], long ts, boolean del, byte[] value, int mutationCount);
 
-  private static native long startUpdate(long nmPointer, byte[] row);
-
-  private static native void update(long nmPointer, long updateID, byte cf[], byte cq[], byte cv[], long ts, boolean del, byte[] value, int mutationCount);
+  /**
+   * Inserts mutations serialized by {@link #serialize(Mutation, ByteBuffer)} into a direct buffer. Each mutation after the first gets the next mutation count.
+   */
+  private static native void mutateBatch(long nmPointer, ByteBuffer buffer, int numMutations, int mutationCount);
 
   private static native int sizeNM(long nmPointer);
 
@@ -184,6 +188,36 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
 
   private static native long deleteNM(long nmPointer);
 
+  // the size of the mutations serialized for each call to mutateBatch, which holds the write lock while it inserts them
+  private static final int MUTATE_BATCH_BYTES = 1 << 14;
+  private static final int DEFAULT_BUFFER_SIZE = 1 << 15;
+  // buffers grown beyond this size for large key/values are not kept for reuse
+  private static final int MAX_CACHED_BUFFER_SIZE = 1 << 20;
+
+  private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE).order(ByteOrder.nativeOrder());
+    }
+  };
+
+  /**
+   * Gets a direct buffer for passing key/values to and from native code. Each thread reuses its own buffer, so a buffer must not be held across calls.
+   */
+  private static ByteBuffer getBuffer(int minCapacity) {
+    ByteBuffer buffer = buffers.get();
+    if (buffer.capacity() < minCapacity) {
+      int capacity = buffer.capacity();
+      while (capacity < minCapacity && capacity < (1 << 30))
+        capacity <<= 1;
+      buffer = ByteBuffer.allocateDirect(Math.max(capacity, minCapacity)).order(ByteOrder.nativeOrder());
+      if (buffer.capacity() <= MAX_CACHED_BUFFER_SIZE)
+        buffers.set(buffer);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
   private static boolean init = false;
   private static long totalAllocations;
   private static HashSet<Long> allocatedNativeMaps;
@@ -236,15 +270,18 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
     }
   }
 
-  private static native long createNMI(long nmp, int fieldLens[]);
+  private static native long createNMI(long nmp);
 
-  private static native long createNMI(long nmp, byte[] row, byte cf[], byte cq[], byte cv[], long ts, boolean del, int fieldLens[]);
+  private static native long createNMI(long nmp, byte[] row, byte cf[], byte cq[], byte cv[], long ts, boolean del);
 
-  private static native boolean nmiNext(long nmiPointer, int fieldLens[]);
-
-  private static native void nmiGetData(long nmiPointer, byte[] row, byte cf[], byte cq[], byte cv[], byte[] valData);
-
-  private static native long nmiGetTS(long nmiPointer);
+  /**
+   * Copies up to maxEntries key/values into a direct buffer, stopping once more than maxBytes have been copied, and advances the iterator past them. The
+   * buffer starts with an int that is zero when the iterator has no more key/values, followed by the key/values in the layout read by
+   * {@link NMIterator#next(Entry[], int)}.
+   *
+   * @return the number of key/values copied, or the negated buffer capacity needed when the next key/value does not fit in the buffer
+   */
+  private static native int nmiNext(long nmiPointer, ByteBuffer buffer, int maxEntries, int maxBytes);
 
   private static native void deleteNMI(long nmiPointer);
 
@@ -290,23 +327,16 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
       end = 0;
       index = 0;
 
-      if (source.hasNext())
-        source.doNextPreCheck();
+      if (!source.hasNext())
+        return;
 
-      int amountRead = 0;
+      source.doNextPreCheck();
 
       // as we keep filling, increase the read ahead buffer
       if (nextEntries.length < MAX_READ_AHEAD_ENTRIES)
         nextEntries = new Entry[Math.min(nextEntries.length * 2, MAX_READ_AHEAD_ENTRIES)];
 
-      while (source.hasNext() && end < nextEntries.length) {
-        Entry<Key,Value> ne = source.next();
-        nextEntries[end++] = ne;
-        amountRead += ne.getKey().getSize() + ne.getValue().getSize();
-
-        if (amountRead > READ_AHEAD_BYTES)
-          break;
-      }
+      end = source.next(nextEntries, READ_AHEAD_BYTES);
     }
 
     @Override
@@ -355,7 +385,7 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
     }
   }
 
-  private class NMIterator implements Iterator<Map.Entry<Key,Value>> {
+  private class NMIterator {
 
     /**
      * The strategy for dealing with native memory allocated for iterators is to simply delete that memory when this Java Object is garbage collected.
@@ -368,7 +398,6 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
     private long nmiPointer;
     private boolean hasNext;
     private int expectedModCount;
-    private int[] fieldsLens = new int[7];
     private byte lastRow[];
 
     // it is assumed the read lock is held when this method is called
@@ -381,7 +410,7 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
       expectedModCount = modCount;
 
       nmiPointer = createNMI(nmPointer, key.getRowData().toArray(), key.getColumnFamilyData().toArray(), key.getColumnQualifierData().toArray(), key
-          .getColumnVisibilityData().toArray(), key.getTimestamp(), key.isDeleted(), fieldsLens);
+          .getColumnVisibilityData().toArray(), key.getTimestamp(), key.isDeleted());
 
       hasNext = nmiPointer != 0;
     }
@@ -400,7 +429,6 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
       nmiPointer = 0;
     }
 
-    @Override
     public boolean hasNext() {
       return hasNext;
     }
@@ -417,12 +445,16 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
       }
     }
 
-    @Override
+    /**
+     * Reads the next key/values with a single call to native code.
+     *
+     * @return the number of key/values put in entries, at least one
+     */
     // It is assumed that this method is called w/ the read lock held and
     // that doNextPreCheck() is called prior to calling this method
     // also this method is synchronized to ensure that a deleted iterator
     // is not used
-    public synchronized Entry<Key,Value> next() {
+    public synchronized int next(Entry<Key,Value>[] entries, int maxBytes) {
       if (!hasNext) {
         throw new NoSuchElementException();
       }
@@ -431,32 +463,41 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
         throw new IllegalStateException("Native Map Iterator Deleted");
       }
 
-      byte[] row = null;
-      if (fieldsLens[0] >= 0) {
-        row = new byte[fieldsLens[0]];
-        lastRow = row;
+      ByteBuffer buffer = getBuffer(0);
+      int count = nmiNext(nmiPointer, buffer, entries.length, maxBytes);
+      if (count < 0) {
+        // the next key/value is larger than the buffer
+        buffer = getBuffer(-count);
+        count = nmiNext(nmiPointer, buffer, entries.length, maxBytes);
       }
 
-      byte cf[] = new byte[fieldsLens[1]];
-      byte cq[] = new byte[fieldsLens[2]];
-      byte cv[] = new byte[fieldsLens[3]];
-      boolean deleted = fieldsLens[4] == 0 ? false : true;
-      byte val[] = new byte[fieldsLens[5]];
-
-      nmiGetData(nmiPointer, row, cf, cq, cv, val);
-      long ts = nmiGetTS(nmiPointer);
+      hasNext = buffer.getInt() != 0;
 
-      Key k = new MemKey(lastRow, cf, cq, cv, ts, deleted, false, fieldsLens[6]);
-      Value v = new Value(val, false);
-
-      hasNext = nmiNext(nmiPointer, fieldsLens);
+      for (int i = 0; i < count; i++) {
+        int rowLen = buffer.getInt();
+        if (rowLen >= 0) {
+          lastRow = new byte[rowLen];
+          buffer.get(lastRow);
+        }
 
-      return new NMEntry(k, v);
-    }
+        byte cf[] = new byte[buffer.getInt()];
+        buffer.get(cf);
+        byte cq[] = new byte[buffer.getInt()];
+        buffer.get(cq);
+        byte cv[] = new byte[buffer.getInt()];
+        buffer.get(cv);
+        long ts = buffer.getLong();
+        boolean deleted = buffer.get() != 0;
+        int mutationCount = buffer.getInt();
+        byte val[] = new byte[buffer.getInt()];
+        buffer.get(val);
+
+        Key k = new MemKey(lastRow, cf, cq, cv, ts, deleted, false, mutationCount);
+        Value v = new Value(val, false);
+        entries[i] = new NMEntry(k, v);
+      }
 
-    @Override
-    public void remove() {
-      throw new UnsupportedOperationException();
+      return count;
     }
 
     @Override
@@ -518,42 +559,65 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
     }
   }
 
-  private void _mutate(Mutation mutation, int mutationCount) {
+  private static int serializedSize(Mutation mutation) {
+    int size = 8 + mutation.getRow().length;
+    for (ColumnUpdate update : mutation.getUpdates())
+      size += 25 + update.getColumnFamily().length + update.getColumnQualifier().length + update.getColumnVisibility().length + update.getValue().length;
+    return size;
+  }
 
+  /**
+   * Writes a mutation in the layout read by the native map: the row and the number of updates, then the column, timestamp, delete flag and value of each
+   * update. Lengths are ints in native byte order.
+   */
+  private static void serialize(Mutation mutation, ByteBuffer buffer) {
     List<ColumnUpdate> updates = mutation.getUpdates();
-    if (updates.size() == 1) {
-      ColumnUpdate update = updates.get(0);
-      singleUpdate(nmPointer, mutation.getRow(), update.getColumnFamily(), update.getColumnQualifier(), update.getColumnVisibility(), update.getTimestamp(),
-          update.isDeleted(), update.getValue(), mutationCount);
-    } else if (updates.size() > 1) {
-      long uid = startUpdate(nmPointer, mutation.getRow());
-      for (ColumnUpdate update : updates) {
-        update(nmPointer, uid, update.getColumnFamily(), update.getColumnQualifier(), update.getColumnVisibility(), update.getTimestamp(), update.isDeleted(),
-            update.getValue(), mutationCount);
-      }
-
+    putBytes(buffer, mutation.getRow());
+    buffer.putInt(updates.size());
+    for (ColumnUpdate update : updates) {
+      putBytes(buffer, update.getColumnFamily());
+      putBytes(buffer, update.getColumnQualifier());
+      putBytes(buffer, update.getColumnVisibility());
+      buffer.putLong(update.getTimestamp());
+      buffer.put((byte) (update.isDeleted() ? 1 : 0));
+      putBytes(buffer, update.getValue());
     }
   }
 
-  public void mutate(Mutation mutation, int mutationCount) {
-    wlock.lock();
-    try {
-      if (nmPointer == 0) {
-        throw new IllegalStateException("Native Map Deleted");
-      }
-
-      modCount++;
+  private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+    buffer.putInt(bytes.length);
+    buffer.put(bytes);
+  }
 
-      _mutate(mutation, mutationCount);
-    } finally {
-      wlock.unlock();
-    }
+  public void mutate(Mutation mutation, int mutationCount) {
+    mutate(Collections.singletonList(mutation), mutationCount);
   }
 
   public void mutate(List<Mutation> mutations, int mutationCount) {
     Iterator<Mutation> iter = mutations.iterator();
+    Mutation pending = null;
+
+    while (pending != null || iter.hasNext()) {
+
+      // serialize outside of the write lock, then insert all of the mutations in the buffer with one native call
+      ByteBuffer buffer = getBuffer(MUTATE_BATCH_BYTES);
+      int count = 0;
+      while (buffer.position() < MUTATE_BATCH_BYTES && (pending != null || iter.hasNext())) {
+        Mutation mutation = pending != null ? pending : iter.next();
+        pending = null;
+
+        int size = serializedSize(mutation);
+        if (size > buffer.remaining()) {
+          if (count > 0) {
+            pending = mutation;
+            break;
+          }
+          buffer = getBuffer(size);
+        }
 
-    while (iter.hasNext()) {
+        serialize(mutation, buffer);
+        count++;
+      }
 
       wlock.lock();
       try {
@@ -563,16 +627,12 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
 
         modCount++;
 
-        int count = 0;
-        while (iter.hasNext() && count < 10) {
-          Mutation mutation = iter.next();
-          _mutate(mutation, mutationCount);
-          mutationCount++;
-          count += mutation.size();
-        }
+        mutateBatch(nmPointer, buffer, count, mutationCount);
       } finally {
         wlock.unlock();
       }
+
+      mutationCount += count;
     }
   }
 
@@ -598,9 +658,11 @@ public class NativeMap implements Iterable<Map.Entry<Key,Value>> {
       Value ret = null;
       NMIterator nmi = new NMIterator(key);
       if (nmi.hasNext()) {
-        Entry<Key,Value> entry = nmi.next();
-        if (entry.getKey().equals(key)) {
-          ret = entry.getValue();
+        @SuppressWarnings("unchecked")
+        Entry<Key,Value>[] entry = new Entry[1];
+        nmi.next(entry, 0);
+        if (entry[0].getKey().equals(key)) {
+          ret = entry[0].getValue();
         }
       }
 
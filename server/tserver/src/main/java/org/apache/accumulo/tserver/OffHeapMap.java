@@ -0,0 +1,580 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IterationInterruptedException;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.system.InterruptibleIterator;
+
+/**
+ * A sorted map of {@link MemKey}s to values that keeps the keys and values outside of the java heap, without a native library. It is an alternative to
+ * {@link NativeMap} for tablet servers where the native library is not available.
+ * <p>
+ *
+ * Each key/value is written once into direct {@link ByteBuffer} slabs and never moved. The key/values are sorted by a skip list whose nodes are slots in large
+ * on-heap long arrays, so the map creates no java objects per key/value and the garbage collector only sees a few large arrays. Slabs of maps that are deleted
+ * are kept for reuse by later maps, up to a limit.
+ * <p>
+ *
+ * Like {@link NativeMap}, one thread at a time may write to the map while any number of threads read it. Readers do not lock, they see a key/value once the
+ * writer has linked it into the skip list.
+ */
+public class OffHeapMap implements Iterable<Map.Entry<Key,Value>> {
+
+  static final int SLAB_SIZE = 64 * 1024;
+  // the first slabs of a map are smaller, so maps of tablets that are written to rarely stay small
+  private static final int MIN_SLAB_SIZE = 4 * 1024;
+  private static final int MAX_POOLED_SLABS = 1024;
+
+  private static final ConcurrentLinkedQueue<ByteBuffer> slabPool = new ConcurrentLinkedQueue<ByteBuffer>();
+  private static final AtomicInteger pooledSlabs = new AtomicInteger(0);
+
+  // the index is kept in segments of at most 2^16 slots, so a node reference is a segment number and an offset
+  private static final int SEGMENT_SHIFT = 16;
+  private static final int MAX_SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+  private static final int MIN_SEGMENT_SIZE = 512;
+
+  // each level links a quarter of the nodes of the level below it, so 16 levels are enough for 4^16 key/values
+  private static final int MAX_LEVEL = 16;
+  private static final long HEAD = 0;
+
+  // the layout of the fixed size part of a key/value in a slab, followed by the row, family, qualifier, visibility and value
+  private static final int ROW_LEN = 0;
+  private static final int CF_LEN = 4;
+  private static final int CQ_LEN = 8;
+  private static final int CV_LEN = 12;
+  private static final int TIMESTAMP = 16;
+  private static final int DELETED = 24;
+  private static final int KV_COUNT = 25;
+  private static final int VALUE_LEN = 29;
+  private static final int HEADER_SIZE = 33;
+
+  private volatile ByteBuffer[] slabs = new ByteBuffer[8];
+  private volatile AtomicLongArray[] segments = new AtomicLongArray[8];
+
+  // the state below is only used by the writer
+  private int numSlabs = 0;
+  private ByteBuffer writeSlab = null;
+  private int writeSlabIndex = -1;
+  private int numSegments = 0;
+  private int segmentUsed = 0;
+  private int seed = 0x2545F491;
+  private final long[] preds = new long[MAX_LEVEL];
+
+  private volatile int size = 0;
+  private volatile long memoryUsed = 0;
+  private volatile boolean deleted = false;
+
+  public OffHeapMap() {
+    addSegment();
+    segmentUsed = 1 + MAX_LEVEL;
+  }
+
+  private static ByteBuffer allocateSlab(int size) {
+    if (size == SLAB_SIZE) {
+      ByteBuffer slab = slabPool.poll();
+      if (slab != null) {
+        pooledSlabs.decrementAndGet();
+        slab.clear();
+        return slab;
+      }
+    }
+    return ByteBuffer.allocateDirect(size);
+  }
+
+  private static void releaseSlab(ByteBuffer slab) {
+    if (slab.capacity() == SLAB_SIZE && pooledSlabs.incrementAndGet() <= MAX_POOLED_SLABS)
+      slabPool.add(slab);
+    else if (slab.capacity() == SLAB_SIZE)
+      pooledSlabs.decrementAndGet();
+  }
+
+  private void addSegment() {
+    AtomicLongArray[] segs = segments;
+    if (numSegments == segs.length) {
+      AtomicLongArray[] newSegs = new AtomicLongArray[segs.length * 2];
+      System.arraycopy(segs, 0, newSegs, 0, segs.length);
+      segs = newSegs;
+    }
+    AtomicLongArray segment = new AtomicLongArray(Math.min(MAX_SEGMENT_SIZE, MIN_SEGMENT_SIZE << Math.min(numSegments, SEGMENT_SHIFT)));
+    segs[numSegments++] = segment;
+    // readers find the new segment through this volatile write, which happens before any link to it
+    segments = segs;
+    segmentUsed = 0;
+    memoryUsed += segment.length() * 8l;
+  }
+
+  private long allocateNode(int height) {
+    AtomicLongArray segment = segments[numSegments - 1];
+    if (segmentUsed + 1 + height > segment.length())
+      addSegment();
+    long ref = ((long) (numSegments - 1) << SEGMENT_SHIFT) | segmentUsed;
+    segmentUsed += 1 + height;
+    return ref;
+  }
+
+  private int addSlab(ByteBuffer slab) {
+    ByteBuffer[] s = slabs;
+    if (numSlabs == s.length) {
+      ByteBuffer[] newSlabs = new ByteBuffer[s.length * 2];
+      System.arraycopy(s, 0, newSlabs, 0, s.length);
+      s = newSlabs;
+    }
+    s[numSlabs] = slab;
+    slabs = s;
+    memoryUsed += slab.capacity();
+    return numSlabs++;
+  }
+
+  /**
+   * @return the address of space for a key/value, as the slab number in the high int and the offset in the low int
+   */
+  private long allocateRecord(int length) {
+    if (writeSlab == null || writeSlab.remaining() < length) {
+      int slabSize = Math.min(SLAB_SIZE, MIN_SLAB_SIZE << Math.min(numSlabs, 16));
+      if (length > slabSize) {
+        // a large key/value gets a slab of its own and the current slab is kept for smaller ones
+        int slab = addSlab(ByteBuffer.allocateDirect(length));
+        return (long) slab << 32;
+      }
+      ByteBuffer slab = allocateSlab(slabSize);
+      // the writer uses its own view of the slab, so its position does not affect readers
+      writeSlab = slab.duplicate();
+      writeSlabIndex = addSlab(slab);
+    }
+    long address = ((long) writeSlabIndex << 32) | writeSlab.position();
+    writeSlab.position(writeSlab.position() + length);
+    return address;
+  }
+
+  private int randomHeight() {
+    // xorshift, only used by the writer
+    int x = seed;
+    x ^= x << 13;
+    x ^= x >>> 17;
+    x ^= x << 5;
+    seed = x;
+    int height = 1 + Integer.numberOfTrailingZeros(x | (1 << (2 * (MAX_LEVEL - 1)))) / 2;
+    return Math.min(height, MAX_LEVEL);
+  }
+
+  private AtomicLongArray segment(long ref) {
+    return segments[(int) (ref >>> SEGMENT_SHIFT)];
+  }
+
+  private static int slot(long ref) {
+    return (int) (ref & (MAX_SEGMENT_SIZE - 1));
+  }
+
+  private long next(long ref, int level) {
+    return segment(ref).get(slot(ref) + 1 + level);
+  }
+
+  private long address(long ref) {
+    return segment(ref).get(slot(ref));
+  }
+
+  private ByteBuffer slab(long address) {
+    return slabs[(int) (address >>> 32)];
+  }
+
+  private static int compareBytes(ByteBuffer slab, int pos, int len, byte[] b) {
+    int end = Math.min(len, b.length);
+    for (int i = 0; i < end; i++) {
+      int cmp = (slab.get(pos + i) & 0xff) - (b[i] & 0xff);
+      if (cmp != 0)
+        return cmp;
+    }
+    return len - b.length;
+  }
+
+  /**
+   * Compares a key/value in a slab to a key, in the order of {@link MemKeyComparator}.
+   *
+   * @param memKey
+   *          false if the key is not a {@link MemKey}, in which case it sorts before the key/values with the same key
+   */
+  private int compare(long address, byte[] row, byte[] cf, byte[] cq, byte[] cv, long ts, boolean del, boolean memKey, int kvCount) {
+    ByteBuffer slab = slab(address);
+    int pos = (int) address;
+    int data = pos + HEADER_SIZE;
+
+    int len = slab.getInt(pos + ROW_LEN);
+    int cmp = compareBytes(slab, data, len, row);
+    if (cmp != 0)
+      return cmp;
+    data += len;
+
+    len = slab.getInt(pos + CF_LEN);
+    cmp = compareBytes(slab, data, len, cf);
+    if (cmp != 0)
+      return cmp;
+    data += len;
+
+    len = slab.getInt(pos + CQ_LEN);
+    cmp = compareBytes(slab, data, len, cq);
+    if (cmp != 0)
+      return cmp;
+    data += len;
+
+    len = slab.getInt(pos + CV_LEN);
+    cmp = compareBytes(slab, data, len, cv);
+    if (cmp != 0)
+      return cmp;
+
+    // newer timestamps sort first
+    long recordTs = slab.getLong(pos + TIMESTAMP);
+    if (recordTs != ts)
+      return recordTs < ts ? 1 : -1;
+
+    boolean recordDel = slab.get(pos + DELETED) != 0;
+    if (recordDel != del)
+      return recordDel ? -1 : 1;
+
+    if (!memKey)
+      return 1;
+
+    // later writes sort first
+    int recordKVCount = slab.getInt(pos + KV_COUNT);
+    if (recordKVCount != kvCount)
+      return recordKVCount > kvCount ? -1 : 1;
+    return 0;
+  }
+
+  /**
+   * @return the first node at or after a key, or the head if there is none
+   */
+  private long ceiling(Key key) {
+    // the backing arrays of a key are its fields, get them once for the whole search
+    byte[] row = key.getRowData().getBackingArray();
+    byte[] cf = key.getColumnFamilyData().getBackingArray();
+    byte[] cq = key.getColumnQualifierData().getBackingArray();
+    byte[] cv = key.getColumnVisibilityData().getBackingArray();
+    boolean memKey = key instanceof MemKey;
+    int kvCount = memKey ? ((MemKey) key).kvCount : 0;
+
+    long node = HEAD;
+    for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+      long next = next(node, level);
+      while (next != HEAD && compare(address(next), row, cf, cq, cv, key.getTimestamp(), key.isDeleted(), memKey, kvCount) < 0) {
+        node = next;
+        next = next(node, level);
+      }
+    }
+    return next(node, 0);
+  }
+
+  private void put(byte[] row, byte[] cf, byte[] cq, byte[] cv, long ts, boolean del, byte[] value, int kvCount) {
+    if (deleted)
+      throw new IllegalStateException("Map was deleted");
+
+    long node = HEAD;
+    for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+      long next = next(node, level);
+      while (next != HEAD && compare(address(next), row, cf, cq, cv, ts, del, true, kvCount) < 0) {
+        node = next;
+        next = next(node, level);
+      }
+      preds[level] = node;
+    }
+
+    int length = HEADER_SIZE + row.length + cf.length + cq.length + cv.length + value.length;
+    long address = allocateRecord(length);
+    // write through a view, so the position of the slab is not changed
+    ByteBuffer view = slab(address).duplicate();
+    view.position((int) address);
+    view.putInt(row.length).putInt(cf.length).putInt(cq.length).putInt(cv.length).putLong(ts).put((byte) (del ? 1 : 0)).putInt(kvCount).putInt(value.length);
+    view.put(row).put(cf).put(cq).put(cv).put(value);
+
+    int height = randomHeight();
+    long ref = allocateNode(height);
+    AtomicLongArray segment = segment(ref);
+    int slot = slot(ref);
+    segment.lazySet(slot, address);
+    for (int level = 0; level < height; level++)
+      segment.lazySet(slot + 1 + level, next(preds[level], level));
+
+    // link the node from the bottom up, the volatile writes make the key/value visible to readers that follow the links
+    for (int level = 0; level < height; level++)
+      segment(preds[level]).set(slot(preds[level]) + 1 + level, ref);
+
+    size++;
+  }
+
+  /**
+   * Adds a key/value. The key must be a {@link MemKey}, a key/value with the same key replaces nothing and is added beside it.
+   */
+  public synchronized void put(Key key, Value value) {
+    if (!(key instanceof MemKey))
+      throw new IllegalArgumentException("Only MemKeys can be added " + key.getClass().getName());
+    put(key.getRowData().toArray(), key.getColumnFamilyData().toArray(), key.getColumnQualifierData().toArray(), key.getColumnVisibilityData().toArray(),
+        key.getTimestamp(), key.isDeleted(), value.get(), ((MemKey) key).kvCount);
+  }
+
+  private int put(Mutation m, int kvCount) {
+    byte[] row = m.getRow();
+    for (ColumnUpdate cvp : m.getUpdates()) {
+      put(row, cvp.getColumnFamily(), cvp.getColumnQualifier(), cvp.getColumnVisibility(), cvp.getTimestamp(), cvp.isDeleted(), cvp.getValue(), kvCount++);
+    }
+    return kvCount;
+  }
+
+  /**
+   * Adds the updates of a mutation, numbering each with the next kvCount.
+   */
+  public synchronized void mutate(Mutation mutation, int kvCount) {
+    put(mutation, kvCount);
+  }
+
+  /**
+   * Adds the updates of mutations, numbering each with the next kvCount.
+   */
+  public synchronized void mutate(List<Mutation> mutations, int kvCount) {
+    for (Mutation m : mutations)
+      kvCount = put(m, kvCount);
+  }
+
+  /**
+   * @return the value of the first key/value at or after a key whose key equals it, ignoring the kvCount like {@link Key#equals(Object)}, or null
+   */
+  public Value get(Key key) {
+    if (deleted)
+      throw new IllegalStateException("Map was deleted");
+    long node = ceiling(key);
+    if (node != HEAD && readKey(address(node)).equals(key))
+      return readValue(address(node));
+    return null;
+  }
+
+  private byte[] readBytes(ByteBuffer view, int len) {
+    byte[] b = new byte[len];
+    view.get(b);
+    return b;
+  }
+
+  private MemKey readKey(long address) {
+    ByteBuffer slab = slab(address);
+    int pos = (int) address;
+    ByteBuffer view = slab.duplicate();
+    view.position(pos + HEADER_SIZE);
+    byte[] row = readBytes(view, slab.getInt(pos + ROW_LEN));
+    byte[] cf = readBytes(view, slab.getInt(pos + CF_LEN));
+    byte[] cq = readBytes(view, slab.getInt(pos + CQ_LEN));
+    byte[] cv = readBytes(view, slab.getInt(pos + CV_LEN));
+    return new MemKey(row, cf, cq, cv, slab.getLong(pos + TIMESTAMP), slab.get(pos + DELETED) != 0, false, slab.getInt(pos + KV_COUNT));
+  }
+
+  private Value readValue(long address) {
+    ByteBuffer slab = slab(address);
+    int pos = (int) address;
+    int keyLength = slab.getInt(pos + ROW_LEN) + slab.getInt(pos + CF_LEN) + slab.getInt(pos + CQ_LEN) + slab.getInt(pos + CV_LEN);
+    ByteBuffer view = slab.duplicate();
+    view.position(pos + HEADER_SIZE + keyLength);
+    return new Value(readBytes(view, slab.getInt(pos + VALUE_LEN)), false);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the bytes of the slabs and the index of this map
+   */
+  public long getMemoryUsed() {
+    return memoryUsed;
+  }
+
+  /**
+   * Releases the slabs of the map. It must not be read after this.
+   */
+  public synchronized void delete() {
+    if (deleted)
+      throw new IllegalStateException("Double delete");
+    deleted = true;
+    ByteBuffer[] s = slabs;
+    for (int i = 0; i < numSlabs; i++)
+      releaseSlab(s[i]);
+    slabs = new ByteBuffer[0];
+    segments = new AtomicLongArray[0];
+    writeSlab = null;
+  }
+
+  private class EntryIterator implements Iterator<Entry<Key,Value>> {
+
+    private long node;
+
+    EntryIterator(long node) {
+      this.node = node;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return node != HEAD;
+    }
+
+    @Override
+    public Entry<Key,Value> next() {
+      if (node == HEAD)
+        throw new NoSuchElementException();
+      if (deleted)
+        throw new IllegalStateException("Map was deleted");
+      long address = address(node);
+      Entry<Key,Value> entry = new SimpleImmutableEntry<Key,Value>(readKey(address), readValue(address));
+      node = OffHeapMap.this.next(node, 0);
+      return entry;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  @Override
+  public Iterator<Entry<Key,Value>> iterator() {
+    return new EntryIterator(next(HEAD, 0));
+  }
+
+  public Iterator<Entry<Key,Value>> iterator(Key startKey) {
+    return new EntryIterator(ceiling(startKey));
+  }
+
+  private static class OHMSKVIter implements InterruptibleIterator {
+
+    private final OffHeapMap map;
+    private AtomicBoolean interruptFlag;
+    private int interruptCheckCount = 0;
+
+    private Range range = new Range();
+    private long node;
+    private Key topKey;
+    private Value topValue;
+
+    OHMSKVIter(OffHeapMap map, AtomicBoolean interruptFlag) {
+      this.map = map;
+      this.interruptFlag = interruptFlag;
+      setTop(map.next(HEAD, 0));
+    }
+
+    private void setTop(long node) {
+      this.node = node;
+      if (node == HEAD) {
+        topKey = null;
+        topValue = null;
+        return;
+      }
+
+      if (map.deleted)
+        throw new IllegalStateException("Map was deleted");
+
+      long address = map.address(node);
+      topKey = map.readKey(address);
+      if (range.afterEndKey(topKey)) {
+        this.node = HEAD;
+        topKey = null;
+        topValue = null;
+      } else {
+        topValue = map.readValue(address);
+      }
+    }
+
+    @Override
+    public Key getTopKey() {
+      return topKey;
+    }
+
+    @Override
+    public Value getTopValue() {
+      return topValue;
+    }
+
+    @Override
+    public boolean hasTop() {
+      return topKey != null;
+    }
+
+    @Override
+    public void next() throws IOException {
+      if (topKey == null)
+        throw new IllegalStateException();
+
+      // checking the interrupt flag for every call to next had bad a bad performance impact
+      // so check it every 100th time
+      if (interruptFlag != null && interruptCheckCount++ % 100 == 0 && interruptFlag.get())
+        throw new IterationInterruptedException();
+
+      setTop(map.next(node, 0));
+    }
+
+    @Override
+    public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) throws IOException {
+      if (interruptFlag != null && interruptFlag.get())
+        throw new IterationInterruptedException();
+
+      this.range = range;
+
+      Key key = range.getStartKey();
+      if (key == null)
+        key = new MemKey();
+
+      setTop(map.ceiling(key));
+
+      while (hasTop() && range.beforeStartKey(getTopKey()))
+        next();
+    }
+
+    @Override
+    public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
+      return new OHMSKVIter(map, interruptFlag);
+    }
+
+    @Override
+    public void setInterruptFlag(AtomicBoolean flag) {
+      this.interruptFlag = flag;
+    }
+  }
+
+  public SortedKeyValueIterator<Key,Value> skvIterator() {
+    return new OHMSKVIter(this, null);
+  }
+}
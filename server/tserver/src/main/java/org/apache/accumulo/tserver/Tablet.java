@@ -37,6 +37,9 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -69,10 +72,12 @@ import org.apache.accumulo.core.iterators.IteratorEnvironment;
 import org.apache.accumulo.core.iterators.IteratorUtil;
 import org.apache.accumulo.core.iterators.IteratorUtil.IteratorScope;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.system.BatchIterator;
 import org.apache.accumulo.core.iterators.system.ColumnFamilySkippingIterator;
 import org.apache.accumulo.core.iterators.system.ColumnQualifierFilter;
 import org.apache.accumulo.core.iterators.system.DeletingIterator;
 import org.apache.accumulo.core.iterators.system.InterruptibleIterator;
+import org.apache.accumulo.core.iterators.system.KeyValueBatch;
 import org.apache.accumulo.core.iterators.system.MultiIterator;
 import org.apache.accumulo.core.iterators.system.SourceSwitchingIterator;
 import org.apache.accumulo.core.iterators.system.SourceSwitchingIterator.DataSource;
@@ -116,6 +121,7 @@ import org.apache.accumulo.server.util.FileUtil;
 import org.apache.accumulo.server.util.MasterMetadataUtil;
 import org.apache.accumulo.server.util.MetadataTableUtil;
 import org.apache.accumulo.server.util.TabletOperations;
+import org.apache.accumulo.server.util.time.RelativeTime;
 import org.apache.accumulo.server.zookeeper.ZooReaderWriter;
 import org.apache.accumulo.start.classloader.vfs.AccumuloVFSClassLoader;
 import org.apache.accumulo.trace.instrument.Span;
@@ -238,6 +244,14 @@ public class Tablet {
       return logId;
     }
 
+    /**
+     * @return the sequence number below which the mutations of the tablet are in its files, negative if no minor compaction has finished since the tablet was
+     *         loaded; only consistent with the metadata table while {@link #beginUpdatingLogsUsed(ArrayList, boolean)} holds the log lock
+     */
+    public int getDurableLogSeq() {
+      return durableLogSeq;
+    }
+
     public KeyExtent getExtent() {
       return extent;
     }
@@ -464,6 +478,12 @@ public class Tablet {
   private AtomicLong scannedCount = new AtomicLong(0);
   private Rate scannedRate = new Rate(0.2);
 
+  // the bytes read and written by compactions, as counted by the compaction rate limit
+  private AtomicLong minorCompactionBytes = new AtomicLong(0);
+  private Rate minorCompactionByteRate = new Rate(0.2);
+  private AtomicLong majorCompactionBytes = new AtomicLong(0);
+  private Rate majorCompactionByteRate = new Rate(0.2);
+
   private ConfigurationObserver configObserver;
 
   private TabletServer tabletServer;
@@ -854,7 +874,10 @@ public class Tablet {
         MetadataTableUtil.addDeleteEntries(extent, Collections.singleton(absMergeFile), SystemCredentials.get());
 
       Set<String> unusedWalLogs = beginClearingUnusedLogs();
+      // mutations logged before the minor compaction start event are in the new file
+      int durableSeq = commitSession.getWALogSeq() + 1;
       try {
+        List<LogEntry> durableWalLogs = getDurableLogEntries(durableSeq);
         // the order of writing to metadata and walog is important in the face of machine/process failures
         // need to write to metadata before writing to walog, when things are done in the reverse order
         // data could be lost... the minor compaction start even should be written before the following metadata
@@ -866,8 +889,9 @@ public class Tablet {
 
           String time = tabletTime.getMetadataValue(persistedTime);
           MasterMetadataUtil.updateTabletDataFile(extent, newDatafile, absMergeFile, dfv, time, SystemCredentials.get(), filesInUseByScans,
-              tabletServer.getClientAddressString(), tabletServer.getLock(), unusedWalLogs, lastLocation, flushId);
+              tabletServer.getClientAddressString(), tabletServer.getLock(), unusedWalLogs, durableWalLogs, lastLocation, flushId);
         }
+        durableLogSeq = durableSeq;
 
       } finally {
         finishClearingUnusedLogs();
@@ -944,22 +968,38 @@ public class Tablet {
 
     void bringMajorCompactionOnline(Set<FileRef> oldDatafiles, FileRef tmpDatafile, FileRef newDatafile, Long compactionId, DataFileValue dfv)
         throws IOException {
+      bringMajorCompactionOnline(oldDatafiles, Collections.singletonMap(newDatafile, tmpDatafile), compactionId, Collections.singletonMap(newDatafile, dfv));
+    }
+
+    /**
+     * Replaces the input files of a major compaction with the files it wrote. A partitioned compaction writes a file for each range it compacted.
+     * 
+     * @param tmpDatafiles
+     *          the temporary file each new file was written to
+     */
+    void bringMajorCompactionOnline(Set<FileRef> oldDatafiles, Map<FileRef,FileRef> tmpDatafiles, Long compactionId, Map<FileRef,DataFileValue> newDatafiles)
+        throws IOException {
       long t1, t2;
 
       if (!extent.isRootTablet()) {
 
-        if (fs.exists(newDatafile.path())) {
-          log.error("Target map file already exist " + newDatafile, new Exception());
-          throw new IllegalStateException("Target map file already exist " + newDatafile);
-        }
+        for (Entry<FileRef,DataFileValue> entry : newDatafiles.entrySet()) {
+          FileRef newDatafile = entry.getKey();
+          FileRef tmpDatafile = tmpDatafiles.get(newDatafile);
+
+          if (fs.exists(newDatafile.path())) {
+            log.error("Target map file already exist " + newDatafile, new Exception());
+            throw new IllegalStateException("Target map file already exist " + newDatafile);
+          }
 
-        // rename before putting in metadata table, so files in metadata table should
-        // always exist
-        if (!fs.rename(tmpDatafile.path(), newDatafile.path()))
-          log.warn("Rename of " + tmpDatafile + " to " + newDatafile + " returned false");
+          // rename before putting in metadata table, so files in metadata table should
+          // always exist
+          if (!fs.rename(tmpDatafile.path(), newDatafile.path()))
+            log.warn("Rename of " + tmpDatafile + " to " + newDatafile + " returned false");
 
-        if (dfv.getNumEntries() == 0) {
-          fs.deleteRecursively(newDatafile.path());
+          if (entry.getValue().getNumEntries() == 0) {
+            fs.deleteRecursively(newDatafile.path());
+          }
         }
       }
 
@@ -974,6 +1014,12 @@ public class Tablet {
 
         if (extent.isRootTablet()) {
 
+          // the names of the deleted files below are made from the name of the new file, so there must be only one
+          if (newDatafiles.size() != 1)
+            throw new IllegalArgumentException("Root tablet major compaction must write one file " + newDatafiles.keySet());
+          FileRef newDatafile = newDatafiles.keySet().iterator().next();
+          FileRef tmpDatafile = tmpDatafiles.get(newDatafile);
+
           waitForScansToFinish(oldDatafiles, true, Long.MAX_VALUE);
 
           try {
@@ -1023,16 +1069,19 @@ public class Tablet {
           majorCompactingFiles.remove(oldDatafile);
         }
 
-        if (datafileSizes.containsKey(newDatafile)) {
-          log.error("Adding file that is already in set " + newDatafile);
-        }
+        for (Entry<FileRef,DataFileValue> entry : newDatafiles.entrySet()) {
+          FileRef newDatafile = entry.getKey();
+          if (datafileSizes.containsKey(newDatafile)) {
+            log.error("Adding file that is already in set " + newDatafile);
+          }
 
-        if (dfv.getNumEntries() > 0) {
-          datafileSizes.put(newDatafile, dfv);
-        }
+          if (entry.getValue().getNumEntries() > 0) {
+            datafileSizes.put(newDatafile, entry.getValue());
+          }
 
-        // could be used by a follow on compaction in a multipass compaction
-        majorCompactingFiles.add(newDatafile);
+          // could be used by a follow on compaction in a multipass compaction
+          majorCompactingFiles.add(newDatafile);
+        }
 
         computeNumEntries();
 
@@ -1049,13 +1098,14 @@ public class Tablet {
         Set<FileRef> filesInUseByScans = waitForScansToFinish(oldDatafiles, false, 10000);
         if (filesInUseByScans.size() > 0)
           log.debug("Adding scan refs to metadata " + extent + " " + filesInUseByScans);
-        MasterMetadataUtil.replaceDatafiles(extent, oldDatafiles, filesInUseByScans, newDatafile, compactionId, dfv, SystemCredentials.get(),
-            tabletServer.getClientAddressString(), lastLocation, tabletServer.getLock());
+        MasterMetadataUtil.replaceDatafiles(extent, oldDatafiles, filesInUseByScans, newDatafiles, compactionId, SystemCredentials.get(),
+            tabletServer.getClientAddressString(), lastLocation, tabletServer.getLock(), true);
         removeFilesAfterScan(filesInUseByScans);
       }
 
       log.debug(String.format("MajC finish lock %.2f secs", (t2 - t1) / 1000.0));
-      log.log(TLevel.TABLET_HIST, extent + " MajC " + oldDatafiles + " --> " + newDatafile);
+      log.log(TLevel.TABLET_HIST,
+          extent + " MajC " + oldDatafiles + " --> " + (newDatafiles.size() == 1 ? newDatafiles.keySet().iterator().next() : newDatafiles.keySet()));
     }
 
     public SortedMap<FileRef,DataFileValue> getDatafileSizes() {
@@ -1428,6 +1478,8 @@ public class Tablet {
 
     datafileManager.removeFilesAfterScan(scanFiles);
 
+    tabletResources.warmCache(datafileManager.getFiles(), tabletServer.warmupMetrics);
+
     // look for hints of a failure on the previous tablet server
     if (!logEntries.isEmpty() || needsMajorCompaction(MajorCompactionReason.NORMAL)) {
       // look for any temp files hanging around
@@ -1524,6 +1576,13 @@ public class Tablet {
       super(new Key(k), Arrays.copyOf(v.get(), v.get().length));
     }
 
+    /**
+     * Creates an entry that uses the key and value bytes without copying them.
+     */
+    KVEntry(Key k, byte[] v) {
+      super(k, v);
+    }
+
     @Override
     public String toString() {
       return key.toString() + "=" + getValue();
@@ -1709,26 +1768,54 @@ public class Tablet {
     boolean skipContinueKey = false;
 
     boolean endOfTabletReached = false;
-    while (iter.hasTop()) {
+    // key/values read from the iterator but not returned
+    boolean unreturnedResults = false;
+
+    int batchSize = Math.min(acuTableConf.getCount(Property.TABLE_SCAN_BATCH_SIZE), num);
+    if (batchSize > 0 && iter instanceof BatchIterator) {
+      KeyValueBatch kvBatch = new KeyValueBatch(batchSize);
+      batchLoop: while (iter.hasTop()) {
+        kvBatch.clear();
+        ((BatchIterator) iter).nextBatch(kvBatch);
+
+        for (int i = 0; i < kvBatch.size(); i++) {
+          key = kvBatch.getKey(i);
+
+          KVEntry kvEntry = new KVEntry(key, kvBatch.getValue(i).get()); // the batch owns its key and value
+          results.add(kvEntry);
+          resultSize += kvEntry.estimateMemoryUsed();
+          resultBytes += kvEntry.numBytes();
+
+          if (resultSize >= maxResultsSize || results.size() >= num) {
+            continueKey = new Key(key);
+            skipContinueKey = true;
+            unreturnedResults = i + 1 < kvBatch.size();
+            break batchLoop;
+          }
+        }
+      }
+    } else {
+      while (iter.hasTop()) {
 
-      value = iter.getTopValue();
-      key = iter.getTopKey();
+        value = iter.getTopValue();
+        key = iter.getTopKey();
 
-      KVEntry kvEntry = new KVEntry(key, value); // copies key and value
-      results.add(kvEntry);
-      resultSize += kvEntry.estimateMemoryUsed();
-      resultBytes += kvEntry.numBytes();
+        KVEntry kvEntry = new KVEntry(key, value); // copies key and value
+        results.add(kvEntry);
+        resultSize += kvEntry.estimateMemoryUsed();
+        resultBytes += kvEntry.numBytes();
 
-      if (resultSize >= maxResultsSize || results.size() >= num) {
-        continueKey = new Key(key);
-        skipContinueKey = true;
-        break;
-      }
+        if (resultSize >= maxResultsSize || results.size() >= num) {
+          continueKey = new Key(key);
+          skipContinueKey = true;
+          break;
+        }
 
-      iter.next();
+        iter.next();
+      }
     }
 
-    if (iter.hasTop() == false) {
+    if (iter.hasTop() == false && !unreturnedResults) {
       endOfTabletReached = true;
     }
 
@@ -2107,6 +2194,7 @@ public class Tablet {
           dfv = datafileManager.getDatafileSizes().get(mergeFile);
 
         MinorCompactor compactor = new MinorCompactor(conf, fs, memTable, mergeFile, dfv, tmpDatafile, acuTableConf, extent, mincReason);
+        compactor.setRateLimiter(tabletResources.getTabletServerResourceManager().getCompactionRateLimiter(), minorCompactionBytes);
         stats = compactor.call();
       } finally {
         span.stop();
@@ -3131,6 +3219,7 @@ public class Tablet {
     CompactionPlan plan = null;
 
     boolean propogateDeletes = false;
+    int partitions = 1;
 
     synchronized (this) {
       // plan all that work that needs to be done in the sync block... then do the actual work
@@ -3172,6 +3261,13 @@ public class Tablet {
       if (inputFiles.isEmpty()) {
         return majCStats;
       }
+      // the root tablet's compactions are not partitioned, see bringMajorCompactionOnline()
+      if (!extent.isRootTablet()) {
+        if (plan != null)
+          partitions = plan.partitions;
+        else if (reason == MajorCompactionReason.USER)
+          partitions = acuTableConf.getCount(Property.TABLE_MAJC_PARTITIONS);
+      }
       // If no original files will exist at the end of the compaction, we do not have to propogate deletes
       Set<FileRef> droppedFiles = new HashSet<FileRef>();
       droppedFiles.addAll(inputFiles);
@@ -3257,12 +3353,41 @@ public class Tablet {
 
           copy.keySet().retainAll(smallestFiles);
 
-          log.debug("Starting MajC " + extent + " (" + reason + ") " + copy.keySet() + " --> " + compactTmpName + "  " + compactionIterators);
-
           // always propagate deletes, unless last batch
           boolean lastBatch = filesToCompact.isEmpty();
+
+          // only the last batch is partitioned, so that earlier batches leave one file for the next batch to compact
+          List<Text> partitionRows = Collections.emptyList();
+          if (lastBatch && partitions > 1)
+            partitionRows = FileUtil.findPartitionRows(fs, acuTableConf, extent.getPrevEndRow(), extent.getEndRow(), copy.keySet(), partitions);
+
+          if (!partitionRows.isEmpty()) {
+            log.debug("Starting MajC " + extent + " (" + reason + ") " + copy.keySet() + " --> " + (partitionRows.size() + 1) + " partitions split at "
+                + partitionRows + "  " + compactionIterators);
+
+            Map<FileRef,FileRef> tmpDatafiles = new HashMap<FileRef,FileRef>();
+            Map<FileRef,DataFileValue> newDatafiles = new TreeMap<FileRef,DataFileValue>();
+            CompactionStats mcs = compactPartitions(copy, partitionRows, fileName, propogateDeletes, tableConf, compactionIterators, reason, tmpDatafiles,
+                newDatafiles);
+
+            span.data("files", "" + smallestFiles.size());
+            span.data("read", "" + mcs.getEntriesRead());
+            span.data("written", "" + mcs.getEntriesWritten());
+            span.data("partitions", "" + mcs.getPartitions());
+            majCStats.add(mcs);
+
+            if (plan != null && plan.deleteFiles != null) {
+              smallestFiles.addAll(plan.deleteFiles);
+            }
+            datafileManager.bringMajorCompactionOnline(smallestFiles, tmpDatafiles, compactionId != null ? compactionId.getFirst() : null, newDatafiles);
+            continue;
+          }
+
+          log.debug("Starting MajC " + extent + " (" + reason + ") " + copy.keySet() + " --> " + compactTmpName + "  " + compactionIterators);
+
           Compactor compactor = new Compactor(conf, fs, copy, null, compactTmpName, lastBatch ? propogateDeletes : true, tableConf, extent, cenv,
               compactionIterators, reason);
+          compactor.setRateLimiter(tabletResources.getTabletServerResourceManager().getCompactionRateLimiter(), majorCompactionBytes);
 
           CompactionStats mcs = compactor.call();
 
@@ -3296,6 +3421,129 @@ public class Tablet {
     }
   }
 
+  /**
+   * Compacts the ranges between the partition rows concurrently, each into its own file. This thread compacts the first range and the others are compacted by
+   * the tablet server's partition threads. If one range fails, the others are canceled.
+   * 
+   * @param firstFileName
+   *          the name of the file the first range is written to, the other ranges get new names with the same prefix
+   */
+  private CompactionStats compactPartitions(Map<FileRef,DataFileValue> files, List<Text> partitionRows, FileRef firstFileName, boolean propogateDeletes,
+      AccumuloConfiguration tableConf, List<IteratorSetting> compactionIterators, MajorCompactionReason reason, Map<FileRef,FileRef> tmpDatafiles,
+      Map<FileRef,DataFileValue> newDatafiles) throws IOException, CompactionCanceledException {
+
+    final AtomicBoolean failed = new AtomicBoolean(false);
+    CompactionEnv cenv = new CompactionEnv() {
+      @Override
+      public boolean isCompactionEnabled() {
+        return !failed.get() && Tablet.this.isCompactionEnabled();
+      }
+
+      @Override
+      public IteratorScope getIteratorScope() {
+        return IteratorScope.majc;
+      }
+    };
+
+    String prefix = firstFileName.path().getName().substring(0, 1);
+    List<FileRef> fileNames = new ArrayList<FileRef>();
+    List<Compactor> compactors = new ArrayList<Compactor>();
+    Text prevRow = extent.getPrevEndRow();
+    for (int i = 0; i <= partitionRows.size(); i++) {
+      Text row = i < partitionRows.size() ? partitionRows.get(i) : extent.getEndRow();
+      Range range = new KeyExtent(extent.getTableId(), row, prevRow).toDataRange();
+      prevRow = row;
+
+      FileRef fileName = i == 0 ? firstFileName : getNextMapFilename(prefix);
+      FileRef tmpName = new FileRef(fileName.path().toString() + "_tmp");
+      fileNames.add(fileName);
+      tmpDatafiles.put(fileName, tmpName);
+      Compactor compactor = new Compactor(conf, fs, files, null, tmpName, propogateDeletes, tableConf, extent, cenv, compactionIterators, reason, range);
+      compactor.setRateLimiter(tabletResources.getTabletServerResourceManager().getCompactionRateLimiter(), majorCompactionBytes);
+      compactors.add(compactor);
+    }
+
+    List<Future<CompactionStats>> futures = new ArrayList<Future<CompactionStats>>();
+    for (final Compactor compactor : compactors.subList(1, compactors.size())) {
+      futures.add(tabletResources.getTabletServerResourceManager().submitMajorCompactionPartition(new Callable<CompactionStats>() {
+        @Override
+        public CompactionStats call() throws Exception {
+          boolean success = false;
+          try {
+            CompactionStats stats = compactor.call();
+            success = true;
+            return stats;
+          } finally {
+            if (!success)
+              failed.set(true);
+          }
+        }
+      }));
+    }
+
+    List<CompactionStats> stats = new ArrayList<CompactionStats>();
+    Throwable failure = null;
+    try {
+      stats.add(compactors.get(0).call());
+    } catch (Throwable t) {
+      failed.set(true);
+      failure = t;
+      stats.add(null);
+    }
+
+    // wait for every range, even after a failure, so no output file is written after the failed compaction is cleaned up
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        stats.add(futures.get(i).get());
+      } catch (ExecutionException e) {
+        if (failure == null)
+          failure = e.getCause();
+        stats.add(null);
+      } catch (InterruptedException e) {
+        failed.set(true);
+        if (failure == null)
+          failure = e;
+        i--;
+      }
+    }
+
+    if (failure != null) {
+      // compactors delete their own output when they fail, so only the output of the ranges that finished is left
+      for (int i = 0; i < stats.size(); i++) {
+        if (stats.get(i) != null) {
+          FileRef tmpName = tmpDatafiles.get(fileNames.get(i));
+          try {
+            fs.deleteRecursively(tmpName.path());
+          } catch (IOException e) {
+            log.warn("Failed to delete partitioned compaction output file " + tmpName, e);
+          }
+        }
+      }
+
+      if (failure instanceof IOException)
+        throw (IOException) failure;
+      if (failure instanceof CompactionCanceledException)
+        throw (CompactionCanceledException) failure;
+      if (failure instanceof RuntimeException)
+        throw (RuntimeException) failure;
+      if (failure instanceof Error)
+        throw (Error) failure;
+      throw new IOException("Partitioned major compaction failed " + extent, failure);
+    }
+
+    CompactionStats result = new CompactionStats();
+    long fileSize = 0;
+    for (int i = 0; i < stats.size(); i++) {
+      CompactionStats mcs = stats.get(i);
+      result.add(mcs);
+      fileSize += mcs.getFileSize();
+      newDatafiles.put(fileNames.get(i), new DataFileValue(mcs.getFileSize(), mcs.getEntriesWritten()));
+    }
+    result.setFileSize(fileSize);
+    result.setPartitions(compactors.size());
+    return result;
+  }
+
   private AccumuloConfiguration createTableConfiguration(TableConfiguration base, CompactionPlan plan) {
     if (plan == null || plan.writeParameters == null)
       return base;
@@ -3613,6 +3861,14 @@ public class Tablet {
     return scannedRate.rate();
   }
 
+  public double minorCompactionByteRate() {
+    return minorCompactionByteRate.rate();
+  }
+
+  public double majorCompactionByteRate() {
+    return majorCompactionByteRate.rate();
+  }
+
   public long totalQueries() {
     return this.queryCount;
   }
@@ -3628,6 +3884,8 @@ public class Tablet {
     ingestRate.update(now, ingestCount);
     ingestByteRate.update(now, ingestBytes);
     scannedRate.update(now, scannedCount.get());
+    minorCompactionByteRate.update(now, minorCompactionBytes.get());
+    majorCompactionByteRate.update(now, majorCompactionBytes.get());
   }
 
   public long getSplitCreationTime() {
@@ -3736,6 +3994,27 @@ public class Tablet {
     return doomed;
   }
 
+  /**
+   * Marks the logs still in use with the sequence number below which their mutations for this tablet are in its files, so recovery can seek straight to the
+   * mutations after it. Called while the log lock is held by {@link #beginClearingUnusedLogs()}. The logs in use were all written since the minor compaction
+   * swapped out the memory, so by this tablet under its current log id, never logs left from a recovery.
+   */
+  private synchronized List<LogEntry> getDurableLogEntries(int durableSeq) {
+    List<LogEntry> entries = new ArrayList<LogEntry>();
+    for (DfsLogger logger : currentLogs) {
+      LogEntry entry = new LogEntry();
+      entry.extent = extent;
+      entry.tabletId = logId;
+      entry.durableSeq = durableSeq;
+      entry.timestamp = RelativeTime.currentTimeMillis();
+      entry.server = logger.getLogger();
+      entry.filename = logger.getFileName();
+      entry.logSet = Collections.singletonList(logger.getFileName());
+      entries.add(entry);
+    }
+    return entries;
+  }
+
   private synchronized void finishClearingUnusedLogs() {
     removingLogs = false;
     logLock.unlock();
@@ -3746,6 +4025,8 @@ public class Tablet {
 
   // this lock is basically used to synchronize writing of log info to metadata
   private final ReentrantLock logLock = new ReentrantLock();
+  // the sequence number written to the metadata entries of the logs in use by the last minor compaction, guarded by the log lock
+  private int durableLogSeq = -1;
 
   public synchronized int getLogCount() {
     return currentLogs.size();
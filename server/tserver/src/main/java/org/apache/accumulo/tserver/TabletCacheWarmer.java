@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.KeyExtent;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.accumulo.core.file.blockfile.cache.BlockCache;
+import org.apache.accumulo.core.file.blockfile.impl.CachableBlockFile;
+import org.apache.accumulo.core.file.rfile.RFile;
+import org.apache.accumulo.core.iterators.IterationInterruptedException;
+import org.apache.accumulo.server.fs.FileRef;
+import org.apache.accumulo.server.fs.VolumeManager;
+import org.apache.accumulo.tserver.metrics.TabletServerCacheWarmupMetrics;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.log4j.Logger;
+
+/**
+ * Reads the index blocks and the first data blocks of a newly loaded tablet's files into the caches, so that the first scans of the tablet do not all go to
+ * the file system. The number of data blocks read is bounded per tablet and divided between its files. Warming stops early when it is cancelled because the
+ * tablet is closed.
+ */
+class TabletCacheWarmer implements Runnable {
+
+  private static final Logger log = Logger.getLogger(TabletCacheWarmer.class);
+
+  private final KeyExtent extent;
+  private final Collection<FileRef> files;
+  private final VolumeManager fs;
+  private final AccumuloConfiguration tableConf;
+  private final BlockCache dataCache;
+  private final BlockCache indexCache;
+  private final TabletServerCacheWarmupMetrics metrics;
+
+  private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+  TabletCacheWarmer(KeyExtent extent, Collection<FileRef> files, VolumeManager fs, AccumuloConfiguration tableConf, BlockCache dataCache,
+      BlockCache indexCache, TabletServerCacheWarmupMetrics metrics) {
+    this.extent = extent;
+    this.files = files;
+    this.fs = fs;
+    this.tableConf = tableConf;
+    this.dataCache = dataCache;
+    this.indexCache = indexCache;
+    this.metrics = metrics;
+  }
+
+  void cancel() {
+    cancelled.set(true);
+  }
+
+  @Override
+  public void run() {
+    long t1 = System.currentTimeMillis();
+
+    BlockCache iCache = tableConf.getBoolean(Property.TABLE_INDEXCACHE_ENABLED) ? indexCache : null;
+    BlockCache dCache = tableConf.getBoolean(Property.TABLE_BLOCKCACHE_ENABLED) ? dataCache : null;
+    int maxDataBlocks = dCache == null ? 0 : tableConf.getCount(Property.TABLE_CACHE_WARMUP_BLOCKS);
+
+    Key startKey = extent.getPrevEndRow() == null ? new Key() : new Key(extent.getPrevEndRow()).followingKey(PartialKey.ROW);
+
+    int dataBlocks = 0;
+    int filesWarmed = 0;
+    int filesLeft = files.size();
+    for (FileRef file : files) {
+      if (cancelled.get())
+        break;
+
+      int fileDataBlocks = (maxDataBlocks - dataBlocks + filesLeft - 1) / filesLeft;
+      filesLeft--;
+
+      // only rfiles know how to find their blocks
+      if (!file.path().getName().endsWith("." + RFile.EXTENSION))
+        continue;
+
+      try {
+        FileSystem ns = fs.getFileSystemByPath(file.path());
+        RFile.Reader reader = new RFile.Reader(new CachableBlockFile.Reader(ns, file.path(), ns.getConf(), dCache, iCache));
+        try {
+          reader.setInterruptFlag(cancelled);
+          dataBlocks += reader.warmCache(startKey, fileDataBlocks);
+          filesWarmed++;
+        } finally {
+          reader.close();
+        }
+      } catch (IterationInterruptedException e) {
+        break;
+      } catch (IOException e) {
+        log.warn("Failed to warm caches for " + extent + " from " + file + " : " + e.getMessage());
+      }
+    }
+
+    long t2 = System.currentTimeMillis();
+    if (metrics.isEnabled()) {
+      metrics.add(TabletServerCacheWarmupMetrics.warmup, t2 - t1);
+      metrics.add(TabletServerCacheWarmupMetrics.blocks, dataBlocks);
+    }
+    log.debug(String.format("Warmed caches for %s with %,d data blocks from %d of %d files in %.3f secs%s", extent, dataBlocks, filesWarmed, files.size(),
+        (t2 - t1) / 1000.0, cancelled.get() ? " (cancelled)" : ""));
+  }
+}
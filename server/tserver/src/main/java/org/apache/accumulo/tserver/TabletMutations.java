@@ -19,16 +19,23 @@ package org.apache.accumulo.tserver;
 import java.util.List;
 
 import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.tserver.log.Durability;
 
 public class TabletMutations {
   private final int tid; 
   private final int seq; 
   private final List<Mutation> mutations;
+  private final Durability durability;
 
   public TabletMutations(int tid, int seq, List<Mutation> mutations) {
+    this(tid, seq, mutations, Durability.SYNC);
+  }
+
+  public TabletMutations(int tid, int seq, List<Mutation> mutations, Durability durability) {
     this.tid = tid;
     this.seq = seq;
     this.mutations = mutations;
+    this.durability = durability;
   }
 
   public List<Mutation> getMutations() {
@@ -41,6 +48,10 @@ public class TabletMutations {
   public int getSeq() {
     return seq;
   }
+
+  public Durability getDurability() {
+    return durability;
+  }
   
   
   
@@ -213,6 +213,7 @@ import org.apache.accumulo.tserver.mastermessage.MasterMessage;
 import org.apache.accumulo.tserver.mastermessage.SplitReportMessage;
 import org.apache.accumulo.tserver.mastermessage.TabletStatusMessage;
 import org.apache.accumulo.tserver.metrics.TabletServerMBean;
+import org.apache.accumulo.tserver.metrics.TabletServerCacheWarmupMetrics;
 import org.apache.accumulo.tserver.metrics.TabletServerMinCMetrics;
 import org.apache.accumulo.tserver.metrics.TabletServerScanMetrics;
 import org.apache.accumulo.tserver.metrics.TabletServerUpdateMetrics;
@@ -248,6 +249,7 @@ public class TabletServer extends AbstractMetricsImpl implements org.apache.accu
   private TabletServerLogger logger;
 
   protected TabletServerMinCMetrics mincMetrics = new TabletServerMinCMetrics();
+  protected TabletServerCacheWarmupMetrics warmupMetrics = new TabletServerCacheWarmupMetrics();
 
   private ServerConfiguration serverConfig;
   private LogSorter logSorter = null;
@@ -929,7 +931,7 @@ public class TabletServer extends AbstractMetricsImpl implements org.apache.accu
 
     AccumuloConfiguration acuConf = getSystemConfiguration();
 
-    TabletServerUpdateMetrics updateMetrics = new TabletServerUpdateMetrics();
+    TabletServerUpdateMetrics updateMetrics = new TabletServerUpdateMetrics(logger.getSyncStats());
 
     TabletServerScanMetrics scanMetrics = new TabletServerScanMetrics();
 
@@ -2885,10 +2887,11 @@ public class TabletServer extends AbstractMetricsImpl implements org.apache.accu
       }
 
       Tablet tablet = null;
+      TabletResourceManager trm = null;
       boolean successful = false;
 
       try {
-        TabletResourceManager trm = resourceManager.createTabletResourceManager();
+        trm = resourceManager.createTabletResourceManager();
 
         // this opens the tablet file and fills in the endKey in the
         // extent
@@ -2929,6 +2932,9 @@ public class TabletServer extends AbstractMetricsImpl implements org.apache.accu
       }
 
       if (!successful) {
+        // the tablet may have started warming the caches before failing
+        if (trm != null)
+          trm.cancelCacheWarming();
         synchronized (unopenedTablets) {
           synchronized (openingTablets) {
             openingTablets.remove(extent);
@@ -3002,7 +3008,7 @@ public class TabletServer extends AbstractMetricsImpl implements org.apache.accu
     return statsKeeper;
   }
 
-  public void addLoggersToMetadata(List<DfsLogger> logs, KeyExtent extent, int id) {
+  public void addLoggersToMetadata(List<DfsLogger> logs, KeyExtent extent, int id, int durableSeq) {
     if (!this.onlineTablets.containsKey(extent)) {
       log.info("Not adding " + logs.size() + " logs for extent " + extent + " as alias " + id + " tablet is offline");
       // minor compaction due to recovery... don't make updates... if it finishes, there will be no WALs,
@@ -3018,6 +3024,7 @@ public class TabletServer extends AbstractMetricsImpl implements org.apache.accu
     LogEntry entry = new LogEntry();
     entry.extent = extent;
     entry.tabletId = id;
+    entry.durableSeq = durableSeq;
     entry.timestamp = now;
     entry.server = logs.get(0).getLogger();
     entry.filename = logs.get(0).getFileName();
@@ -3169,6 +3176,7 @@ public class TabletServer extends AbstractMetricsImpl implements org.apache.accu
       StandardMBean mbean = new StandardMBean(this, TabletServerMBean.class, false);
       this.register(mbean);
       mincMetrics.register();
+      warmupMetrics.register();
     } catch (Exception e) {
       log.error("Error registering with JMX", e);
     }
@@ -3447,7 +3455,8 @@ public class TabletServer extends AbstractMetricsImpl implements org.apache.accu
     log.info("Tablet server starting on " + hostname);
     security = AuditedSecurityOperation.getInstance();
     clientAddress = HostAndPort.fromParts(hostname, 0);
-    logger = new TabletServerLogger(this, getSystemConfiguration().getMemoryInBytes(Property.TSERV_WALOG_MAX_SIZE));
+    logger = new TabletServerLogger(this, getSystemConfiguration().getMemoryInBytes(Property.TSERV_WALOG_MAX_SIZE), getSystemConfiguration().getCount(
+        Property.TSERV_WALOG_COUNT));
 
     try {
       AccumuloVFSClassLoader.getContextManager().setContextConfig(new ContextManager.DefaultContextsConfig(new Iterable<Entry<String,String>>() {
@@ -3576,6 +3585,20 @@ public class TabletServer extends AbstractMetricsImpl implements org.apache.accu
         table.majors.running++;
       if (tablet.majorCompactionQueued())
         table.majors.queued++;
+      table.minors.byteRate += tablet.minorCompactionByteRate();
+      table.majors.byteRate += tablet.majorCompactionByteRate();
+    }
+
+    for (CompactionInfo compaction : Compactor.getRunningCompactions()) {
+      if (!compaction.isThrottled())
+        continue;
+      TableInfo table = tables.get(compaction.getExtent().getTableId().toString());
+      if (table == null)
+        continue;
+      if (compaction.isMinor())
+        table.minors.throttled++;
+      else
+        table.majors.throttled++;
     }
 
     for (Entry<String,MapCounter<ScanRunState>> entry : scanCounts.entrySet()) {
@@ -3621,6 +3644,7 @@ public class TabletServer extends AbstractMetricsImpl implements org.apache.accu
     result.dataCacheHits = resourceManager.getDataCache().getStats().getHitCount();
     result.dataCacheRequest = resourceManager.getDataCache().getStats().getRequestCount();
     result.logSorts = logSorter.getLogSorts();
+    result.logSorts.addAll(logger.getRecoveries());
     return result;
   }
 
@@ -3663,6 +3687,18 @@ public class TabletServer extends AbstractMetricsImpl implements org.apache.accu
         return (int) (e1.timestamp - e2.timestamp);
       }
     });
+    // a tablet only has the logs of its last load, unless a recovery failed, so the entries normally agree on the id and the entries written by the last
+    // minor compaction carry its sequence number; entries added since have the same one
+    int tid = sorted.isEmpty() ? -1 : sorted.get(0).tabletId;
+    int durableSeq = -1;
+    for (LogEntry entry : sorted) {
+      if (entry.tabletId != tid || entry.durableSeq < 0) {
+        durableSeq = -1;
+        break;
+      }
+      durableSeq = Math.max(durableSeq, entry.durableSeq);
+    }
+
     for (LogEntry entry : sorted) {
       Path recovery = null;
       for (String log : entry.logSet) {
@@ -3674,11 +3710,17 @@ public class TabletServer extends AbstractMetricsImpl implements org.apache.accu
           break;
         }
       }
+      // the master assigns a tablet with sequence numbers once the sorts of its logs are queued, and it replays each log as it is sorted
+      if (recovery == null && durableSeq >= 0 && !entry.logSet.isEmpty())
+        recovery = RecoveryPath.getRecoveryPath(fs, fs.getFullPath(FileType.WAL, entry.logSet.iterator().next()));
       if (recovery == null)
         throw new IOException("Unable to find recovery files for extent " + tablet.getExtent() + " logEntry: " + entry);
       recoveryLogs.add(recovery);
     }
-    logger.recover(fs, tablet, recoveryLogs, tabletFiles, mutationReceiver);
+
+    if (durableSeq >= 0)
+      log.info("Recovering " + tablet.getExtent() + " from sequence number " + durableSeq + " of " + recoveryLogs.size() + " logs without scanning them");
+    logger.recover(fs, tablet, recoveryLogs, tabletFiles, tid, durableSeq, mutationReceiver);
   }
 
   private final AtomicInteger logIdGenerator = new AtomicInteger();
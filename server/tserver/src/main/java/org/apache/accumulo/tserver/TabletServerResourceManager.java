@@ -16,8 +16,10 @@
  */
 package org.apache.accumulo.tserver;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -26,8 +28,10 @@ import java.util.Map.Entry;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -37,7 +41,13 @@ import org.apache.accumulo.core.client.Instance;
 import org.apache.accumulo.core.conf.AccumuloConfiguration;
 import org.apache.accumulo.core.conf.Property;
 import org.apache.accumulo.core.data.KeyExtent;
+import org.apache.accumulo.core.file.blockfile.cache.AdmissionPolicy;
+import org.apache.accumulo.core.file.blockfile.cache.AdmitAllPolicy;
+import org.apache.accumulo.core.file.blockfile.cache.BlockCache;
+import org.apache.accumulo.core.file.blockfile.cache.LocalDiskBlockCache;
 import org.apache.accumulo.core.file.blockfile.cache.LruBlockCache;
+import org.apache.accumulo.core.file.blockfile.cache.OffHeapBlockCache;
+import org.apache.accumulo.core.file.blockfile.cache.TieredBlockCache;
 import org.apache.accumulo.core.metadata.schema.DataFileValue;
 import org.apache.accumulo.core.util.Daemon;
 import org.apache.accumulo.core.util.LoggingRunnable;
@@ -51,6 +61,7 @@ import org.apache.accumulo.server.tabletserver.MemoryManagementActions;
 import org.apache.accumulo.server.tabletserver.MemoryManager;
 import org.apache.accumulo.server.tabletserver.TabletState;
 import org.apache.accumulo.server.util.time.SimpleTimer;
+import org.apache.accumulo.start.classloader.vfs.AccumuloVFSClassLoader;
 import org.apache.accumulo.trace.instrument.TraceExecutorService;
 import org.apache.accumulo.tserver.FileManager.ScanFileManager;
 import org.apache.accumulo.tserver.Tablet.MinorCompactionReason;
@@ -58,6 +69,7 @@ import org.apache.accumulo.tserver.compaction.CompactionStrategy;
 import org.apache.accumulo.tserver.compaction.DefaultCompactionStrategy;
 import org.apache.accumulo.tserver.compaction.MajorCompactionReason;
 import org.apache.accumulo.tserver.compaction.MajorCompactionRequest;
+import org.apache.accumulo.tserver.metrics.TabletServerCacheWarmupMetrics;
 import org.apache.log4j.Logger;
 
 /**
@@ -72,6 +84,9 @@ public class TabletServerResourceManager {
   private ExecutorService majorCompactionThreadPool;
   private ExecutorService rootMajorCompactionThreadPool;
   private ExecutorService defaultMajorCompactionThreadPool;
+  private ExecutorService majorCompactionPartitionThreadPool;
+
+  private final CompactionRateLimiter compactionRateLimiter;
   private ExecutorService splitThreadPool;
   private ExecutorService defaultSplitThreadPool;
   private ExecutorService defaultMigrationPool;
@@ -92,8 +107,8 @@ public class TabletServerResourceManager {
 
   private MemoryManagementFramework memMgmt;
 
-  private final LruBlockCache _dCache;
-  private final LruBlockCache _iCache;
+  private final BlockCache _dCache;
+  private final BlockCache _iCache;
   private final ServerConfiguration conf;
 
   private static final Logger log = Logger.getLogger(TabletServerResourceManager.class);
@@ -152,26 +167,42 @@ public class TabletServerResourceManager {
     final AccumuloConfiguration acuConf = conf.getConfiguration();
 
     long maxMemory = acuConf.getMemoryInBytes(Property.TSERV_MAXMEM);
-    boolean usingNativeMap = acuConf.getBoolean(Property.TSERV_NATIVEMAP_ENABLED) && NativeMap.isLoaded();
+    // the native and off-heap in-memory maps do not take memory from the java heap
+    boolean mapsOffHeap = (acuConf.getBoolean(Property.TSERV_NATIVEMAP_ENABLED) && NativeMap.isLoaded())
+        || acuConf.getBoolean(Property.TSERV_OFFHEAPMAP_ENABLED);
 
     long blockSize = acuConf.getMemoryInBytes(Property.TSERV_DEFAULT_BLOCKSIZE);
     long dCacheSize = acuConf.getMemoryInBytes(Property.TSERV_DATACACHE_SIZE);
     long iCacheSize = acuConf.getMemoryInBytes(Property.TSERV_INDEXCACHE_SIZE);
 
-    _iCache = new LruBlockCache(iCacheSize, blockSize);
-    _dCache = new LruBlockCache(dCacheSize, blockSize);
+    BlockCache iCache = createBlockCache(acuConf, iCacheSize, blockSize);
+    BlockCache dCache = createBlockCache(acuConf, dCacheSize, blockSize);
+
+    // off-heap caches do not take memory from the java heap
+    long heapCacheSize = (iCache instanceof OffHeapBlockCache ? 0 : iCacheSize) + (dCache instanceof OffHeapBlockCache ? 0 : dCacheSize);
+
+    String localCacheDir = acuConf.getPath(Property.TSERV_CACHE_LOCAL_DIR);
+    if (localCacheDir != null && !localCacheDir.isEmpty()) {
+      long localCacheSize = acuConf.getMemoryInBytes(Property.TSERV_CACHE_LOCAL_SIZE);
+      long iLocalCacheSize = (long) (localCacheSize * (iCacheSize / (double) Math.max(1, iCacheSize + dCacheSize)));
+      iCache = createLocalCache(iCache, new File(localCacheDir, "index"), iLocalCacheSize);
+      dCache = createLocalCache(dCache, new File(localCacheDir, "data"), localCacheSize - iLocalCacheSize);
+    }
+
+    _iCache = iCache;
+    _dCache = dCache;
 
     Runtime runtime = Runtime.getRuntime();
-    if (!usingNativeMap && maxMemory + dCacheSize + iCacheSize > runtime.maxMemory()) {
+    if (!mapsOffHeap && maxMemory + heapCacheSize > runtime.maxMemory()) {
       throw new IllegalArgumentException(String.format(
-          "Maximum tablet server map memory %,d and block cache sizes %,d is too large for this JVM configuration %,d", maxMemory, dCacheSize + iCacheSize,
+          "Maximum tablet server map memory %,d and block cache sizes %,d is too large for this JVM configuration %,d", maxMemory, heapCacheSize,
           runtime.maxMemory()));
     }
     runtime.gc();
 
     // totalMemory - freeMemory = memory in use
     // maxMemory - memory in use = max available memory
-    if (!usingNativeMap && maxMemory > runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory())) {
+    if (!mapsOffHeap && maxMemory > runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory())) {
       log.warn("In-memory map may not fit into local memory space.");
     }
 
@@ -182,6 +213,23 @@ public class TabletServerResourceManager {
     majorCompactionThreadPool = createEs(Property.TSERV_MAJC_MAXCONCURRENT, "major compactor", new CompactionQueue());
     rootMajorCompactionThreadPool = createEs(0, 1, 300, "md root major compactor");
     defaultMajorCompactionThreadPool = createEs(0, 1, 300, "md major compactor");
+    majorCompactionPartitionThreadPool = createEs(Property.TSERV_MAJC_PARTITION_MAXCONCURRENT, "major compaction partitions");
+
+    compactionRateLimiter = new CompactionRateLimiter(acuConf.getMemoryInBytes(Property.TSERV_COMPACTION_THROUGHPUT));
+    SimpleTimer.getInstance().schedule(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          long rate = conf.getConfiguration().getMemoryInBytes(Property.TSERV_COMPACTION_THROUGHPUT);
+          if (compactionRateLimiter.getRate() != rate) {
+            log.info("Changing " + Property.TSERV_COMPACTION_THROUGHPUT.getKey() + " to " + rate);
+            compactionRateLimiter.setRate(rate);
+          }
+        } catch (Throwable t) {
+          log.error(t, t);
+        }
+      }
+    }, 1000, 10 * 1000);
 
     splitThreadPool = createEs(1, "splitter");
     defaultSplitThreadPool = createEs(0, 1, 60, "md splitter");
@@ -189,10 +237,9 @@ public class TabletServerResourceManager {
     defaultMigrationPool = createEs(0, 1, 60, "metadata tablet migration");
     migrationPool = createEs(Property.TSERV_MIGRATE_MAXCONCURRENT, "tablet migration");
 
-    // not sure if concurrent assignments can run safely... even if they could there is probably no benefit at startup because
-    // individual tablet servers are already running assignments concurrently... having each individual tablet server run
-    // concurrent assignments would put more load on the metadata table at startup
-    assignmentPool = createEs(1, "tablet assignment");
+    // concurrent assignments put more load on the metadata table at startup, but let tablets that need recovery replay their logs at the same time
+    // instead of one after another
+    assignmentPool = createEs(Property.TSERV_ASSIGNMENT_MAXCONCURRENT, "tablet assignment");
 
     assignMetaDataPool = createEs(0, 1, 60, "metadata tablet assignment");
 
@@ -210,6 +257,35 @@ public class TabletServerResourceManager {
     memMgmt = new MemoryManagementFramework();
   }
 
+  private static BlockCache createBlockCache(AccumuloConfiguration acuConf, long cacheSize, long blockSize) {
+    // each cache gets its own policy, since policies keep track of what their cache has seen
+    AdmissionPolicy policy = Property.createInstanceFromPropertyName(acuConf, Property.TSERV_CACHE_ADMISSION_POLICY, AdmissionPolicy.class,
+        new AdmitAllPolicy());
+    String clazzName = acuConf.get(Property.TSERV_CACHE_IMPL);
+    try {
+      Class<? extends BlockCache> clazz = AccumuloVFSClassLoader.loadClass(clazzName, BlockCache.class);
+      try {
+        return clazz.getConstructor(long.class, long.class, AdmissionPolicy.class).newInstance(cacheSize, blockSize, policy);
+      } catch (NoSuchMethodException e) {
+        if (!(policy instanceof AdmitAllPolicy))
+          log.warn(clazzName + " does not support admission policies, ignoring " + Property.TSERV_CACHE_ADMISSION_POLICY.getKey());
+        return clazz.getConstructor(long.class, long.class).newInstance(cacheSize, blockSize);
+      }
+    } catch (Exception e) {
+      log.warn("Failed to create block cache " + clazzName + ", using " + LruBlockCache.class.getName(), e);
+      return new LruBlockCache(cacheSize, blockSize, policy);
+    }
+  }
+
+  private static BlockCache createLocalCache(BlockCache cache, File dir, long size) {
+    try {
+      return new TieredBlockCache(cache, new LocalDiskBlockCache(dir, size));
+    } catch (IOException e) {
+      log.warn("Failed to create local block cache in " + dir + ", not using it", e);
+      return cache;
+    }
+  }
+
   private static class TabletStateImpl implements TabletState, Cloneable {
 
     private long lct;
@@ -468,6 +544,8 @@ public class TabletServerResourceManager {
 
     private AccumuloConfiguration tableConf;
 
+    private TabletCacheWarmer cacheWarmer = null;
+
     TabletResourceManager() {}
 
     void setTablet(Tablet tablet, AccumuloConfiguration tableConf) {
@@ -494,6 +572,23 @@ public class TabletServerResourceManager {
 
     // END methods that Tablets call to manage their set of open map files
 
+    // read the beginning of the tablet's files into the caches in the background
+    synchronized void warmCache(Collection<FileRef> files, TabletServerCacheWarmupMetrics metrics) {
+      KeyExtent extent = tablet.getExtent();
+      if (closed || files.isEmpty() || extent.isRootTablet() || tableConf.getCount(Property.TABLE_CACHE_WARMUP_BLOCKS) == 0)
+        return;
+      if (!tableConf.getBoolean(Property.TABLE_INDEXCACHE_ENABLED) && !tableConf.getBoolean(Property.TABLE_BLOCKCACHE_ENABLED))
+        return;
+
+      cacheWarmer = new TabletCacheWarmer(extent, new ArrayList<FileRef>(files), fs, tableConf, _dCache, _iCache, metrics);
+      executeReadAhead(extent, new LoggingRunnable(log, cacheWarmer));
+    }
+
+    synchronized void cancelCacheWarming() {
+      if (cacheWarmer != null)
+        cacheWarmer.cancel();
+    }
+
     // BEGIN methods that Tablets call to manage memory
 
     private AtomicLong lastReportedSize = new AtomicLong();
@@ -590,6 +685,8 @@ public class TabletServerResourceManager {
           if (openFilesReserved)
             throw new IOException("tired to close files while open files reserved");
 
+          cancelCacheWarming();
+
           TabletServerResourceManager.this.removeTabletResource(this);
 
           memMgmt.tabletClosed(tablet.getExtent());
@@ -632,6 +729,21 @@ public class TabletServerResourceManager {
     }
   }
 
+  /**
+   * Runs the compaction of one range of a partitioned major compaction. The major compaction thread waiting for it compacts a range itself, so these threads
+   * are in addition to the major compaction threads.
+   */
+  public <T> Future<T> submitMajorCompactionPartition(Callable<T> task) {
+    return majorCompactionPartitionThreadPool.submit(task);
+  }
+
+  /**
+   * @return the limit on the bytes per second read and written by all the compactions of this tablet server
+   */
+  public CompactionRateLimiter getCompactionRateLimiter() {
+    return compactionRateLimiter;
+  }
+
   public void executeReadAhead(KeyExtent tablet, Runnable task) {
     if (tablet.isRootTablet()) {
       task.run();
@@ -706,11 +818,11 @@ public class TabletServerResourceManager {
     }
   }
 
-  public LruBlockCache getIndexCache() {
+  public BlockCache getIndexCache() {
     return _iCache;
   }
 
-  public LruBlockCache getDataCache() {
+  public BlockCache getDataCache() {
     return _dCache;
   }
 
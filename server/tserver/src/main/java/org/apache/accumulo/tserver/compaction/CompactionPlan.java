@@ -22,18 +22,25 @@ import java.util.List;
 import org.apache.accumulo.server.fs.FileRef;
 
 /**
- * A plan for a compaction: the input files, the files that are *not* inputs to a compaction that should simply be deleted, and the optional parameters used to
- * create the resulting output file.
+ * A plan for a compaction: the input files, the files that are *not* inputs to a compaction that should simply be deleted, the optional parameters used to
+ * create the resulting output file, and the number of ranges to compact concurrently.
  */
 public class CompactionPlan {
   public final List<FileRef> inputFiles = new ArrayList<FileRef>();
   public final List<FileRef> deleteFiles = new ArrayList<FileRef>();
   public WriteParameters writeParameters = null;
+  /**
+   * The number of ranges to split the tablet into using the indexes of the input files. The ranges are compacted concurrently and each is written to its own
+   * file. Fewer ranges are used when the indexes do not have enough rows.
+   */
+  public int partitions = 1;
 
   @Override
   public String toString() {
     StringBuilder b = new StringBuilder();
     b.append(inputFiles.toString());
+    if (partitions > 1)
+      b.append(" partitions " + partitions);
     if (!deleteFiles.isEmpty()) {
       b.append(" files to be deleted ");
       b.append(deleteFiles);
@@ -44,9 +44,23 @@ public class DefaultCompactionStrategy extends CompactionStrategy {
     if (toCompact == null || toCompact.isEmpty())
       return result;
     result.inputFiles.addAll(toCompact);
+    // only partition compactions of all the files, partitioning others would leave the tablet with more files
+    if (toCompact.size() == request.getFiles().size()) {
+      int partitions = Integer.parseInt(request.getTableConfig(Property.TABLE_MAJC_PARTITIONS.getKey()));
+      double ratio = Double.parseDouble(request.getTableConfig(Property.TABLE_MAJC_RATIO.getKey()));
+      result.partitions = Math.min(partitions, maxPartitions(ratio));
+    }
     return result;
   }
 
+  /**
+   * The files written by a partitioned compaction are about the same size, so the largest of P of them times the ratio is at least their total once P reaches
+   * the ratio, and they would be compacted again. Fewer partitions than the ratio keeps them from qualifying until more data is added.
+   */
+  static int maxPartitions(double ratio) {
+    return Math.max(1, (int) Math.ceil(ratio) - 1);
+  }
+
   private static class CompactionFile {
     public FileRef file;
     public long size;
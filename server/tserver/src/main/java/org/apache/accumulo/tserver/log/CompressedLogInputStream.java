@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.log;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.accumulo.core.file.rfile.bcfile.Compression.Algorithm;
+import org.apache.hadoop.io.compress.Decompressor;
+
+/**
+ * Reads a write-ahead log written by {@link CompressedLogOutputStream}. A log that ends part way through a block, as a log does when its tablet server dies
+ * while writing, throws an {@link EOFException} there, the same as an uncompressed log that ends part way through an entry.
+ */
+public class CompressedLogInputStream extends InputStream {
+
+  private final DataInputStream in;
+  private final Algorithm algorithm;
+  private final Decompressor decompressor;
+
+  private byte[] compressed = new byte[CompressedLogOutputStream.BLOCK_SIZE];
+  private byte[] block = new byte[CompressedLogOutputStream.BLOCK_SIZE];
+  private int count = 0;
+  private int pos = 0;
+  private long uncompressedPos = 0;
+
+  public CompressedLogInputStream(InputStream in, Algorithm algorithm) throws IOException {
+    this.in = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+    this.algorithm = algorithm;
+    this.decompressor = algorithm.getDecompressor();
+  }
+
+  private boolean nextBlock() throws IOException {
+    while (pos == count) {
+      int uncompressedLen;
+      try {
+        uncompressedLen = in.readInt();
+      } catch (EOFException ex) {
+        return false;
+      }
+      int compressedLen = in.readInt();
+      if (uncompressedLen < 0 || compressedLen < 0)
+        throw new IOException("Corrupt compressed log block " + uncompressedLen + " " + compressedLen);
+
+      if (compressed.length < compressedLen)
+        compressed = new byte[compressedLen];
+      in.readFully(compressed, 0, compressedLen);
+
+      if (block.length < uncompressedLen)
+        block = new byte[uncompressedLen];
+      if (decompressor != null)
+        decompressor.reset();
+      InputStream decompressing = algorithm.createDecompressionStream(new ByteArrayInputStream(compressed, 0, compressedLen), decompressor, 0);
+      int read = 0;
+      while (read < uncompressedLen) {
+        int n = decompressing.read(block, read, uncompressedLen - read);
+        if (n < 0)
+          throw new IOException("Compressed log block holds " + read + " bytes, expected " + uncompressedLen);
+        read += n;
+      }
+      count = uncompressedLen;
+      pos = 0;
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (pos == count && !nextBlock())
+      return -1;
+    uncompressedPos++;
+    return block[pos++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0)
+      return 0;
+    if (pos == count && !nextBlock())
+      return -1;
+    int n = Math.min(len, count - pos);
+    System.arraycopy(block, pos, b, off, n);
+    pos += n;
+    uncompressedPos += n;
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return count - pos;
+  }
+
+  /**
+   * @return the number of uncompressed bytes read
+   */
+  public long getPos() {
+    return uncompressedPos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      in.close();
+    } finally {
+      algorithm.returnDecompressor(decompressor);
+    }
+  }
+}
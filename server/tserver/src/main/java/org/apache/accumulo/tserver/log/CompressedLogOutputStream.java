@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.accumulo.core.file.rfile.bcfile.Compression.Algorithm;
+import org.apache.hadoop.io.compress.Compressor;
+
+/**
+ * Compresses a write-ahead log in blocks. Each block is written as its uncompressed length, its compressed length and the compressed bytes, and can be
+ * decompressed on its own. A block is written when {@value #BLOCK_SIZE} bytes are buffered and on every flush, so everything flushed before a sync can be read
+ * back after a failure.
+ */
+public class CompressedLogOutputStream extends OutputStream {
+
+  static final int BLOCK_SIZE = 64 * 1024;
+
+  private final DataOutputStream out;
+  private final Algorithm algorithm;
+  private final Compressor compressor;
+  private final ByteArrayOutputStream compressed = new ByteArrayOutputStream(BLOCK_SIZE);
+  private final OutputStream compressing;
+
+  private final byte[] buffer = new byte[BLOCK_SIZE];
+  private int count = 0;
+
+  public CompressedLogOutputStream(OutputStream out, Algorithm algorithm) throws IOException {
+    this.out = out instanceof DataOutputStream ? (DataOutputStream) out : new DataOutputStream(out);
+    this.algorithm = algorithm;
+    this.compressor = algorithm.getCompressor();
+    this.compressing = algorithm.createCompressionStream(compressed, compressor, 0);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (count == buffer.length)
+      writeBlock();
+    buffer[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      if (count == buffer.length)
+        writeBlock();
+      int n = Math.min(len, buffer.length - count);
+      System.arraycopy(b, off, buffer, count, n);
+      count += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    if (count == 0)
+      return;
+    compressed.reset();
+    compressing.write(buffer, 0, count);
+    // the compression streams of Compression finish the compressed data on flush
+    compressing.flush();
+    out.writeInt(count);
+    out.writeInt(compressed.size());
+    compressed.writeTo(out);
+    count = 0;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writeBlock();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+      out.close();
+    } finally {
+      algorithm.returnCompressor(compressor);
+    }
+  }
+}
@@ -38,11 +38,14 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.accumulo.core.conf.AccumuloConfiguration;
 import org.apache.accumulo.core.conf.Property;
 import org.apache.accumulo.core.data.KeyExtent;
 import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.file.rfile.bcfile.Compression;
+import org.apache.accumulo.core.file.rfile.bcfile.Compression.Algorithm;
 import org.apache.accumulo.core.security.crypto.CryptoModule;
 import org.apache.accumulo.core.security.crypto.CryptoModuleFactory;
 import org.apache.accumulo.core.security.crypto.CryptoModuleParameters;
@@ -69,6 +72,8 @@ public class DfsLogger {
   // Package private so that LogSorter can find this
   static final String LOG_FILE_HEADER_V2 = "--- Log File Header (v2) ---";
   static final String LOG_FILE_HEADER_V3 = "--- Log File Header (v3) ---";
+  // v4 adds the compression algorithm after the crypto module
+  static final String LOG_FILE_HEADER_V4 = "--- Log File Header (v4) ---";
   
   private static Logger log = Logger.getLogger(DfsLogger.class);
   
@@ -84,12 +89,27 @@ public class DfsLogger {
     
     private FSDataInputStream originalInput;
     private DataInputStream decryptingInputStream;
+    private CompressedLogInputStream compressedInput;
 
     public DFSLoggerInputStreams(FSDataInputStream originalInput, DataInputStream decryptingInputStream) {
       this.originalInput = originalInput;
       this.decryptingInputStream = decryptingInputStream;
     }
 
+    DFSLoggerInputStreams(FSDataInputStream originalInput, DataInputStream decryptingInputStream, CompressedLogInputStream compressedInput) {
+      this(originalInput, decryptingInputStream);
+      this.compressedInput = compressedInput;
+    }
+
+    /**
+     * @return the number of bytes of log entries read, which for a compressed log is more than the bytes read from the file
+     */
+    public long getPos() throws IOException {
+      if (compressedInput != null)
+        return compressedInput.getPos();
+      return originalInput.getPos();
+    }
+
     public FSDataInputStream getOriginalInput() {
       return originalInput;
     }
@@ -131,6 +151,8 @@ public class DfsLogger {
     @Override
     public void run() {
       ArrayList<DfsLogger.LogWork> work = new ArrayList<DfsLogger.LogWork>();
+      ArrayList<DfsLogger.LogWork> flushWork = new ArrayList<DfsLogger.LogWork>();
+      ArrayList<DfsLogger.LogWork> syncWork = new ArrayList<DfsLogger.LogWork>();
       while (true) {
         work.clear();
         
@@ -141,36 +163,91 @@ public class DfsLogger {
         }
         workQueue.drainTo(work);
         
-        synchronized (closeLock) {
-          if (!closed) {
-            try {
-              sync.invoke(logFile);
-            } catch (Exception ex) {
-              log.warn("Exception syncing " + ex);
-              for (DfsLogger.LogWork logWork : work) {
-                logWork.exception = ex;
-              }
-            }
-          } else {
-            for (DfsLogger.LogWork logWork : work) {
-              logWork.exception = new LogClosedException();
-            }
-          }
-        }
+        if (groupCommit.isEnabled())
+          gatherMore(work);
         
-        boolean sawClosedMarker = false;
-        for (DfsLogger.LogWork logWork : work)
-          if (logWork == CLOSED_MARKER)
-            sawClosedMarker = true;
+        flushWork.clear();
+        syncWork.clear();
+        for (DfsLogger.LogWork logWork : work) {
+          if (logWork.durability == Durability.FLUSH)
+            flushWork.add(logWork);
           else
-            logWork.latch.countDown();
+            syncWork.add(logWork);
+        }
         
-        if (sawClosedMarker) {
-          synchronized (closeLock) {
-            closeLock.notifyAll();
+        // the updates that only need a flush are released before the sync, so they never wait on it
+        if (!flushWork.isEmpty())
+          flushOrSync(flush, flushWork);
+        if (!syncWork.isEmpty() && flushOrSync(sync, syncWork))
+          break;
+      }
+    }
+    
+    /**
+     * @return true if the work included the marker queued by close
+     */
+    private boolean flushOrSync(Method method, List<DfsLogger.LogWork> work) {
+      long t1 = System.nanoTime();
+      synchronized (closeLock) {
+        if (!closed) {
+          try {
+            t1 = System.nanoTime();
+            method.invoke(logFile);
+          } catch (Exception ex) {
+            log.warn("Exception syncing " + ex);
+            for (DfsLogger.LogWork logWork : work) {
+              logWork.exception = ex;
+            }
           }
+        } else {
+          for (DfsLogger.LogWork logWork : work) {
+            logWork.exception = new LogClosedException();
+          }
+        }
+      }
+      
+      long t2 = System.nanoTime();
+      
+      boolean sawClosedMarker = false;
+      for (DfsLogger.LogWork logWork : work)
+        if (logWork == CLOSED_MARKER)
+          sawClosedMarker = true;
+        else
+          logWork.latch.countDown();
+      
+      int batchSize = sawClosedMarker ? work.size() - 1 : work.size();
+      if (batchSize > 0)
+        syncStats.synced(batchSize, t1 - work.get(0).queued, t2 - t1);
+      
+      if (sawClosedMarker) {
+        synchronized (closeLock) {
+          closeLock.notifyAll();
+        }
+      }
+      return sawClosedMarker;
+    }
+    
+    /**
+     * Waits for more updates to join the sync, for as long as the group commit policy allows.
+     */
+    private void gatherMore(ArrayList<DfsLogger.LogWork> work) {
+      groupCommit.startBatch();
+      // CLOSED_MARKER is the last thing ever queued, there is nothing to wait for once it is seen
+      while (work.get(work.size() - 1) != CLOSED_MARKER) {
+        long waitTime = groupCommit.waitTime(work.size(), work.get(0).queued, System.nanoTime());
+        if (waitTime <= 0)
+          break;
+        DfsLogger.LogWork next;
+        try {
+          next = workQueue.poll(waitTime, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
           break;
         }
+        groupCommit.waited(next != null);
+        if (next == null)
+          break;
+        work.add(next);
+        workQueue.drainTo(work);
       }
     }
   }
@@ -179,6 +256,10 @@ public class DfsLogger {
     List<TabletMutations> mutations;
     CountDownLatch latch;
     volatile Exception exception;
+    // when the work was queued, from System.nanoTime()
+    long queued;
+    // FLUSH or SYNC, the work for weaker durabilities is not queued
+    Durability durability = Durability.SYNC;
     
     public LogWork(List<TabletMutations> mutations, CountDownLatch latch) {
       this.mutations = mutations;
@@ -228,17 +309,30 @@ public class DfsLogger {
   }
   
   private final ServerResources conf;
+  private final LogSyncStats syncStats;
+  private GroupCommitPolicy groupCommit = new GroupCommitPolicy(0, 0);
   private FSDataOutputStream logFile;
   private DataOutputStream encryptingLogFile = null;
   private Method sync;
+  private Method flush;
   private String logPath;
   
   public DfsLogger(ServerResources conf) throws IOException {
+    this(conf, new LogSyncStats());
+  }
+  
+  /**
+   * @param syncStats
+   *          counts the syncs of this log, may be shared with other logs
+   */
+  public DfsLogger(ServerResources conf, LogSyncStats syncStats) throws IOException {
     this.conf = conf;
+    this.syncStats = syncStats;
   }
   
   public DfsLogger(ServerResources conf, String filename) throws IOException {
     this.conf = conf;
+    this.syncStats = new LogSyncStats();
     this.logPath = filename;
   }
   
@@ -246,12 +340,16 @@ public class DfsLogger {
     FSDataInputStream input = fs.open(path);
     DataInputStream decryptingInput = null;
     
+    CompressedLogInputStream compressedInput = null;
+    
     byte[] magic = DfsLogger.LOG_FILE_HEADER_V3.getBytes();
     byte[] magicBuffer = new byte[magic.length];
     input.readFully(magicBuffer);
-    if (Arrays.equals(magicBuffer, magic)) {
+    boolean v4 = Arrays.equals(magicBuffer, DfsLogger.LOG_FILE_HEADER_V4.getBytes());
+    if (v4 || Arrays.equals(magicBuffer, magic)) {
       // additional parameters it needs from the underlying stream.
       String cryptoModuleClassname = input.readUTF();
+      Algorithm compression = v4 ? Compression.getCompressionAlgorithmByName(input.readUTF()) : Algorithm.NONE;
       CryptoModule cryptoModule = CryptoModuleFactory.getCryptoModule(cryptoModuleClassname);
 
       // Create the parameters and set the input stream into those parameters
@@ -266,6 +364,12 @@ public class DfsLogger {
       } else {
         decryptingInput = new DataInputStream(params.getPlaintextInputStream());
       }
+      
+      // compression is applied before encryption, so it is removed after decryption
+      if (compression != Algorithm.NONE) {
+        compressedInput = new CompressedLogInputStream(decryptingInput, compression);
+        decryptingInput = new DataInputStream(compressedInput);
+      }
     } else {
       input.seek(0);
       byte[] magicV2 = DfsLogger.LOG_FILE_HEADER_V2.getBytes();
@@ -317,7 +421,50 @@ public class DfsLogger {
       }
 
     }
-    return new DFSLoggerInputStreams(input, decryptingInput);
+    return new DFSLoggerInputStreams(input, decryptingInput, compressedInput);
+  }
+  
+  /**
+   * Writes the header of a new log, recording how the log is encrypted and compressed, and returns the stream to write the log entries to.
+   */
+  public static DataOutputStream writeHeaderAndReturnStream(FSDataOutputStream logFile, AccumuloConfiguration conf) throws IOException {
+    // Initialize the crypto operations.
+    org.apache.accumulo.core.security.crypto.CryptoModule cryptoModule = org.apache.accumulo.core.security.crypto.CryptoModuleFactory.getCryptoModule(conf
+        .get(Property.CRYPTO_MODULE_CLASS));
+    
+    Algorithm compression = Compression.getCompressionAlgorithmByName(conf.get(Property.TSERV_WAL_COMPRESSION_TYPE));
+    
+    // Initialize the log file with a header and the crypto params used to set up this log file. Uncompressed logs keep the v3 header, so they can
+    // still be read by tablet servers that do not know v4.
+    logFile.write((compression == Algorithm.NONE ? LOG_FILE_HEADER_V3 : LOG_FILE_HEADER_V4).getBytes());
+    
+    CryptoModuleParameters params = CryptoModuleFactory.createParamsObjectFromAccumuloConfiguration(conf);
+    
+    params.setPlaintextOutputStream(new NoFlushOutputStream(logFile));
+    
+    // In order to bootstrap the reading of this file later, we have to record the CryptoModule that was used to encipher it here,
+    // so that that crypto module can re-read its own parameters.
+    
+    logFile.writeUTF(conf.get(Property.CRYPTO_MODULE_CLASS));
+    if (compression != Algorithm.NONE)
+      logFile.writeUTF(compression.getName());
+    
+    params = cryptoModule.getEncryptingOutputStream(params);
+    OutputStream encipheringOutputStream = params.getEncryptedOutputStream();
+    
+    // If the module just kicks back our original stream, then just use it, don't wrap it in
+    // another data OutputStream.
+    DataOutputStream encryptingLogFile;
+    if (encipheringOutputStream == logFile) {
+      encryptingLogFile = logFile;
+    } else {
+      encryptingLogFile = new DataOutputStream(encipheringOutputStream);
+    }
+    
+    // compress before encrypting, encrypted data does not compress
+    if (compression != Algorithm.NONE)
+      encryptingLogFile = new DataOutputStream(new CompressedLogOutputStream(encryptingLogFile, compression));
+    return encryptingLogFile;
   }
   
   public synchronized void open(String address) throws IOException {
@@ -328,18 +475,27 @@ public class DfsLogger {
     VolumeManager fs = conf.getFileSystem();
     
     logPath = fs.choose(ServerConstants.getWalDirs()) + "/" + logger + "/" + filename;
+    FSDataOutputStream file;
+    short replication = (short) conf.getConfiguration().getCount(Property.TSERV_WAL_REPLICATION);
+    if (replication == 0)
+      replication = fs.getDefaultReplication(new Path(logPath));
+    long blockSize = conf.getConfiguration().getMemoryInBytes(Property.TSERV_WAL_BLOCKSIZE);
+    if (blockSize == 0)
+      blockSize = (long) (conf.getConfiguration().getMemoryInBytes(Property.TSERV_WALOG_MAX_SIZE) * 1.1);
+    if (conf.getConfiguration().getBoolean(Property.TSERV_WAL_SYNC))
+      file = fs.createSyncable(new Path(logPath), 0, replication, blockSize);
+    else
+      file = fs.create(new Path(logPath), true, 0, replication, blockSize);
+    
+    open(file, filename);
+  }
+  
+  /**
+   * Starts writing the log to a file that was just created, and starts the thread that flushes and syncs it.
+   */
+  synchronized void open(FSDataOutputStream file, String filename) throws IOException {
+    logFile = file;
     try {
-      short replication = (short) conf.getConfiguration().getCount(Property.TSERV_WAL_REPLICATION);
-      if (replication == 0)
-        replication = fs.getDefaultReplication(new Path(logPath));
-      long blockSize = conf.getConfiguration().getMemoryInBytes(Property.TSERV_WAL_BLOCKSIZE);
-      if (blockSize == 0)
-        blockSize = (long) (conf.getConfiguration().getMemoryInBytes(Property.TSERV_WALOG_MAX_SIZE) * 1.1);
-      if (conf.getConfiguration().getBoolean(Property.TSERV_WAL_SYNC))
-        logFile = fs.createSyncable(new Path(logPath), 0, replication, blockSize);
-      else
-        logFile = fs.create(new Path(logPath), true, 0, replication, blockSize);
-      
       try {
         NoSuchMethodException e = null;
         try {
@@ -355,45 +511,29 @@ public class DfsLogger {
         } catch (NoSuchMethodException ex) {}
         if (e != null)
           throw new RuntimeException(e);
+        try {
+          // hflush: send data to datanodes, without waiting for them to sync it to disk
+          flush = logFile.getClass().getMethod("hflush");
+        } catch (NoSuchMethodException ex) {
+          flush = logFile.getClass().getMethod("sync");
+        }
       } catch (Exception e) {
         throw new RuntimeException(e);
       }
       
-      // Initialize the crypto operations.
-      org.apache.accumulo.core.security.crypto.CryptoModule cryptoModule = org.apache.accumulo.core.security.crypto.CryptoModuleFactory.getCryptoModule(conf
-          .getConfiguration().get(Property.CRYPTO_MODULE_CLASS));
-      
-      // Initialize the log file with a header and the crypto params used to set up this log file.
-      logFile.write(LOG_FILE_HEADER_V3.getBytes());
-
-      CryptoModuleParameters params = CryptoModuleFactory.createParamsObjectFromAccumuloConfiguration(conf.getConfiguration());
-      
-      params.setPlaintextOutputStream(new NoFlushOutputStream(logFile));
-      
-      // In order to bootstrap the reading of this file later, we have to record the CryptoModule that was used to encipher it here,
-      // so that that crypto module can re-read its own parameters.
-      
-      logFile.writeUTF(conf.getConfiguration().get(Property.CRYPTO_MODULE_CLASS));
-      
-      
-      params = cryptoModule.getEncryptingOutputStream(params);
-      OutputStream encipheringOutputStream = params.getEncryptedOutputStream();
-      
-      // If the module just kicks back our original stream, then just use it, don't wrap it in
-      // another data OutputStream.
-      if (encipheringOutputStream == logFile) {
-        encryptingLogFile = logFile;
-      } else {
-        encryptingLogFile = new DataOutputStream(encipheringOutputStream);
-      }
+      encryptingLogFile = writeHeaderAndReturnStream(logFile, conf.getConfiguration());
       
       LogFileKey key = new LogFileKey();
       key.event = OPEN;
       key.tserverSession = filename;
       key.filename = filename;
       write(key, EMPTY);
+      encryptingLogFile.flush();
       sync.invoke(logFile);
       log.debug("Got new write-ahead log: " + this);
+      
+      long maxDelay = conf.getConfiguration().getTimeInMillis(Property.TSERV_WAL_SYNC_MAX_DELAY);
+      groupCommit = new GroupCommitPolicy(TimeUnit.MILLISECONDS.toNanos(maxDelay), conf.getConfiguration().getCount(Property.TSERV_WAL_SYNC_BATCH_SIZE));
     } catch (Exception ex) {
       if (logFile != null)
         logFile.close();
@@ -457,6 +597,7 @@ public class DfsLogger {
     key.tablet = tablet;
     try {
       write(key, EMPTY);
+      encryptingLogFile.flush();
       sync.invoke(logFile);
     } catch (Exception ex) {
       log.error(ex);
@@ -465,22 +606,29 @@ public class DfsLogger {
   }
   
   /**
-   * @param key
-   * @param empty2
-   * @throws IOException
+   * Writes an entry without flushing it, the caller flushes once it has written all of the entries of an operation. A compressed log writes a block for
+   * each flush.
    */
   private synchronized void write(LogFileKey key, LogFileValue value) throws IOException {
     key.write(encryptingLogFile);
     value.write(encryptingLogFile);
-    encryptingLogFile.flush();
   }
   
-  public LoggerOperation log(int seq, int tid, Mutation mutation) throws IOException {
-    return logManyTablets(Collections.singletonList(new TabletMutations(tid, seq, Collections.singletonList(mutation))));
+  public LoggerOperation log(int seq, int tid, Mutation mutation, Durability durability) throws IOException {
+    return logManyTablets(Collections.singletonList(new TabletMutations(tid, seq, Collections.singletonList(mutation), durability)));
   }
   
+  /**
+   * Writes the mutations of several tablets. The returned operation waits for the flush or sync needed by the strongest durability among them, so
+   * {@link TabletServerLogger} logs the mutations of each durability separately.
+   */
   public LoggerOperation logManyTablets(List<TabletMutations> mutations) throws IOException {
-    DfsLogger.LogWork work = new DfsLogger.LogWork(mutations, new CountDownLatch(1));
+    Durability durability = Durability.NONE;
+    for (TabletMutations tabletMutations : mutations)
+      durability = durability.max(tabletMutations.getDurability());
+    
+    DfsLogger.LogWork work = new DfsLogger.LogWork(mutations, new CountDownLatch(durability.compareTo(Durability.LOG) > 0 ? 1 : 0));
+    work.durability = durability;
     
     synchronized (DfsLogger.this) {
       try {
@@ -493,6 +641,7 @@ public class DfsLogger {
           value.mutations = tabletMutations.getMutations();
           write(key, value);
         }
+        encryptingLogFile.flush();
       } catch (ClosedChannelException ex) {
         throw new LogClosedException();
       } catch (Exception e) {
@@ -501,12 +650,19 @@ public class DfsLogger {
       }
     }
     
+    // nothing to wait for, the mutations were written to the log's buffer
+    if (work.latch.getCount() == 0)
+      return new LoggerOperation(work);
+    
     synchronized (closeLock) {
       // use a different lock for close check so that adding to work queue does not need
       // to wait on walog I/O operations
       
       if (closed)
         throw new LogClosedException();
+      work.queued = System.nanoTime();
+      groupCommit.arrived(work.queued);
+      syncStats.queued();
       workQueue.add(work);
     }
     
@@ -520,6 +676,7 @@ public class DfsLogger {
     key.tid = tid;
     try {
       write(key, EMPTY);
+      encryptingLogFile.flush();
     } catch (IOException ex) {
       log.error(ex);
       throw ex;
@@ -534,6 +691,7 @@ public class DfsLogger {
     key.filename = fqfn;
     try {
       write(key, EMPTY);
+      encryptingLogFile.flush();
     } catch (IOException ex) {
       log.error(ex);
       throw ex;
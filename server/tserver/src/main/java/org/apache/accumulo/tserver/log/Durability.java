@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.log;
+
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.Property;
+
+/**
+ * How much of the write-ahead log work is finished before a write to a table is acknowledged, from weakest to strongest.
+ */
+public enum Durability {
+  /**
+   * Not written to the write-ahead log.
+   */
+  NONE,
+  /**
+   * Written to the write-ahead log, without waiting for it to be sent anywhere.
+   */
+  LOG,
+  /**
+   * Written to the write-ahead log and flushed to the data nodes.
+   */
+  FLUSH,
+  /**
+   * Written to the write-ahead log and synced to disk on the data nodes.
+   */
+  SYNC;
+
+  /**
+   * @return the durability configured for a table, {@link #NONE} when the table does not use the write-ahead log
+   */
+  public static Durability fromConfiguration(AccumuloConfiguration conf) {
+    if (!conf.getBoolean(Property.TABLE_WALOG_ENABLED))
+      return NONE;
+    // the table configuration ignores values that are not valid durabilities
+    return valueOf(conf.get(Property.TABLE_DURABILITY).toUpperCase());
+  }
+
+  /**
+   * @return the stronger of this durability and the other
+   */
+  public Durability max(Durability other) {
+    return compareTo(other) >= 0 ? this : other;
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.log;
+
+/**
+ * Decides how long the sync of a write-ahead log waits for more updates to join it. A sync only waits while updates arrive faster than the time left before
+ * the maximum delay, and stops waiting after several waits in a row gather nothing, which is what happens when the writers are all waiting on the sync. While
+ * waiting is off, one sync in every {@value #PROBE_INTERVAL} still waits, so that waiting resumes when the load grows.
+ */
+class GroupCommitPolicy {
+
+  static final int MAX_MISSES = 3;
+  static final int PROBE_INTERVAL = 16;
+
+  private final long maxDelayNanos;
+  private final int targetBatchSize;
+
+  private long lastArrival = 0;
+  // a moving average of the nanoseconds between updates, negative until two have arrived
+  private long avgInterval = -1;
+  private int misses = 0;
+  private int batches = 0;
+
+  /**
+   * @param maxDelayNanos
+   *          the longest time the oldest update of a sync may wait for others to join it, zero to never wait
+   * @param targetBatchSize
+   *          the number of updates after which a sync does not wait
+   */
+  GroupCommitPolicy(long maxDelayNanos, int targetBatchSize) {
+    this.maxDelayNanos = maxDelayNanos;
+    this.targetBatchSize = targetBatchSize;
+  }
+
+  boolean isEnabled() {
+    return maxDelayNanos > 0 && targetBatchSize > 1;
+  }
+
+  synchronized void arrived(long now) {
+    if (lastArrival != 0) {
+      long interval = now - lastArrival;
+      avgInterval = avgInterval < 0 ? interval : (avgInterval * 7 + interval) / 8;
+    }
+    lastArrival = now;
+  }
+
+  /**
+   * Called once for each batch, before it is first considered for waiting.
+   */
+  synchronized void startBatch() {
+    batches++;
+  }
+
+  /**
+   * @param batchSize
+   *          the number of updates gathered for the sync so far
+   * @param oldestArrival
+   *          when the oldest of them was queued, from {@link System#nanoTime()}
+   * @return nanoseconds to wait for another update, or zero to sync now
+   */
+  synchronized long waitTime(int batchSize, long oldestArrival, long now) {
+    if (!isEnabled() || batchSize >= targetBatchSize || avgInterval < 0)
+      return 0;
+    if (misses >= MAX_MISSES && batches % PROBE_INTERVAL != 0)
+      return 0;
+    long remaining = oldestArrival + maxDelayNanos - now;
+    if (remaining <= 0 || avgInterval > remaining)
+      return 0;
+    return remaining;
+  }
+
+  /**
+   * @param gathered
+   *          true if another update arrived while waiting
+   */
+  synchronized void waited(boolean gathered) {
+    if (gathered)
+      misses = 0;
+    else if (misses < MAX_MISSES)
+      misses++;
+  }
+}
@@ -26,6 +26,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.accumulo.core.Constants;
@@ -43,6 +48,7 @@ import org.apache.accumulo.tserver.log.DfsLogger.DFSLoggerInputStreams;
 import org.apache.accumulo.tserver.logger.LogFileKey;
 import org.apache.accumulo.tserver.logger.LogFileValue;
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.MapFile;
@@ -55,6 +61,12 @@ import org.apache.zookeeper.KeeperException;
 public class LogSorter {
 
   private static final Logger log = Logger.getLogger(LogSorter.class);
+
+  // sorted parts are written under a hidden name and renamed when complete, so a tablet can replay each part as soon as it appears
+  static final String PART_FORMAT = "part-r-%05d";
+  // holds an id for each attempt to sort a log, so a tablet replaying the parts can tell when the sort was restarted beneath it
+  static final String SORT_ID = "_sort";
+
   VolumeManager fs;
   AccumuloConfiguration conf;
 
@@ -109,6 +121,12 @@ public class LogSorter {
 
         // the following call does not throw an exception if the file/dir does not exist
         fs.deleteRecursively(new Path(destPath));
+        FSDataOutputStream sortId = fs.create(new Path(destPath, SORT_ID));
+        try {
+          sortId.writeUTF(UUID.randomUUID().toString());
+        } finally {
+          sortId.close();
+        }
 
         DFSLoggerInputStreams inputStreams = DfsLogger.readHeaderAndReturnStream(fs, srcPath, conf);
         this.input = inputStreams.getOriginalInput();
@@ -116,24 +134,28 @@ public class LogSorter {
 
         final long bufferSize = conf.getMemoryInBytes(Property.TSERV_SORT_BUFFER_SIZE);
         Thread.currentThread().setName("Sorting " + name + " for recovery");
-        while (true) {
+        // each buffer is sorted and written by another thread while the next one is read, so reading the log is not stalled by writing the parts
+        Future<?> pendingWrite = null;
+        boolean done = false;
+        while (!done) {
           final ArrayList<Pair<LogFileKey,LogFileValue>> buffer = new ArrayList<Pair<LogFileKey,LogFileValue>>();
           try {
-            long start = input.getPos();
-            while (input.getPos() - start < bufferSize) {
+            // measured in uncompressed bytes, so a compressed log does not fill more memory than the buffer size
+            long start = inputStreams.getPos();
+            while (inputStreams.getPos() - start < bufferSize) {
               LogFileKey key = new LogFileKey();
               LogFileValue value = new LogFileValue();
               key.readFields(decryptingInput);
               value.readFields(decryptingInput);
               buffer.add(new Pair<LogFileKey,LogFileValue>(key, value));
             }
-            writeBuffer(destPath, buffer, part++);
-            buffer.clear();
           } catch (EOFException ex) {
-            writeBuffer(destPath, buffer, part++);
-            break;
+            done = true;
           }
+          waitForWrite(pendingWrite);
+          pendingWrite = writeBufferLater(destPath, buffer, part++);
         }
+        waitForWrite(pendingWrite);
         fs.create(new Path(destPath, "finished")).close();
         log.info("Finished log sort " + name + " " + getBytesCopied() + " bytes " + part + " parts in " + getSortTime() + "ms");
       } catch (Throwable t) {
@@ -158,12 +180,35 @@ public class LogSorter {
       }
     }
 
+    private Future<?> writeBufferLater(final String destPath, final ArrayList<Pair<LogFileKey,LogFileValue>> buffer, final int part) {
+      return sortWriters.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          writeBuffer(destPath, buffer, part);
+          return null;
+        }
+      });
+    }
+
+    private void waitForWrite(Future<?> pendingWrite) throws IOException, InterruptedException {
+      if (pendingWrite == null)
+        return;
+      try {
+        pendingWrite.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException)
+          throw (IOException) e.getCause();
+        throw new IOException(e.getCause());
+      }
+    }
+
     private void writeBuffer(String destPath, ArrayList<Pair<LogFileKey,LogFileValue>> buffer, int part) throws IOException {
-      Path path = new Path(destPath, String.format("part-r-%05d", part++));
-      FileSystem ns = fs.getFileSystemByPath(path);
+      Path path = new Path(destPath, String.format(PART_FORMAT, part));
+      Path tmpPath = new Path(destPath, "_" + path.getName());
+      FileSystem ns = fs.getFileSystemByPath(tmpPath);
       
       @SuppressWarnings("deprecation")
-      MapFile.Writer output = new MapFile.Writer(ns.getConf(), ns, path.toString(), LogFileKey.class, LogFileValue.class);
+      MapFile.Writer output = new MapFile.Writer(ns.getConf(), ns, tmpPath.toString(), LogFileKey.class, LogFileValue.class);
       try {
         Collections.sort(buffer, new Comparator<Pair<LogFileKey,LogFileValue>>() {
           @Override
@@ -177,6 +222,8 @@ public class LogSorter {
       } finally {
         output.close();
       }
+      if (!fs.rename(tmpPath, path))
+        throw new IOException("Unable to rename " + tmpPath + " to " + path);
     }
 
     synchronized void close() throws IOException {
@@ -201,6 +248,7 @@ public class LogSorter {
   }
 
   ThreadPoolExecutor threadPool;
+  private final ExecutorService sortWriters;
   private final Instance instance;
 
   public LogSorter(Instance instance, VolumeManager fs, AccumuloConfiguration conf) {
@@ -209,6 +257,7 @@ public class LogSorter {
     this.conf = conf;
     int threadPoolSize = conf.getCount(Property.TSERV_RECOVERY_MAX_CONCURRENT);
     this.threadPool = new SimpleThreadPool(threadPoolSize, this.getClass().getName());
+    this.sortWriters = new SimpleThreadPool(threadPoolSize, "log sort writer");
   }
 
   public void startWatchingForRecoveryLogs(ThreadPoolExecutor distWorkQThreadPool) throws KeeperException, InterruptedException {
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the syncs of all the write-ahead logs of a tablet server: how many updates each sync covers, how long the syncs take and how many updates are waiting
+ * for one. Updated once per update queued and once per sync, so it is kept whether or not metrics are enabled.
+ */
+public class LogSyncStats {
+
+  // upper bounds, in milliseconds, of the buckets of the sync time histogram; a last bucket counts the longer syncs
+  static final long[] SYNC_TIME_BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+  private final AtomicLong syncs = new AtomicLong();
+  private final AtomicLong synced = new AtomicLong();
+  private final AtomicLong maxBatchSize = new AtomicLong();
+  private final AtomicLong syncNanos = new AtomicLong();
+  private final AtomicLong maxSyncNanos = new AtomicLong();
+  private final AtomicLong delayNanos = new AtomicLong();
+  private final AtomicLongArray syncTimes = new AtomicLongArray(SYNC_TIME_BUCKETS.length + 1);
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicLong maxQueued = new AtomicLong();
+
+  private static void updateMax(AtomicLong max, long value) {
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value))
+      current = max.get();
+  }
+
+  void queued() {
+    updateMax(maxQueued, queued.incrementAndGet());
+  }
+
+  /**
+   * @param batchSize
+   *          the number of queued updates covered by the sync
+   * @param delay
+   *          nanoseconds the oldest update of the batch waited before the sync began
+   * @param syncTime
+   *          nanoseconds the sync took
+   */
+  void synced(int batchSize, long delay, long syncTime) {
+    queued.addAndGet(-batchSize);
+    syncs.incrementAndGet();
+    synced.addAndGet(batchSize);
+    updateMax(maxBatchSize, batchSize);
+    delayNanos.addAndGet(delay);
+    syncNanos.addAndGet(syncTime);
+    updateMax(maxSyncNanos, syncTime);
+
+    long millis = syncTime / 1000000;
+    int bucket = 0;
+    while (bucket < SYNC_TIME_BUCKETS.length && millis >= SYNC_TIME_BUCKETS[bucket])
+      bucket++;
+    syncTimes.incrementAndGet(bucket);
+  }
+
+  public long getSyncCount() {
+    return syncs.get();
+  }
+
+  public double getAvgBatchSize() {
+    long count = syncs.get();
+    return count == 0 ? 0 : synced.get() / (double) count;
+  }
+
+  public long getMaxBatchSize() {
+    return maxBatchSize.get();
+  }
+
+  /**
+   * @return average time of a sync, in milliseconds
+   */
+  public double getAvgSyncTime() {
+    long count = syncs.get();
+    return count == 0 ? 0 : syncNanos.get() / (count * 1000000.0);
+  }
+
+  /**
+   * @return longest time of a sync, in milliseconds
+   */
+  public long getMaxSyncTime() {
+    return maxSyncNanos.get() / 1000000;
+  }
+
+  /**
+   * @return average time, in milliseconds, the oldest update of each sync waited before the sync began
+   */
+  public double getAvgDelay() {
+    long count = syncs.get();
+    return count == 0 ? 0 : delayNanos.get() / (count * 1000000.0);
+  }
+
+  /**
+   * @return the number of syncs that took less than each bound of {@link #getSyncTimeHistogramBounds()}, followed by the number that took longer than all of
+   *         them
+   */
+  public long[] getSyncTimeHistogram() {
+    long[] counts = new long[syncTimes.length()];
+    for (int i = 0; i < counts.length; i++)
+      counts[i] = syncTimes.get(i);
+    return counts;
+  }
+
+  /**
+   * @return the upper bounds, in milliseconds, of the buckets of {@link #getSyncTimeHistogram()}
+   */
+  public long[] getSyncTimeHistogramBounds() {
+    return SYNC_TIME_BUCKETS.clone();
+  }
+
+  /**
+   * @return the number of updates written to a log and waiting for it to sync
+   */
+  public int getQueueDepth() {
+    return queued.get();
+  }
+
+  public long getMaxQueueDepth() {
+    return maxQueued.get();
+  }
+
+  /**
+   * Clears the counts, except for the number of updates currently waiting.
+   */
+  public void reset() {
+    syncs.set(0);
+    synced.set(0);
+    maxBatchSize.set(0);
+    syncNanos.set(0);
+    maxSyncNanos.set(0);
+    delayNanos.set(0);
+    for (int i = 0; i < syncTimes.length(); i++)
+      syncTimes.set(i, 0);
+    maxQueued.set(queued.get());
+  }
+}
@@ -104,6 +104,19 @@ public class MultiReader {
       throw new IOException("Sort \"finished\" flag not found in " + directory);
   }
   
+  /**
+   * Reads a single sorted part of a log, which may be read before the rest of the log has been sorted.
+   */
+  @SuppressWarnings("deprecation")
+  static MultiReader forPart(VolumeManager fs, Path part) throws IOException {
+    MultiReader result = new MultiReader();
+    FileSystem ns = fs.getFileSystemByPath(part);
+    result.heap.add(new Index(new Reader(ns, part.toString(), ns.getConf())));
+    return result;
+  }
+  
+  private MultiReader() {}
+  
   private static void copy(Writable src, Writable dest) throws IOException {
     // not exactly efficient...
     DataOutputBuffer output = new DataOutputBuffer();
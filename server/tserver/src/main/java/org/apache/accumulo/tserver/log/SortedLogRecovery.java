@@ -23,25 +23,48 @@ import static org.apache.accumulo.tserver.logger.LogEvents.MANY_MUTATIONS;
 import static org.apache.accumulo.tserver.logger.LogEvents.MUTATION;
 import static org.apache.accumulo.tserver.logger.LogEvents.OPEN;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.accumulo.core.data.KeyExtent;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.metadata.RootTable;
+import org.apache.accumulo.core.util.NamingThreadFactory;
 import org.apache.accumulo.server.fs.VolumeManager;
 import org.apache.accumulo.tserver.logger.LogFileKey;
 import org.apache.accumulo.tserver.logger.LogFileValue;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.log4j.Logger;
 
 /**
  * Extract Mutations for a tablet from a set of logs that have been sorted by operation and tablet.
  * 
+ * Mutations are read and decoded by another thread while the recovering thread applies them, so reading the sorted logs overlaps with writing to the tablet.
  */
 public class SortedLogRecovery {
   private static final Logger log = Logger.getLogger(SortedLogRecovery.class);
+
+  // the number of batches of mutations read ahead of the ones being applied
+  private static final int READ_AHEAD_BATCHES = 16;
+  private static final List<Mutation> END_OF_LOG = new ArrayList<Mutation>(0);
+  // how long to wait for the next part of a log that is still being sorted
+  private static final long SORT_POLL_MILLIS = 250;
+  private static final ExecutorService logReaders = Executors.newCachedThreadPool(new NamingThreadFactory("recovery log reader"));
   
   static class EmptyMapFileException extends Exception {
     private static final long serialVersionUID = 1L;
@@ -57,9 +80,29 @@ public class SortedLogRecovery {
 
   private VolumeManager fs;
 
+  private final long startTime = System.currentTimeMillis();
+  private volatile int logCount = 0;
+  private volatile int logsDone = 0;
+  private final AtomicLong mutationsReplayed = new AtomicLong();
+
   public SortedLogRecovery(VolumeManager fs) {
     this.fs = fs;
   }
+
+  /**
+   * @return the fraction of the work done, counting the scan for compactions and the replay of each log as equal parts
+   */
+  public double getProgress() {
+    return logCount == 0 ? 0 : logsDone / (2.0 * logCount);
+  }
+
+  public long getMutationsReplayed() {
+    return mutationsReplayed.get();
+  }
+
+  public long getRuntime() {
+    return System.currentTimeMillis() - startTime;
+  }
   
   private enum Status {
     INITIAL, LOOKING_FOR_FINISH, COMPLETE
@@ -92,6 +135,7 @@ public class SortedLogRecovery {
   
   public void recover(KeyExtent extent, List<Path> recoveryLogs, Set<String> tabletFiles, MutationReceiver mr) throws IOException {
     int[] tids = new int[recoveryLogs.size()];
+    logCount = recoveryLogs.size();
     LastStartToFinish lastStartToFinish = new LastStartToFinish();
     for (int i = 0; i < recoveryLogs.size(); i++) {
       Path logfile = recoveryLogs.get(i);
@@ -114,7 +158,7 @@ public class SortedLogRecovery {
           log.warn("Ignoring error closing file");
         }
       }
-      
+      logsDone++;
     }
     
     if (lastStartToFinish.compactionStatus == Status.LOOKING_FOR_FINISH)
@@ -132,10 +176,79 @@ public class SortedLogRecovery {
           log.warn("Ignoring error closing file");
         }
       }
+      logsDone++;
       log.info("Recovery complete for " + extent + " using " + logfile);
     }
   }
   
+  /**
+   * Replays the mutations of a tablet whose log entries record the id it was logged under and the sequence number of its last finished minor compaction. Only
+   * the mutations at or after that number are read from each log, without scanning the logs for the tablet's definition and compactions.
+   * 
+   * Nothing in a log has to be found before its mutations can be applied, so a log that is still being sorted is replayed one sorted part at a time, as each
+   * part is written. The parts of a log hold consecutive stretches of it, so replaying them in order applies the mutations in the order they were logged.
+   */
+  public void recover(KeyExtent extent, List<Path> recoveryLogs, int tid, int durableSeq, MutationReceiver mr) throws IOException {
+    logCount = recoveryLogs.size();
+    logsDone = logCount;
+    LastStartToFinish lastStartToFinish = new LastStartToFinish();
+    lastStartToFinish.seq = durableSeq;
+    for (Path logfile : recoveryLogs) {
+      if (fs.exists(new Path(logfile, "finished")))
+        playbackAndClose(new MultiReader(fs, logfile), tid, lastStartToFinish, mr);
+      else
+        playbackWhileSorting(extent, logfile, tid, lastStartToFinish, mr);
+      logsDone++;
+      log.info("Recovery complete for " + extent + " using " + logfile);
+    }
+  }
+
+  private void playbackWhileSorting(KeyExtent extent, Path logfile, int tid, LastStartToFinish lastStartToFinish, MutationReceiver mr) throws IOException {
+    log.info("Replaying " + logfile + " for " + extent + " while it is sorted");
+    String sortId = null;
+    int part = 0;
+    while (true) {
+      // the sort renames each part into place before it creates the finished flag
+      boolean finished = fs.exists(new Path(logfile, "finished"));
+      Path partPath = new Path(logfile, String.format(LogSorter.PART_FORMAT, part));
+      if (fs.exists(partPath)) {
+        sortId = checkSortId(logfile, sortId);
+        playbackAndClose(MultiReader.forPart(fs, partPath), tid, lastStartToFinish, mr);
+        // a restarted sort may have split the log differently, so the part that was read has to come from the same sort as the ones before it
+        checkSortId(logfile, sortId);
+        part++;
+      } else if (finished) {
+        checkSortId(logfile, sortId);
+        return;
+      } else if (fs.exists(new Path(logfile, "failed"))) {
+        throw new IOException("Sort of " + logfile + " failed while replaying it for " + extent);
+      } else {
+        try {
+          Thread.sleep(SORT_POLL_MILLIS);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+    }
+  }
+
+  private String checkSortId(Path logfile, String expected) throws IOException {
+    String sortId;
+    try {
+      FSDataInputStream in = fs.open(new Path(logfile, LogSorter.SORT_ID));
+      try {
+        sortId = in.readUTF();
+      } finally {
+        in.close();
+      }
+    } catch (FileNotFoundException e) {
+      sortId = null;
+    }
+    if (expected != null && !expected.equals(sortId))
+      throw new IOException("Sort of " + logfile + " was restarted while replaying it");
+    return sortId;
+  }
+
   int findLastStartToFinish(MultiReader reader, int fileno, KeyExtent extent, Set<String> tabletFiles, LastStartToFinish lastStartToFinish) throws IOException, EmptyMapFileException, UnusedException {
     // Scan for tableId for this extent (should always be in the log)
     LogFileKey key = new LogFileKey();
@@ -213,7 +326,91 @@ public class SortedLogRecovery {
     return tid;
   }
   
-  private void playbackMutations(MultiReader reader, int tid, LastStartToFinish lastStartToFinish, MutationReceiver mr) throws IOException {
+  private void playbackAndClose(MultiReader reader, int tid, LastStartToFinish lastStartToFinish, MutationReceiver mr) throws IOException {
+    try {
+      playbackMutations(reader, tid, lastStartToFinish, mr);
+    } finally {
+      try {
+        reader.close();
+      } catch (IOException ex) {
+        log.warn("Ignoring error closing file");
+      }
+    }
+  }
+
+  private void playbackMutations(final MultiReader reader, final int tid, final LastStartToFinish lastStartToFinish, MutationReceiver mr) throws IOException {
+    final BlockingQueue<List<Mutation>> batches = new ArrayBlockingQueue<List<Mutation>>(READ_AHEAD_BATCHES);
+    final AtomicBoolean readerStarted = new AtomicBoolean(false);
+    final CountDownLatch readerDone = new CountDownLatch(1);
+    Future<Void> reading = logReaders.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        // the recovering thread claims the reader if it gives up before the reader starts
+        if (!readerStarted.compareAndSet(false, true))
+          return null;
+        try {
+          readMutations(reader, tid, lastStartToFinish, batches);
+          batches.put(END_OF_LOG);
+        } catch (InterruptedException e) {
+          // the recovering thread stopped taking batches, so there is no one to tell
+        } catch (Exception e) {
+          if (!Thread.currentThread().isInterrupted())
+            batches.put(END_OF_LOG);
+          throw e;
+        } finally {
+          readerDone.countDown();
+        }
+        return null;
+      }
+    });
+
+    try {
+      while (true) {
+        List<Mutation> batch = batches.take();
+        if (batch == END_OF_LOG)
+          break;
+        for (Mutation m : batch) {
+          mr.receive(m);
+        }
+        mutationsReplayed.addAndGet(batch.size());
+      }
+      reading.get();
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw new IOException(e.getCause());
+    } finally {
+      // stops the reader if applying the mutations failed, and waits for it to let go of the log before it is closed
+      if (reading.cancel(true) && !readerStarted.compareAndSet(false, true))
+        awaitReader(readerDone, batches);
+    }
+  }
+
+  private static void awaitReader(CountDownLatch readerDone, BlockingQueue<List<Mutation>> batches) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        // make room in case the reader is putting a batch and missed the interrupt
+        batches.clear();
+        try {
+          if (readerDone.await(100, TimeUnit.MILLISECONDS))
+            return;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted)
+        Thread.currentThread().interrupt();
+    }
+  }
+
+  private void readMutations(MultiReader reader, int tid, LastStartToFinish lastStartToFinish, BlockingQueue<List<Mutation>> batches) throws IOException,
+      InterruptedException {
     LogFileKey key = new LogFileKey();
     LogFileValue value = new LogFileValue();
     
@@ -230,14 +427,11 @@ public class SortedLogRecovery {
         break;
       if (key.tid != tid)
         break;
-      // log.info("Replaying " + key);
-      // log.info(value);
+      // each value is read into a new list, so it can be handed to the recovering thread
       if (key.event == MUTATION) {
-        mr.receive(value.mutations.get(0));
+        batches.put(value.mutations.subList(0, 1));
       } else if (key.event == MANY_MUTATIONS) {
-        for (Mutation m : value.mutations) {
-          mr.receive(m);
-        }
+        batches.put(value.mutations);
       } else {
         throw new RuntimeException("unexpected log key type: " + key.event);
       }
@@ -20,11 +20,18 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -33,6 +40,8 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.accumulo.core.conf.Property;
 import org.apache.accumulo.core.data.KeyExtent;
 import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.master.thrift.RecoveryStatus;
+import org.apache.accumulo.core.util.NamingThreadFactory;
 import org.apache.accumulo.core.util.UtilWaitThread;
 import org.apache.accumulo.server.fs.VolumeManager;
 import org.apache.accumulo.tserver.Tablet;
@@ -49,39 +58,42 @@ import org.apache.log4j.Logger;
  * Forwards in-memory updates to remote logs, carefully writing the same data to every log, while maintaining the maximum thread parallelism for greater
  * performance. As new logs are used and minor compactions are performed, the metadata table is kept up-to-date.
  * 
+ * When configured with more than one log set, each tablet is written to a single set chosen from its extent. The sets are written and synced independently,
+ * so updates to tablets on different sets do not wait on each other.
+ * 
  */
 public class TabletServerLogger {
   
   private static final Logger log = Logger.getLogger(TabletServerLogger.class);
   
-  private final AtomicLong logSizeEstimate = new AtomicLong();
   private final long maxSize;
   
   private final TabletServer tserver;
   
-  // The current log set: always updated to a new set with every change of loggers
-  private final List<DfsLogger> loggers = new ArrayList<DfsLogger>();
+  // Each tablet writes to one of these, chosen from its extent, so that tablets on different logs do not wait on each other's syncs
+  private final LogSet[] logSets;
   
-  // The current generation of logSet.
-  // Because multiple threads can be using a log set at one time, a log
-  // failure is likely to affect multiple threads, who will all attempt to
-  // create a new logSet. This will cause many unnecessary updates to the
-  // metadata table.
-  // We'll use this generational counter to determine if another thread has
-  // already fetched a new logSet.
-  private AtomicInteger logSetId = new AtomicInteger();
+  private final AtomicInteger seqGen = new AtomicInteger();
   
-  // Use a ReadWriteLock to allow multiple threads to use the log set, but obtain a write lock to change them
-  private final ReentrantReadWriteLock logSetLock = new ReentrantReadWriteLock();
+  // the log recoveries of tablets being loaded, to report their progress
+  private final Map<KeyExtent,SortedLogRecovery> recoveries = Collections.synchronizedMap(new HashMap<KeyExtent,SortedLogRecovery>());
   
-  private final AtomicInteger seqGen = new AtomicInteger();
+  private final LogSyncStats syncStats = new LogSyncStats();
+  
+  // Writes the mutations of a batch to all but one of the logs it uses, while the calling thread writes the last
+  private static final ThreadPoolExecutor writerPool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60l, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+      new NamingThreadFactory("walog writer"));
   
   private static boolean enabled(Tablet tablet) {
     return tablet.getTableConfiguration().getBoolean(Property.TABLE_WALOG_ENABLED);
   }
   
+  private static Durability durability(CommitSession commitSession) {
+    return Durability.fromConfiguration(commitSession.getTablet().getTableConfiguration());
+  }
+  
   private static boolean enabled(CommitSession commitSession) {
-    return enabled(commitSession.getTablet());
+    return durability(commitSession) != Durability.NONE;
   }
   
   static private abstract class TestCallWithWriteLock {
@@ -129,200 +141,328 @@ public class TabletServerLogger {
   }
   
   public TabletServerLogger(TabletServer tserver, long maxSize) {
+    this(tserver, maxSize, 1);
+  }
+  
+  /**
+   * @param maxSize
+   *          the size at which each log is closed and a new one started
+   * @param numLogs
+   *          the number of logs written at once
+   */
+  public TabletServerLogger(TabletServer tserver, long maxSize, int numLogs) {
+    if (numLogs < 1)
+      throw new IllegalArgumentException("number of logs must be >= 1 " + numLogs);
     this.tserver = tserver;
     this.maxSize = maxSize;
+    this.logSets = new LogSet[numLogs];
+    for (int i = 0; i < numLogs; i++)
+      logSets[i] = new LogSet();
   }
   
-  private int initializeLoggers(final List<DfsLogger> copy) throws IOException {
-    final int[] result = {-1};
-    testLockAndRun(logSetLock, new TestCallWithWriteLock() {
-      boolean test() {
-        copy.clear();
-        copy.addAll(loggers);
-        if (!loggers.isEmpty())
-          result[0] = logSetId.get();
-        return loggers.isEmpty();
-      }
-      
-      void withWriteLock() throws IOException {
-        try {
-          createLoggers();
-          copy.clear();
-          copy.addAll(loggers);
-          if (copy.size() > 0)
-            result[0] = logSetId.get();
-          else
-            result[0] = -1;
-        } catch (IOException e) {
-          log.error("Unable to create loggers", e);
-        }
-      }
-    });
-    return result[0];
+  /**
+   * A tablet always uses the same log set for as long as it is hosted, so the logs referenced by its metadata entries are only ever the logs of one set.
+   */
+  private LogSet getLogSet(KeyExtent extent) {
+    return logSets[getLogSetIndex(extent)];
+  }
+
+  int getLogSetIndex(KeyExtent extent) {
+    if (logSets.length == 1)
+      return 0;
+    return Math.abs(extent.hashCode() % logSets.length);
   }
   
-  public void getLogFiles(Set<String> loggersOut) {
-    logSetLock.readLock().lock();
-    try {
-      for (DfsLogger logger : loggers) {
-        loggersOut.add(logger.getFileName());
-      }
-    } finally {
-      logSetLock.readLock().unlock();
-    }
+  /**
+   * @return the counts of the syncs of all the logs written by this server
+   */
+  public LogSyncStats getSyncStats() {
+    return syncStats;
   }
   
-  synchronized private void createLoggers() throws IOException {
-    if (!logSetLock.isWriteLockedByCurrentThread()) {
-      throw new IllegalStateException("createLoggers should be called with write lock held!");
-    }
-    
-    if (loggers.size() != 0) {
-      throw new IllegalStateException("createLoggers should not be called when loggers.size() is " + loggers.size());
-    }
-    
-    try {
-      DfsLogger alog = new DfsLogger(tserver.getServerConfig());
-      alog.open(tserver.getClientAddressString());
-      loggers.add(alog);
-      logSetId.incrementAndGet();
-      return;
-    } catch (Exception t) {
-      throw new RuntimeException(t);
+  /**
+   * @return the progress of the tablets replaying their logs, named after the tablet, to report along with the logs being sorted
+   */
+  public List<RecoveryStatus> getRecoveries() {
+    List<RecoveryStatus> result = new ArrayList<RecoveryStatus>();
+    synchronized (recoveries) {
+      for (Entry<KeyExtent,SortedLogRecovery> entry : recoveries.entrySet()) {
+        RecoveryStatus status = new RecoveryStatus();
+        status.name = "replay " + entry.getKey() + " (" + entry.getValue().getMutationsReplayed() + " mutations)";
+        status.progress = entry.getValue().getProgress();
+        status.runtime = (int) entry.getValue().getRuntime();
+        result.add(status);
+      }
     }
+    return result;
   }
   
-  public void resetLoggers() throws IOException {
-    logSetLock.writeLock().lock();
-    try {
-      close();
-    } finally {
-      logSetLock.writeLock().unlock();
-    }
+  public void getLogFiles(Set<String> loggersOut) {
+    for (LogSet logSet : logSets)
+      logSet.getLogFiles(loggersOut);
   }
   
-  synchronized private void close() throws IOException {
-    if (!logSetLock.isWriteLockedByCurrentThread()) {
-      throw new IllegalStateException("close should be called with write lock held!");
-    }
-    try {
-      for (DfsLogger logger : loggers) {
-        try {
-          logger.close();
-        } catch (DfsLogger.LogClosedException ex) {
-          // ignore
-        } catch (Throwable ex) {
-          log.error("Unable to cleanly close log " + logger.getFileName() + ": " + ex);
-        }
-      }
-      loggers.clear();
-      logSizeEstimate.set(0);
-    } catch (Throwable t) {
-      throw new IOException(t);
-    }
+  public void resetLoggers() throws IOException {
+    for (LogSet logSet : logSets)
+      logSet.resetLoggers();
   }
   
   interface Writer {
-    LoggerOperation write(DfsLogger logger, int seq) throws Exception;
+    List<LoggerOperation> write(DfsLogger logger, int seq) throws Exception;
   }
-  
-  private int write(CommitSession commitSession, boolean mincFinish, Writer writer) throws IOException {
-    List<CommitSession> sessions = Collections.singletonList(commitSession);
-    return write(sessions, mincFinish, writer);
+
+  private static final List<LoggerOperation> NO_OPERATIONS = Collections.emptyList();
+
+  /**
+   * Logs the mutations of each durability in an operation of its own, so the mutations that need less than a sync do not wait on one.
+   *
+   * @return the operations, from the weakest durability to the strongest
+   */
+  static List<LoggerOperation> logByDurability(DfsLogger logger, List<TabletMutations> mutations) throws IOException {
+    Map<Durability,List<TabletMutations>> byDurability = new EnumMap<Durability,List<TabletMutations>>(Durability.class);
+    for (TabletMutations tabletMutations : mutations) {
+      List<TabletMutations> list = byDurability.get(tabletMutations.getDurability());
+      if (list == null) {
+        list = new ArrayList<TabletMutations>();
+        byDurability.put(tabletMutations.getDurability(), list);
+      }
+      list.add(tabletMutations);
+    }
+    List<LoggerOperation> operations = new ArrayList<LoggerOperation>(byDurability.size());
+    for (List<TabletMutations> list : byDurability.values())
+      operations.add(logger.logManyTablets(list));
+    return operations;
   }
   
-  private int write(Collection<CommitSession> sessions, boolean mincFinish, Writer writer) throws IOException {
-    // Work very hard not to lock this during calls to the outside world
-    int currentLogSet = logSetId.get();
+  /**
+   * The logs written by some of the tablets of this server, along with the state needed to replace them when they fail or grow too large.
+   */
+  private class LogSet {
     
-    int seq = -1;
+    private final AtomicLong logSizeEstimate = new AtomicLong();
     
-    int attempt = 0;
-    boolean success = false;
-    while (!success) {
-      try {
-        // get a reference to the loggers that no other thread can touch
-        ArrayList<DfsLogger> copy = new ArrayList<DfsLogger>();
-        currentLogSet = initializeLoggers(copy);
-        
-        // add the logger to the log set for the memory in the tablet,
-        // update the metadata table if we've never used this tablet
-        
-        if (currentLogSet == logSetId.get()) {
-          for (CommitSession commitSession : sessions) {
-            if (commitSession.beginUpdatingLogsUsed(copy, mincFinish)) {
-              try {
-                // Scribble out a tablet definition and then write to the metadata table
-                defineTablet(commitSession);
-                if (currentLogSet == logSetId.get())
-                  tserver.addLoggersToMetadata(copy, commitSession.getExtent(), commitSession.getLogId());
-              } finally {
-                commitSession.finishUpdatingLogsUsed();
-              }
-            }
-          }
+    // The current log set: always updated to a new set with every change of loggers
+    private final List<DfsLogger> loggers = new ArrayList<DfsLogger>();
+    
+    // The current generation of logSet.
+    // Because multiple threads can be using a log set at one time, a log
+    // failure is likely to affect multiple threads, who will all attempt to
+    // create a new logSet. This will cause many unnecessary updates to the
+    // metadata table.
+    // We'll use this generational counter to determine if another thread has
+    // already fetched a new logSet.
+    private AtomicInteger logSetId = new AtomicInteger();
+    
+    // Use a ReadWriteLock to allow multiple threads to use the log set, but obtain a write lock to change them
+    private final ReentrantReadWriteLock logSetLock = new ReentrantReadWriteLock();
+    
+    private int initializeLoggers(final List<DfsLogger> copy) throws IOException {
+      final int[] result = {-1};
+      testLockAndRun(logSetLock, new TestCallWithWriteLock() {
+        boolean test() {
+          copy.clear();
+          copy.addAll(loggers);
+          if (!loggers.isEmpty())
+            result[0] = logSetId.get();
+          return loggers.isEmpty();
         }
         
-        // Make sure that the logs haven't changed out from underneath our copy
-        if (currentLogSet == logSetId.get()) {
-          
-          // write the mutation to the logs
-          seq = seqGen.incrementAndGet();
-          if (seq < 0)
-            throw new RuntimeException("Logger sequence generator wrapped!  Onos!!!11!eleven");
-          ArrayList<LoggerOperation> queuedOperations = new ArrayList<LoggerOperation>(copy.size());
-          for (DfsLogger wal : copy) {
-            LoggerOperation lop = writer.write(wal, seq);
-            if (lop != null)
-              queuedOperations.add(lop);
-          }
-          
-          for (LoggerOperation lop : queuedOperations) {
-            lop.await();
+        void withWriteLock() throws IOException {
+          try {
+            createLoggers();
+            copy.clear();
+            copy.addAll(loggers);
+            if (copy.size() > 0)
+              result[0] = logSetId.get();
+            else
+              result[0] = -1;
+          } catch (IOException e) {
+            log.error("Unable to create loggers", e);
           }
-          
-          // double-check: did the log set change?
-          success = (currentLogSet == logSetId.get());
         }
-      } catch (DfsLogger.LogClosedException ex) {
-        log.debug("Logs closed while writing, retrying " + (attempt + 1));
+      });
+      return result[0];
+    }
+    
+    void getLogFiles(Set<String> loggersOut) {
+      logSetLock.readLock().lock();
+      try {
+        for (DfsLogger logger : loggers) {
+          loggersOut.add(logger.getFileName());
+        }
+      } finally {
+        logSetLock.readLock().unlock();
+      }
+    }
+    
+    synchronized private void createLoggers() throws IOException {
+      if (!logSetLock.isWriteLockedByCurrentThread()) {
+        throw new IllegalStateException("createLoggers should be called with write lock held!");
+      }
+      
+      if (loggers.size() != 0) {
+        throw new IllegalStateException("createLoggers should not be called when loggers.size() is " + loggers.size());
+      }
+      
+      try {
+        DfsLogger alog = new DfsLogger(tserver.getServerConfig(), syncStats);
+        alog.open(tserver.getClientAddressString());
+        loggers.add(alog);
+        logSetId.incrementAndGet();
+        return;
       } catch (Exception t) {
-        log.error("Unexpected error writing to log, retrying attempt " + (attempt + 1), t);
-        UtilWaitThread.sleep(100);
+        throw new RuntimeException(t);
+      }
+    }
+    
+    void resetLoggers() throws IOException {
+      logSetLock.writeLock().lock();
+      try {
+        close();
       } finally {
-        attempt++;
+        logSetLock.writeLock().unlock();
+      }
+    }
+    
+    synchronized private void close() throws IOException {
+      if (!logSetLock.isWriteLockedByCurrentThread()) {
+        throw new IllegalStateException("close should be called with write lock held!");
+      }
+      try {
+        for (DfsLogger logger : loggers) {
+          try {
+            logger.close();
+          } catch (DfsLogger.LogClosedException ex) {
+            // ignore
+          } catch (Throwable ex) {
+            log.error("Unable to cleanly close log " + logger.getFileName() + ": " + ex);
+          }
+        }
+        loggers.clear();
+        logSizeEstimate.set(0);
+      } catch (Throwable t) {
+        throw new IOException(t);
       }
-      // Some sort of write failure occurred. Grab the write lock and reset the logs.
-      // But since multiple threads will attempt it, only attempt the reset when
-      // the logs haven't changed.
-      final int finalCurrent = currentLogSet;
-      if (!success) {
-        testLockAndRun(logSetLock, new TestCallWithWriteLock() {
+    }
+    
+    int write(Collection<CommitSession> sessions, boolean mincFinish, Writer writer) throws IOException {
+      // Work very hard not to lock this during calls to the outside world
+      int currentLogSet = logSetId.get();
+      
+      int seq = -1;
+      
+      int attempt = 0;
+      boolean success = false;
+      while (!success) {
+        try {
+          // get a reference to the loggers that no other thread can touch
+          ArrayList<DfsLogger> copy = new ArrayList<DfsLogger>();
+          currentLogSet = initializeLoggers(copy);
+          
+          // add the logger to the log set for the memory in the tablet,
+          // update the metadata table if we've never used this tablet
           
-          @Override
-          boolean test() {
-            return finalCurrent == logSetId.get();
+          if (currentLogSet == logSetId.get()) {
+            for (CommitSession commitSession : sessions) {
+              if (commitSession.beginUpdatingLogsUsed(copy, mincFinish)) {
+                try {
+                  // Scribble out a tablet definition and then write to the metadata table
+                  defineTablet(commitSession);
+                  if (currentLogSet == logSetId.get())
+                    tserver.addLoggersToMetadata(copy, commitSession.getExtent(), commitSession.getLogId(), commitSession.getDurableLogSeq());
+                } finally {
+                  commitSession.finishUpdatingLogsUsed();
+                }
+              }
+            }
           }
           
-          @Override
-          void withWriteLock() throws IOException {
-            close();
+          // Make sure that the logs haven't changed out from underneath our copy
+          if (currentLogSet == logSetId.get()) {
+            
+            // write the mutation to the logs
+            seq = seqGen.incrementAndGet();
+            if (seq < 0)
+              throw new RuntimeException("Logger sequence generator wrapped!  Onos!!!11!eleven");
+            ArrayList<LoggerOperation> queuedOperations = new ArrayList<LoggerOperation>(copy.size());
+            for (DfsLogger wal : copy) {
+              queuedOperations.addAll(writer.write(wal, seq));
+            }
+            
+            for (LoggerOperation lop : queuedOperations) {
+              lop.await();
+            }
+            
+            // double-check: did the log set change?
+            success = (currentLogSet == logSetId.get());
           }
-        });
+        } catch (DfsLogger.LogClosedException ex) {
+          log.debug("Logs closed while writing, retrying " + (attempt + 1));
+        } catch (Exception t) {
+          log.error("Unexpected error writing to log, retrying attempt " + (attempt + 1), t);
+          UtilWaitThread.sleep(100);
+        } finally {
+          attempt++;
+        }
+        // Some sort of write failure occurred. Grab the write lock and reset the logs.
+        // But since multiple threads will attempt it, only attempt the reset when
+        // the logs haven't changed.
+        final int finalCurrent = currentLogSet;
+        if (!success) {
+          testLockAndRun(logSetLock, new TestCallWithWriteLock() {
+            
+            @Override
+            boolean test() {
+              return finalCurrent == logSetId.get();
+            }
+            
+            @Override
+            void withWriteLock() throws IOException {
+              close();
+            }
+          });
+        }
       }
+      // if the log gets too big, reset it .. grab the write lock first
+      logSizeEstimate.addAndGet(4 * 3); // event, tid, seq overhead
+      testLockAndRun(logSetLock, new TestCallWithWriteLock() {
+        boolean test() {
+          return logSizeEstimate.get() > maxSize;
+        }
+        
+        void withWriteLock() throws IOException {
+          close();
+        }
+      });
+      return seq;
     }
-    // if the log gets too big, reset it .. grab the write lock first
-    logSizeEstimate.addAndGet(4 * 3); // event, tid, seq overhead
-    testLockAndRun(logSetLock, new TestCallWithWriteLock() {
-      boolean test() {
-        return logSizeEstimate.get() > maxSize;
-      }
-      
-      void withWriteLock() throws IOException {
-        close();
+    
+    int logManyTablets(final Map<CommitSession,List<Mutation>> loggables) throws IOException {
+      int seq = write(loggables.keySet(), false, new Writer() {
+        @Override
+        public List<LoggerOperation> write(DfsLogger logger, int ignored) throws Exception {
+          List<TabletMutations> copy = new ArrayList<TabletMutations>(loggables.size());
+          for (Entry<CommitSession,List<Mutation>> entry : loggables.entrySet()) {
+            CommitSession cs = entry.getKey();
+            copy.add(new TabletMutations(cs.getLogId(), cs.getWALogSeq(), entry.getValue(), durability(cs)));
+          }
+          return logByDurability(logger, copy);
+        }
+      });
+      for (List<Mutation> entry : loggables.values()) {
+        if (entry.size() < 1)
+          throw new IllegalArgumentException("logManyTablets: logging empty mutation list");
+        for (Mutation m : entry) {
+          logSizeEstimate.addAndGet(m.numBytes());
+        }
       }
-    });
-    return seq;
+      return seq;
+    }
+  }
+  
+  private int write(CommitSession commitSession, boolean mincFinish, Writer writer) throws IOException {
+    List<CommitSession> sessions = Collections.singletonList(commitSession);
+    return getLogSet(commitSession.getExtent()).write(sessions, mincFinish, writer);
   }
   
   public int defineTablet(final CommitSession commitSession) throws IOException {
@@ -331,9 +471,9 @@ public class TabletServerLogger {
       return -1;
     return write(commitSession, false, new Writer() {
       @Override
-      public LoggerOperation write(DfsLogger logger, int ignored) throws Exception {
+      public List<LoggerOperation> write(DfsLogger logger, int ignored) throws Exception {
         logger.defineTablet(commitSession.getWALogSeq(), commitSession.getLogId(), commitSession.getExtent());
-        return null;
+        return NO_OPERATIONS;
       }
     });
   }
@@ -343,42 +483,82 @@ public class TabletServerLogger {
       return -1;
     int seq = write(commitSession, false, new Writer() {
       @Override
-      public LoggerOperation write(DfsLogger logger, int ignored) throws Exception {
-        return logger.log(tabletSeq, commitSession.getLogId(), m);
+      public List<LoggerOperation> write(DfsLogger logger, int ignored) throws Exception {
+        return Collections.singletonList(logger.log(tabletSeq, commitSession.getLogId(), m, durability(commitSession)));
       }
     });
-    logSizeEstimate.addAndGet(m.numBytes());
+    getLogSet(commitSession.getExtent()).logSizeEstimate.addAndGet(m.numBytes());
     return seq;
   }
   
   public int logManyTablets(Map<CommitSession,List<Mutation>> mutations) throws IOException {
     
-    final Map<CommitSession,List<Mutation>> loggables = new HashMap<CommitSession,List<Mutation>>(mutations);
-    for (CommitSession t : mutations.keySet()) {
-      if (!enabled(t))
-        loggables.remove(t);
+    final Map<LogSet,Map<CommitSession,List<Mutation>>> loggables = new HashMap<LogSet,Map<CommitSession,List<Mutation>>>();
+    for (Entry<CommitSession,List<Mutation>> entry : mutations.entrySet()) {
+      if (!enabled(entry.getKey()))
+        continue;
+      LogSet logSet = getLogSet(entry.getKey().getExtent());
+      Map<CommitSession,List<Mutation>> sessions = loggables.get(logSet);
+      if (sessions == null) {
+        sessions = new HashMap<CommitSession,List<Mutation>>();
+        loggables.put(logSet, sessions);
+      }
+      sessions.put(entry.getKey(), entry.getValue());
     }
     if (loggables.size() == 0)
       return -1;
     
-    int seq = write(loggables.keySet(), false, new Writer() {
-      @Override
-      public LoggerOperation write(DfsLogger logger, int ignored) throws Exception {
-        List<TabletMutations> copy = new ArrayList<TabletMutations>(loggables.size());
-        for (Entry<CommitSession,List<Mutation>> entry : loggables.entrySet()) {
-          CommitSession cs = entry.getKey();
-          copy.add(new TabletMutations(cs.getLogId(), cs.getWALogSeq(), entry.getValue()));
+    if (loggables.size() == 1) {
+      Entry<LogSet,Map<CommitSession,List<Mutation>>> entry = loggables.entrySet().iterator().next();
+      return entry.getKey().logManyTablets(entry.getValue());
+    }
+    
+    List<Callable<Integer>> writes = new ArrayList<Callable<Integer>>(loggables.size());
+    for (final Entry<LogSet,Map<CommitSession,List<Mutation>>> entry : loggables.entrySet()) {
+      writes.add(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          return entry.getKey().logManyTablets(entry.getValue());
         }
-        return logger.logManyTablets(copy);
-      }
-    });
-    for (List<Mutation> entry : loggables.values()) {
-      if (entry.size() < 1)
-        throw new IllegalArgumentException("logManyTablets: logging empty mutation list");
-      for (Mutation m : entry) {
-        logSizeEstimate.addAndGet(m.numBytes());
+      });
+    }
+    return writeAll(writes);
+  }
+  
+  /**
+   * Each log set syncs on its own, so the writes to several sets are run at once, the last in the calling thread. Returns once all of them are done, even
+   * when one fails, so nothing is still writing the batch when the caller retries it.
+   * 
+   * @return the highest sequence number of the writes
+   */
+  static int writeAll(List<Callable<Integer>> writes) throws IOException {
+    List<Future<Integer>> futures = new ArrayList<Future<Integer>>(writes.size() - 1);
+    for (Callable<Integer> write : writes.subList(0, writes.size() - 1))
+      futures.add(writerPool.submit(write));
+    
+    int seq = -1;
+    Throwable error = null;
+    try {
+      seq = writes.get(writes.size() - 1).call();
+    } catch (Throwable t) {
+      error = t;
+    }
+    for (Future<Integer> future : futures) {
+      try {
+        seq = Math.max(seq, future.get());
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        if (error == null)
+          error = e.getCause();
       }
     }
+    if (error instanceof IOException)
+      throw (IOException) error;
+    if (error instanceof RuntimeException)
+      throw (RuntimeException) error;
+    if (error != null)
+      throw new RuntimeException(error);
     return seq;
   }
   
@@ -391,9 +571,9 @@ public class TabletServerLogger {
     
     int seq = write(commitSession, true, new Writer() {
       @Override
-      public LoggerOperation write(DfsLogger logger, int ignored) throws Exception {
+      public List<LoggerOperation> write(DfsLogger logger, int ignored) throws Exception {
         logger.minorCompactionFinished(walogSeq, commitSession.getLogId(), fullyQualifiedFileName);
-        return null;
+        return NO_OPERATIONS;
       }
     });
     
@@ -407,23 +587,37 @@ public class TabletServerLogger {
       return -1;
     write(commitSession, false, new Writer() {
       @Override
-      public LoggerOperation write(DfsLogger logger, int ignored) throws Exception {
+      public List<LoggerOperation> write(DfsLogger logger, int ignored) throws Exception {
         logger.minorCompactionStarted(seq, commitSession.getLogId(), fullyQualifiedFileName);
-        return null;
+        return NO_OPERATIONS;
       }
     });
     return seq;
   }
   
-  public void recover(VolumeManager fs, Tablet tablet, List<Path> logs, Set<String> tabletFiles, MutationReceiver mr) throws IOException {
+  /**
+   * @param tid
+   *          the id the tablet was logged under in all of the logs, negative if not known
+   * @param durableSeq
+   *          the sequence number below which the tablet's mutations are in its files, negative if not known; when it and the id are known the logs are not
+   *          scanned for compactions
+   */
+  public void recover(VolumeManager fs, Tablet tablet, List<Path> logs, Set<String> tabletFiles, int tid, int durableSeq, MutationReceiver mr)
+      throws IOException {
     if (!enabled(tablet))
       return;
+    KeyExtent extent = tablet.getExtent();
     try {
       SortedLogRecovery recovery = new SortedLogRecovery(fs);
-      KeyExtent extent = tablet.getExtent();
-      recovery.recover(extent, logs, tabletFiles, mr);
+      recoveries.put(extent, recovery);
+      if (tid >= 0 && durableSeq >= 0)
+        recovery.recover(extent, logs, tid, durableSeq, mr);
+      else
+        recovery.recover(extent, logs, tabletFiles, mr);
     } catch (Exception e) {
       throw new IOException(e);
+    } finally {
+      recoveries.remove(extent);
     }
   }
   
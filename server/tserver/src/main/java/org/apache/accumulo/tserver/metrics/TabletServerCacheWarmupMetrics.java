@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.metrics;
+
+import javax.management.ObjectName;
+
+import org.apache.accumulo.server.metrics.AbstractMetricsImpl;
+
+public class TabletServerCacheWarmupMetrics extends AbstractMetricsImpl implements TabletServerCacheWarmupMetricsMBean {
+  
+  static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(TabletServerCacheWarmupMetrics.class);
+  
+  private static final String METRICS_PREFIX = "tserver.cache.warmup";
+  
+  private static ObjectName OBJECT_NAME = null;
+  
+  public TabletServerCacheWarmupMetrics() {
+    super();
+    reset();
+    try {
+      OBJECT_NAME = new ObjectName("accumulo.server.metrics:service=TServerInfo,name=TabletServerCacheWarmupMetricsMBean,instance="
+          + Thread.currentThread().getName());
+    } catch (Exception e) {
+      log.error("Exception setting MBean object name", e);
+    }
+  }
+  
+  @Override
+  protected ObjectName getObjectName() {
+    return OBJECT_NAME;
+  }
+  
+  @Override
+  protected String getMetricsPrefix() {
+    return METRICS_PREFIX;
+  }
+  
+  public long getWarmupCount() {
+    return this.getMetricCount(warmup);
+  }
+  
+  public long getWarmupAvgTime() {
+    return this.getMetricAvg(warmup);
+  }
+  
+  public long getWarmupMinTime() {
+    return this.getMetricMin(warmup);
+  }
+  
+  public long getWarmupMaxTime() {
+    return this.getMetricMax(warmup);
+  }
+  
+  public long getWarmupAvgBlocks() {
+    return this.getMetricAvg(blocks);
+  }
+  
+  public long getWarmupMinBlocks() {
+    return this.getMetricMin(blocks);
+  }
+  
+  public long getWarmupMaxBlocks() {
+    return this.getMetricMax(blocks);
+  }
+  
+  public void reset() {
+    createMetric(warmup);
+    createMetric(blocks);
+  }
+  
+}
@@ -19,6 +19,7 @@ package org.apache.accumulo.tserver.metrics;
 import javax.management.ObjectName;
 
 import org.apache.accumulo.server.metrics.AbstractMetricsImpl;
+import org.apache.accumulo.tserver.log.LogSyncStats;
 
 public class TabletServerUpdateMetrics extends AbstractMetricsImpl implements TabletServerUpdateMetricsMBean {
   
@@ -28,8 +29,15 @@ public class TabletServerUpdateMetrics extends AbstractMetricsImpl implements Ta
   
   private static ObjectName OBJECT_NAME = null;
   
+  private final LogSyncStats syncStats;
+  
   public TabletServerUpdateMetrics() {
+    this(new LogSyncStats());
+  }
+  
+  public TabletServerUpdateMetrics(LogSyncStats syncStats) {
     super();
+    this.syncStats = syncStats;
     reset();
     try {
       OBJECT_NAME = new ObjectName("accumulo.server.metrics:service=TServerInfo,name=TabletServerUpdateMetricsMBean,instance="
@@ -121,6 +129,46 @@ public class TabletServerUpdateMetrics extends AbstractMetricsImpl implements Ta
     return this.getMetricAvg(commitTime);
   }
   
+  public long getWALogSyncCount() {
+    return syncStats.getSyncCount();
+  }
+  
+  public double getWALogSyncAvgBatchSize() {
+    return syncStats.getAvgBatchSize();
+  }
+  
+  public long getWALogSyncMaxBatchSize() {
+    return syncStats.getMaxBatchSize();
+  }
+  
+  public double getWALogSyncAvgTime() {
+    return syncStats.getAvgSyncTime();
+  }
+  
+  public long getWALogSyncMaxTime() {
+    return syncStats.getMaxSyncTime();
+  }
+  
+  public long[] getWALogSyncTimeHistogram() {
+    return syncStats.getSyncTimeHistogram();
+  }
+  
+  public long[] getWALogSyncTimeHistogramBounds() {
+    return syncStats.getSyncTimeHistogramBounds();
+  }
+  
+  public double getWALogSyncAvgDelay() {
+    return syncStats.getAvgDelay();
+  }
+  
+  public int getWALogSyncQueueDepth() {
+    return syncStats.getQueueDepth();
+  }
+  
+  public long getWALogSyncMaxQueueDepth() {
+    return syncStats.getMaxQueueDepth();
+  }
+  
   public void reset() {
     createMetric(permissionErrors);
     createMetric(unknownTabletErrors);
@@ -129,6 +177,7 @@ public class TabletServerUpdateMetrics extends AbstractMetricsImpl implements Ta
     createMetric(constraintViolations);
     createMetric(waLogWriteTime);
     createMetric(commitTime);
+    syncStats.reset();
   }
   
 }
@@ -62,5 +62,38 @@ public interface TabletServerUpdateMetricsMBean {
   
   public long getCommitAvgTime();
   
+  public long getWALogSyncCount();
+  
+  /**
+   * @return the average number of updates covered by a write-ahead log sync
+   */
+  public double getWALogSyncAvgBatchSize();
+  
+  public long getWALogSyncMaxBatchSize();
+  
+  public double getWALogSyncAvgTime();
+  
+  public long getWALogSyncMaxTime();
+  
+  /**
+   * @return the number of write-ahead log syncs that took less than each bound of {@link #getWALogSyncTimeHistogramBounds()} milliseconds, followed by the
+   *         number that took longer
+   */
+  public long[] getWALogSyncTimeHistogram();
+  
+  public long[] getWALogSyncTimeHistogramBounds();
+  
+  /**
+   * @return the average time, in milliseconds, the oldest update of a write-ahead log sync waited before the sync began
+   */
+  public double getWALogSyncAvgDelay();
+  
+  /**
+   * @return the number of updates written to the write-ahead logs and waiting for a sync
+   */
+  public int getWALogSyncQueueDepth();
+  
+  public long getWALogSyncMaxQueueDepth();
+  
   public void reset();
 }
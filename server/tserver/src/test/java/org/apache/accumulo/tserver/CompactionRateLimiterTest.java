@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class CompactionRateLimiterTest {
+
+  private static final int CHUNK = CompactionRateLimiter.CHUNK_SIZE;
+
+  @Test
+  public void testUnlimited() {
+    CompactionRateLimiter limiter = new CompactionRateLimiter(0);
+    AtomicLong counter = new AtomicLong(0);
+    CompactionRateLimiter.Throttle throttle = limiter.newThrottle(1, counter);
+
+    long t1 = System.currentTimeMillis();
+    for (int i = 0; i < 100; i++) {
+      throttle.read(CHUNK);
+      throttle.wrote(CHUNK / 2);
+    }
+    throttle.flush();
+    assertTrue(System.currentTimeMillis() - t1 < 1000);
+
+    assertEquals(100l * CHUNK, throttle.getBytesRead());
+    assertEquals(50l * CHUNK, throttle.getBytesWritten());
+    assertEquals(150l * CHUNK, counter.get());
+    assertEquals(0, throttle.getThrottledTime());
+  }
+
+  @Test
+  public void testLimited() {
+    CompactionRateLimiter limiter = new CompactionRateLimiter(8 * CHUNK);
+    AtomicLong counter = new AtomicLong(0);
+    CompactionRateLimiter.Throttle throttle = limiter.newThrottle(1, counter);
+
+    // the first chunk is allowed right away, the other eight take about a second
+    long t1 = System.currentTimeMillis();
+    for (int i = 0; i < 9; i++)
+      throttle.read(CHUNK);
+    long elapsed = System.currentTimeMillis() - t1;
+
+    assertTrue("" + elapsed, elapsed >= 750);
+    assertTrue(throttle.getThrottledTime() >= 500);
+    assertFalse(throttle.isThrottled());
+    assertEquals(9l * CHUNK, counter.get());
+
+    // bytes are only counted against the limit in chunks
+    throttle.read(CHUNK - 1);
+    assertEquals(9l * CHUNK, counter.get());
+    assertEquals(9l * CHUNK, throttle.getBytesRead());
+
+    // removing the limit lets the rest through right away
+    limiter.setRate(0);
+    t1 = System.currentTimeMillis();
+    for (int i = 0; i < 100; i++)
+      throttle.wrote(CHUNK);
+    assertTrue(System.currentTimeMillis() - t1 < 500);
+  }
+
+  @Test
+  public void testWeights() {
+    CompactionRateLimiter limiter = new CompactionRateLimiter(8 * CHUNK);
+    CompactionRateLimiter.Throttle throttle = limiter.newThrottle(4, new AtomicLong(0));
+
+    // with a weight of 4 each chunk counts as a quarter of a chunk against the limit
+    long t1 = System.currentTimeMillis();
+    for (int i = 0; i < 9; i++)
+      throttle.read(CHUNK);
+    long elapsed = System.currentTimeMillis() - t1;
+    assertTrue("" + elapsed, elapsed < 500);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadWeight() {
+    new CompactionRateLimiter(0).newThrottle(0, new AtomicLong(0));
+  }
+}
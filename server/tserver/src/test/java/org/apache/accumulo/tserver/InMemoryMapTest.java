@@ -30,12 +30,17 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.accumulo.core.data.ArrayByteSequence;
 import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.ColumnUpdate;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Range;
@@ -67,6 +72,14 @@ public class InMemoryMapTest {
   @Rule
   public TemporaryFolder tempFolder = new TemporaryFolder(new File(System.getProperty("user.dir") + "/target"));
 
+  protected InMemoryMap newInMemoryMap(Map<String,Set<ByteSequence>> lggroups, String memDumpDir) {
+    return new InMemoryMap(lggroups, false, memDumpDir);
+  }
+
+  private InMemoryMap newInMemoryMap(String memDumpDir) {
+    return newInMemoryMap(new HashMap<String,Set<ByteSequence>>(), memDumpDir);
+  }
+
   public void mutate(InMemoryMap imm, String row, String column, long ts) {
     Mutation m = new Mutation(new Text(row));
     String[] sa = column.split(":");
@@ -107,7 +120,7 @@ public class InMemoryMapTest {
 
   @Test
   public void test2() throws Exception {
-    InMemoryMap imm = new InMemoryMap(false, tempFolder.newFolder().getAbsolutePath());
+    InMemoryMap imm = newInMemoryMap(tempFolder.newFolder().getAbsolutePath());
 
     MemoryIterator ski1 = imm.skvIterator();
     mutate(imm, "r1", "foo:cq1", 3, "bar1");
@@ -125,7 +138,7 @@ public class InMemoryMapTest {
 
   @Test
   public void test3() throws Exception {
-    InMemoryMap imm = new InMemoryMap(false, tempFolder.newFolder().getAbsolutePath());
+    InMemoryMap imm = newInMemoryMap(tempFolder.newFolder().getAbsolutePath());
 
     mutate(imm, "r1", "foo:cq1", 3, "bar1");
     mutate(imm, "r1", "foo:cq1", 3, "bar2");
@@ -151,7 +164,7 @@ public class InMemoryMapTest {
 
   @Test
   public void test4() throws Exception {
-    InMemoryMap imm = new InMemoryMap(false, tempFolder.newFolder().getAbsolutePath());
+    InMemoryMap imm = newInMemoryMap(tempFolder.newFolder().getAbsolutePath());
 
     mutate(imm, "r1", "foo:cq1", 3, "bar1");
     mutate(imm, "r1", "foo:cq1", 3, "bar2");
@@ -183,7 +196,7 @@ public class InMemoryMapTest {
 
   @Test
   public void test5() throws Exception {
-    InMemoryMap imm = new InMemoryMap(false, tempFolder.newFolder().getAbsolutePath());
+    InMemoryMap imm = newInMemoryMap(tempFolder.newFolder().getAbsolutePath());
 
     mutate(imm, "r1", "foo:cq1", 3, "bar1");
     mutate(imm, "r1", "foo:cq1", 3, "bar2");
@@ -201,7 +214,7 @@ public class InMemoryMapTest {
 
     ski1.close();
 
-    imm = new InMemoryMap(false, tempFolder.newFolder().getAbsolutePath());
+    imm = newInMemoryMap(tempFolder.newFolder().getAbsolutePath());
 
     mutate(imm, "r1", "foo:cq1", 3, "bar1");
     mutate(imm, "r1", "foo:cq2", 3, "bar2");
@@ -222,7 +235,7 @@ public class InMemoryMapTest {
 
   @Test
   public void test6() throws Exception {
-    InMemoryMap imm = new InMemoryMap(false, tempFolder.newFolder().getAbsolutePath());
+    InMemoryMap imm = newInMemoryMap(tempFolder.newFolder().getAbsolutePath());
 
     mutate(imm, "r1", "foo:cq1", 3, "bar1");
     mutate(imm, "r1", "foo:cq2", 3, "bar2");
@@ -267,7 +280,7 @@ public class InMemoryMapTest {
 
   @Test
   public void testBug1() throws Exception {
-    InMemoryMap imm = new InMemoryMap(false, tempFolder.newFolder().getAbsolutePath());
+    InMemoryMap imm = newInMemoryMap(tempFolder.newFolder().getAbsolutePath());
 
     for (int i = 0; i < 20; i++) {
       mutate(imm, "r1", "foo:cq" + i, 3, "bar" + i);
@@ -295,7 +308,7 @@ public class InMemoryMapTest {
 
   @Test
   public void testSeekBackWards() throws Exception {
-    InMemoryMap imm = new InMemoryMap(false, tempFolder.newFolder().getAbsolutePath());
+    InMemoryMap imm = newInMemoryMap(tempFolder.newFolder().getAbsolutePath());
 
     mutate(imm, "r1", "foo:cq1", 3, "bar1");
     mutate(imm, "r1", "foo:cq2", 3, "bar2");
@@ -314,7 +327,7 @@ public class InMemoryMapTest {
 
   @Test
   public void testDuplicateKey() throws Exception {
-    InMemoryMap imm = new InMemoryMap(false, tempFolder.newFolder().getAbsolutePath());
+    InMemoryMap imm = newInMemoryMap(tempFolder.newFolder().getAbsolutePath());
 
     Mutation m = new Mutation(new Text("r1"));
     m.put(new Text("foo"), new Text("cq"), 3, new Value("v1".getBytes()));
@@ -344,7 +357,7 @@ public class InMemoryMapTest {
     for (int threads : new int[] {1, 2, 16, /* 64, 256 */}) {
       final long now = System.currentTimeMillis();
       final long counts[] = new long[threads];
-      final InMemoryMap imm = new InMemoryMap(false, tempFolder.newFolder().getAbsolutePath());
+      final InMemoryMap imm = newInMemoryMap(tempFolder.newFolder().getAbsolutePath());
       ExecutorService e = Executors.newFixedThreadPool(threads);
       for (int j = 0; j < threads; j++) {
         final int threadId = j;
@@ -378,6 +391,154 @@ public class InMemoryMapTest {
     }
   }
 
+  private void testConcurrentWriters(Map<String,Set<ByteSequence>> lggroups) throws Exception {
+    final InMemoryMap imm = newInMemoryMap(lggroups, tempFolder.newFolder().getAbsolutePath());
+    final int numWriters = 8;
+    final int numMutations = 500;
+    final AtomicBoolean writing = new AtomicBoolean(true);
+
+    ExecutorService e = Executors.newFixedThreadPool(numWriters);
+    List<Future<?>> writers = new ArrayList<Future<?>>();
+    for (int t = 0; t < numWriters; t++) {
+      final int threadId = t;
+      writers.add(e.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < numMutations; i += 5) {
+            List<Mutation> mutations = new ArrayList<Mutation>();
+            for (int j = i; j < i + 5; j++) {
+              Mutation m = new Mutation(String.format("r%d_%04d", threadId, j));
+              for (String cf : new String[] {"cf1", "cf2", "cf3", "foo"})
+                m.put(cf, "cq", 1, "v");
+              mutations.add(m);
+            }
+            imm.mutate(mutations);
+          }
+        }
+      }));
+    }
+
+    // a scan must never see part of a mutation, even though the columns of a mutation are written to the map one at a time
+    Future<?> reader = Executors.newSingleThreadExecutor().submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        while (writing.get()) {
+          MemoryIterator iter = imm.skvIterator();
+          iter.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+          String row = null;
+          int count = 0;
+          while (iter.hasTop()) {
+            String r = iter.getTopKey().getRowData().toString();
+            if (!r.equals(row)) {
+              assertTrue(row + " " + count, row == null || count == 4);
+              row = r;
+              count = 0;
+            }
+            count++;
+            iter.next();
+          }
+          assertTrue(row + " " + count, row == null || count == 4);
+          iter.close();
+        }
+        return null;
+      }
+    });
+
+    for (Future<?> writer : writers)
+      writer.get();
+    writing.set(false);
+    reader.get();
+    e.shutdown();
+
+    assertEquals(numWriters * numMutations * 4, imm.getNumEntries());
+    MemoryIterator iter = imm.skvIterator();
+    iter.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+    int count = 0;
+    while (iter.hasTop()) {
+      count++;
+      iter.next();
+    }
+    assertEquals(numWriters * numMutations * 4, count);
+
+    // throws an exception if the kv counts of all writes were not published
+    imm.compactionIterator();
+    imm.delete(0);
+  }
+
+  @Test
+  public void testConcurrentWriters() throws Exception {
+    testConcurrentWriters(new HashMap<String,Set<ByteSequence>>());
+
+    Map<String,Set<ByteSequence>> lggroups = new HashMap<String,Set<ByteSequence>>();
+    lggroups.put("lg1", newCFSet("cf1", "cf2"));
+    lggroups.put("lg2", newCFSet("cf3"));
+    testConcurrentWriters(lggroups);
+  }
+
+  @Test
+  public void testWritesPublishedInOrder() throws Exception {
+    final InMemoryMap imm = newInMemoryMap(tempFolder.newFolder().getAbsolutePath());
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    // a mutation that blocks the first writer while it is writing to the map
+    final Mutation blocked = new Mutation("r1") {
+      @Override
+      public List<ColumnUpdate> getUpdates() {
+        entered.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return super.getUpdates();
+      }
+    };
+    blocked.put("cf", "cq", 1, "v1");
+
+    ExecutorService e = Executors.newFixedThreadPool(2);
+    Future<?> first = e.submit(new Runnable() {
+      @Override
+      public void run() {
+        imm.mutate(Collections.singletonList(blocked));
+      }
+    });
+    entered.await();
+
+    Future<?> second = e.submit(new Runnable() {
+      @Override
+      public void run() {
+        mutate(imm, "r2", "cf:cq", 1, "v2");
+      }
+    });
+
+    MemoryIterator iter;
+    try {
+      // maps with a single writer will not take the second write until the first finishes
+      long t1 = System.currentTimeMillis();
+      while (imm.getNumEntries() == 0 && System.currentTimeMillis() - t1 < 1000)
+        Thread.sleep(1);
+
+      // the second write may be in the map, but must not be seen until the write that started before it finishes
+      iter = imm.skvIterator();
+      iter.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+      assertFalse(iter.hasTop());
+      assertFalse(second.isDone());
+    } finally {
+      release.countDown();
+    }
+
+    first.get();
+    second.get();
+    e.shutdown();
+
+    iter = imm.skvIterator();
+    iter.seek(new Range(), LocalityGroupUtil.EMPTY_CF_SET, false);
+    ae(iter, "r1", "cf:cq", 1, "v1");
+    ae(iter, "r2", "cf:cq", 1, "v2");
+    assertFalse(iter.hasTop());
+  }
+
   @Test
   public void testLocalityGroups() throws Exception {
 
@@ -385,7 +546,7 @@ public class InMemoryMapTest {
     lggroups1.put("lg1", newCFSet("cf1", "cf2"));
     lggroups1.put("lg2", newCFSet("cf3", "cf4"));
 
-    InMemoryMap imm = new InMemoryMap(lggroups1, false, tempFolder.newFolder().getAbsolutePath());
+    InMemoryMap imm = newInMemoryMap(lggroups1, tempFolder.newFolder().getAbsolutePath());
 
     Mutation m1 = new Mutation("r1");
     m1.put("cf1", "x", 2, "1");
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.junit.Test;
+
+public class OffHeapMapTest {
+
+  private static MemKey nk(Random rand, int kvCount) {
+    byte[] cv = rand.nextBoolean() ? new byte[0] : "A".getBytes();
+    return new MemKey(String.format("r%03d", rand.nextInt(200)).getBytes(), ("cf" + rand.nextInt(3)).getBytes(), ("cq" + rand.nextInt(3)).getBytes(), cv,
+        rand.nextInt(4), rand.nextInt(10) == 0, false, kvCount);
+  }
+
+  private static void verify(TreeMap<Key,Value> expected, OffHeapMap map) throws Exception {
+    assertEquals(expected.size(), map.size());
+
+    Iterator<Entry<Key,Value>> iter = map.iterator();
+    for (Entry<Key,Value> entry : expected.entrySet()) {
+      assertTrue(iter.hasNext());
+      Entry<Key,Value> actual = iter.next();
+      assertEquals(entry.getKey(), actual.getKey());
+      assertEquals(((MemKey) entry.getKey()).kvCount, ((MemKey) actual.getKey()).kvCount);
+      assertEquals(entry.getValue(), actual.getValue());
+    }
+    assertFalse(iter.hasNext());
+  }
+
+  @Test
+  public void testOrder() throws Exception {
+    OffHeapMap map = new OffHeapMap();
+    TreeMap<Key,Value> expected = new TreeMap<Key,Value>(new MemKeyComparator());
+    Random rand = new Random(5);
+
+    // many keys only differ in their kvCount
+    for (int i = 0; i < 20000; i++) {
+      MemKey key = nk(rand, i);
+      Value value = new Value(("v" + i).getBytes());
+      map.put(key, value);
+      expected.put(key, value);
+    }
+    verify(expected, map);
+
+    for (int i = 0; i < 1000; i++) {
+      MemKey key = nk(rand, rand.nextInt(20000));
+      Entry<Key,Value> ceiling = expected.ceilingEntry(key);
+      Iterator<Entry<Key,Value>> iter = map.iterator(key);
+      if (ceiling == null) {
+        assertFalse(iter.hasNext());
+      } else {
+        assertEquals(ceiling.getKey(), iter.next().getKey());
+        // like NativeMap, get ignores the kvCount
+        assertEquals(ceiling.getKey().equals(key) ? ceiling.getValue() : null, map.get(key));
+      }
+
+      // a key that is not a MemKey sorts before all the MemKeys with the same fields
+      Key plain = new Key(key);
+      ceiling = expected.ceilingEntry(plain);
+      iter = map.iterator(plain);
+      if (ceiling != null) {
+        assertEquals(((MemKey) ceiling.getKey()).kvCount, ((MemKey) iter.next().getKey()).kvCount);
+        assertEquals(ceiling.getKey().equals(plain) ? ceiling.getValue() : null, map.get(plain));
+      }
+    }
+
+    map.delete();
+  }
+
+  @Test
+  public void testMutate() throws Exception {
+    OffHeapMap map = new OffHeapMap();
+    Mutation m = new Mutation("r1");
+    m.put("cf", "cq", 3, new Value("v1".getBytes()));
+    m.putDelete("cf", "cq", 3);
+    m.put("cf", "cq2", new Value("v2".getBytes()));
+    map.mutate(Collections.singletonList(m), 10);
+
+    SortedKeyValueIterator<Key,Value> iter = map.skvIterator();
+    iter.seek(new Range(), Collections.<ByteSequence> emptySet(), false);
+    Key deleted = new Key("r1", "cf", "cq", 3);
+    deleted.setDeleted(true);
+    assertEquals(deleted, iter.getTopKey());
+    assertEquals(11, ((MemKey) iter.getTopKey()).kvCount);
+    iter.next();
+    assertEquals(new Key("r1", "cf", "cq", 3), iter.getTopKey());
+    assertEquals(10, ((MemKey) iter.getTopKey()).kvCount);
+    assertEquals("v1", iter.getTopValue().toString());
+    iter.next();
+    assertEquals(12, ((MemKey) iter.getTopKey()).kvCount);
+    assertEquals("v2", iter.getTopValue().toString());
+    iter.next();
+    assertFalse(iter.hasTop());
+
+    iter.seek(new Range("r1", "r1"), Collections.<ByteSequence> emptySet(), false);
+    assertTrue(iter.hasTop());
+    iter.seek(new Range("r2", null), Collections.<ByteSequence> emptySet(), false);
+    assertFalse(iter.hasTop());
+    iter.seek(new Range(null, "r0"), Collections.<ByteSequence> emptySet(), false);
+    assertFalse(iter.hasTop());
+
+    map.delete();
+  }
+
+  @Test
+  public void testLargeValuesAndMemory() throws Exception {
+    OffHeapMap map = new OffHeapMap();
+    long initial = map.getMemoryUsed();
+    assertTrue(initial > 0);
+
+    TreeMap<Key,Value> expected = new TreeMap<Key,Value>(new MemKeyComparator());
+    Random rand = new Random(7);
+    long dataSize = 0;
+    for (int i = 0; i < 500; i++) {
+      MemKey key = nk(rand, i);
+      // some values are larger than a slab
+      byte[] val = new byte[rand.nextInt(10) == 0 ? OffHeapMap.SLAB_SIZE * 2 : rand.nextInt(1000)];
+      rand.nextBytes(val);
+      map.put(key, new Value(val));
+      expected.put(key, new Value(val));
+      dataSize += key.getSize() + val.length;
+    }
+    verify(expected, map);
+
+    // everything allocated is counted, which is more than the data but not much more
+    long used = map.getMemoryUsed() - initial;
+    assertTrue(used > dataSize);
+    assertTrue(used + " " + dataSize, used < dataSize * 1.5);
+
+    map.delete();
+  }
+
+  @Test
+  public void testConcurrentReaders() throws Exception {
+    final OffHeapMap map = new OffHeapMap();
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    Thread[] readers = new Thread[4];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            while (!done.get()) {
+              SortedKeyValueIterator<Key,Value> iter = map.skvIterator();
+              iter.seek(new Range(), Collections.<ByteSequence> emptySet(), false);
+              Key prev = null;
+              while (iter.hasTop()) {
+                Key key = iter.getTopKey();
+                if (prev != null && new MemKeyComparator().compare(prev, key) >= 0)
+                  throw new IllegalStateException(prev + " " + key);
+                if (!iter.getTopValue().toString().equals(key.getRow().toString()))
+                  throw new IllegalStateException(key + " " + iter.getTopValue());
+                prev = key;
+                iter.next();
+              }
+            }
+          } catch (Throwable e) {
+            failure.set(e);
+          }
+        }
+      };
+      readers[t].start();
+    }
+
+    Random rand = new Random(11);
+    for (int i = 0; i < 50000; i++) {
+      String row = String.format("r%06d", rand.nextInt(100000));
+      map.put(new MemKey(row.getBytes(), new byte[0], new byte[0], new byte[0], 0, false, false, i), new Value(row.getBytes()));
+    }
+    done.set(true);
+    for (Thread reader : readers)
+      reader.join();
+
+    if (failure.get() != null)
+      throw new AssertionError(failure.get());
+    assertEquals(50000, map.size());
+    map.delete();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testDeleted() {
+    OffHeapMap map = new OffHeapMap();
+    map.delete();
+    map.put(new MemKey("r".getBytes(), new byte[0], new byte[0], new byte[0], 0, false, false, 1), new Value(new byte[0]));
+  }
+}
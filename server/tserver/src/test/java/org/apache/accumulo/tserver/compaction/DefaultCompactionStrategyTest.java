@@ -30,7 +30,9 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.ConfigurationCopy;
 import org.apache.accumulo.core.conf.DefaultConfiguration;
+import org.apache.accumulo.core.conf.Property;
 import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.KeyExtent;
@@ -144,7 +146,11 @@ public class DefaultCompactionStrategyTest {
     }
 
     TestCompactionRequest(KeyExtent extent, MajorCompactionReason reason, Map<FileRef,DataFileValue> files) {
-      super(extent, reason, null, dfault);
+      this(extent, reason, files, dfault);
+    }
+
+    TestCompactionRequest(KeyExtent extent, MajorCompactionReason reason, Map<FileRef,DataFileValue> files, AccumuloConfiguration conf) {
+      super(extent, reason, null, conf);
       setFiles(files);
     }
 
@@ -210,4 +216,59 @@ public class DefaultCompactionStrategyTest {
     assertEquals(asStringSet(plan.inputFiles), asSet("file1,file2,file3".split(",")));
 
   }
+
+  @Test
+  public void testPartitions() throws Exception {
+    DefaultCompactionStrategy s = new DefaultCompactionStrategy();
+    ConfigurationCopy conf = new ConfigurationCopy(dfault);
+    conf.set(Property.TABLE_MAJC_PARTITIONS, "4");
+    conf.set(Property.TABLE_MAJC_RATIO, "5");
+    KeyExtent extent = new KeyExtent(new Text("0"), null, null);
+
+    Map<FileRef,DataFileValue> files = new HashMap<FileRef,DataFileValue>();
+    for (String file : "file1,file2,file3".split(","))
+      files.put(new FileRef(file), new DataFileValue(10, 0));
+    CompactionPlan plan = s.getCompactionPlan(new TestCompactionRequest(extent, MajorCompactionReason.USER, files, conf));
+    assertEquals(3, plan.inputFiles.size());
+    assertEquals(4, plan.partitions);
+
+    // no more partitions than keep the files written from qualifying for compaction again
+    conf.set(Property.TABLE_MAJC_RATIO, "3");
+    plan = s.getCompactionPlan(new TestCompactionRequest(extent, MajorCompactionReason.IDLE, files, conf));
+    assertEquals(3, plan.inputFiles.size());
+    assertEquals(2, plan.partitions);
+
+    // compacting some of the files is not partitioned
+    files.put(new FileRef("file0"), new DataFileValue(100, 0));
+    plan = s.getCompactionPlan(new TestCompactionRequest(extent, MajorCompactionReason.NORMAL, files, conf));
+    assertEquals(3, plan.inputFiles.size());
+    assertEquals(1, plan.partitions);
+  }
+
+  @Test
+  public void testPartitionedOutputsAreNotCompactedAgain() throws Exception {
+    DefaultCompactionStrategy s = new DefaultCompactionStrategy();
+    KeyExtent extent = new KeyExtent(new Text("0"), null, null);
+    for (String ratio : "1,1.5,2,3,3.5,4,8".split(",")) {
+      ConfigurationCopy conf = new ConfigurationCopy(dfault);
+      conf.set(Property.TABLE_MAJC_PARTITIONS, "16");
+      conf.set(Property.TABLE_MAJC_RATIO, ratio);
+
+      Map<FileRef,DataFileValue> files = new HashMap<FileRef,DataFileValue>();
+      for (int i = 0; i < 8; i++)
+        files.put(new FileRef("file" + i), new DataFileValue(10, 0));
+      for (MajorCompactionReason reason : new MajorCompactionReason[] {MajorCompactionReason.NORMAL, MajorCompactionReason.IDLE}) {
+        CompactionPlan plan = s.getCompactionPlan(new TestCompactionRequest(extent, reason, files, conf));
+        assertEquals(8, plan.inputFiles.size());
+        assertTrue(plan.partitions < Double.parseDouble(ratio) || plan.partitions == 1);
+
+        // the compaction writes one file of the same size per partition, none of which should be selected again
+        Map<FileRef,DataFileValue> outputs = new HashMap<FileRef,DataFileValue>();
+        for (int i = 0; i < plan.partitions; i++)
+          outputs.put(new FileRef("output" + i), new DataFileValue(80 / plan.partitions, 0));
+        plan = s.getCompactionPlan(new TestCompactionRequest(extent, reason, outputs, conf));
+        assertTrue("ratio " + ratio + " " + reason, plan.inputFiles.isEmpty());
+      }
+    }
+  }
 }
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.log;
+
+import static org.apache.accumulo.tserver.logger.LogEvents.MANY_MUTATIONS;
+import static org.apache.accumulo.tserver.logger.LogEvents.OPEN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.ConfigurationCopy;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.conf.PropertyType;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.server.data.ServerMutation;
+import org.apache.accumulo.server.fs.VolumeManager;
+import org.apache.accumulo.server.fs.VolumeManagerImpl;
+import org.apache.accumulo.tserver.log.DfsLogger.DFSLoggerInputStreams;
+import org.apache.accumulo.tserver.logger.LogFileKey;
+import org.apache.accumulo.tserver.logger.LogFileValue;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompressedLogTest {
+
+  private static final int ENTRIES = 2000;
+
+  @Rule
+  public TemporaryFolder root = new TemporaryFolder(new File(System.getProperty("user.dir") + "/target"));
+
+  VolumeManager fs;
+
+  @Before
+  public void setUp() throws Exception {
+    // quiet log messages about compress.CodecPool
+    Logger.getRootLogger().setLevel(Level.ERROR);
+    fs = VolumeManagerImpl.getLocal();
+  }
+
+  private AccumuloConfiguration conf(String compression) {
+    // the default configuration leaves out the experimental crypto properties the log header needs
+    ConfigurationCopy conf = new ConfigurationCopy();
+    for (Property prop : Property.values())
+      if (prop.getType() != PropertyType.PREFIX)
+        conf.set(prop, prop.getDefaultValue());
+    conf.set(Property.TSERV_WAL_COMPRESSION_TYPE, compression);
+    return conf;
+  }
+
+  private Path writeLog(String name, AccumuloConfiguration conf) throws IOException {
+    Path path = new Path("file://" + root.getRoot().getAbsolutePath() + "/" + name);
+    FSDataOutputStream logFile = fs.create(path);
+    DataOutputStream out = DfsLogger.writeHeaderAndReturnStream(logFile, conf);
+
+    LogFileKey key = new LogFileKey();
+    key.event = OPEN;
+    key.tserverSession = name;
+    key.filename = name;
+    key.write(out);
+    new LogFileValue().write(out);
+
+    for (int i = 0; i < ENTRIES; i++) {
+      // the tablet server logs server mutations, which is what recovery reads back
+      ServerMutation m = new ServerMutation(new Text(String.format("row_%08d", i)));
+      m.put("family", "qualifier", "a value with the sort of text that compresses well " + i);
+      key = new LogFileKey();
+      key.event = MANY_MUTATIONS;
+      key.seq = i;
+      key.tid = 1;
+      LogFileValue value = new LogFileValue();
+      value.mutations = Collections.<Mutation> singletonList(m);
+      key.write(out);
+      value.write(out);
+      // like the tablet server, flush after some entries so the log is made of many blocks
+      if (i % 100 == 99)
+        out.flush();
+    }
+    out.close();
+    return path;
+  }
+
+  private int readLog(Path path, AccumuloConfiguration conf) throws IOException {
+    DFSLoggerInputStreams streams = DfsLogger.readHeaderAndReturnStream(fs, path, conf);
+    int count = 0;
+    try {
+      while (true) {
+        LogFileKey key = new LogFileKey();
+        LogFileValue value = new LogFileValue();
+        key.readFields(streams.getDecryptingInputStream());
+        value.readFields(streams.getDecryptingInputStream());
+        if (count == 0) {
+          assertEquals(OPEN, key.event);
+        } else {
+          assertEquals(MANY_MUTATIONS, key.event);
+          assertEquals(count - 1, key.seq);
+          assertEquals(String.format("row_%08d", count - 1), new String(value.mutations.get(0).getRow()));
+        }
+        count++;
+      }
+    } catch (EOFException ex) {
+      // end of the log
+    } finally {
+      streams.getDecryptingInputStream().close();
+    }
+    return count;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    AccumuloConfiguration none = conf("none");
+    AccumuloConfiguration gz = conf("gz");
+
+    Path uncompressed = writeLog("uncompressed", none);
+    Path compressed = writeLog("compressed", gz);
+
+    assertEquals(ENTRIES + 1, readLog(uncompressed, none));
+    // the compression is read from the header, not the configuration
+    assertEquals(ENTRIES + 1, readLog(compressed, none));
+
+    long uncompressedLen = fs.getFileStatus(uncompressed).getLen();
+    long compressedLen = fs.getFileStatus(compressed).getLen();
+    assertTrue(uncompressedLen + " " + compressedLen, compressedLen * 2 < uncompressedLen);
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    AccumuloConfiguration gz = conf("gz");
+    Path compressed = writeLog("compressed", gz);
+
+    // cut the last block short, as a tablet server that died while writing it would
+    RandomAccessFile file = new RandomAccessFile(new File(root.getRoot(), "compressed"), "rw");
+    file.setLength(file.length() - 10);
+    file.close();
+    new File(root.getRoot(), ".compressed.crc").delete();
+
+    // everything before the last block is read
+    assertEquals(ENTRIES + 1 - 100, readLog(compressed, gz));
+  }
+
+  @Test
+  public void testSort() throws IOException {
+    AccumuloConfiguration gz = conf("gz");
+    Path compressed = writeLog("compressed", gz);
+
+    String dest = "file://" + root.getRoot().getAbsolutePath() + "/sorted";
+    @SuppressWarnings("deprecation")
+    LogSorter logSorter = new LogSorter(null, fs, gz);
+    LogSorter.LogProcessor logProcessor = logSorter.new LogProcessor();
+    logProcessor.sort("compressed", compressed, dest);
+
+    assertTrue(fs.exists(new Path(dest, "finished")));
+    assertFalse(fs.exists(new Path(dest, "failed")));
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.ConfigurationCopy;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.conf.PropertyType;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.server.data.ServerMutation;
+import org.apache.accumulo.server.fs.VolumeManager;
+import org.apache.accumulo.server.master.state.TServerInstance;
+import org.apache.accumulo.tserver.TabletMutations;
+import org.apache.accumulo.tserver.log.DfsLogger.LoggerOperation;
+import org.apache.accumulo.tserver.log.DfsLogger.ServerResources;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+public class DurabilityTest {
+
+  @Test
+  public void testFromConfiguration() {
+    ConfigurationCopy conf = new ConfigurationCopy();
+    conf.set(Property.TABLE_WALOG_ENABLED, "true");
+    conf.set(Property.TABLE_DURABILITY, Property.TABLE_DURABILITY.getDefaultValue());
+    assertEquals(Durability.SYNC, Durability.fromConfiguration(conf));
+
+    conf.set(Property.TABLE_DURABILITY, "flush");
+    assertEquals(Durability.FLUSH, Durability.fromConfiguration(conf));
+    conf.set(Property.TABLE_DURABILITY, "log");
+    assertEquals(Durability.LOG, Durability.fromConfiguration(conf));
+    conf.set(Property.TABLE_DURABILITY, "none");
+    assertEquals(Durability.NONE, Durability.fromConfiguration(conf));
+
+    // turning off the write-ahead log overrides the durability
+    conf.set(Property.TABLE_DURABILITY, "sync");
+    conf.set(Property.TABLE_WALOG_ENABLED, "false");
+    assertEquals(Durability.NONE, Durability.fromConfiguration(conf));
+  }
+
+  @Test
+  public void testMax() {
+    assertEquals(Durability.SYNC, Durability.FLUSH.max(Durability.SYNC));
+    assertEquals(Durability.SYNC, Durability.SYNC.max(Durability.LOG));
+    assertEquals(Durability.LOG, Durability.NONE.max(Durability.LOG));
+    assertEquals(Durability.FLUSH, Durability.FLUSH.max(Durability.FLUSH));
+  }
+
+  @Test
+  public void testPropertyFormat() {
+    for (Durability durability : Durability.values())
+      assertTrue(Property.TABLE_DURABILITY.getType().isValidFormat(durability.name().toLowerCase()));
+    assertFalse(Property.TABLE_DURABILITY.getType().isValidFormat("SYNC"));
+    assertFalse(Property.TABLE_DURABILITY.getType().isValidFormat("hsync"));
+  }
+
+  /**
+   * Counts the syncs of a log, and holds them up while {@link #syncsBlocked} is not released.
+   */
+  private static class SyncCountingStream extends FSDataOutputStream {
+    final AtomicInteger syncs = new AtomicInteger();
+    volatile CountDownLatch syncsBlocked = new CountDownLatch(0);
+
+    SyncCountingStream() throws IOException {
+      super(new ByteArrayOutputStream(), null);
+    }
+
+    public void hsync() throws IOException {
+      try {
+        syncsBlocked.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      syncs.incrementAndGet();
+    }
+
+    public void hflush() throws IOException {
+      flush();
+    }
+  }
+
+  @Test
+  public void testWeakerMutationsDoNotWaitForSync() throws Exception {
+    final ConfigurationCopy conf = new ConfigurationCopy();
+    for (Property prop : Property.values())
+      if (prop.getType() != PropertyType.PREFIX)
+        conf.set(prop, prop.getDefaultValue());
+    DfsLogger logger = new DfsLogger(new ServerResources() {
+      @Override
+      public AccumuloConfiguration getConfiguration() {
+        return conf;
+      }
+
+      @Override
+      public VolumeManager getFileSystem() {
+        return null;
+      }
+
+      @Override
+      public Set<TServerInstance> getCurrentTServers() {
+        return null;
+      }
+    }, "/wal/localhost+9997/test");
+    SyncCountingStream stream = new SyncCountingStream();
+    logger.open(stream, "test");
+    int syncs = stream.syncs.get();
+
+    stream.syncsBlocked = new CountDownLatch(1);
+    List<Mutation> mutations = Collections.<Mutation> singletonList(new ServerMutation(new Text("row")));
+    List<LoggerOperation> operations = TabletServerLogger.logByDurability(logger,
+        Arrays.asList(new TabletMutations(1, 1, mutations, Durability.SYNC), new TabletMutations(2, 1, mutations, Durability.LOG)));
+    assertEquals(2, operations.size());
+
+    // the log-only mutations are done while the sync the other tablet needs is still held up
+    operations.get(0).await();
+    assertEquals(syncs, stream.syncs.get());
+
+    stream.syncsBlocked.countDown();
+    operations.get(1).await();
+    assertEquals(syncs + 1, stream.syncs.get());
+    logger.close();
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.log;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GroupCommitPolicyTest {
+
+  private static final long MS = 1000000;
+
+  @Test
+  public void testDisabled() {
+    GroupCommitPolicy policy = new GroupCommitPolicy(0, 16);
+    assertFalse(policy.isEnabled());
+    policy.arrived(MS);
+    policy.arrived(2 * MS);
+    assertEquals(0, policy.waitTime(1, 2 * MS, 2 * MS));
+
+    assertFalse(new GroupCommitPolicy(10 * MS, 1).isEnabled());
+  }
+
+  @Test
+  public void testWaitsWhileUpdatesArriveOften() {
+    GroupCommitPolicy policy = new GroupCommitPolicy(10 * MS, 4);
+    assertTrue(policy.isEnabled());
+
+    // nothing is known about the arrival rate yet
+    policy.arrived(100 * MS);
+    assertEquals(0, policy.waitTime(1, 100 * MS, 100 * MS));
+
+    policy.arrived(101 * MS);
+    policy.startBatch();
+    assertEquals(9 * MS, policy.waitTime(1, 101 * MS, 102 * MS));
+    // the target batch size was reached
+    assertEquals(0, policy.waitTime(4, 101 * MS, 102 * MS));
+    // the maximum delay was reached
+    assertEquals(0, policy.waitTime(1, 101 * MS, 111 * MS));
+    // the next update is not expected before the maximum delay
+    assertEquals(0, policy.waitTime(1, 101 * MS, 110500000));
+  }
+
+  @Test
+  public void testSkipsWaitForSparseUpdates() {
+    GroupCommitPolicy policy = new GroupCommitPolicy(10 * MS, 4);
+    for (int i = 1; i <= 10; i++)
+      policy.arrived(i * 50 * MS);
+    policy.startBatch();
+    assertEquals(0, policy.waitTime(1, 500 * MS, 500 * MS));
+  }
+
+  @Test
+  public void testStopsWaitingWhenNothingJoins() {
+    GroupCommitPolicy policy = new GroupCommitPolicy(10 * MS, 4);
+    policy.arrived(MS);
+    policy.arrived(2 * MS);
+
+    for (int i = 0; i < GroupCommitPolicy.MAX_MISSES; i++) {
+      policy.startBatch();
+      assertTrue(policy.waitTime(1, 2 * MS, 2 * MS) > 0);
+      policy.waited(false);
+    }
+
+    // only one batch in every PROBE_INTERVAL waits now
+    int waits = 0;
+    for (int i = 0; i < GroupCommitPolicy.PROBE_INTERVAL; i++) {
+      policy.startBatch();
+      if (policy.waitTime(1, 2 * MS, 2 * MS) > 0) {
+        waits++;
+        policy.waited(false);
+      }
+    }
+    assertEquals(1, waits);
+
+    // an update joining a probe turns waiting back on
+    while (true) {
+      policy.startBatch();
+      if (policy.waitTime(1, 2 * MS, 2 * MS) > 0)
+        break;
+    }
+    policy.waited(true);
+    policy.startBatch();
+    assertTrue(policy.waitTime(1, 2 * MS, 2 * MS) > 0);
+  }
+
+  @Test
+  public void testSyncStats() {
+    LogSyncStats stats = new LogSyncStats();
+    for (int i = 0; i < 6; i++)
+      stats.queued();
+    assertEquals(6, stats.getQueueDepth());
+
+    stats.synced(2, 3 * MS, 500000);
+    stats.synced(4, MS, 30 * MS);
+    assertEquals(0, stats.getQueueDepth());
+    assertEquals(6, stats.getMaxQueueDepth());
+    assertEquals(2, stats.getSyncCount());
+    assertEquals(3.0, stats.getAvgBatchSize(), 0.0001);
+    assertEquals(4, stats.getMaxBatchSize());
+    assertEquals(15.25, stats.getAvgSyncTime(), 0.0001);
+    assertEquals(30, stats.getMaxSyncTime());
+    assertEquals(2.0, stats.getAvgDelay(), 0.0001);
+
+    long[] expected = new long[LogSyncStats.SYNC_TIME_BUCKETS.length + 1];
+    expected[0] = 1;
+    expected[5] = 1;
+    assertArrayEquals(expected, stats.getSyncTimeHistogram());
+
+    stats.queued();
+    stats.reset();
+    assertEquals(0, stats.getSyncCount());
+    assertEquals(1, stats.getQueueDepth());
+    assertEquals(1, stats.getMaxQueueDepth());
+    assertArrayEquals(new long[expected.length], stats.getSyncTimeHistogram());
+  }
+}
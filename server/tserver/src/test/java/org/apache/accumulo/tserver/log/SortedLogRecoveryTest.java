@@ -19,6 +19,7 @@ package org.apache.accumulo.tserver.log;
 import static org.apache.accumulo.tserver.logger.LogEvents.COMPACTION_FINISH;
 import static org.apache.accumulo.tserver.logger.LogEvents.COMPACTION_START;
 import static org.apache.accumulo.tserver.logger.LogEvents.DEFINE_TABLET;
+import static org.apache.accumulo.tserver.logger.LogEvents.MANY_MUTATIONS;
 import static org.apache.accumulo.tserver.logger.LogEvents.MUTATION;
 import static org.apache.accumulo.tserver.logger.LogEvents.OPEN;
 
@@ -33,6 +34,13 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.accumulo.core.data.KeyExtent;
 import org.apache.accumulo.core.data.Mutation;
@@ -43,6 +51,7 @@ import org.apache.accumulo.server.fs.VolumeManagerImpl;
 import org.apache.accumulo.tserver.logger.LogEvents;
 import org.apache.accumulo.tserver.logger.LogFileKey;
 import org.apache.accumulo.tserver.logger.LogFileValue;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.MapFile;
@@ -115,6 +124,17 @@ public class SortedLogRecoveryTest {
   }
 
   private static List<Mutation> recover(Map<String,KeyValue[]> logs, Set<String> files, KeyExtent extent) throws IOException {
+    CaptureMutations capture = new CaptureMutations();
+    recover(logs, files, extent, capture);
+    return capture.result;
+  }
+
+  private static SortedLogRecovery recover(Map<String,KeyValue[]> logs, Set<String> files, KeyExtent extent, MutationReceiver mr) throws IOException {
+    return recover(logs, files, extent, -1, -1, mr);
+  }
+
+  private static SortedLogRecovery recover(Map<String,KeyValue[]> logs, Set<String> files, KeyExtent extent, int tid, int durableSeq, MutationReceiver mr)
+      throws IOException {
     TemporaryFolder root = new TemporaryFolder(new File(System.getProperty("user.dir") + "/target"));
     root.create();
     final String workdir = "file://" + root.getRoot().getAbsolutePath() + "/workdir";
@@ -136,9 +156,11 @@ public class SortedLogRecoveryTest {
       }
       // Recover
       SortedLogRecovery recovery = new SortedLogRecovery(fs);
-      CaptureMutations capture = new CaptureMutations();
-      recovery.recover(extent, dirs, files, capture);
-      return capture.result;
+      if (durableSeq >= 0)
+        recovery.recover(extent, dirs, tid, durableSeq, mr);
+      else
+        recovery.recover(extent, dirs, files, mr);
+      return recovery;
     } finally {
       root.delete();
     }
@@ -601,4 +623,208 @@ public class SortedLogRecoveryTest {
     Assert.assertEquals(1, mutations.size());
     Assert.assertEquals(m, mutations.get(0));
   }
+
+  @Test
+  public void testProgress() throws Exception {
+    Mutation[] many = new Mutation[1000];
+    for (int i = 0; i < many.length; i++) {
+      many[i] = new ServerMutation(new Text(String.format("row%04d", i)));
+      many[i].put(cf, cq, value);
+    }
+    KeyValue entries[] = new KeyValue[] {createKeyValue(OPEN, 0, -1, "1"), createKeyValue(DEFINE_TABLET, 1, 1, extent),
+        createKeyValue(MANY_MUTATIONS, 2, 1, many), createKeyValue(MANY_MUTATIONS, 3, 1, many),};
+    KeyValue entries2[] = new KeyValue[] {createKeyValue(OPEN, 0, -1, "1"), createKeyValue(DEFINE_TABLET, 1, 2, extent),
+        createKeyValue(MANY_MUTATIONS, 4, 2, many),};
+    Map<String,KeyValue[]> logs = new TreeMap<String,KeyValue[]>();
+    logs.put("entries", entries);
+    logs.put("entries2", entries2);
+
+    CaptureMutations capture = new CaptureMutations();
+    SortedLogRecovery recovery = recover(logs, new HashSet<String>(), extent, capture);
+    Assert.assertEquals(3000, capture.result.size());
+    Assert.assertEquals(3000, recovery.getMutationsReplayed());
+    Assert.assertEquals(1.0, recovery.getProgress(), 0.0001);
+  }
+
+  @Test
+  public void testReplayFailure() throws Exception {
+    Mutation[] many = new Mutation[100];
+    for (int i = 0; i < many.length; i++) {
+      many[i] = new ServerMutation(new Text(String.format("row%04d", i)));
+      many[i].put(cf, cq, value);
+    }
+    // more batches than are read ahead, so the reader is left waiting when applying the mutations fails
+    KeyValue entries[] = new KeyValue[50];
+    entries[0] = createKeyValue(OPEN, 0, -1, "1");
+    entries[1] = createKeyValue(DEFINE_TABLET, 1, 1, extent);
+    for (int i = 2; i < entries.length; i++)
+      entries[i] = createKeyValue(MANY_MUTATIONS, i, 1, many);
+    Map<String,KeyValue[]> logs = new TreeMap<String,KeyValue[]>();
+    logs.put("entries", entries);
+
+    try {
+      recover(logs, new HashSet<String>(), extent, new MutationReceiver() {
+        @Override
+        public void receive(Mutation m) {
+          throw new IllegalStateException("out of memory");
+        }
+      });
+      Assert.fail("the failure to apply a mutation should end the recovery");
+    } catch (IllegalStateException e) {
+      Assert.assertEquals("out of memory", e.getMessage());
+    }
+    // the reader was stopped before the recovery returned, rather than left blocked on the full read ahead queue
+    for (Entry<Thread,StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+      if (!entry.getKey().getName().startsWith("recovery log reader"))
+        continue;
+      for (StackTraceElement frame : entry.getValue())
+        Assert.assertFalse(entry.getKey() + " is still reading " + Arrays.toString(entry.getValue()), frame.getClassName().startsWith(SortedLogRecovery.class.getName()));
+    }
+  }
+
+  @Test
+  public void testDurableSeq() throws Exception {
+    Mutation ignored = new ServerMutation(new Text("ignored"));
+    ignored.put(cf, cq, value);
+    Mutation m = new ServerMutation(new Text("row1"));
+    m.put(cf, cq, value);
+    Mutation m2 = new ServerMutation(new Text("row2"));
+    m2.put(cf, cq, value);
+    Mutation other = new ServerMutation(new Text("other"));
+    other.put(cf, cq, value);
+    KeyExtent otherExtent = new KeyExtent(new Text("table"), new Text("a"), null);
+    // another tablet defined in the same logs, with mutations after this tablet's
+    KeyValue entries[] = new KeyValue[] {createKeyValue(OPEN, 0, -1, "1"), createKeyValue(DEFINE_TABLET, 1, 1, extent),
+        createKeyValue(DEFINE_TABLET, 1, 2, otherExtent), createKeyValue(MUTATION, 2, 1, ignored), createKeyValue(COMPACTION_START, 3, 1, "/t/f1"),
+        createKeyValue(MUTATION, 4, 1, m), createKeyValue(MUTATION, 4, 2, other),};
+    KeyValue entries2[] = new KeyValue[] {createKeyValue(OPEN, 0, -1, "1"), createKeyValue(DEFINE_TABLET, 1, 1, extent),
+        createKeyValue(DEFINE_TABLET, 1, 2, otherExtent), createKeyValue(COMPACTION_FINISH, 5, 1, null), createKeyValue(MUTATION, 4, 1, m2),
+        createKeyValue(MUTATION, 5, 2, other),};
+    Arrays.sort(entries);
+    Arrays.sort(entries2);
+    Map<String,KeyValue[]> logs = new TreeMap<String,KeyValue[]>();
+    logs.put("entries", entries);
+    logs.put("entries2", entries2);
+
+    List<Mutation> scanned = recover(logs, extent);
+    Assert.assertEquals(Arrays.asList(m, m2), scanned);
+
+    // the metadata entries of the logs say the minor compaction started at 3 finished, so the logs do not need to be scanned for it
+    CaptureMutations capture = new CaptureMutations();
+    SortedLogRecovery recovery = recover(logs, new HashSet<String>(), extent, 1, 3, capture);
+    Assert.assertEquals(scanned, capture.result);
+    Assert.assertEquals(1.0, recovery.getProgress(), 0.0001);
+  }
+
+  private static void writePart(VolumeManager fs, Path dir, int part, KeyValue... entries) throws IOException {
+    // like the sort, only makes the part visible once it is complete
+    Path path = new Path(dir, String.format(LogSorter.PART_FORMAT, part));
+    Path tmpPath = new Path(dir, "_" + path.getName());
+    FileSystem ns = fs.getFileSystemByPath(tmpPath);
+    @SuppressWarnings("deprecation")
+    Writer map = new MapFile.Writer(ns.getConf(), ns, tmpPath.toString(), LogFileKey.class, LogFileValue.class);
+    for (KeyValue lfe : entries) {
+      map.append(lfe.key, lfe.value);
+    }
+    map.close();
+    Assert.assertTrue(fs.rename(tmpPath, path));
+  }
+
+  private static void writeSortId(VolumeManager fs, Path dir, String sortId) throws IOException {
+    FSDataOutputStream out = fs.create(new Path(dir, LogSorter.SORT_ID), true);
+    out.writeUTF(sortId);
+    out.close();
+  }
+
+  private static class FirstMutation extends CaptureMutations {
+    final CountDownLatch received = new CountDownLatch(1);
+
+    @Override
+    public void receive(Mutation m) {
+      super.receive(m);
+      received.countDown();
+    }
+  }
+
+  @Test
+  public void testReplayWhileSorting() throws Exception {
+    Mutation ignored = new ServerMutation(new Text("ignored"));
+    ignored.put(cf, cq, value);
+    Mutation m = new ServerMutation(new Text("row1"));
+    m.put(cf, cq, value);
+    Mutation m2 = new ServerMutation(new Text("row2"));
+    m2.put(cf, cq, value);
+
+    TemporaryFolder root = new TemporaryFolder(new File(System.getProperty("user.dir") + "/target"));
+    root.create();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final VolumeManager fs = VolumeManagerImpl.getLocal();
+      final Path dir = new Path("file://" + root.getRoot().getAbsolutePath() + "/workdir/entries");
+      writeSortId(fs, dir, "first");
+      writePart(fs, dir, 0, createKeyValue(OPEN, 0, -1, "1"), createKeyValue(DEFINE_TABLET, 1, 1, extent), createKeyValue(MUTATION, 2, 1, ignored),
+          createKeyValue(MUTATION, 4, 1, m));
+
+      final FirstMutation capture = new FirstMutation();
+      final SortedLogRecovery recovery = new SortedLogRecovery(fs);
+      Future<Void> replay = executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          recovery.recover(extent, Collections.singletonList(dir), 1, 3, capture);
+          return null;
+        }
+      });
+
+      // the first part is replayed before the sort has written the next one
+      Assert.assertTrue(capture.received.await(10, TimeUnit.SECONDS));
+      Assert.assertFalse(replay.isDone());
+      writePart(fs, dir, 1, createKeyValue(MUTATION, 5, 1, m2));
+      fs.create(new Path(dir, "finished")).close();
+      replay.get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(Arrays.asList(m, m2), capture.result);
+      Assert.assertEquals(2, recovery.getMutationsReplayed());
+    } finally {
+      executor.shutdownNow();
+      root.delete();
+    }
+  }
+
+  @Test
+  public void testSortRestartedWhileReplaying() throws Exception {
+    Mutation m = new ServerMutation(new Text("row1"));
+    m.put(cf, cq, value);
+
+    TemporaryFolder root = new TemporaryFolder(new File(System.getProperty("user.dir") + "/target"));
+    root.create();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final VolumeManager fs = VolumeManagerImpl.getLocal();
+      final Path dir = new Path("file://" + root.getRoot().getAbsolutePath() + "/workdir/entries");
+      writeSortId(fs, dir, "first");
+      writePart(fs, dir, 0, createKeyValue(OPEN, 0, -1, "1"), createKeyValue(DEFINE_TABLET, 1, 1, extent), createKeyValue(MUTATION, 4, 1, m));
+
+      final FirstMutation capture = new FirstMutation();
+      Future<Void> replay = executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          new SortedLogRecovery(fs).recover(extent, Collections.singletonList(dir), 1, 3, capture);
+          return null;
+        }
+      });
+
+      // another sort of the log may split it into different parts, so its parts can not be mixed with the ones already replayed
+      Assert.assertTrue(capture.received.await(10, TimeUnit.SECONDS));
+      writeSortId(fs, dir, "second");
+      writePart(fs, dir, 1, createKeyValue(MUTATION, 5, 1, m));
+      try {
+        replay.get(10, TimeUnit.SECONDS);
+        Assert.fail("replaying the parts of a restarted sort should fail");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof IOException);
+      }
+    } finally {
+      executor.shutdownNow();
+      root.delete();
+    }
+  }
 }
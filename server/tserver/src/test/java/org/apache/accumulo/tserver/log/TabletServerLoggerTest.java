@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.tserver.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.accumulo.core.data.KeyExtent;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+public class TabletServerLoggerTest {
+
+  private static KeyExtent extent(int i) {
+    return new KeyExtent(new Text(Integer.toString(i % 7)), new Text(String.format("r%05d", i + 1)), new Text(String.format("r%05d", i)));
+  }
+
+  @Test
+  public void testExtentsSpreadAcrossLogSets() {
+    final int sets = 4;
+    final int extents = 4000;
+    TabletServerLogger logger = new TabletServerLogger(null, 1 << 20, sets);
+    int[] counts = new int[sets];
+    for (int i = 0; i < extents; i++) {
+      int index = logger.getLogSetIndex(extent(i));
+      assertTrue(index >= 0 && index < sets);
+      assertEquals(index, logger.getLogSetIndex(extent(i)));
+      counts[index]++;
+    }
+    for (int count : counts)
+      assertTrue(Arrays.toString(counts), count > extents / sets / 2);
+
+    TabletServerLogger single = new TabletServerLogger(null, 1 << 20, 1);
+    for (int i = 0; i < 100; i++)
+      assertEquals(0, single.getLogSetIndex(extent(i)));
+  }
+
+  private static class SlowWrite implements Callable<Integer> {
+    final int seq;
+    final long delay;
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final IOException error;
+
+    SlowWrite(int seq, long delay, IOException error) {
+      this.seq = seq;
+      this.delay = delay;
+      this.error = error;
+    }
+
+    @Override
+    public Integer call() throws Exception {
+      Thread.sleep(delay);
+      done.set(true);
+      if (error != null)
+        throw error;
+      return seq;
+    }
+  }
+
+  @Test
+  public void testBatchWaitsForEveryLogSet() throws Exception {
+    // the sets written by other threads finish well after the calling thread's
+    List<SlowWrite> writes = new ArrayList<SlowWrite>();
+    writes.add(new SlowWrite(7, 300, null));
+    writes.add(new SlowWrite(3, 200, null));
+    writes.add(new SlowWrite(5, 0, null));
+
+    assertEquals(7, TabletServerLogger.writeAll(new ArrayList<Callable<Integer>>(writes)));
+    for (SlowWrite write : writes)
+      assertTrue(write.done.get());
+  }
+
+  @Test
+  public void testIOExceptionInOneLogSetIsPropagated() throws Exception {
+    IOException failure = new IOException("log set failed");
+    List<SlowWrite> writes = new ArrayList<SlowWrite>();
+    writes.add(new SlowWrite(1, 0, failure));
+    writes.add(new SlowWrite(2, 300, null));
+    writes.add(new SlowWrite(3, 0, null));
+    try {
+      TabletServerLogger.writeAll(new ArrayList<Callable<Integer>>(writes));
+      fail("expected the failure of the first log set");
+    } catch (IOException e) {
+      assertSame(failure, e);
+    }
+    for (SlowWrite write : writes)
+      assertTrue(write.done.get());
+
+    // a failure in the calling thread still waits for the other sets
+    writes.clear();
+    writes.add(new SlowWrite(1, 300, null));
+    writes.add(new SlowWrite(2, 0, failure));
+    try {
+      TabletServerLogger.writeAll(new ArrayList<Callable<Integer>>(writes));
+      fail("expected the failure of the last log set");
+    } catch (IOException e) {
+      assertSame(failure, e);
+    }
+    for (SlowWrite write : writes)
+      assertTrue(write.done.get());
+  }
+}
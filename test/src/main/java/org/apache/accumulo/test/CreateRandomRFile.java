@@ -70,6 +70,7 @@ public class CreateRandomRFile {
     try {
       FileSystem fs = FileSystem.get(conf);
       mfw = new RFileOperations().openWriter(file, fs, conf, AccumuloConfiguration.getDefaultConfiguration());
+      mfw.startDefaultLocalityGroup();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
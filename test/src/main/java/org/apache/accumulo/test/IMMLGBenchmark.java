@@ -57,6 +57,15 @@ public class IMMLGBenchmark {
     
     int numlg = Integer.parseInt(args[0]);
     
+    // the in-memory map used is fixed when the tablet servers start, so compare the maps by restarting them with a different configuration
+    Map<String,String> sysConf = conn.instanceOperations().getSystemConfiguration();
+    String mapType = "default";
+    if (Boolean.parseBoolean(sysConf.get(Property.TSERV_NATIVEMAP_ENABLED.getKey())))
+      mapType = "native";
+    else if (Boolean.parseBoolean(sysConf.get(Property.TSERV_OFFHEAPMAP_ENABLED.getKey())))
+      mapType = "off-heap";
+    System.out.println("in-memory map : " + mapType);
+    
     ArrayList<byte[]> cfset = new ArrayList<byte[]>();
     
     for (int i = 0; i < 32; i++) {
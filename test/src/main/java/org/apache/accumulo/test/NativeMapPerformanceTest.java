@@ -16,8 +16,10 @@
  */
 package org.apache.accumulo.test;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -30,6 +32,7 @@ import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.util.FastFormat;
 import org.apache.accumulo.core.util.UtilWaitThread;
 import org.apache.accumulo.tserver.NativeMap;
+import org.apache.accumulo.tserver.OffHeapMap;
 import org.apache.hadoop.io.Text;
 
 public class NativeMapPerformanceTest {
@@ -51,10 +54,11 @@ public class NativeMapPerformanceTest {
     m.put(new Text(FastFormat.toZeroPaddedString(c, 6, 10, COL_PREFIX)), ET, Long.MAX_VALUE, v);
   }
   
-  static void runPerformanceTest(int numRows, int numCols, int numLookups, String mapType) {
+  static void runPerformanceTest(int numRows, int numCols, int numLookups, String mapType, int batchSize) {
     
     SortedMap<Key,Value> tm = null;
     NativeMap nm = null;
+    OffHeapMap ohm = null;
     
     if (mapType.equals("SKIP_LIST"))
       tm = new ConcurrentSkipListMap<Key,Value>();
@@ -62,15 +66,19 @@ public class NativeMapPerformanceTest {
       tm = Collections.synchronizedSortedMap(new TreeMap<Key,Value>());
     else if (mapType.equals("NATIVE_MAP"))
       nm = new NativeMap();
+    else if (mapType.equals("OFF_HEAP_MAP"))
+      ohm = new OffHeapMap();
     else
-      throw new IllegalArgumentException(" map type must be SKIP_LIST, TREE_MAP, or NATIVE_MAP");
+      throw new IllegalArgumentException(" map type must be SKIP_LIST, TREE_MAP, NATIVE_MAP, or OFF_HEAP_MAP");
     
     Random rand = new Random(19);
     
     // puts
     long tps = System.currentTimeMillis();
     
-    if (nm != null) {
+    if (nm != null || ohm != null) {
+      // pass mutations to the map in batches, like a tablet server does for the mutations from a client
+      List<Mutation> batch = new ArrayList<Mutation>(batchSize);
       for (int i = 0; i < numRows; i++) {
         int row = rand.nextInt(1000000000);
         Mutation m = nm(row);
@@ -79,7 +87,14 @@ public class NativeMapPerformanceTest {
           Value val = new Value("test".getBytes());
           pc(m, col, val);
         }
-        nm.mutate(m, i);
+        batch.add(m);
+        if (batch.size() == batchSize || i == numRows - 1) {
+          if (nm != null)
+            nm.mutate(batch, i - batch.size() + 1);
+          else
+            ohm.mutate(batch, i - batch.size() + 1);
+          batch.clear();
+        }
       }
     } else {
       for (int i = 0; i < numRows; i++) {
@@ -99,6 +114,8 @@ public class NativeMapPerformanceTest {
     Iterator<Entry<Key,Value>> iter;
     if (nm != null) {
       iter = nm.iterator();
+    } else if (ohm != null) {
+      iter = ohm.iterator();
     } else {
       iter = tm.entrySet().iterator();
     }
@@ -135,6 +152,13 @@ public class NativeMapPerformanceTest {
           throw new RuntimeException("Did not find " + rowsToLookup[i] + " " + colsToLookup[i] + " " + i);
         }
       }
+    } else if (ohm != null) {
+      for (int i = 0; i < numLookups; i++) {
+        Key key = nk(rowsToLookup[i], colsToLookup[i]);
+        if (ohm.get(key) == null) {
+          throw new RuntimeException("Did not find " + rowsToLookup[i] + " " + colsToLookup[i] + " " + i);
+        }
+      }
     } else {
       for (int i = 0; i < numLookups; i++) {
         Key key = nk(rowsToLookup[i], colsToLookup[i]);
@@ -148,15 +172,19 @@ public class NativeMapPerformanceTest {
     long memUsed = 0;
     if (nm != null) {
       memUsed = nm.getMemoryUsed();
+    } else if (ohm != null) {
+      memUsed = ohm.getMemoryUsed();
     }
     
-    int size = (nm == null ? tm.size() : nm.size());
+    int size = (nm != null ? nm.size() : ohm != null ? ohm.size() : tm.size());
     
     // delete
     long tds = System.currentTimeMillis();
     
     if (nm != null)
       nm.delete();
+    if (ohm != null)
+      ohm.delete();
     
     long tde = System.currentTimeMillis();
     
@@ -180,17 +208,18 @@ public class NativeMapPerformanceTest {
    */
   public static void main(String[] args) {
     
-    if (args.length != 3) {
-      throw new IllegalArgumentException("Usage : " + NativeMapPerformanceTest.class.getName() + " <map type> <rows> <columns>");
+    if (args.length != 3 && args.length != 4) {
+      throw new IllegalArgumentException("Usage : " + NativeMapPerformanceTest.class.getName() + " <map type> <rows> <columns> [mutations per batch]");
     }
     
     String mapType = args[0];
     int rows = Integer.parseInt(args[1]);
     int cols = Integer.parseInt(args[2]);
+    int batchSize = args.length == 4 ? Integer.parseInt(args[3]) : 1;
     
-    runPerformanceTest(rows, cols, 10000, mapType);
-    runPerformanceTest(rows, cols, 10000, mapType);
-    runPerformanceTest(rows, cols, 10000, mapType);
+    runPerformanceTest(rows, cols, 10000, mapType, batchSize);
+    runPerformanceTest(rows, cols, 10000, mapType, batchSize);
+    runPerformanceTest(rows, cols, 10000, mapType, batchSize);
     
   }
   
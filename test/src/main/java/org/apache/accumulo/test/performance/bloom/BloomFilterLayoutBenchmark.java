@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.test.performance.bloom;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Random;
+
+import org.apache.accumulo.core.cli.ClientOpts.MemoryConverter;
+import org.apache.accumulo.core.cli.Help;
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.conf.ConfigurationCopy;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.file.BloomFilterLayer;
+import org.apache.accumulo.core.file.FileOperations;
+import org.apache.accumulo.core.file.FileSKVIterator;
+import org.apache.accumulo.core.file.FileSKVWriter;
+import org.apache.accumulo.core.file.blockfile.cache.LruBlockCache;
+import org.apache.accumulo.core.file.rfile.RFile;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Compares the bloom filter written by {@link BloomFilterLayer}, which is loaded in full when a file is opened, with the chunked bloom filter RFile writes
+ * when {@link Property#TABLE_BLOOM_CHUNK_SIZE} is set, which is loaded a chunk at a time as lookups need it.
+ * <p>
+ *
+ * For each layout the same rows are written to a local file, then the file is opened with an empty index cache and looked up with random rows, half of which
+ * exist. Lookups are drawn from a fraction of the rows, as a tablet server would see when only part of a tablet is hot. Reported are the time to open the file
+ * and do the first lookup, the average lookup time after that, and the bytes in the index cache afterwards, which include the bloom filter.
+ */
+public class BloomFilterLayoutBenchmark {
+
+  static class Opts extends Help {
+    @Parameter(names = "--rows", description = "number of rows written to the file")
+    int rows = 1000000;
+    @Parameter(names = "--chunkSize", description = "number of bloom keys in each chunk of the blocked layout")
+    int chunkSize = 10000;
+    @Parameter(names = "--lookups", description = "number of lookups to time")
+    int lookups = 100000;
+    @Parameter(names = "--hotFraction", description = "fraction of the rows lookups are drawn from")
+    double hotFraction = 0.1;
+    @Parameter(names = "--blockSize", description = "size of the data blocks", converter = MemoryConverter.class)
+    Long blockSize = 100l * 1024;
+    @Parameter(names = "--trials", description = "number of times to open and look up each file")
+    int trials = 3;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Opts opts = new Opts();
+    opts.parseArgs(BloomFilterLayoutBenchmark.class.getName(), args);
+
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+
+    for (int trial = 0; trial < opts.trials; trial++) {
+      run(opts, fs, conf, "BloomFilterLayer", 0);
+      run(opts, fs, conf, "blocked", opts.chunkSize);
+    }
+  }
+
+  private static Text row(int i) {
+    return new Text(String.format("row_%010d", i));
+  }
+
+  private static void run(Opts opts, FileSystem fs, Configuration conf, String layout, int chunkSize) throws Exception {
+    ConfigurationCopy acuconf = new ConfigurationCopy(AccumuloConfiguration.getDefaultConfiguration());
+    acuconf.set(Property.TABLE_BLOOM_ENABLED, "true");
+    acuconf.set(Property.TABLE_BLOOM_CHUNK_SIZE, Integer.toString(chunkSize));
+    acuconf.set(Property.TABLE_FILE_COMPRESSED_BLOCK_SIZE, opts.blockSize.toString());
+    // load the whole bloom filter when the file is opened, instead of in the background, so open times are comparable
+    acuconf.set(Property.TSERV_BLOOM_LOAD_MAXCONCURRENT, "0");
+
+    File tmp = File.createTempFile("bloom", "." + RFile.EXTENSION);
+    tmp.delete();
+    String file = tmp.getAbsolutePath();
+
+    FileSKVWriter writer = FileOperations.getInstance().openWriter(file, fs, conf, acuconf);
+    writer.startDefaultLocalityGroup();
+    Value value = new Value(new byte[50]);
+    // only even rows exist
+    for (int i = 0; i < opts.rows; i++)
+      writer.append(new Key(row(i * 2), new Text("cf"), new Text("cq")), value);
+    writer.close();
+
+    Random rand = new Random(42);
+    int hotRows = Math.max(1, (int) (opts.rows * 2 * opts.hotFraction));
+    int hotStart = rand.nextInt(opts.rows * 2 - hotRows + 1);
+
+    LruBlockCache indexCache = new LruBlockCache(1l << 30, opts.blockSize);
+    LruBlockCache dataCache = new LruBlockCache(1l << 30, opts.blockSize);
+
+    long t1 = System.nanoTime();
+    FileSKVIterator reader = FileOperations.getInstance().openReader(file, false, fs, conf, acuconf, dataCache, indexCache);
+    reader.seek(new Range(row(hotStart + rand.nextInt(hotRows))), Collections.<ByteSequence> emptySet(), false);
+    long t2 = System.nanoTime();
+
+    int found = 0;
+    for (int i = 0; i < opts.lookups; i++) {
+      reader.seek(new Range(row(hotStart + rand.nextInt(hotRows))), Collections.<ByteSequence> emptySet(), false);
+      if (reader.hasTop())
+        found++;
+    }
+    long t3 = System.nanoTime();
+    reader.close();
+
+    System.out.printf("%-16s : file %,12d bytes  open+first lookup %9.3f ms  lookup %8.2f us  found %,8d  index cache %,12d bytes%n", layout,
+        tmp.length(), (t2 - t1) / 1000000.0, (t3 - t2) / 1000.0 / opts.lookups, found, indexCache.getCurrentSize());
+
+    indexCache.shutdown();
+    dataCache.shutdown();
+    fs.delete(new Path(file), false);
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.test.performance.cache;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.accumulo.core.cli.ClientOpts.MemoryConverter;
+import org.apache.accumulo.core.cli.Help;
+import org.apache.accumulo.core.file.blockfile.cache.AdmissionPolicy;
+import org.apache.accumulo.core.file.blockfile.cache.AdmitAllPolicy;
+import org.apache.accumulo.core.file.blockfile.cache.BlockCache;
+import org.apache.accumulo.core.file.blockfile.cache.CacheStats;
+import org.apache.accumulo.core.file.blockfile.cache.LruBlockCache;
+import org.apache.accumulo.core.file.blockfile.cache.OffHeapBlockCache;
+import org.apache.accumulo.core.file.blockfile.cache.TinyLfuAdmissionPolicy;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Replays a block access trace through the block cache implementations and admission policies and compares their hit rates.
+ * <p>
+ *
+ * A trace is recorded on a tablet server by setting the log4j logger org.apache.accumulo.core.file.blockfile.impl.CachableBlockFile.access to TRACE. Each
+ * line of the trace ends with the cache type, the block name and the block size; anything before that, such as a log4j prefix, is ignored. Without a trace,
+ * a synthetic one is generated where lookups against a skewed hot set are interleaved with full scans over a much larger cold set.
+ */
+public class BlockCacheTraceReplay {
+
+  static class Opts extends Help {
+    @Parameter(names = "--trace", description = "file containing a recorded block access trace, a synthetic trace is used if not given")
+    String trace = null;
+    @Parameter(names = "--type", description = "replay only accesses to this cache (index or data), all accesses if not given")
+    String type = null;
+    @Parameter(names = "--cacheSize", description = "size of the cache", converter = MemoryConverter.class)
+    Long cacheSize = 64l * 1024 * 1024;
+    @Parameter(names = "--blockSize", description = "approximate block size given to the caches", converter = MemoryConverter.class)
+    Long blockSize = 100l * 1024;
+    @Parameter(names = "--hotBlocks", description = "synthetic trace: number of frequently read blocks")
+    int hotBlocks = 400;
+    @Parameter(names = "--scanBlocks", description = "synthetic trace: number of blocks read by each full scan")
+    int scanBlocks = 5000;
+    @Parameter(names = "--lookups", description = "synthetic trace: number of hot set lookups")
+    int lookups = 1000000;
+    @Parameter(names = "--scans", description = "synthetic trace: number of full scans spread over the lookups")
+    int scans = 10;
+    @Parameter(names = "--seed", description = "synthetic trace: random seed")
+    long seed = 42;
+  }
+
+  private static class Access {
+    final String name;
+    final int size;
+
+    Access(String name, int size) {
+      this.name = name;
+      this.size = size;
+    }
+  }
+
+  static List<Access> readTrace(String file, String type) throws Exception {
+    List<Access> trace = new ArrayList<Access>();
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] tokens = line.trim().split("\\s+");
+        if (tokens.length < 3)
+          continue;
+        String cacheType = tokens[tokens.length - 3];
+        if (!cacheType.equals("index") && !cacheType.equals("data"))
+          continue;
+        if (type != null && !type.equals(cacheType))
+          continue;
+        trace.add(new Access(tokens[tokens.length - 2], Integer.parseInt(tokens[tokens.length - 1])));
+      }
+    } finally {
+      in.close();
+    }
+    return trace;
+  }
+
+  static List<Access> syntheticTrace(Opts opts) {
+    Random rand = new Random(opts.seed);
+    int blockSize = opts.blockSize.intValue();
+    List<Access> trace = new ArrayList<Access>();
+    int scanEvery = opts.lookups / Math.max(1, opts.scans);
+    int scan = 0;
+    for (int i = 0; i < opts.lookups; i++) {
+      // squaring a uniform value skews lookups towards the low numbered blocks
+      double r = rand.nextDouble();
+      trace.add(new Access("hot" + (int) (r * r * opts.hotBlocks), blockSize));
+      if (i > 0 && i % scanEvery == 0) {
+        for (int j = 0; j < opts.scanBlocks; j++)
+          trace.add(new Access("scan" + scan + "_" + j, blockSize));
+        scan++;
+      }
+    }
+    return trace;
+  }
+
+  static CacheStats replay(BlockCache cache, List<Access> trace) {
+    for (Access access : trace) {
+      if (cache.getBlock(access.name) == null)
+        cache.cacheBlock(access.name, new byte[access.size]);
+    }
+    return cache.getStats();
+  }
+
+  public static void main(String[] args) throws Exception {
+    Opts opts = new Opts();
+    opts.parseArgs(BlockCacheTraceReplay.class.getName(), args);
+
+    List<Access> trace = opts.trace == null ? syntheticTrace(opts) : readTrace(opts.trace, opts.type);
+    System.out.printf("replaying %,d accesses through %,d byte caches%n", trace.size(), opts.cacheSize);
+
+    String[] names = new String[] {"lru", "lru+tinylfu", "offheap", "offheap+tinylfu"};
+    for (String name : names) {
+      AdmissionPolicy policy = name.endsWith("tinylfu") ? new TinyLfuAdmissionPolicy() : new AdmitAllPolicy();
+      BlockCache cache;
+      if (name.startsWith("lru"))
+        cache = new LruBlockCache(opts.cacheSize, opts.blockSize, false, policy);
+      else
+        cache = new OffHeapBlockCache(opts.cacheSize, opts.blockSize, policy);
+
+      long t1 = System.currentTimeMillis();
+      CacheStats stats = replay(cache, trace);
+      long t2 = System.currentTimeMillis();
+      cache.shutdown();
+
+      System.out.printf("%20s : hit ratio %6.2f%%  hits %,12d  misses %,12d  evicted %,12d  rejected %,12d  time %6.2fs%n", name, stats.getHitRatio() * 100,
+          stats.getHitCount(), stats.getMissCount(), stats.getEvictedCount(), stats.getRejectedCount(), (t2 - t1) / 1000.0);
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.test.performance.cache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.accumulo.core.cli.ClientOpts.MemoryConverter;
+import org.apache.accumulo.core.cli.Help;
+import org.apache.accumulo.core.file.blockfile.ABlockReader;
+import org.apache.accumulo.core.file.blockfile.ABlockWriter;
+import org.apache.accumulo.core.file.blockfile.cache.BlockCache;
+import org.apache.accumulo.core.file.blockfile.cache.CacheStats;
+import org.apache.accumulo.core.file.blockfile.cache.LruBlockCache;
+import org.apache.accumulo.core.file.blockfile.cache.OffHeapBlockCache;
+import org.apache.accumulo.core.file.blockfile.impl.CachableBlockFile;
+import org.apache.accumulo.core.file.rfile.BlockIndex;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Drives {@link CachableBlockFile.Reader#getDataBlock(long, long, long)} from many threads against a local file and reports block reads per second for
+ * increasing thread counts.
+ * <p>
+ *
+ * With a cache large enough for the whole file this measures the hit path. With a smaller cache it also measures concurrent misses; the duplicate reads
+ * reported by the cache count blocks that were read from the file more than once because readers missed on them at the same time.
+ */
+public class BlockReadConcurrencyBenchmark {
+
+  static class Opts extends Help {
+    @Parameter(names = "--threads", description = "comma separated thread counts to run with")
+    String threads = "1,4,16,64";
+    @Parameter(names = "--blocks", description = "number of data blocks in the file")
+    int blocks = 256;
+    @Parameter(names = "--blockSize", description = "size of each data block", converter = MemoryConverter.class)
+    Long blockSize = 64l * 1024;
+    @Parameter(names = "--cacheSize", description = "size of the data cache", converter = MemoryConverter.class)
+    Long cacheSize = 64l * 1024 * 1024;
+    @Parameter(names = "--cache", description = "cache implementation, lru or offheap")
+    String cache = "lru";
+    @Parameter(names = "--seconds", description = "how long to run with each thread count")
+    int seconds = 10;
+    @Parameter(names = "--readerPerThread", description = "give each thread its own reader of the file instead of sharing one")
+    boolean readerPerThread = false;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Opts opts = new Opts();
+    opts.parseArgs(BlockReadConcurrencyBenchmark.class.getName(), args);
+
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    File tmp = File.createTempFile("blockread", ".bcf");
+    tmp.deleteOnExit();
+    Path path = new Path(tmp.toURI().toString());
+
+    CachableBlockFile.Writer writer = new CachableBlockFile.Writer(fs, path, "none", conf);
+    Random rand = new Random(42);
+    byte[] data = new byte[opts.blockSize.intValue()];
+    // like RFile, keep track of where the blocks are instead of relying on the BCFile data index
+    final long[][] regions = new long[opts.blocks][];
+    for (int i = 0; i < opts.blocks; i++) {
+      rand.nextBytes(data);
+      ABlockWriter block = writer.prepareDataBlock();
+      block.write(data);
+      block.close();
+      regions[i] = new long[] {block.getStartPos(), block.getCompressedSize(), block.getRawSize()};
+    }
+    writer.close();
+
+    for (String t : opts.threads.split(",")) {
+      int numThreads = Integer.parseInt(t.trim());
+      BlockCache cache = opts.cache.equals("offheap") ? new OffHeapBlockCache(opts.cacheSize, opts.blockSize) : new LruBlockCache(opts.cacheSize,
+          opts.blockSize);
+      run(opts, fs, path, conf, cache, regions, numThreads);
+      cache.shutdown();
+    }
+  }
+
+  private static void run(final Opts opts, FileSystem fs, Path path, Configuration conf, BlockCache cache, final long[][] regions, int numThreads)
+      throws Exception {
+    final AtomicLong reads = new AtomicLong(0);
+    final long deadline = System.currentTimeMillis() + opts.seconds * 1000l;
+
+    List<CachableBlockFile.Reader> readers = new ArrayList<CachableBlockFile.Reader>();
+    CachableBlockFile.Reader shared = new CachableBlockFile.Reader(fs, path, conf, cache, null);
+    readers.add(shared);
+
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < numThreads; i++) {
+      final CachableBlockFile.Reader reader;
+      if (opts.readerPerThread) {
+        reader = new CachableBlockFile.Reader(fs, path, conf, cache, null);
+        readers.add(reader);
+      } else {
+        reader = shared;
+      }
+      final int seed = i;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          Random rand = new Random(seed);
+          byte[] buf = new byte[opts.blockSize.intValue()];
+          long count = 0;
+          try {
+            while (System.currentTimeMillis() < deadline) {
+              for (int j = 0; j < 100; j++) {
+                long[] region = regions[rand.nextInt(regions.length)];
+                ABlockReader block = reader.getDataBlock(region[0], region[1], region[2]);
+                if (block.isIndexable())
+                  block.getIndex(BlockIndex.class);
+                block.getStream().readFully(buf);
+                block.close();
+                count++;
+              }
+            }
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+          reads.addAndGet(count);
+        }
+      });
+    }
+
+    for (Thread thread : threads)
+      thread.start();
+    for (Thread thread : threads)
+      thread.join();
+    for (CachableBlockFile.Reader reader : readers)
+      reader.close();
+
+    CacheStats stats = cache.getStats();
+    System.out.printf("threads %3d : %,12.0f block reads/sec  hit ratio %6.2f%%  misses %,10d  duplicate reads %,10d%n", numThreads,
+        reads.get() / (double) opts.seconds, stats.getHitRatio() * 100, stats.getMissCount(), stats.getDuplicateReads());
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.test.performance.ingest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.accumulo.core.cli.Help;
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.tserver.InMemoryMap;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Writes to the in-memory map of a single tablet from many threads, the way the update threads of a tablet server write the batches of different clients to a
+ * hot tablet, and reports the mutations per second for increasing thread counts.
+ */
+public class InMemoryMapIngestBenchmark {
+
+  static class Opts extends Help {
+    @Parameter(names = "--threads", description = "comma separated writer thread counts to run with")
+    String threads = "1,4,16";
+    @Parameter(names = "--seconds", description = "how long to run with each thread count")
+    int seconds = 5;
+    @Parameter(names = "--map", description = "in-memory map implementation, default, native or offheap")
+    String map = "default";
+    @Parameter(names = "--batchSize", description = "number of mutations written by each call to mutate")
+    int batchSize = 100;
+    @Parameter(names = "--columns", description = "number of columns in each mutation")
+    int columns = 1;
+    @Parameter(names = "--localityGroups", description = "number of locality groups the columns are spread over")
+    int localityGroups = 0;
+    @Parameter(names = "--maxEntries", description = "stop a run early once the map holds this many entries, to bound memory")
+    long maxEntries = 10000000;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Opts opts = new Opts();
+    opts.parseArgs(InMemoryMapIngestBenchmark.class.getName(), args);
+
+    Map<String,Set<ByteSequence>> groups = new HashMap<String,Set<ByteSequence>>();
+    for (int i = 0; i < opts.localityGroups; i++)
+      groups.put("lg" + i, Collections.<ByteSequence> singleton(new ArrayByteSequence("cf" + i)));
+
+    File dumpDir = File.createTempFile("memdump", "");
+    dumpDir.delete();
+    dumpDir.deleteOnExit();
+
+    for (String t : opts.threads.split(",")) {
+      InMemoryMap imm = new InMemoryMap(groups, opts.map.equals("native"), opts.map.equals("offheap"), dumpDir.getAbsolutePath());
+      run(opts, imm, Integer.parseInt(t.trim()));
+      imm.delete(0);
+    }
+  }
+
+  private static void run(final Opts opts, final InMemoryMap imm, int numThreads) throws Exception {
+    final AtomicLong mutations = new AtomicLong(0);
+    final long deadline = System.currentTimeMillis() + opts.seconds * 1000l;
+
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < numThreads; i++) {
+      final int seed = i;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          Random rand = new Random(seed);
+          byte[] val = new byte[20];
+          long count = 0;
+          List<Mutation> batch = new ArrayList<Mutation>(opts.batchSize);
+          while (System.currentTimeMillis() < deadline && imm.getNumEntries() < opts.maxEntries) {
+            for (int j = 0; j < opts.batchSize; j++) {
+              Mutation m = new Mutation(String.format("row_%010d", rand.nextInt(Integer.MAX_VALUE)));
+              for (int c = 0; c < opts.columns; c++) {
+                rand.nextBytes(val);
+                m.put("cf" + (c % (opts.localityGroups + 1)), "cq" + c, new Value(val));
+              }
+              batch.add(m);
+            }
+            imm.mutate(batch);
+            count += batch.size();
+            batch = new ArrayList<Mutation>(opts.batchSize);
+          }
+          mutations.addAndGet(count);
+        }
+      });
+    }
+
+    long t1 = System.currentTimeMillis();
+    for (Thread thread : threads)
+      thread.start();
+    for (Thread thread : threads)
+      thread.join();
+    double seconds = (System.currentTimeMillis() - t1) / 1000.0;
+
+    System.out.printf("threads %3d : %,12.0f mutations/sec  %,12.0f entries/sec  %,12d entries in map%n", numThreads, mutations.get() / seconds,
+        mutations.get() * opts.columns / seconds, imm.getNumEntries());
+  }
+}
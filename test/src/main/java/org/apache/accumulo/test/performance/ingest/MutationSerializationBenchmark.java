@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.test.performance.ingest;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.apache.accumulo.core.cli.Help;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Builds mutations from strings and writes them with the thrift protocol the batch writer uses, and reports the throughput and the bytes allocated per
+ * mutation for each way of building them:
+ * <ul>
+ * <li>text : the strings are converted to Text before they are put, which is what the CharSequence put methods used to do</li>
+ * <li>string : the strings are put as is and encoded straight into the mutation's buffer</li>
+ * <li>sized : as string, with the mutation's buffer created at its serialized size, so it is sent without being grown or copied</li>
+ * </ul>
+ * Allocation is measured with the HotSpot per thread allocation counter, so this must be run on a JVM that provides it.
+ */
+public class MutationSerializationBenchmark {
+
+  static class Opts extends Help {
+    @Parameter(names = "--mutations", description = "number of mutations built each way")
+    int mutations = 1000000;
+    @Parameter(names = "--columns", description = "number of columns put in each mutation")
+    int columns = 10;
+    @Parameter(names = "--valueSize", description = "number of characters in each value")
+    int valueSize = 50;
+    @Parameter(names = "--rounds", description = "number of times to run every way, the first rounds warm up the JIT")
+    int rounds = 3;
+  }
+
+  private static final String[] WAYS = {"text", "string", "sized"};
+
+  public static void main(String[] args) throws Exception {
+    Opts opts = new Opts();
+    opts.parseArgs(MutationSerializationBenchmark.class.getName(), args);
+
+    Random rand = new Random(42);
+    String[] rows = new String[1024];
+    for (int i = 0; i < rows.length; i++)
+      rows[i] = String.format("%016x", rand.nextLong());
+    String[] qualifiers = new String[opts.columns];
+    for (int i = 0; i < qualifiers.length; i++)
+      qualifiers[i] = String.format("qualifier_%04d", i);
+    String[] values = new String[64];
+    for (int i = 0; i < values.length; i++) {
+      StringBuilder sb = new StringBuilder();
+      while (sb.length() < opts.valueSize)
+        sb.append((char) ('a' + rand.nextInt(26)));
+      values[i] = sb.toString();
+    }
+
+    // every mutation has the same shape, so the size of one is the size of all of them
+    int serializedSize = build("string", rows[0], qualifiers, values, 0, 64).toThrift().data.remaining();
+
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TCompactProtocol protocol = new TCompactProtocol(new TIOStreamTransport(out));
+
+    for (int round = 0; round < opts.rounds; round++) {
+      for (String way : WAYS) {
+        long bytes = 0;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId);
+        long t1 = System.nanoTime();
+
+        for (int i = 0; i < opts.mutations; i++) {
+          Mutation m = build(way, rows[i % rows.length], qualifiers, values, i, serializedSize);
+          out.reset();
+          m.toThrift().write(protocol);
+          bytes += out.size();
+        }
+
+        long t2 = System.nanoTime();
+        allocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+
+        System.out.printf("round %d %-8s : %,12.0f mutations/sec  %8.1f bytes allocated/mutation  %8.1f bytes sent/mutation%n", round, way, opts.mutations
+            / ((t2 - t1) / 1000000000.0), allocated / (double) opts.mutations, bytes / (double) opts.mutations);
+      }
+    }
+  }
+
+  private static Mutation build(String way, String row, String[] qualifiers, String[] values, int seed, int serializedSize) {
+    Mutation m;
+    if (way.equals("text")) {
+      m = new Mutation(new Text(row));
+      Text family = new Text("family");
+      for (int c = 0; c < qualifiers.length; c++)
+        m.put(family, new Text(qualifiers[c]), new Value(new Text(values[(seed + c) % values.length]).copyBytes(), false));
+    } else {
+      m = way.equals("sized") ? new Mutation(row, serializedSize) : new Mutation(row);
+      for (int c = 0; c < qualifiers.length; c++)
+        m.put("family", qualifiers[c], values[(seed + c) % values.length]);
+    }
+    return m;
+  }
+}
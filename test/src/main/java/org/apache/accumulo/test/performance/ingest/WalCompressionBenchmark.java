@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.test.performance.ingest;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.accumulo.core.cli.Help;
+import org.apache.accumulo.core.conf.ConfigurationCopy;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.conf.PropertyType;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.file.rfile.bcfile.Compression;
+import org.apache.accumulo.core.file.rfile.bcfile.Compression.Algorithm;
+import org.apache.accumulo.server.data.ServerMutation;
+import org.apache.accumulo.server.fs.VolumeManager;
+import org.apache.accumulo.server.fs.VolumeManagerImpl;
+import org.apache.accumulo.tserver.log.DfsLogger;
+import org.apache.accumulo.tserver.log.DfsLogger.DFSLoggerInputStreams;
+import org.apache.accumulo.tserver.logger.LogEvents;
+import org.apache.accumulo.tserver.logger.LogFileKey;
+import org.apache.accumulo.tserver.logger.LogFileValue;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Writes the same write-ahead log with each compression type and reports the bytes written, the time to write them and the time to read them back and sort
+ * them as recovery does. The values are made of words, like text heavy ingest.
+ * <p>
+ *
+ * The log is written to the local file system and flushed, not synced, every {@code --batchSize} mutations, so the times measure compression rather than
+ * replication.
+ */
+public class WalCompressionBenchmark {
+
+  static class Opts extends Help {
+    @Parameter(names = "--dir", description = "local directory to write the logs to, a temporary directory if not given")
+    String dir = null;
+    @Parameter(names = "--mutations", description = "number of mutations written to each log")
+    int mutations = 500000;
+    @Parameter(names = "--batchSize", description = "mutations written between flushes, each flush writes a compressed block")
+    int batchSize = 100;
+    @Parameter(names = "--valueWords", description = "number of words in each value")
+    int valueWords = 20;
+    @Parameter(names = "--types", description = "comma separated compression types to run with, types not available are skipped")
+    String types = "none,gz,snappy,lzo";
+  }
+
+  private static final String[] WORDS = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "accumulo", "tablet", "server", "write", "ahead",
+      "log", "compression", "block", "recovery", "mutation", "column", "family", "qualifier", "visibility", "timestamp", "value", "row", "sorted", "key",
+      "iterator", "table", "scan"};
+
+  public static void main(String[] args) throws Exception {
+    Opts opts = new Opts();
+    opts.parseArgs(WalCompressionBenchmark.class.getName(), args);
+
+    File dir;
+    if (opts.dir == null) {
+      dir = File.createTempFile("walbench", "");
+      dir.delete();
+      dir.mkdirs();
+      dir.deleteOnExit();
+    } else {
+      dir = new File(opts.dir);
+    }
+
+    VolumeManager fs = VolumeManagerImpl.getLocal();
+    List<Mutation> mutations = createMutations(opts);
+
+    for (String type : opts.types.split(",")) {
+      type = type.trim();
+      if (!isAvailable(Compression.getCompressionAlgorithmByName(type))) {
+        System.out.printf("%-8s : not available%n", type);
+        continue;
+      }
+
+      // the default configuration leaves out the experimental crypto properties the log header needs
+      ConfigurationCopy conf = new ConfigurationCopy();
+      for (Property prop : Property.values())
+        if (prop.getType() != PropertyType.PREFIX)
+          conf.set(prop, prop.getDefaultValue());
+      conf.set(Property.TSERV_WAL_COMPRESSION_TYPE, type);
+
+      Path path = new Path("file://" + new File(dir, "log-" + type).getAbsolutePath());
+
+      long t1 = System.nanoTime();
+      FSDataOutputStream logFile = fs.create(path);
+      DataOutputStream out = DfsLogger.writeHeaderAndReturnStream(logFile, conf);
+      int seq = 0;
+      for (int i = 0; i < mutations.size(); i += opts.batchSize) {
+        LogFileKey key = new LogFileKey();
+        key.event = LogEvents.MANY_MUTATIONS;
+        key.seq = seq++;
+        key.tid = 1;
+        LogFileValue value = new LogFileValue();
+        value.mutations = mutations.subList(i, Math.min(i + opts.batchSize, mutations.size()));
+        key.write(out);
+        value.write(out);
+        out.flush();
+      }
+      out.close();
+      long t2 = System.nanoTime();
+
+      long entries = 0;
+      DFSLoggerInputStreams streams = DfsLogger.readHeaderAndReturnStream(fs, path, conf);
+      List<LogFileKey> keys = new ArrayList<LogFileKey>();
+      try {
+        while (true) {
+          LogFileKey key = new LogFileKey();
+          LogFileValue value = new LogFileValue();
+          key.readFields(streams.getDecryptingInputStream());
+          value.readFields(streams.getDecryptingInputStream());
+          keys.add(key);
+          entries += value.mutations.size();
+        }
+      } catch (EOFException ex) {
+        // end of the log
+      } finally {
+        streams.getDecryptingInputStream().close();
+      }
+      Collections.sort(keys);
+      long t3 = System.nanoTime();
+
+      if (entries != mutations.size())
+        throw new IllegalStateException("Read " + entries + " mutations, expected " + mutations.size());
+
+      long len = fs.getFileStatus(path).getLen();
+      System.out.printf("%-8s : %,14d bytes  %6.2f bytes/mutation  write %,8.0f ms  recover %,8.0f ms%n", type, len, len / (double) mutations.size(),
+          (t2 - t1) / 1000000.0, (t3 - t2) / 1000000.0);
+      fs.delete(path);
+    }
+  }
+
+  /**
+   * Some codecs are found on the classpath but need native libraries that are only loaded when a compressor is created.
+   */
+  private static boolean isAvailable(Algorithm algorithm) {
+    if (!algorithm.isSupported())
+      return false;
+    try {
+      algorithm.returnCompressor(algorithm.getCompressor());
+      return true;
+    } catch (Throwable t) {
+      return false;
+    }
+  }
+
+  private static List<Mutation> createMutations(Opts opts) {
+    Random rand = new Random(42);
+    List<Mutation> mutations = new ArrayList<Mutation>(opts.mutations);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < opts.mutations; i++) {
+      ServerMutation m = new ServerMutation(new Text(String.format("%016x", rand.nextLong())));
+      sb.setLength(0);
+      for (int w = 0; w < opts.valueWords; w++)
+        sb.append(WORDS[rand.nextInt(WORDS.length)]).append(' ');
+      m.put("meta", String.format("%08x", rand.nextInt()), sb.toString());
+      m.setSystemTimestamp(System.currentTimeMillis());
+      mutations.add(m);
+    }
+    return mutations;
+  }
+}
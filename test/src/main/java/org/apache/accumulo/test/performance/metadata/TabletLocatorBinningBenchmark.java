@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.test.performance.metadata;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.accumulo.core.cli.Help;
+import org.apache.accumulo.core.client.impl.TabletLocator;
+import org.apache.accumulo.core.client.impl.TabletLocator.TabletLocation;
+import org.apache.accumulo.core.client.impl.TabletLocator.TabletLocations;
+import org.apache.accumulo.core.client.impl.TabletLocator.TabletServerMutations;
+import org.apache.accumulo.core.client.impl.TabletLocatorImpl;
+import org.apache.accumulo.core.client.impl.TabletLocatorImpl.TabletLocationObtainer;
+import org.apache.accumulo.core.client.impl.TabletLocatorImpl.TabletServerLockChecker;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.KeyExtent;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.metadata.MetadataTable;
+import org.apache.accumulo.core.security.Credentials;
+import org.apache.accumulo.core.util.UtilWaitThread;
+import org.apache.hadoop.io.Text;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Bins mutations with a {@link TabletLocatorImpl} from many threads, the way many batch writers in one process do, while another thread splits tablets and
+ * invalidates them as a batch writer does when a tablet server reports that it no longer serves a tablet. Reports mutations binned per second, the longest a
+ * single batch took to bin, and the locator's cache statistics for increasing thread counts.
+ * <p>
+ *
+ * The metadata table is kept in memory, and each read of it sleeps for {@code --lookupLatency} to stand in for the RPC, so the times show how long binning
+ * threads wait on the threads that read the metadata table.
+ */
+public class TabletLocatorBinningBenchmark {
+
+  static class Opts extends Help {
+    @Parameter(names = "--threads", description = "comma separated thread counts to run with")
+    String threads = "1,4,16,64";
+    @Parameter(names = "--mutations", description = "number of mutations binned with each thread count, divided among the threads")
+    int mutations = 1000000;
+    @Parameter(names = "--tablets", description = "number of tablets the table starts with")
+    int tablets = 10000;
+    @Parameter(names = "--batchSize", description = "number of mutations binned at once, as a batch writer does when it sends")
+    int batchSize = 1000;
+    @Parameter(names = "--splitInterval", description = "milliseconds between splits, 0 to not split")
+    int splitInterval = 10;
+    @Parameter(names = "--lookupLatency", description = "milliseconds each read of the metadata table takes")
+    int lookupLatency = 2;
+  }
+
+  private static final Text TABLE_ID = new Text("1");
+  private static final int ROW_SPACE_DIGITS = 15;
+  private static final long ROW_SPACE = 1000000000000000l;
+  // how many tablets one read of the metadata table returns past the one looked up
+  private static final int READ_AHEAD = 100;
+  private static final TabletLocation METADATA_LOCATION = new TabletLocation(new KeyExtent(new Text(MetadataTable.ID), null, null), "metadata:9997", "1");
+
+  /**
+   * An in memory metadata table, keyed by metadata row.
+   */
+  private static class FakeMetadata implements TabletLocationObtainer {
+    private final TreeMap<Text,TabletLocation> tablets = new TreeMap<Text,TabletLocation>();
+    private final int latency;
+
+    FakeMetadata(int numTablets, int latency) {
+      this.latency = latency;
+      Text prev = null;
+      for (int i = 1; i <= numTablets; i++) {
+        Text end = i == numTablets ? null : row(ROW_SPACE / numTablets * i);
+        put(new KeyExtent(TABLE_ID, end, prev), i % 100);
+        prev = end;
+      }
+    }
+
+    private void put(KeyExtent extent, int server) {
+      tablets.put(extent.getMetadataEntry(), new TabletLocation(extent, "tserver" + server + ":9997", "1"));
+    }
+
+    /**
+     * Splits a random tablet in two.
+     *
+     * @return the tablet that was split, or null if the chosen one was too small to split
+     */
+    synchronized KeyExtent split(Random rand) {
+      List<Text> rows = new ArrayList<Text>(tablets.keySet());
+      KeyExtent extent = tablets.get(rows.get(rand.nextInt(rows.size()))).tablet_extent;
+      long prev = extent.getPrevEndRow() == null ? 0 : Long.parseLong(extent.getPrevEndRow().toString());
+      long end = extent.getEndRow() == null ? ROW_SPACE : Long.parseLong(extent.getEndRow().toString());
+      if (end - prev < 2)
+        return null;
+      Text middle = row(prev + (end - prev) / 2);
+      tablets.remove(extent.getMetadataEntry());
+      put(new KeyExtent(TABLE_ID, middle, extent.getPrevEndRow()), rand.nextInt(100));
+      put(new KeyExtent(TABLE_ID, extent.getEndRow(), middle), rand.nextInt(100));
+      return extent;
+    }
+
+    @Override
+    public TabletLocations lookupTablet(Credentials credentials, TabletLocation src, Text row, Text stopRow, TabletLocator parent) {
+      UtilWaitThread.sleep(latency);
+      List<TabletLocation> locations = new ArrayList<TabletLocation>();
+      synchronized (this) {
+        for (TabletLocation tl : tablets.tailMap(row).values()) {
+          locations.add(tl);
+          if (locations.size() > READ_AHEAD)
+            break;
+        }
+      }
+      return new TabletLocations(locations, new ArrayList<KeyExtent>());
+    }
+
+    @Override
+    public List<TabletLocation> lookupTablets(Credentials credentials, String tserver, Map<KeyExtent,List<Range>> map, TabletLocator parent) {
+      UtilWaitThread.sleep(latency);
+      List<TabletLocation> locations = new ArrayList<TabletLocation>();
+      synchronized (this) {
+        for (List<Range> ranges : map.values()) {
+          for (Range range : ranges) {
+            for (Entry<Text,TabletLocation> entry : tablets.tailMap(range.getStartKey().getRow()).entrySet()) {
+              Key key = new Key(entry.getKey());
+              if (range.afterEndKey(key))
+                break;
+              if (range.contains(key))
+                locations.add(entry.getValue());
+            }
+          }
+        }
+      }
+      return locations;
+    }
+  }
+
+  /**
+   * Stands in for the metadata table's locator, which always finds the one metadata tablet.
+   */
+  private static class MetadataLocator extends TabletLocator {
+    @Override
+    public TabletLocation locateTablet(Credentials credentials, Text row, boolean skipRow, boolean retry) {
+      return METADATA_LOCATION;
+    }
+
+    @Override
+    public <T extends Mutation> void binMutations(Credentials credentials, List<T> mutations, Map<String,TabletServerMutations<T>> binnedMutations,
+        List<T> failures) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Range> binRanges(Credentials credentials, List<Range> ranges, Map<String,Map<KeyExtent,List<Range>>> binnedRanges) {
+      Map<KeyExtent,List<Range>> tablets = new HashMap<KeyExtent,List<Range>>();
+      tablets.put(METADATA_LOCATION.tablet_extent, new ArrayList<Range>(ranges));
+      binnedRanges.put(METADATA_LOCATION.tablet_location, tablets);
+      return new ArrayList<Range>();
+    }
+
+    @Override
+    public void invalidateCache(KeyExtent failedExtent) {}
+
+    @Override
+    public void invalidateCache(Collection<KeyExtent> keySet) {}
+
+    @Override
+    public void invalidateCache() {}
+
+    @Override
+    public void invalidateCache(String server) {}
+  }
+
+  private static class AllLocksHeld implements TabletServerLockChecker {
+    @Override
+    public boolean isLockHeld(String tserver, String session) {
+      return true;
+    }
+
+    @Override
+    public void invalidateCache(String server) {}
+  }
+
+  private static Text row(long r) {
+    return new Text(String.format("%0" + ROW_SPACE_DIGITS + "d", r));
+  }
+
+  public static void main(String[] args) throws Exception {
+    Opts opts = new Opts();
+    opts.parseArgs(TabletLocatorBinningBenchmark.class.getName(), args);
+
+    Random rand = new Random(42);
+    List<Mutation> pool = new ArrayList<Mutation>();
+    for (int i = 0; i < 100000; i++) {
+      Mutation m = new Mutation(row((rand.nextLong() & Long.MAX_VALUE) % ROW_SPACE));
+      m.put("family", "qualifier", "value");
+      pool.add(m);
+    }
+
+    for (String t : opts.threads.split(",")) {
+      run(opts, pool, Integer.parseInt(t.trim()));
+    }
+  }
+
+  private static void run(final Opts opts, final List<Mutation> pool, int numThreads) throws Exception {
+    final FakeMetadata metadata = new FakeMetadata(opts.tablets, opts.lookupLatency);
+    final TabletLocatorImpl locator = new TabletLocatorImpl(TABLE_ID, new MetadataLocator(), metadata, new AllLocksHeld());
+
+    // fill the cache before timing, as a long running writer would have
+    for (int i = 0; i < pool.size(); i += opts.batchSize)
+      locator.binMutations(null, pool.subList(i, Math.min(i + opts.batchSize, pool.size())), new HashMap<String,TabletServerMutations<Mutation>>(),
+          new ArrayList<Mutation>());
+    long hits = locator.getCacheHits();
+    long misses = locator.getCacheMisses();
+    long lookups = locator.getMetadataLookups();
+
+    final AtomicLong failures = new AtomicLong(0);
+    final AtomicLong maxBatchNanos = new AtomicLong(0);
+    final int batchesPerThread = Math.max(1, opts.mutations / numThreads / opts.batchSize);
+    final AtomicLong splits = new AtomicLong(0);
+    final AtomicBoolean done = new AtomicBoolean(false);
+
+    Thread splitter = new Thread() {
+      @Override
+      public void run() {
+        Random rand = new Random(7);
+        while (opts.splitInterval > 0 && !done.get()) {
+          KeyExtent split = metadata.split(rand);
+          if (split != null) {
+            locator.invalidateCache(split);
+            splits.incrementAndGet();
+          }
+          UtilWaitThread.sleep(opts.splitInterval);
+        }
+      }
+    };
+
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < numThreads; i++) {
+      final int seed = i;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          Random rand = new Random(seed);
+          List<Mutation> failed = new ArrayList<Mutation>();
+          long max = 0;
+          try {
+            for (int b = 0; b < batchesPerThread; b++) {
+              int start = rand.nextInt(pool.size() - opts.batchSize + 1);
+              long t1 = System.nanoTime();
+              locator.binMutations(null, pool.subList(start, start + opts.batchSize), new HashMap<String,TabletServerMutations<Mutation>>(), failed);
+              max = Math.max(max, System.nanoTime() - t1);
+            }
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+          failures.addAndGet(failed.size());
+          synchronized (maxBatchNanos) {
+            if (max > maxBatchNanos.get())
+              maxBatchNanos.set(max);
+          }
+        }
+      });
+    }
+
+    long t1 = System.nanoTime();
+    splitter.start();
+    for (Thread thread : threads)
+      thread.start();
+    for (Thread thread : threads)
+      thread.join();
+    long t2 = System.nanoTime();
+    done.set(true);
+    splitter.join();
+
+    long binned = (long) batchesPerThread * numThreads * opts.batchSize;
+    hits = locator.getCacheHits() - hits;
+    misses = locator.getCacheMisses() - misses;
+    System.out.printf("threads %3d : %,12.0f mutations/sec  longest batch %,8.1f ms  splits %,6d  hit ratio %7.3f%%  metadata reads %,6d  failures %,d%n",
+        numThreads, binned / ((t2 - t1) / 1000000000.0), maxBatchNanos.get() / 1000000.0, splits.get(), hits * 100.0 / (hits + misses),
+        locator.getMetadataLookups() - lookups, failures.get());
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.test.performance.scan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.accumulo.core.cli.Help;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Column;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.apache.accumulo.core.iterators.system.BatchIterator;
+import org.apache.accumulo.core.iterators.system.ColumnFamilySkippingIterator;
+import org.apache.accumulo.core.iterators.system.ColumnQualifierFilter;
+import org.apache.accumulo.core.iterators.system.DeletingIterator;
+import org.apache.accumulo.core.iterators.system.KeyValueBatch;
+import org.apache.accumulo.core.iterators.system.MultiIterator;
+import org.apache.accumulo.core.iterators.system.StatsIterator;
+import org.apache.accumulo.core.iterators.system.VisibilityFilter;
+import org.apache.accumulo.core.iterators.user.VersioningIterator;
+import org.apache.accumulo.core.security.Authorizations;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Measures the key/values per second read through the iterator stack a tablet server builds for a scan, once calling next() for each key/value and once with
+ * {@link BatchIterator#nextBatch(KeyValueBatch)} for increasing batch sizes. Both ways copy each key/value, as a scan does before returning it.
+ * <p>
+ *
+ * The sources are sorted maps, so the time measured is the time spent in the iterators rather than in decoding files.
+ */
+public class IteratorStackBenchmark {
+
+  static class Opts extends Help {
+    @Parameter(names = "--entries", description = "number of key/values in each source")
+    int entries = 1000000;
+    @Parameter(names = "--sources", description = "number of sources merged, like the files and in-memory maps of a tablet")
+    int sources = 1;
+    @Parameter(names = "--batchSizes", description = "comma separated batch sizes to run with")
+    String batchSizes = "10,100,1000";
+    @Parameter(names = "--trials", description = "number of times to read the data each way")
+    int trials = 5;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Opts opts = new Opts();
+    opts.parseArgs(IteratorStackBenchmark.class.getName(), args);
+
+    List<TreeMap<Key,Value>> maps = new ArrayList<TreeMap<Key,Value>>();
+    Random rand = new Random(42);
+    for (int s = 0; s < opts.sources; s++) {
+      TreeMap<Key,Value> map = new TreeMap<Key,Value>();
+      byte[] val = new byte[20];
+      while (map.size() < opts.entries) {
+        rand.nextBytes(val);
+        map.put(new Key(String.format("row_%010d", rand.nextInt(Integer.MAX_VALUE)), "cf" + rand.nextInt(4), "cq" + rand.nextInt(10), "A", rand.nextInt(100)),
+            new Value(val.clone()));
+      }
+      maps.add(map);
+    }
+
+    for (int trial = 0; trial < opts.trials; trial++) {
+      report("next()", readAll(createStack(maps)));
+      for (String b : opts.batchSizes.split(","))
+        report("batch " + b.trim(), readBatches(createStack(maps), Integer.parseInt(b.trim())));
+    }
+  }
+
+  private static SortedKeyValueIterator<Key,Value> createStack(List<TreeMap<Key,Value>> maps) throws IOException {
+    List<SortedKeyValueIterator<Key,Value>> sources = new ArrayList<SortedKeyValueIterator<Key,Value>>();
+    for (TreeMap<Key,Value> map : maps)
+      sources.add(new SortedMapIterator(map));
+
+    // the same stack as Tablet.ScanDataSource, with the default versioning iterator of a table
+    MultiIterator multiIter = new MultiIterator(sources, (Range) null);
+    StatsIterator statsIter = new StatsIterator(multiIter, new AtomicLong(), new AtomicLong());
+    DeletingIterator delIter = new DeletingIterator(statsIter, false);
+    ColumnFamilySkippingIterator cfsi = new ColumnFamilySkippingIterator(delIter);
+    ColumnQualifierFilter colFilter = new ColumnQualifierFilter(cfsi, Collections.<Column> emptySet());
+    VisibilityFilter visFilter = new VisibilityFilter(colFilter, new Authorizations("A"), new byte[0]);
+    VersioningIterator versIter = new VersioningIterator();
+    versIter.init(visFilter, Collections.singletonMap("maxVersions", "1"), null);
+
+    versIter.seek(new Range(), Collections.<ByteSequence> emptySet(), false);
+    return versIter;
+  }
+
+  private static long[] readAll(SortedKeyValueIterator<Key,Value> iter) throws IOException {
+    long t1 = System.nanoTime();
+    long count = 0;
+    while (iter.hasTop()) {
+      new Key(iter.getTopKey());
+      iter.getTopValue().get().clone();
+      count++;
+      iter.next();
+    }
+    return new long[] {count, System.nanoTime() - t1};
+  }
+
+  private static long[] readBatches(SortedKeyValueIterator<Key,Value> iter, int batchSize) throws IOException {
+    long t1 = System.nanoTime();
+    long count = 0;
+    KeyValueBatch batch = new KeyValueBatch(batchSize);
+    while (iter.hasTop()) {
+      batch.clear();
+      count += ((BatchIterator) iter).nextBatch(batch);
+    }
+    return new long[] {count, System.nanoTime() - t1};
+  }
+
+  private static void report(String mode, long[] result) {
+    System.out.printf("%-12s : %,12d key/values  %,14.0f key/values/sec%n", mode, result[0], result[0] / (result[1] / 1000000000.0));
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.test.performance.scan;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+
+import org.apache.accumulo.core.cli.Help;
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.file.FileSKVIterator;
+import org.apache.accumulo.core.file.blockfile.cache.LruBlockCache;
+import org.apache.accumulo.core.file.rfile.RFileOperations;
+import org.apache.accumulo.core.iterators.system.BatchIterator;
+import org.apache.accumulo.core.iterators.system.KeyValueBatch;
+import org.apache.accumulo.test.CreateRandomRFile;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Scans an RFile created by {@link CreateRandomRFile} repeatedly, with all of its blocks cached, and reports the bytes allocated and the garbage collections
+ * per key/value read. This isolates the allocation done decoding keys and values from the file.
+ * <p>
+ *
+ * Allocation is measured with the HotSpot per thread allocation counter, so this must be run on a JVM that provides it.
+ */
+public class RFileScanAllocationBenchmark {
+
+  static class Opts extends Help {
+    @Parameter(names = "--file", description = "rfile to scan, created with CreateRandomRFile if not given")
+    String file = null;
+    @Parameter(names = "--entries", description = "number of key/values in the file created when none is given")
+    int entries = 1000000;
+    @Parameter(names = "--scans", description = "number of times to scan the file each way")
+    int scans = 10;
+    @Parameter(names = "--batchSize", description = "size of the batches read in batch mode")
+    int batchSize = 100;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Opts opts = new Opts();
+    opts.parseArgs(RFileScanAllocationBenchmark.class.getName(), args);
+
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+
+    String file = opts.file;
+    if (file == null) {
+      File tmp = File.createTempFile("allocation", ".rf");
+      tmp.delete();
+      tmp.deleteOnExit();
+      file = tmp.getAbsolutePath();
+      CreateRandomRFile.main(new String[] {file, Integer.toString(opts.entries)});
+    }
+
+    LruBlockCache dataCache = new LruBlockCache(1l << 30, 100000);
+    LruBlockCache indexCache = new LruBlockCache(1l << 28, 100000);
+    FileSKVIterator reader = new RFileOperations().openReader(file, false, fs, conf, AccumuloConfiguration.getDefaultConfiguration(), dataCache, indexCache);
+
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+
+    for (boolean batch : new boolean[] {false, true, false, true}) {
+      long allocated = threadBean.getThreadAllocatedBytes(threadId);
+      long gcCount = gcCount();
+      long t1 = System.nanoTime();
+
+      long entries = 0;
+      for (int i = 0; i < opts.scans; i++)
+        entries += batch ? scanBatches(reader, opts.batchSize) : scan(reader);
+
+      long t2 = System.nanoTime();
+      allocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+      gcCount = gcCount() - gcCount;
+
+      System.out.printf("%-8s : %,14d key/values  %,12.0f key/values/sec  %8.1f bytes allocated/key/value  %,6d collections%n", batch ? "batch" : "next()",
+          entries, entries / ((t2 - t1) / 1000000000.0), allocated / (double) entries, gcCount);
+    }
+
+    reader.close();
+  }
+
+  private static long scan(FileSKVIterator reader) throws Exception {
+    reader.seek(new Range(), Collections.<ByteSequence> emptySet(), false);
+    long count = 0;
+    while (reader.hasTop()) {
+      reader.getTopKey();
+      reader.getTopValue();
+      count++;
+      reader.next();
+    }
+    return count;
+  }
+
+  private static long scanBatches(FileSKVIterator reader, int batchSize) throws Exception {
+    reader.seek(new Range(), Collections.<ByteSequence> emptySet(), false);
+    KeyValueBatch batch = new KeyValueBatch(batchSize);
+    long count = 0;
+    while (reader.hasTop()) {
+      batch.clear();
+      count += ((BatchIterator) reader).nextBatch(batch);
+    }
+    return count;
+  }
+
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      count += gc.getCollectionCount();
+    return count;
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.test.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+public class BatchScanOrderedIT extends SimpleMacIT {
+
+  private static final int ROWS = 10000;
+
+  private String createTable() throws Exception {
+    Connector c = getConnector();
+    String tableName = getTableNames(1)[0];
+    c.tableOperations().create(tableName);
+    SortedSet<Text> splits = new TreeSet<Text>();
+    for (int i = 1; i < 16; i++)
+      splits.add(new Text(String.format("%08d", i * ROWS / 16)));
+    c.tableOperations().addSplits(tableName, splits);
+
+    BatchWriter bw = c.createBatchWriter(tableName, new BatchWriterConfig());
+    for (int i = 0; i < ROWS; i++) {
+      Mutation m = new Mutation(String.format("%08d", i));
+      m.put("cf", "cq", String.format("%0100d", i));
+      bw.addMutation(m);
+    }
+    bw.close();
+    return tableName;
+  }
+
+  private static List<Range> randomRanges(int count) {
+    Random random = new Random(42);
+    List<Range> ranges = new ArrayList<Range>();
+    for (int i = 0; i < count; i++) {
+      int start = random.nextInt(ROWS);
+      ranges.add(new Range(String.format("%08d", start), String.format("%08d", Math.min(ROWS - 1, start + random.nextInt(200)))));
+    }
+    return ranges;
+  }
+
+  private static int expectedRows(List<Range> ranges) {
+    int count = 0;
+    for (int i = 0; i < ROWS; i++) {
+      Key key = new Key(String.format("%08d", i), "cf", "cq");
+      for (Range range : ranges) {
+        if (range.contains(key)) {
+          count++;
+          break;
+        }
+      }
+    }
+    return count;
+  }
+
+  private static int checkSorted(BatchScanner bs) {
+    Key last = null;
+    int count = 0;
+    for (Entry<Key,Value> entry : bs) {
+      if (last != null)
+        assertTrue(last + " " + entry.getKey(), last.compareTo(entry.getKey()) < 0);
+      assertEquals(String.format("%0100d", Integer.parseInt(entry.getKey().getRow().toString())), entry.getValue().toString());
+      last = entry.getKey();
+      count++;
+    }
+    return count;
+  }
+
+  @Test(timeout = 2 * 60 * 1000)
+  public void testOrdered() throws Exception {
+    String tableName = createTable();
+    List<Range> ranges = randomRanges(100);
+
+    BatchScanner bs = getConnector().createBatchScanner(tableName, Authorizations.EMPTY, 4);
+    bs.setRanges(ranges);
+    bs.setOrdered(true);
+    assertEquals(expectedRows(ranges), checkSorted(bs));
+
+    // everything, with a buffer smaller than one row per tablet
+    bs.setRanges(Collections.singletonList(new Range()));
+    bs.setMaxMemory(100);
+    assertEquals(ROWS, checkSorted(bs));
+    bs.close();
+  }
+
+  @Test(timeout = 2 * 60 * 1000)
+  public void testMaxMemory() throws Exception {
+    String tableName = createTable();
+    List<Range> ranges = randomRanges(100);
+
+    BatchScanner bs = getConnector().createBatchScanner(tableName, Authorizations.EMPTY, 4);
+    bs.setRanges(ranges);
+    bs.setMaxMemory(1000);
+    int count = 0;
+    for (Entry<Key,Value> entry : bs) {
+      assertEquals(String.format("%0100d", Integer.parseInt(entry.getKey().getRow().toString())), entry.getValue().toString());
+      count++;
+      if (count % 100 == 0) {
+        // a slow consumer
+        Thread.sleep(1);
+      }
+    }
+    bs.close();
+    assertEquals(expectedRows(ranges), count);
+  }
+}
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Random;
@@ -35,8 +36,10 @@ import java.util.TreeMap;
 
 import org.apache.accumulo.core.Constants;
 import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.accumulo.core.util.Pair;
 import org.apache.accumulo.tserver.NativeMap;
 import org.apache.hadoop.io.Text;
@@ -575,6 +578,48 @@ public class NativeMapIT {
     nm.delete();
   }
 
+  @Test
+  public void testMutateBatches() {
+    NativeMap nm = new NativeMap();
+
+    // enough mutations for many batches, an empty mutation and values larger than the buffers used to pass them
+    List<Mutation> mutations = new ArrayList<Mutation>();
+    mutations.add(new Mutation(new Text("empty")));
+    for (int i = 0; i < 3000; i++) {
+      Mutation m = new Mutation(nk(i).getRow());
+      for (int j = 0; j < 3; j++) {
+        byte[] val = nv(i).get();
+        if (i == 1000 && j == 1)
+          val = new byte[100000];
+        else if (i == 2000 && j == 0)
+          val = new byte[2000000];
+        m.put(new Text("cf" + j), new Text("cq"), new ColumnVisibility("A"), 5, new Value(val));
+      }
+      mutations.add(m);
+    }
+
+    nm.mutate(mutations, 7);
+    assertEquals(9000, nm.size());
+
+    Iterator<Entry<Key,Value>> iter = nm.iterator();
+    for (int i = 0; i < 3000; i++) {
+      for (int j = 0; j < 3; j++) {
+        assertTrue(iter.hasNext());
+        Entry<Key,Value> entry = iter.next();
+        Key key = new Key(nk(i).getRow(), new Text("cf" + j), new Text("cq"), new Text("A"), 5);
+        assertEquals(key, entry.getKey());
+        // each mutation after the first gets the next mutation count
+        assertTrue(entry.getKey().toString(), entry.getKey().toString().endsWith(" mc=" + (8 + i)));
+        int expectedLen = (i == 1000 && j == 1) ? 100000 : (i == 2000 && j == 0) ? 2000000 : nv(i).getSize();
+        assertEquals(expectedLen, entry.getValue().getSize());
+        assertEquals(entry.getValue(), nm.get(key));
+      }
+    }
+    assertFalse(iter.hasNext());
+
+    nm.delete();
+  }
+
   @Test
   public void testConcurrentIter() throws IOException {
     NativeMap nm = new NativeMap();